@@ -0,0 +1,101 @@
+package org.activecheck.benchmark;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.activecheck.net.ActivecheckClient;
+import org.activecheck.net.ActivecheckServer;
+import org.activecheck.net.TcpActivecheckClient;
+import org.activecheck.net.TcpActivecheckServer;
+import org.activecheck.net.UnixActivecheckClient;
+import org.activecheck.net.UnixActivecheckServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of submitting a report from a local client until the server has
+ * acknowledged it, over loopback TCP and over a unix domain socket. The
+ * persistent benchmark reuses one connection like activecheck-send does, the
+ * connecting one opens a connection per report like most scripts do.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalSubmitLatencyBenchmark {
+    private static final String CHECK_LOAD = "OK - load average: 0.20, 0.17, 0.27| "
+            + "load1=0.200;4.000;8.000;0; load5=0.170;4.000;8.000;0; load15=0.270;4.000;8.000;0;";
+
+    @Param({"tcp", "unix"})
+    public String transport;
+
+    private File directory;
+    private File path;
+    private ActivecheckServer server;
+    private int port;
+    private ActivecheckClient client;
+    private final NagiosServiceReport report = new NagiosServiceReport("load", "localhost",
+            NagiosServiceStatus.OK, CHECK_LOAD, 1, 2);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if ("tcp".equals(transport)) {
+            final TcpActivecheckServer tcpServer = new TcpActivecheckServer(InetAddress.getLoopbackAddress(), 0);
+            port = tcpServer.getLocalPort();
+            server = tcpServer;
+        } else {
+            directory = Files.createTempDirectory("activecheck").toFile();
+            path = new File(directory, "activecheck.sock");
+            server = new UnixActivecheckServer(path, UnixActivecheckServer.Format.NATIVE, "rw-------", null);
+        }
+        final Thread thread = new Thread(server);
+        thread.setDaemon(true);
+        thread.start();
+        client = newClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        client.close();
+        if (server instanceof UnixActivecheckServer) {
+            ((UnixActivecheckServer) server).close();
+            directory.delete();
+        }
+    }
+
+    private ActivecheckClient newClient() {
+        return "tcp".equals(transport) ? new TcpActivecheckClient("127.0.0.1", port)
+                : new UnixActivecheckClient(path.getPath());
+    }
+
+    @Benchmark
+    public void persistent() throws IOException {
+        client.send(report);
+        client.flush();
+    }
+
+    @Benchmark
+    public void connecting() throws IOException {
+        try (ActivecheckClient connection = newClient()) {
+            connection.send(report);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.activecheck.benchmark;
+
+import org.activecheck.common.nagios.NagiosCheckResult;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing of typical plugin outputs into a {@link NagiosCheckResult},
+ * once into a fresh object and once into a reused one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NagiosCheckResultBenchmark {
+    private static final String CHECK_LOAD = "OK - load average: 0.20, 0.17, 0.27|"
+            + "load1=0.200;4.000;8.000;0; load5=0.170;4.000;8.000;0; load15=0.270;4.000;8.000;0;";
+    private static final String CHECK_DISK = "DISK OK - free space: / 7326 MB (78% inode=95%);| "
+            + "/=2016MB;9832;9822;0;9842 '/var/lib/docker'=12016MB;@9000:9832;~:9822;0;19842";
+    private static final String MULTI_LINE = "message_line1 | perfdata_line1=3;5;6;0;10\n"
+            + "message_line2\nmessage_line3\nmessage_line4 | perfdata_line2=3;5;6;0;10\n"
+            + "perfdata_line3=3;5;6;0;10\nperfdata_line4=3;5;6;0;10";
+
+    @Param({"load", "disk", "multiline"})
+    public String output;
+
+    private String message;
+    private final NagiosCheckResult reusedResult = new NagiosCheckResult();
+
+    @Setup
+    public void setUp() {
+        switch (output) {
+            case "load":
+                message = CHECK_LOAD;
+                break;
+            case "disk":
+                message = CHECK_DISK;
+                break;
+            default:
+                message = MULTI_LINE;
+                break;
+        }
+    }
+
+    @Benchmark
+    public NagiosCheckResult parseIntoNewResult() {
+        return NagiosCheckResult.fromMessage(message);
+    }
+
+    @Benchmark
+    public NagiosCheckResult parseIntoReusedResult() {
+        reusedResult.parseMessage(message, NagiosServiceStatus.OK);
+        return reusedResult;
+    }
+}
@@ -0,0 +1,81 @@
+package org.activecheck.benchmark;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportCodec;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares transferring a report with Java serialization, as the nsca proxy
+ * did before, to the binary {@link NagiosServiceReportCodec}. The encoded
+ * sizes are printed once per fork.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NagiosCodecBenchmark {
+    private static final String CHECK_DISK = "DISK OK - free space: / 7326 MB (78% inode=95%);| "
+            + "/=2016MB;9832;9822;0;9842 '/var/lib/docker'=12016.5MB;@9000:9832;~:9822;0;19842 "
+            + "load1=0.200;4.000;8.000;0; load5=0.170;4.000;8.000;0; load15=0.270;4.000;8.000;0;";
+
+    private NagiosServiceReport report;
+    private final NagiosServiceReportCodec codec = new NagiosServiceReportCodec();
+    private final ByteArrayOutputStream serializedOutput = new ByteArrayOutputStream(4096);
+    private byte[] serialized;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        report = new NagiosServiceReport("disk", "localhost", NagiosServiceStatus.OK, CHECK_DISK,
+                System.currentTimeMillis() - 100, System.currentTimeMillis());
+        serialized = javaSerialize().toByteArray();
+        final ByteBuffer frame = codec.encode(report);
+        encoded = ByteBuffer.allocate(frame.remaining());
+        encoded.put(frame).flip();
+        System.out.printf("%nserialized: %d bytes, encoded: %d bytes%n", serialized.length, encoded.remaining());
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream javaSerialize() throws IOException {
+        serializedOutput.reset();
+        final ObjectOutputStream objectOutput = new ObjectOutputStream(serializedOutput);
+        objectOutput.writeObject(report);
+        objectOutput.flush();
+        return serializedOutput;
+    }
+
+    @Benchmark
+    public Object javaDeserialize() throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        return codec.encode(report);
+    }
+
+    @Benchmark
+    public NagiosServiceReport decode() throws IOException {
+        return NagiosServiceReportCodec.decode(encoded.duplicate());
+    }
+}
@@ -0,0 +1,94 @@
+package org.activecheck.benchmark;
+
+import org.activecheck.common.Utf8Buffer;
+import org.activecheck.common.nagios.NagiosCheckResult;
+import org.activecheck.common.nagios.NagiosPerformanceData;
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering a check result with performance data, compared to the
+ * former String.format and StringUtils.join based rendering. Run with
+ * <code>-prof gc</code> to compare the allocation rates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NagiosRenderBenchmark {
+    private static final String CHECK_DISK = "DISK OK - free space: / 7326 MB (78% inode=95%);| "
+            + "/=2016MB;9832;9822;0;9842 '/var/lib/docker'=12016.5MB;@9000:9832;~:9822;0;19842 "
+            + "load1=0.200;4.000;8.000;0; load5=0.170;4.000;8.000;0; load15=0.270;4.000;8.000;0;";
+
+    private NagiosCheckResult checkResult;
+    private final StringBuilder reusedBuilder = new StringBuilder(512);
+    private final Utf8Buffer reusedBuffer = new Utf8Buffer(512);
+
+    @Setup
+    public void setUp() {
+        checkResult = NagiosCheckResult.fromMessage(CHECK_DISK);
+    }
+
+    @Benchmark
+    public String legacyMessageWithPerformancedata() {
+        final List<String> lines = new ArrayList<>();
+        for (NagiosPerformanceData perfData : checkResult.getPerfData()) {
+            lines.add(legacyLine(perfData));
+        }
+        return StringUtils.join(checkResult.getMessages(), "\n").replace("|", " or ")
+                + " | " + StringUtils.join(lines, " ");
+    }
+
+    @Benchmark
+    public String messageWithPerformancedata() {
+        return checkResult.getMessageWithPerformancedata();
+    }
+
+    @Benchmark
+    public StringBuilder appendToReusedBuilder() throws IOException {
+        reusedBuilder.setLength(0);
+        checkResult.appendMessageWithPerformancedata(reusedBuilder);
+        return reusedBuilder;
+    }
+
+    @Benchmark
+    public ByteBuffer appendToReusedByteBuffer() throws IOException {
+        checkResult.appendMessageWithPerformancedata(reusedBuffer.clear());
+        return reusedBuffer.getBytes();
+    }
+
+    private static String legacyLine(NagiosPerformanceData perfData) {
+        String line = "'" + perfData.getName() + "'=" + String.format("%f", perfData.getCurrent())
+                + perfData.getUnit();
+        if (perfData.hasWarning()) {
+            line += ";" + String.format("%f", perfData.getWarning());
+            if (perfData.hasCritical()) {
+                line += ";" + String.format("%f", perfData.getCritical());
+                if (perfData.hasMinimum()) {
+                    line += ";" + String.format("%f", perfData.getMinimum());
+                    if (perfData.hasMaximum()) {
+                        line += ";" + String.format("%f", perfData.getMaximum());
+                    }
+                }
+            }
+        }
+        return line;
+    }
+}
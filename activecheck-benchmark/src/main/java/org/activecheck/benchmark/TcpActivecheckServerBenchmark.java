@@ -0,0 +1,93 @@
+package org.activecheck.benchmark;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.activecheck.net.TcpActivecheckClient;
+import org.activecheck.net.TcpActivecheckServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test for the nsca proxy listener: many local clients send reports over
+ * persistent pipelined connections. Sending is limited by the acknowledgements
+ * of the server, so the score is the number of reports per second the server
+ * accepts. The number of reports that reached the observers is printed after
+ * each iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class TcpActivecheckServerBenchmark {
+    private static final String CHECK_LOAD = "OK - load average: 0.20, 0.17, 0.27| "
+            + "load1=0.200;4.000;8.000;0; load5=0.170;4.000;8.000;0; load15=0.270;4.000;8.000;0;";
+
+    @State(Scope.Benchmark)
+    public static class Server implements Observer {
+        private TcpActivecheckServer server;
+        private final AtomicLong received = new AtomicLong();
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            server = new TcpActivecheckServer(InetAddress.getLoopbackAddress(), 0);
+            server.addObserver(this);
+            // not closed explicitly as clients may still be flushing when this
+            // state is torn down, it ends with the forked VM
+            final Thread thread = new Thread(server);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @TearDown(Level.Iteration)
+        public void printReceived() {
+            System.out.printf("%nreceived %d reports%n", received.getAndSet(0));
+        }
+
+        @Override
+        public void update(Observable o, Object arg) {
+            received.incrementAndGet();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private NagiosServiceReport report;
+        private TcpActivecheckClient client;
+
+        @Setup(Level.Trial)
+        public void setUp(Server server) {
+            report = new NagiosServiceReport("load", "localhost", NagiosServiceStatus.OK, CHECK_LOAD, 1, 2);
+            client = new TcpActivecheckClient("127.0.0.1", server.server.getLocalPort());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public void send(Client client) throws IOException {
+        client.client.send(client.report);
+    }
+}
@@ -0,0 +1,268 @@
+package org.activecheck.plugin.collector.checkresult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.activecheck.common.nagios.NagiosServiceReportSnapshot;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.activecheck.common.plugin.ActivecheckPluginProperties;
+import org.activecheck.common.plugin.collector.ActivecheckCollector;
+import org.activecheck.common.plugin.collector.ActivecheckCollectorType;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hands check results to a Nagios or Naemon running on the same host by
+ * writing check result files into its <code>check_result_path</code>. The
+ * results of up to <code>check_result_batch_size</code> reports go into one
+ * file, a file is written at the latest <code>check_result_linger</code>
+ * milliseconds after its first report arrived. Nagios only reads a file
+ * once the empty <code>.ok</code> file of the same name exists, which is
+ * created after the file has been written completely.
+ */
+@ActivecheckPluginProperties(propertiesToMerge = {})
+public class CheckResultCollector extends ActivecheckCollector implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(CheckResultCollector.class);
+	private static final int DEFAULT_BATCH_SIZE = 500;
+	private static final long DEFAULT_LINGER = 200;
+	// nagios only reads files named like the ones created by mkstemp("cXXXXXX")
+	private static final String FILE_NAME_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+	private static final int FILE_NAME_LENGTH = 6;
+
+	private final Object lock = new Object();
+	private final Random random = new Random();
+	private List<NagiosServiceReportSnapshot> pending = new ArrayList<NagiosServiceReportSnapshot>();
+	private long firstPendingMillis = 0;
+	private volatile File checkResultPath = null;
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+	private volatile long linger = DEFAULT_LINGER;
+	private volatile boolean run = true;
+	private Thread t = null;
+
+	public CheckResultCollector(PropertiesConfiguration properties) {
+		super(properties, ActivecheckCollectorType.REPORTING);
+
+		// initialize what has not been initialized
+		collectorInit();
+	}
+
+	@Override
+	protected void collectorInit() {
+		final String path = properties.getString("check_result_path", null);
+		final int newBatchSize = properties.getInt("check_result_batch_size", DEFAULT_BATCH_SIZE);
+		final long newLinger = properties.getLong("check_result_linger", DEFAULT_LINGER);
+		Validate.notNull(path, "check_result_path is not set");
+		Validate.isTrue(newBatchSize > 0, "check_result_batch_size must be positive");
+		Validate.isTrue(newLinger >= 0, "check_result_linger must not be negative");
+		checkResultPath = new File(path);
+		batchSize = newBatchSize;
+		linger = newLinger;
+
+		// start thread if not already running
+		if (t == null || !t.isAlive()) {
+			run = true;
+			t = new Thread(this);
+			t.setName("CheckResultCollector " + getCollectorEndpointName());
+			t.start();
+		}
+	}
+
+	@Override
+	public String getCollectorEndpointName() {
+		return checkResultPath == null ? null : checkResultPath.getPath();
+	}
+
+	@Override
+	public void run() {
+		logger.info("Writing check results to {}", checkResultPath);
+		try {
+			while (run) {
+				final List<NagiosServiceReportSnapshot> batch = nextBatch();
+				if (!batch.isEmpty()) {
+					write(batch);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		// write what has been accepted before disconnecting
+		final List<NagiosServiceReportSnapshot> batch;
+		synchronized (lock) {
+			batch = pending;
+			pending = new ArrayList<NagiosServiceReportSnapshot>();
+		}
+		if (!batch.isEmpty()) {
+			write(batch);
+		}
+		logger.info("Stopped writing check results to {}", checkResultPath);
+	}
+
+	/**
+	 * Waits until the batch is full, has lingered long enough or the
+	 * collector is disconnected.
+	 */
+	private List<NagiosServiceReportSnapshot> nextBatch() throws InterruptedException {
+		synchronized (lock) {
+			while (run) {
+				if (pending.size() >= batchSize) {
+					break;
+				} else if (pending.isEmpty()) {
+					lock.wait();
+				} else {
+					final long remaining = firstPendingMillis + linger - System.currentTimeMillis();
+					if (remaining <= 0) {
+						break;
+					}
+					lock.wait(remaining);
+				}
+			}
+			if (!run) {
+				return new ArrayList<NagiosServiceReportSnapshot>();
+			} else if (pending.size() > batchSize) {
+				// the rest keeps lingering since the first report of this batch
+				final List<NagiosServiceReportSnapshot> head = pending.subList(0, batchSize);
+				final List<NagiosServiceReportSnapshot> batch = new ArrayList<NagiosServiceReportSnapshot>(head);
+				head.clear();
+				return batch;
+			}
+			final List<NagiosServiceReportSnapshot> batch = pending;
+			pending = new ArrayList<NagiosServiceReportSnapshot>();
+			return batch;
+		}
+	}
+
+	private void write(List<NagiosServiceReportSnapshot> batch) {
+		final byte[] content = render(batch, System.currentTimeMillis()).getBytes(StandardCharsets.UTF_8);
+		try {
+			final Path file = createFile();
+			try {
+				Files.write(file, content, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				Files.createFile(file.resolveSibling(file.getFileName() + ".ok"));
+			} catch (IOException e) {
+				Files.deleteIfExists(file);
+				throw e;
+			}
+			logger.debug("Wrote {} check results to {}", batch.size(), file);
+		} catch (IOException e) {
+			logger.error("Unable to write {} check results to '{}': {}", batch.size(), checkResultPath, e.getMessage());
+			logger.trace(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reserves a new file name that nagios ignores until the .ok file exists.
+	 */
+	private Path createFile() throws IOException {
+		final Path directory = checkResultPath.toPath();
+		final char[] name = new char[FILE_NAME_LENGTH + 1];
+		name[0] = 'c';
+		while (true) {
+			for (int i = 1; i < name.length; i++) {
+				name[i] = FILE_NAME_CHARACTERS.charAt(random.nextInt(FILE_NAME_CHARACTERS.length()));
+			}
+			try {
+				return Files.createFile(directory.resolve(new String(name)));
+			} catch (FileAlreadyExistsException e) {
+				logger.trace("Check result file {} exists", e.getFile());
+			}
+		}
+	}
+
+	static String render(List<NagiosServiceReportSnapshot> batch, long fileTimeMillis) {
+		final StringBuilder out = new StringBuilder(256 * batch.size());
+		out.append("### Active Check Result File ###\n");
+		out.append("file_time=").append(fileTimeMillis / 1000).append("\n\n");
+		for (NagiosServiceReportSnapshot report : batch) {
+			final String serviceName = report.getServiceName();
+			if (serviceName == null) {
+				out.append("### Nagios Host Check Result ###\n");
+			} else {
+				out.append("### Nagios Service Check Result ###\n");
+			}
+			out.append("host_name=").append(report.getServiceHost()).append('\n');
+			if (serviceName != null) {
+				out.append("service_description=").append(serviceName).append('\n');
+			}
+			// passive check results
+			out.append("check_type=1\n");
+			out.append("check_options=0\n");
+			out.append("scheduled_check=0\n");
+			out.append("reschedule_check=0\n");
+			out.append("latency=0.000000\n");
+			out.append("start_time=").append(formatTime(report.getStartTime())).append('\n');
+			out.append("finish_time=").append(formatTime(report.getFinishTime())).append('\n');
+			out.append("early_timeout=0\n");
+			out.append("exited_ok=1\n");
+			out.append("return_code=").append(returnCode(report.getStatus())).append('\n');
+			out.append("output=");
+			appendEscaped(out, report.getMessageWithPerformancedata());
+			out.append("\n\n");
+		}
+		return out.toString();
+	}
+
+	private static String formatTime(long millis) {
+		return String.format(Locale.ENGLISH, "%d.%06d", millis / 1000, (millis % 1000) * 1000);
+	}
+
+	private static int returnCode(NagiosServiceStatus status) {
+		switch (status) {
+			case FAILURE:
+				return NagiosServiceStatus.CRITICAL.getStatusCode();
+			case DEPENDENT:
+				return NagiosServiceStatus.UNKNOWN.getStatusCode();
+			default:
+				return status.getStatusCode();
+		}
+	}
+
+	/**
+	 * Escapes line breaks and backslashes like nagios does.
+	 */
+	private static void appendEscaped(StringBuilder out, String text) {
+		for (int i = 0; i < text.length(); i++) {
+			final char c = text.charAt(i);
+			if (c == '\\') {
+				out.append("\\\\");
+			} else if (c == '\n') {
+				out.append("\\n");
+			} else if (c != '\r') {
+				out.append(c);
+			}
+		}
+	}
+
+	@Override
+	public void sendImpl(NagiosServiceReportSnapshot report) {
+		synchronized (lock) {
+			if (pending.isEmpty()) {
+				firstPendingMillis = System.currentTimeMillis();
+				lock.notifyAll();
+			}
+			pending.add(report);
+			if (pending.size() >= batchSize) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public void disconnect() {
+		synchronized (lock) {
+			run = false;
+			lock.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package org.activecheck.plugin.collector.checkresult;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportSnapshot;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CheckResultCollectorTest {
+	private File directory;
+	private CheckResultCollector collector;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("checkresults").toFile();
+	}
+
+	@AfterMethod
+	public void tearDown() throws Exception {
+		if (collector != null) {
+			collector.disconnect();
+			collector = null;
+		}
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static NagiosServiceReportSnapshot report(String serviceName, NagiosServiceStatus status, String message) {
+		return new NagiosServiceReportSnapshot(new NagiosServiceReport(serviceName, "web01", status, message,
+				1500000000123L, 1500000001500L));
+	}
+
+	private List<String> resultFiles() {
+		List<String> names = new ArrayList<String>();
+		String[] files = directory.list();
+		if (files != null) {
+			for (String name : files) {
+				if (!name.endsWith(".ok")) {
+					names.add(name);
+				}
+			}
+		}
+		Collections.sort(names);
+		return names;
+	}
+
+	@Test(description = "Test rendering service and host check results")
+	public void testRender() {
+		String rendered = CheckResultCollector.render(Arrays.asList(
+				report("HTTP", NagiosServiceStatus.WARNING, "HTTP WARNING\nslow | time=2s"),
+				report(null, NagiosServiceStatus.FAILURE, "PING C:\\ failed")), 1500000002999L);
+		assertEquals(rendered, "### Active Check Result File ###\n"
+				+ "file_time=1500000002\n\n"
+				+ "### Nagios Service Check Result ###\n"
+				+ "host_name=web01\n"
+				+ "service_description=HTTP\n"
+				+ "check_type=1\n"
+				+ "check_options=0\n"
+				+ "scheduled_check=0\n"
+				+ "reschedule_check=0\n"
+				+ "latency=0.000000\n"
+				+ "start_time=1500000000.123000\n"
+				+ "finish_time=1500000001.500000\n"
+				+ "early_timeout=0\n"
+				+ "exited_ok=1\n"
+				+ "return_code=1\n"
+				+ "output=HTTP WARNING\\nslow | time=2.000000s\n\n"
+				+ "### Nagios Host Check Result ###\n"
+				+ "host_name=web01\n"
+				+ "check_type=1\n"
+				+ "check_options=0\n"
+				+ "scheduled_check=0\n"
+				+ "reschedule_check=0\n"
+				+ "latency=0.000000\n"
+				+ "start_time=1500000000.123000\n"
+				+ "finish_time=1500000001.500000\n"
+				+ "early_timeout=0\n"
+				+ "exited_ok=1\n"
+				+ "return_code=2\n"
+				+ "output=PING C:\\\\ failed\n\n");
+	}
+
+	@Test(description = "Test batching results into files followed by .ok files")
+	public void testBatches() throws Exception {
+		PropertiesConfiguration properties = new PropertiesConfiguration();
+		properties.setProperty("check_result_path", directory.getPath());
+		properties.setProperty("check_result_batch_size", "3");
+		properties.setProperty("check_result_linger", "100");
+		collector = new CheckResultCollector(properties);
+		for (int i = 0; i < 7; i++) {
+			collector.send(report("service" + i, NagiosServiceStatus.OK, "OK"));
+		}
+		for (int i = 0; i < 50 && resultFiles().size() < 3; i++) {
+			Thread.sleep(100);
+		}
+
+		List<String> names = resultFiles();
+		assertEquals(names.size(), 3);
+		int results = 0;
+		List<Integer> batchSizes = new ArrayList<Integer>();
+		for (String name : names) {
+			assertTrue(name.matches("c[a-zA-Z0-9]{6}"), name);
+			assertTrue(new File(directory, name + ".ok").isFile());
+			String content = new String(Files.readAllBytes(new File(directory, name).toPath()),
+					StandardCharsets.UTF_8);
+			int batch = content.split("### Nagios Service Check Result ###", -1).length - 1;
+			batchSizes.add(batch);
+			results += batch;
+		}
+		Collections.sort(batchSizes);
+		assertEquals(results, 7);
+		assertEquals(batchSizes, Arrays.asList(1, 3, 3));
+	}
+
+	@Test(description = "Test pending results are written on disconnect")
+	public void testDisconnect() throws Exception {
+		PropertiesConfiguration properties = new PropertiesConfiguration();
+		properties.setProperty("check_result_path", directory.getPath());
+		properties.setProperty("check_result_linger", "60000");
+		collector = new CheckResultCollector(properties);
+		collector.send(report("HTTP", NagiosServiceStatus.OK, "OK"));
+		collector.disconnect();
+		for (int i = 0; i < 50 && resultFiles().isEmpty(); i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(resultFiles().size(), 1);
+	}
+}
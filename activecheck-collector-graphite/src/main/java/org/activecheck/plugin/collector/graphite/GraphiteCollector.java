@@ -3,7 +3,7 @@ package org.activecheck.plugin.collector.graphite;
 import java.util.concurrent.TimeUnit;
 
 import org.activecheck.common.nagios.NagiosPerformanceData;
-import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportSnapshot;
 import org.activecheck.common.plugin.ActivecheckPluginProperties;
 import org.activecheck.common.plugin.collector.ActivecheckCollector;
 import org.activecheck.common.plugin.collector.ActivecheckCollectorType;
@@ -57,7 +57,7 @@ public class GraphiteCollector extends ActivecheckCollector {
 	}
 
 	@Override
-	public void sendImpl(NagiosServiceReport report) {
+	public void sendImpl(NagiosServiceReportSnapshot report) {
 		// create and clean up metric path
 		GenericCollector host = new GenericCollector(report.getServiceHost());
 
@@ -66,13 +66,13 @@ public class GraphiteCollector extends ActivecheckCollector {
 				GraphiteUtils.sanitizeServiceName(report.getServiceName()));
 
 		// actually send nagios status (as a gauge)
-		if (report.getRouting().doGraphResults()) {
+		if (report.doGraphResults()) {
 			registry.addGauge(report.getStatus().getStatusCode(),
 					graphitePathBase, STATUS_METRIC_NAME);
 		}
 
 		// send performance data
-		if (report.getRouting().doGraphPerfdata()) {
+		if (report.doGraphPerfdata()) {
 			for (NagiosPerformanceData perfData : report.getPerfData()) {
 				// submit current value if available
 				registry.addGauge(perfData.getCurrent(), graphitePathBase,
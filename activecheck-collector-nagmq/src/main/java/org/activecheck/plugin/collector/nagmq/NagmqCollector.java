@@ -3,7 +3,7 @@ package org.activecheck.plugin.collector.nagmq;
 import java.util.LinkedList;
 import java.util.Queue;
 
-import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportSnapshot;
 import org.activecheck.common.plugin.ActivecheckPluginProperties;
 import org.activecheck.common.plugin.collector.ActivecheckCollector;
 import org.activecheck.common.plugin.collector.ActivecheckCollectorType;
@@ -102,7 +102,7 @@ public class NagmqCollector extends ActivecheckCollector implements Runnable {
     }
 
     @Override
-    public synchronized void sendImpl(NagiosServiceReport report) {
+    public synchronized void sendImpl(NagiosServiceReportSnapshot report) {
         NagmqStatusCheck nagmqStatusCheck = new NagmqStatusCheck(report.getServiceHost(), report.getServiceName(),
                 report.getMessageWithPerformancedata(), report.getStatus().getStatusCode(), report.getStartTime(),
                 report.getFinishTime());
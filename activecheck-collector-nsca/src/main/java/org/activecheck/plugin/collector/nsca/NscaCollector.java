@@ -4,7 +4,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Queue;
 
-import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportSnapshot;
 import org.activecheck.common.nagios.NagiosServiceStatus;
 import org.activecheck.common.plugin.ActivecheckPluginProperties;
 import org.activecheck.common.plugin.collector.ActivecheckCollector;
@@ -107,7 +107,7 @@ public class NscaCollector extends ActivecheckCollector implements Runnable {
 	}
 
 	@Override
-	public synchronized void sendImpl(NagiosServiceReport report) {
+	public synchronized void sendImpl(NagiosServiceReportSnapshot report) {
 		String message = report.getMessageWithPerformancedata().replace("\n",
 				"\\n");
 		MessagePayload payload = new MessagePayloadBuilder().withHostname(report.getServiceHost()).withLevel(status2level.get(report.getStatus())).withMessage(message).create();
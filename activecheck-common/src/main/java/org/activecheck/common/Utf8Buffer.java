@@ -0,0 +1,114 @@
+package org.activecheck.common;
+
+import org.apache.commons.lang.Validate;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A reusable {@link Appendable} that encodes everything appended to it as
+ * UTF-8 directly into a {@link ByteBuffer}. The buffer grows as needed and is
+ * kept across {@link #clear()} calls, so rendering into it does not allocate
+ * once it has reached its working size. Not thread safe.
+ */
+public final class Utf8Buffer implements Appendable {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private ByteBuffer buffer;
+    private char highSurrogate = 0;
+
+    public Utf8Buffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Utf8Buffer(int capacity) {
+        Validate.isTrue(capacity > 0, "capacity must be positive");
+        buffer = ByteBuffer.allocate(capacity);
+    }
+
+    public Utf8Buffer clear() {
+        buffer.clear();
+        highSurrogate = 0;
+        return this;
+    }
+
+    /**
+     * @return the number of bytes written since the last {@link #clear()}
+     */
+    public int length() {
+        return buffer.position();
+    }
+
+    /**
+     * @return a view of the bytes written since the last {@link #clear()},
+     * valid until this buffer is changed again
+     */
+    public ByteBuffer getBytes() {
+        final ByteBuffer bytes = buffer.duplicate();
+        bytes.flip();
+        return bytes;
+    }
+
+    @Override
+    public Utf8Buffer append(CharSequence text) {
+        final CharSequence chars = text == null ? "null" : text;
+        return append(chars, 0, chars.length());
+    }
+
+    @Override
+    public Utf8Buffer append(CharSequence text, int start, int end) {
+        final CharSequence chars = text == null ? "null" : text;
+        ensureRemaining((end - start) * 3);
+        for (int i = start; i < end; i++) {
+            put(chars.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Utf8Buffer append(char c) {
+        ensureRemaining(4);
+        put(c);
+        return this;
+    }
+
+    private void put(char c) {
+        if (highSurrogate != 0) {
+            final char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int codePoint = Character.toCodePoint(high, c);
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+                return;
+            }
+            // unpaired surrogate, encoded as replacement like String.getBytes
+            buffer.put((byte) '?');
+        }
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xc0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3f)));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xe0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+            buffer.put((byte) (0x80 | (c & 0x3f)));
+        }
+    }
+
+    private void ensureRemaining(int bytes) {
+        // a pending high surrogate may need one more byte
+        if (buffer.remaining() < bytes + 1) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes + 1));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -1,61 +1,45 @@
 package org.activecheck.common.nagios;
 
 public abstract class NagiosCheck {
-    private String warning = null;
-    private String critical = null;
-    private boolean warningLessThan = false;
-    private boolean criticalLessThan = false;
+    private NagiosThreshold warning = null;
+    private NagiosThreshold critical = null;
 
     protected final NagiosCheckResult checkResult = new NagiosCheckResult();
 
     public final NagiosServiceStatus compare(Object checkData) {
         NagiosServiceStatus status = NagiosServiceStatus.OK;
-        if (compare(checkData, critical, criticalLessThan)) {
+        if (compare(checkData, critical)) {
             status = NagiosServiceStatus.CRITICAL;
-        } else if (compare(checkData, warning, warningLessThan)) {
+        } else if (compare(checkData, warning)) {
             status = NagiosServiceStatus.WARNING;
         }
         return status;
     }
 
-    private boolean compare(Object checkData, String compareValue,
-                            boolean invert) throws IllegalArgumentException {
-        if (compareValue == null) {
+    public final NagiosServiceStatus compare(double checkData) {
+        NagiosServiceStatus status = NagiosServiceStatus.OK;
+        if (critical != null && critical.matches(checkData)) {
+            status = NagiosServiceStatus.CRITICAL;
+        } else if (warning != null && warning.matches(checkData)) {
+            status = NagiosServiceStatus.WARNING;
+        }
+        return status;
+    }
+
+    private boolean compare(Object checkData, NagiosThreshold threshold)
+            throws IllegalArgumentException {
+        if (threshold == null) {
             return false;
         }
         if (checkData == null) {
             throw new IllegalArgumentException("Query '" + getQuery()
                     + "' did not return a result");
         } else if (checkData instanceof Number) {
-            final Number check = (Number) checkData;
-            if (check.doubleValue() == Math.floor(check.doubleValue())) {
-                return invert ? check.doubleValue() < Double
-                        .parseDouble(compareValue)
-                        : check.doubleValue() > Double
-                        .parseDouble(compareValue);
-            } else {
-                return invert ? check.longValue() < Long
-                        .parseLong(compareValue) : check.longValue() > Long
-                        .parseLong(compareValue);
-            }
+            return threshold.matches(((Number) checkData).doubleValue());
         } else if (checkData instanceof String) {
-            boolean result = invert;
-            final String[] compareValue_parts = compareValue.split("\\|");
-            if (compareValue_parts.length == 0) {
-                compareValue_parts[0] = compareValue;
-            }
-            for (String level_part : compareValue_parts) {
-                boolean comparedResult = ((String) checkData)
-                        .equalsIgnoreCase(level_part);
-                if (invert) {
-                    result = result && !comparedResult;
-                } else {
-                    result = result || comparedResult;
-                }
-            }
-            return result;
+            return threshold.matches((String) checkData);
         } else if (checkData instanceof Boolean) {
-            return checkData.equals(Boolean.parseBoolean(compareValue));
+            return threshold.matches(((Boolean) checkData).booleanValue());
         }
         throw new IllegalArgumentException("'" + checkData
                 + "' returned from query '" + getQuery()
@@ -65,9 +49,10 @@ public abstract class NagiosCheck {
     protected final void addPerformanceData(String name, Object value) {
         try {
             final NagiosPerformanceData nagiosPerfData = new NagiosPerformanceData(
-                    name, value, warning, critical, null, null);
-            nagiosPerfData.nextWarning(warningLessThan);
-            nagiosPerfData.nextCritical(criticalLessThan);
+                    name, value, getWarning(), getCritical(), null, null);
+            nagiosPerfData.nextWarning(warning != null ? warning.isLessThan()
+                    : critical != null && critical.isLessThan());
+            nagiosPerfData.nextCritical(critical != null && critical.isLessThan());
             checkResult.addPerformanceData(nagiosPerfData);
         } catch (NagiosPerformanceDataException e) {
             // nothing to be done here
@@ -75,37 +60,19 @@ public abstract class NagiosCheck {
     }
 
     public final String getWarning() {
-        return warning;
+        return warning == null ? null : warning.getDefinition();
     }
 
     public final void setWarning(String warning) {
-        // set warning threshold
-        if (warning == null || warning.isEmpty()) {
-            this.warning = null;
-            warningLessThan = false;
-        } else {
-            this.warning = warning.replaceAll("[<>^]", "");
-            warningLessThan = (warning.startsWith("<") || warning
-                    .startsWith("^"));
-        }
+        this.warning = NagiosThreshold.compile(warning);
     }
 
     public final String getCritical() {
-        return critical;
+        return critical == null ? null : critical.getDefinition();
     }
 
     public final void setCritical(String critical) {
-        // set critical threshold
-        if (critical == null || critical.isEmpty()) {
-            this.critical = null;
-            criticalLessThan = false;
-        } else {
-            this.critical = critical.replaceAll("[<>^]", "");
-            criticalLessThan = (critical.startsWith("<") || critical
-                    .startsWith("^"));
-            warningLessThan = (warning == null) ? criticalLessThan
-                    : warningLessThan;
-        }
+        this.critical = NagiosThreshold.compile(critical);
     }
 
     public final NagiosCheckResult getCheckResult() {
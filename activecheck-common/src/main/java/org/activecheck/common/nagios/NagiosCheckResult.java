@@ -1,16 +1,15 @@
 package org.activecheck.common.nagios;
 
-import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class NagiosCheckResult implements Serializable {
     private static final long serialVersionUID = 7642381902579833708L;
@@ -20,7 +19,9 @@ public class NagiosCheckResult implements Serializable {
     private final List<String> messages = new ArrayList<>();
     private final List<NagiosPerformanceData> perfDataList = new ArrayList<>();
     private String concatenator = "\n";
-    private Map<String, String> perfDataReplacements = new HashMap<>();
+    private transient NagiosPerformanceDataRules perfDataRules = NagiosPerformanceDataRules.EMPTY;
+    private long messageFingerprint = NagiosFingerprint.EMPTY;
+    private long perfDataFingerprint = NagiosFingerprint.EMPTY;
 
     public static NagiosCheckResult fromMessage(String message) {
         NagiosCheckResult checkResult = new NagiosCheckResult();
@@ -32,12 +33,28 @@ public class NagiosCheckResult implements Serializable {
         this.status = status;
         messages.clear();
         perfDataList.clear();
+        messageFingerprint = NagiosFingerprint.EMPTY;
+        perfDataFingerprint = NagiosFingerprint.EMPTY;
     }
 
     public final void merge(NagiosCheckResult checkResult) {
         setStatusMoreSevere(checkResult.getStatus());
-        messages.addAll(checkResult.getMessages());
-        perfDataList.addAll(checkResult.getPerfData());
+        addAll(checkResult.getMessages(), checkResult.getPerfData());
+    }
+
+    final void addAll(Collection<String> messages, Collection<NagiosPerformanceData> perfDataList) {
+        for (String message : messages) {
+            this.messages.add(message);
+            messageFingerprint = NagiosFingerprint.add(messageFingerprint, message);
+        }
+        for (NagiosPerformanceData perfData : perfDataList) {
+            addPerformanceDataUnchecked(perfData);
+        }
+    }
+
+    private void addPerformanceDataUnchecked(NagiosPerformanceData perfData) {
+        perfDataList.add(perfData);
+        perfDataFingerprint = NagiosFingerprint.add(perfDataFingerprint, perfData.fingerprint());
     }
 
     public final void parseMessage(String message) {
@@ -45,46 +62,150 @@ public class NagiosCheckResult implements Serializable {
     }
 
     public final void addPerfDataReplacement(String search, String replace) {
-        perfDataReplacements.put(search, replace);
+        perfDataRules = getPerfDataRules().withRename(search, replace);
+    }
+
+    /**
+     * Sets the rules applied to all performance data added to this result.
+     */
+    public final void setPerfDataRules(NagiosPerformanceDataRules perfDataRules) {
+        Validate.notNull(perfDataRules);
+        this.perfDataRules = perfDataRules;
+    }
+
+    /**
+     * Rewrites the performance data of this result, removing dropped items.
+     */
+    public final void applyPerfDataRules(NagiosPerformanceDataRules perfDataRules) {
+        if (!perfDataRules.isEmpty()) {
+            perfDataRules.apply(perfDataList);
+            perfDataFingerprint = NagiosFingerprint.EMPTY;
+            for (NagiosPerformanceData perfData : perfDataList) {
+                perfDataFingerprint = NagiosFingerprint.add(perfDataFingerprint, perfData.fingerprint());
+            }
+        }
     }
 
+    /**
+     * The fingerprint of status, messages and performance data is built
+     * incrementally as they are added, so comparing two results does not
+     * require rendering them. The concatenator joining the messages is part
+     * of it as well.
+     *
+     * @return a 64 bit fingerprint of everything rendered by
+     * {@link #getMessageWithPerformancedata()} and the status
+     */
+    public final long getFingerprint() {
+        long hash = NagiosFingerprint.add(NagiosFingerprint.EMPTY, status == null ? -1 : status.ordinal());
+        hash = NagiosFingerprint.add(hash, concatenator);
+        return NagiosFingerprint.add(NagiosFingerprint.add(hash, messageFingerprint), perfDataFingerprint);
+    }
+
+    private NagiosPerformanceDataRules getPerfDataRules() {
+        // rules are not serialized
+        return perfDataRules == null ? NagiosPerformanceDataRules.EMPTY : perfDataRules;
+    }
+
+    /**
+     * Parses plugin output into this result, reusing its message and
+     * performance data lists. See
+     * http://nagios.sourceforge.net/docs/3_0/pluginapi.html for the format.
+     * The output is scanned in place: text before the first pipe is the
+     * message, the rest of that line is performance data. If there is a second
+     * pipe, the lines in between are long text and everything after the second
+     * pipe is performance data again.
+     */
     public final void parseMessage(String message, NagiosServiceStatus status) {
         if (message == null || message.isEmpty()) {
             logger.debug("Message is empty");
         } else {
             clear(status);
-            // parse message see
-            // http://nagios.sourceforge.net/docs/3_0/pluginapi.html
-            String rawParts[] = message.split("\\|");
-            List<String> perfDataLines = new ArrayList<>();
-            addMessage(rawParts[0]);
-            if (rawParts.length < 2) {
+            final int length = message.length();
+            final int firstPipe = message.indexOf('|');
+            if (firstPipe < 0) {
+                addMessage(message);
                 logger.debug("No performance data found: '{}'", message);
-            } else if (rawParts.length == 2) {
-                Collections.addAll(perfDataLines, rawParts[1].split("\\r?\\n"));
-            } else if (rawParts.length > 2) {
-                String[] rawPartsInner = rawParts[1].split("\\r?\\n");
-                perfDataLines.add(rawPartsInner[0]);
-                for (int i = 1; i < rawPartsInner.length; i++) {
-                    addMessage(rawPartsInner[i]);
+                return;
+            }
+            addMessage(message.substring(0, firstPipe));
+            final int secondPipe = message.indexOf('|', firstPipe + 1);
+            if (secondPipe < 0) {
+                parsePerformanceData(message, firstPipe + 1, length);
+            } else {
+                int lineEnd = message.indexOf('\n', firstPipe + 1);
+                if (lineEnd < 0 || lineEnd > secondPipe) {
+                    lineEnd = secondPipe;
+                }
+                parsePerformanceData(message, firstPipe + 1, lineEnd);
+                parseLongText(message, lineEnd, secondPipe);
+                final int thirdPipe = message.indexOf('|', secondPipe + 1);
+                parsePerformanceData(message, secondPipe + 1, thirdPipe < 0 ? length : thirdPipe);
+            }
+        }
+    }
+
+    private void parseLongText(String message, int start, int end) {
+        // empty lines are only kept if they are followed by more text
+        int emptyLines = 0;
+        int pos = start;
+        while (pos < end) {
+            final int lineStart = pos + 1;
+            int lineEnd = message.indexOf('\n', lineStart);
+            if (lineEnd < 0 || lineEnd > end) {
+                lineEnd = end;
+            }
+            pos = lineEnd;
+            if (lineEnd < end && lineEnd > lineStart && message.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd == lineStart) {
+                emptyLines++;
+            } else {
+                for (; emptyLines > 0; emptyLines--) {
+                    addMessage("");
                 }
-                Collections.addAll(perfDataLines, rawParts[2].split("\\r?\\n"));
+                addMessage(message.substring(lineStart, lineEnd));
             }
-            for (String line : perfDataLines) {
-                for (String perfDataRaw : line.trim().split("\\s")) {
-                    try {
-                        NagiosPerformanceData perfData = new NagiosPerformanceData(
-                                perfDataRaw);
-                        perfData.replace(perfDataReplacements);
-                        perfDataList.add(perfData);
-                    } catch (NagiosPerformanceDataException e) {
-                        String errorMessage = e.getMessage()
-                                + " original message: '" + message + "'";
-                        logger.info(errorMessage);
-                        logger.trace(errorMessage, e);
+        }
+    }
+
+    private void parsePerformanceData(String message, int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            if (message.charAt(pos) <= ' ') {
+                pos++;
+                continue;
+            }
+
+            // find the end of this item, labels may be quoted and contain whitespaces
+            final int itemStart = pos;
+            if (message.charAt(pos) == '\'') {
+                for (pos++; pos < end; pos++) {
+                    if (message.charAt(pos) == '\'') {
+                        if (pos + 1 < end && message.charAt(pos + 1) == '\'') {
+                            pos++;
+                        } else {
+                            break;
+                        }
                     }
                 }
             }
+            while (pos < end && message.charAt(pos) > ' ') {
+                pos++;
+            }
+
+            try {
+                final NagiosPerformanceData perfData = new NagiosPerformanceData(
+                        message, itemStart, pos);
+                if (getPerfDataRules().apply(perfData)) {
+                    addPerformanceDataUnchecked(perfData);
+                }
+            } catch (NagiosPerformanceDataException e) {
+                final String errorMessage = e.getMessage()
+                        + " original message: '" + message + "'";
+                logger.info(errorMessage);
+                logger.trace(errorMessage, e);
+            }
         }
     }
 
@@ -92,12 +213,19 @@ public class NagiosCheckResult implements Serializable {
         this.concatenator = concatenator;
     }
 
+    final String getConcatenator() {
+        return concatenator;
+    }
+
+    /**
+     * @return an unmodifiable view of the messages
+     */
     public final List<String> getMessages() {
-        return messages;
+        return Collections.unmodifiableList(messages);
     }
 
     public final String getMessage(String concatenator) {
-        return StringUtils.join(messages, concatenator).replace("|", " or ");
+        return NagiosRendering.render(64, out -> appendMessage(out, concatenator));
     }
 
     public final String getMessage() {
@@ -105,36 +233,75 @@ public class NagiosCheckResult implements Serializable {
     }
 
     public final String getMessageWithPerformancedata() {
-        if (perfDataList.size() > 0) {
-            return this.getMessage() + " | "
-                    + StringUtils.join(perfDataList, " ");
-        } else {
-            return this.getMessage();
+        return NagiosRendering.render(128, this::appendMessageWithPerformancedata);
+    }
+
+    /**
+     * Appends all messages joined by the given concatenator. Pipes are
+     * replaced by " or " as they would start the performance data.
+     */
+    public final void appendMessage(Appendable out, String concatenator) throws IOException {
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                appendEscaped(out, concatenator);
+            }
+            appendEscaped(out, messages.get(i));
+        }
+    }
+
+    /**
+     * Appends the same as {@link #getMessageWithPerformancedata()} without
+     * creating intermediate strings, so a reused buffer can be passed.
+     */
+    public final void appendMessageWithPerformancedata(Appendable out) throws IOException {
+        appendMessage(out, concatenator);
+        if (!perfDataList.isEmpty()) {
+            out.append(" | ");
+            for (int i = 0; i < perfDataList.size(); i++) {
+                if (i > 0) {
+                    out.append(' ');
+                }
+                perfDataList.get(i).appendTo(out);
+            }
+        }
+    }
+
+    static void appendEscaped(Appendable out, String text) throws IOException {
+        if (text == null) {
+            // like StringUtils.join
+            return;
+        }
+        int start = 0;
+        for (int pipe = text.indexOf('|'); pipe >= 0; pipe = text.indexOf('|', start)) {
+            out.append(text, start, pipe).append(" or ");
+            start = pipe + 1;
         }
+        out.append(text, start, text.length());
     }
 
     public final void addMessage(String message) {
         message = message.trim();
         messages.add(message);
+        messageFingerprint = NagiosFingerprint.add(messageFingerprint, message);
         logger.debug(message);
     }
 
     public final void setMessage(String message) {
         clear(status);
         messages.add(message);
+        messageFingerprint = NagiosFingerprint.add(messageFingerprint, message);
     }
 
+    /**
+     * @return an unmodifiable view of the performance data
+     */
     public final List<NagiosPerformanceData> getPerfData() {
-        return perfDataList;
+        return Collections.unmodifiableList(perfDataList);
     }
 
     public final void addPerformanceData(NagiosPerformanceData perfData) {
-        try {
-            perfData.replace(perfDataReplacements);
-            perfDataList.add(perfData);
-        } catch (NagiosPerformanceDataException e) {
-            logger.error(e.getMessage());
-            logger.trace(e.getMessage(), e);
+        if (getPerfDataRules().apply(perfData)) {
+            addPerformanceDataUnchecked(perfData);
         }
     }
 
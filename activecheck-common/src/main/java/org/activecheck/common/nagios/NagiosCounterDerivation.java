@@ -0,0 +1,256 @@
+package org.activecheck.common.nagios;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Turns monotonically increasing counters into per second rates or deltas
+ * between two consecutive reports. The counters are selected by label:
+ * <ul>
+ * <li><code>perfdata_rate = regex</code> replaces the value by its increase
+ * per second</li>
+ * <li><code>perfdata_delta = regex</code> replaces the value by its increase
+ * since the previous report</li>
+ * </ul>
+ * The last value and time of every series (host, service and label) is kept
+ * in a primitive hash table. The first value of a series only initializes it
+ * and is not reported. If a counter decreases it has wrapped around its
+ * maximum, if the performance data defines one, or has been reset to zero
+ * otherwise. Derived values have no unit, thresholds or limits.
+ */
+public final class NagiosCounterDerivation {
+    private static final Logger logger = LoggerFactory.getLogger(NagiosCounterDerivation.class);
+    private static final int MAX_CACHED_LABELS = 10000;
+    private static final int MAX_SERIES = 1 << 16;
+
+    private static final int NONE = 0;
+    private static final int RATE = 1;
+    private static final int DELTA = 2;
+
+    public static final NagiosCounterDerivation EMPTY = new NagiosCounterDerivation(
+            Collections.<Pattern>emptyList(), Collections.<Pattern>emptyList());
+
+    private final List<Pattern> ratePatterns;
+    private final List<Pattern> deltaPatterns;
+    private final ConcurrentMap<String, Integer> labels = new ConcurrentHashMap<>();
+    private final SeriesTable series = new SeriesTable();
+
+    private NagiosCounterDerivation(List<Pattern> ratePatterns, List<Pattern> deltaPatterns) {
+        this.ratePatterns = ratePatterns;
+        this.deltaPatterns = deltaPatterns;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a pattern is malformed
+     */
+    public static NagiosCounterDerivation fromProperties(PropertiesConfiguration properties)
+            throws IllegalArgumentException {
+        Validate.notNull(properties);
+        final List<Pattern> ratePatterns = compileAll(properties.getStringArray("perfdata_rate"));
+        final List<Pattern> deltaPatterns = compileAll(properties.getStringArray("perfdata_delta"));
+        if (ratePatterns.isEmpty() && deltaPatterns.isEmpty()) {
+            return EMPTY;
+        }
+        return new NagiosCounterDerivation(ratePatterns, deltaPatterns);
+    }
+
+    private static List<Pattern> compileAll(String[] expressions) {
+        final List<Pattern> compiled = new ArrayList<>(expressions.length);
+        for (String expression : expressions) {
+            compiled.add(Pattern.compile(expression.trim()));
+        }
+        return compiled;
+    }
+
+    public boolean isEmpty() {
+        return ratePatterns.isEmpty() && deltaPatterns.isEmpty();
+    }
+
+    /**
+     * @return the given report if no counter is configured, otherwise a copy
+     * of it with derived counters
+     */
+    public NagiosServiceReportSnapshot apply(NagiosServiceReportSnapshot report) {
+        if (isEmpty()) {
+            return report;
+        }
+        final long time = report.getFinishTime() > 0 ? report.getFinishTime() : System.currentTimeMillis();
+        final List<NagiosPerformanceData> perfDataList = new ArrayList<>(report.getPerfData().size());
+        for (NagiosPerformanceData perfData : report.getPerfData()) {
+            final int mode = modeOf(perfData.getName());
+            if (mode == NONE) {
+                perfDataList.add(perfData);
+            } else {
+                final long key = key(report.getServiceHost(), report.getServiceName(), perfData.getName());
+                final boolean rate = mode == RATE;
+                final double derived = derive(key, perfData, time, rate);
+                if (!Double.isNaN(derived)) {
+                    final NagiosPerformanceData copy = new NagiosPerformanceData(perfData);
+                    copy.derive(derived, rate);
+                    perfDataList.add(copy);
+                }
+            }
+        }
+        return report.withPerfData(perfDataList);
+    }
+
+    /**
+     * @return the rate or delta or NaN if there is no previous value
+     */
+    private double derive(long key, NagiosPerformanceData perfData, long time, boolean rate) {
+        final double current = perfData.getCurrent();
+        final double last;
+        final long lastTime;
+        synchronized (series) {
+            final int slot = series.slot(key);
+            if (!series.isUsed(slot)) {
+                if (series.size() >= MAX_SERIES) {
+                    logger.debug("Forgetting {} counter series", series.size());
+                    series.clear();
+                }
+                series.put(key, current, time);
+                return Double.NaN;
+            }
+            lastTime = series.time(slot);
+            if (time <= lastTime) {
+                // the same or an older report
+                return Double.NaN;
+            }
+            last = series.value(slot);
+            series.update(slot, current, time);
+        }
+
+        double delta = current - last;
+        if (delta < 0) {
+            if (perfData.hasMaximum() && last <= perfData.getMaximum()) {
+                // the counter wrapped, the maximum is its last value before 0
+                delta = perfData.getMaximum() - last + current + 1;
+            } else {
+                delta = current;
+            }
+        }
+        return rate ? delta * 1000 / (time - lastTime) : delta;
+    }
+
+    private int modeOf(String label) {
+        final Integer cached = labels.get(label);
+        if (cached != null) {
+            return cached;
+        }
+        int mode = NONE;
+        if (matchesAny(deltaPatterns, label)) {
+            mode = DELTA;
+        } else if (matchesAny(ratePatterns, label)) {
+            mode = RATE;
+        }
+        if (labels.size() < MAX_CACHED_LABELS) {
+            labels.put(label, mode);
+        }
+        return mode;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String label) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(label).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 64 bit hash of the series, collisions are improbable enough to use it as
+     * the only key.
+     */
+    static long key(String host, String service, String label) {
+        long hash = NagiosFingerprint.add(NagiosFingerprint.EMPTY, host);
+        hash = NagiosFingerprint.add(hash, service);
+        return NagiosFingerprint.add(hash, label);
+    }
+
+    /**
+     * Open addressing hash table of series keys to their last value and time.
+     * Key 0 marks a free slot, a series hashing to 0 is stored as 1.
+     */
+    private static final class SeriesTable {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private double[] values = new double[INITIAL_CAPACITY];
+        private long[] times = new long[INITIAL_CAPACITY];
+        private int size = 0;
+
+        int slot(long key) {
+            final long k = key == 0 ? 1 : key;
+            final int mask = keys.length - 1;
+            int slot = (int) (k ^ (k >>> 32)) & mask;
+            while (keys[slot] != 0 && keys[slot] != k) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        boolean isUsed(int slot) {
+            return keys[slot] != 0;
+        }
+
+        double value(int slot) {
+            return values[slot];
+        }
+
+        long time(int slot) {
+            return times[slot];
+        }
+
+        void update(int slot, double value, long time) {
+            values[slot] = value;
+            times[slot] = time;
+        }
+
+        void put(long key, double value, long time) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            final int slot = slot(key);
+            if (keys[slot] == 0) {
+                keys[slot] = key == 0 ? 1 : key;
+                size++;
+            }
+            update(slot, value, time);
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0);
+            size = 0;
+        }
+
+        private void grow() {
+            final long[] oldKeys = keys;
+            final double[] oldValues = values;
+            final long[] oldTimes = times;
+            keys = new long[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2];
+            times = new long[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i], oldTimes[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.activecheck.common.nagios;
+
+/**
+ * Builds order dependent 64 bit fingerprints step by step. Strings are hashed
+ * with FNV-1a, numbers are folded in with a multiplicative mix. Fingerprints
+ * are only meant to detect changes, they are not cryptographically secure.
+ */
+final class NagiosFingerprint {
+    static final long EMPTY = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long MIX = 0x9e3779b97f4a7c15L;
+
+    private NagiosFingerprint() {
+    }
+
+    static long add(long hash, CharSequence text) {
+        if (text == null) {
+            return add(hash, MIX);
+        }
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        // terminate, so that consecutive strings cannot be shifted into each other
+        return (hash ^ 0xffff) * FNV_PRIME;
+    }
+
+    static long add(long hash, long value) {
+        hash = (hash ^ value) * MIX;
+        return hash ^ (hash >>> 32);
+    }
+
+    static long add(long hash, double value) {
+        return add(hash, Double.doubleToLongBits(value));
+    }
+}
@@ -0,0 +1,72 @@
+package org.activecheck.common.nagios;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Appends numbers to an {@link Appendable} without creating intermediate
+ * strings. Decimals are rendered exactly like <code>%f</code> with
+ * {@link Locale#ROOT}, i.e. six digits after the dot, rounded half up.
+ */
+final class NagiosNumberFormat {
+    private static final int DECIMALS = 1000000;
+    private static final double MAX_FAST_VALUE = 1e15;
+
+    private NagiosNumberFormat() {
+    }
+
+    static void appendLong(Appendable out, long value) throws IOException {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                out.append(Long.toString(value));
+                return;
+            }
+            out.append('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    /**
+     * The integer and the fractional part are split exactly, so only the
+     * rounding of the fraction to six digits is inexact. Whenever a rounding
+     * boundary is too close to the value to be decided from its binary
+     * representation, or the value is very large or not finite, the value is
+     * handed to {@link String#format}.
+     */
+    static void appendFixed(Appendable out, double value) throws IOException {
+        final double magnitude = Math.abs(value);
+        if (!(magnitude < MAX_FAST_VALUE)) {
+            out.append(String.format(Locale.ROOT, "%f", value));
+            return;
+        }
+        long integer = (long) magnitude;
+        final double scaled = (magnitude - integer) * DECIMALS;
+        final long truncated = (long) scaled;
+        final double remainder = scaled - truncated;
+        if (Math.abs(remainder - 0.5) / DECIMALS <= Math.ulp(magnitude) + Math.ulp(1.0)) {
+            out.append(String.format(Locale.ROOT, "%f", value));
+            return;
+        }
+        long fraction = remainder < 0.5 ? truncated : truncated + 1;
+        if (fraction == DECIMALS) {
+            integer++;
+            fraction = 0;
+        }
+
+        if (Double.doubleToRawLongBits(value) < 0) {
+            out.append('-');
+        }
+        appendLong(out, integer);
+        out.append('.');
+        for (int divisor = DECIMALS / 10; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + (fraction / divisor) % 10));
+        }
+    }
+}
@@ -2,54 +2,114 @@ package org.activecheck.common.nagios;
 
 import org.apache.commons.lang.Validate;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.Map;
 
 public class NagiosPerformanceData implements Serializable {
     private static final long serialVersionUID = 5564177737050845064L;
-    private static final double DEFAULT_VALUE = Double.MAX_VALUE;
+    static final double DEFAULT_VALUE = Double.MAX_VALUE;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+    private static final int MAX_FAST_DIGITS = 15;
     public static final double PRECISION = 0.000001;
 
     private String name;
-    private final Double current;
+    private Double current;
+    private String unit = "";
     private double warning = DEFAULT_VALUE;
     private double critical = DEFAULT_VALUE;
     private double minimum = DEFAULT_VALUE;
     private double maximum = DEFAULT_VALUE;
+    private String warningRange = null;
+    private String criticalRange = null;
     private boolean isInteger = false;
 
     public NagiosPerformanceData(String line)
             throws NagiosPerformanceDataException {
-        Validate.notNull(line);
-        // parse string
-        // <name>=<current>;<warning>;<critical>;<minimum>;<maximum>
-        if (line.isEmpty()) {
+        this(line, 0, line == null ? 0 : line.length());
+    }
+
+    /**
+     * Parses a single performance data item from the given region of a plugin
+     * output without copying it first. The format follows the Nagios plugin API:
+     * <code>'label'=value[UOM];[warn];[crit];[min];[max]</code>
+     */
+    NagiosPerformanceData(CharSequence text, int start, int end)
+            throws NagiosPerformanceDataException {
+        Validate.notNull(text);
+        if (start >= end) {
             throw new NagiosPerformanceDataException(
                     "received invalid performance data line: empty line");
         }
-        String[] perfDataFields = line.split(";");
-        if (perfDataFields.length < 1) {
-            throw new NagiosPerformanceDataException(
-                    "received invalid performance data line: '" + line + "'");
+
+        // parse label, either plain or single quoted with '' as escaped quote
+        int pos;
+        if (text.charAt(start) == '\'') {
+            final StringBuilder label = new StringBuilder();
+            pos = start + 1;
+            while (true) {
+                if (pos >= end) {
+                    throw invalidLine(text, start, end);
+                }
+                final char c = text.charAt(pos++);
+                if (c != '\'') {
+                    label.append(c);
+                } else if (pos < end && text.charAt(pos) == '\'') {
+                    label.append(c);
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            if (pos >= end || text.charAt(pos) != '=') {
+                throw invalidLine(text, start, end);
+            }
+            name = label.toString();
+        } else {
+            pos = indexOf(text, '=', start, end);
+            if (pos < 0) {
+                throw invalidLine(text, start, end);
+            }
+            name = text.subSequence(start, pos).toString();
         }
-        String[] nameAndValue = perfDataFields[0].split("=");
-        if (nameAndValue.length != 2) {
-            throw new NagiosPerformanceDataException(
-                    "received invalid performance data line: '" + line + "'");
+        if (name.isEmpty()) {
+            throw invalidLine(text, start, end);
         }
-        name = nameAndValue[0];
-        current = parseValue(nameAndValue[1], false);
-        if (perfDataFields.length > 1) {
-            warning = parseValue(perfDataFields[1], true);
+        pos++;
+
+        // parse current value and unit of measure
+        int fieldEnd = fieldEnd(text, pos, end);
+        final int numberEnd = scanNumber(text, pos, fieldEnd);
+        if (numberEnd == pos || !isUnit(text, numberEnd, fieldEnd)) {
+            throw new NagiosPerformanceDataException("cannot parse value: '"
+                    + text.subSequence(pos, fieldEnd) + "'");
         }
-        if (perfDataFields.length > 2) {
-            critical = parseValue(perfDataFields[2], true);
+        current = toDouble(text, pos, numberEnd);
+        unit = text.subSequence(numberEnd, fieldEnd).toString();
+
+        // parse optional warning, critical, minimum and maximum
+        if (fieldEnd < end) {
+            pos = fieldEnd + 1;
+            fieldEnd = fieldEnd(text, pos, end);
+            warning = parseThreshold(text, pos, fieldEnd);
+            warningRange = rangeOrNull(text, pos, fieldEnd, warning);
         }
-        if (perfDataFields.length > 3) {
-            minimum = parseValue(perfDataFields[3], true);
+        if (fieldEnd < end) {
+            pos = fieldEnd + 1;
+            fieldEnd = fieldEnd(text, pos, end);
+            critical = parseThreshold(text, pos, fieldEnd);
+            criticalRange = rangeOrNull(text, pos, fieldEnd, critical);
         }
-        if (perfDataFields.length > 4) {
-            maximum = parseValue(perfDataFields[4], true);
+        if (fieldEnd < end) {
+            pos = fieldEnd + 1;
+            fieldEnd = fieldEnd(text, pos, end);
+            minimum = parseOptionalValue(text, pos, fieldEnd);
+        }
+        if (fieldEnd < end) {
+            pos = fieldEnd + 1;
+            fieldEnd = fieldEnd(text, pos, end);
+            maximum = parseOptionalValue(text, pos, fieldEnd);
         }
     }
 
@@ -60,30 +120,94 @@ public class NagiosPerformanceData implements Serializable {
         Validate.notNull(current);
         this.name = name;
         this.current = parseValue(current, false);
-        this.critical = parseValue(critical, true);
-        this.warning = (warning == null) ? this.critical : parseValue(warning,
-                true);
+        if (critical != null) {
+            this.critical = parseThreshold(critical, 0, critical.length());
+            this.criticalRange = rangeOrNull(critical, 0, critical.length(), this.critical);
+        }
+        if (warning == null) {
+            this.warning = this.critical;
+            this.warningRange = this.criticalRange;
+        } else {
+            this.warning = parseThreshold(warning, 0, warning.length());
+            this.warningRange = rangeOrNull(warning, 0, warning.length(), this.warning);
+        }
         this.minimum = parseValue(minimum, true);
         this.maximum = parseValue(maximum, true);
         isInteger = current instanceof Integer;
     }
 
+    /**
+     * Creates performance data from already parsed fields, absent values are
+     * {@link #DEFAULT_VALUE}.
+     */
+    NagiosPerformanceData(String name, double current, String unit, double warning, String warningRange,
+                          double critical, String criticalRange, double minimum, double maximum,
+                          boolean isInteger) {
+        Validate.notEmpty(name);
+        Validate.notNull(unit);
+        this.name = name;
+        this.current = current;
+        this.unit = unit;
+        this.warning = warning;
+        this.warningRange = warningRange;
+        this.critical = critical;
+        this.criticalRange = criticalRange;
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.isInteger = isInteger;
+    }
+
+    /**
+     * Creates a copy that can be rewritten without affecting the original.
+     */
+    NagiosPerformanceData(NagiosPerformanceData perfData) {
+        name = perfData.name;
+        current = perfData.current;
+        unit = perfData.unit;
+        warning = perfData.warning;
+        critical = perfData.critical;
+        minimum = perfData.minimum;
+        maximum = perfData.maximum;
+        warningRange = perfData.warningRange;
+        criticalRange = perfData.criticalRange;
+        isInteger = perfData.isInteger;
+    }
+
     public String getLine() {
-        // generate valid performance data line
-        String line = name + "=" + value2String(current);
+        final StringBuilder line = new StringBuilder(32);
+        appendLine(line);
+        return line.toString();
+    }
+
+    /**
+     * Appends a valid performance data line without creating intermediate
+     * strings.
+     */
+    public void appendTo(Appendable out) throws IOException {
+        appendLabel(out);
+        out.append('=');
+        appendValue(out, current);
+        out.append(unit);
         if (hasWarning()) {
-            line += ";" + value2String(warning);
+            out.append(';');
+            appendThreshold(out, warningRange, warning);
             if (hasCritical()) {
-                line += ";" + value2String(critical);
+                out.append(';');
+                appendThreshold(out, criticalRange, critical);
                 if (hasMinimum()) {
-                    line += ";" + value2String(minimum);
+                    out.append(';');
+                    appendValue(out, minimum);
                     if (hasMaximum()) {
-                        line += ";" + value2String(maximum);
+                        out.append(';');
+                        appendValue(out, maximum);
                     }
                 }
             }
         }
-        return line;
+    }
+
+    void appendLine(StringBuilder line) {
+        NagiosRendering.append(line, this::appendTo);
     }
 
     @Override
@@ -91,46 +215,250 @@ public class NagiosPerformanceData implements Serializable {
         return getLine();
     }
 
-    private String value2String(Double value) {
+    private void appendLabel(Appendable out) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < name.length() && !quote; i++) {
+            final char c = name.charAt(i);
+            quote = c <= ' ' || c == '=' || c == '\'';
+        }
+        if (!quote) {
+            out.append(name);
+            return;
+        }
+        out.append('\'');
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            if (c == '\'') {
+                out.append('\'');
+            }
+            out.append(c);
+        }
+        out.append('\'');
+    }
+
+    private void appendThreshold(Appendable out, String range, double value) throws IOException {
+        if (range != null) {
+            out.append(range);
+        } else {
+            appendValue(out, value);
+        }
+    }
+
+    private void appendValue(Appendable out, double value) throws IOException {
         if (isInteger) {
-            return String.format("%d", value.longValue());
+            NagiosNumberFormat.appendLong(out, (long) value);
         } else {
-            return String.format("%f", value);
+            NagiosNumberFormat.appendFixed(out, value);
         }
     }
 
+    private String value2String(double value) {
+        return NagiosRendering.render(16, out -> appendValue(out, value));
+    }
+
     private Double parseValue(Object value, boolean defaultOnException)
             throws NagiosPerformanceDataException {
         if (value != null) {
-            try {
-                if (value instanceof Number) {
-                    return ((Number) value).doubleValue();
-                } else {
-                    return Double.parseDouble(value.toString().replaceAll(
-                            "[^\\d,]*$", ""));
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            final String text = value.toString();
+            final int numberEnd = scanNumber(text, 0, text.length());
+            if (numberEnd > 0 && isUnit(text, numberEnd, text.length())) {
+                return toDouble(text, 0, numberEnd);
+            } else if (!defaultOnException) {
+                throw new NagiosPerformanceDataException(
+                        "cannot parse value: '" + text + "'");
+            }
+        }
+        return DEFAULT_VALUE;
+    }
+
+    /**
+     * Parses a warning or critical field. Plain values and Nagios ranges
+     * (<code>10</code>, <code>10:</code>, <code>~:10</code>,
+     * <code>10:20</code>, <code>@10:20</code>) are accepted. For ranges the end
+     * of the range is used as value, or the start if the range is open ended.
+     */
+    private static double parseThreshold(CharSequence text, int start, int end) {
+        int pos = start;
+        if (pos < end && text.charAt(pos) == '@') {
+            pos++;
+        }
+        final int colon = indexOf(text, ':', pos, end);
+        if (colon < 0) {
+            return parseOptionalValue(text, pos, end);
+        }
+        final double rangeEnd = parseOptionalValue(text, colon + 1, end);
+        if (rangeEnd != DEFAULT_VALUE || (pos < colon && text.charAt(pos) == '~')) {
+            return rangeEnd;
+        }
+        return parseOptionalValue(text, pos, colon);
+    }
+
+    private static String rangeOrNull(CharSequence text, int start, int end, double value) {
+        if (value == DEFAULT_VALUE || start >= end || (text.charAt(start) != '@' && indexOf(text, ':', start, end) < 0)) {
+            return null;
+        }
+        return text.subSequence(start, end).toString();
+    }
+
+    private static double parseOptionalValue(CharSequence text, int start, int end) {
+        final int numberEnd = scanNumber(text, start, end);
+        if (numberEnd == start || !isUnit(text, numberEnd, end)) {
+            return DEFAULT_VALUE;
+        }
+        return toDouble(text, start, numberEnd);
+    }
+
+    /**
+     * @return the index after the numeric prefix starting at <code>start</code>
+     * or <code>start</code> if there is none
+     */
+    private static int scanNumber(CharSequence text, int start, int end) {
+        int pos = start;
+        if (pos < end && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+            pos++;
+        }
+        int digits = 0;
+        while (pos < end && isDigit(text.charAt(pos))) {
+            pos++;
+            digits++;
+        }
+        if (pos < end && text.charAt(pos) == '.') {
+            pos++;
+            while (pos < end && isDigit(text.charAt(pos))) {
+                pos++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return start;
+        }
+        if (pos < end && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+            int exponent = pos + 1;
+            if (exponent < end && (text.charAt(exponent) == '-' || text.charAt(exponent) == '+')) {
+                exponent++;
+            }
+            if (exponent < end && isDigit(text.charAt(exponent))) {
+                while (exponent < end && isDigit(text.charAt(exponent))) {
+                    exponent++;
                 }
-            } catch (NumberFormatException e) {
-                if (!defaultOnException) {
-                    throw new NagiosPerformanceDataException(
-                            "cannot parse value: '" + value.toString() + "'");
+                pos = exponent;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Converts a number found by {@link #scanNumber} to a double. Numbers with
+     * up to 15 significant digits and no exponent are exactly representable as
+     * mantissa and power of ten, so a single division yields the correctly
+     * rounded result. Everything else is handed to {@link Double#parseDouble}.
+     */
+    private static double toDouble(CharSequence text, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        if (text.charAt(pos) == '-' || text.charAt(pos) == '+') {
+            negative = text.charAt(pos) == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; pos < end; pos++) {
+            final char c = text.charAt(pos);
+            if (c == '.') {
+                fraction = true;
+            } else if (isDigit(c) && digits < MAX_FAST_DIGITS) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction) {
+                    scale++;
                 }
+            } else {
+                return Double.parseDouble(text.subSequence(start, end).toString());
             }
         }
-        return DEFAULT_VALUE;
+        final double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    private static boolean isUnit(CharSequence text, int start, int end) {
+        for (int pos = start; pos < end; pos++) {
+            final char c = text.charAt(pos);
+            if (isDigit(c) || c == ',' || c == '=' || c == ':' || c <= ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int fieldEnd(CharSequence text, int start, int end) {
+        final int pos = indexOf(text, ';', start, end);
+        return pos < 0 ? end : pos;
+    }
+
+    private static int indexOf(CharSequence text, char c, int start, int end) {
+        for (int pos = start; pos < end; pos++) {
+            if (text.charAt(pos) == c) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private static NagiosPerformanceDataException invalidLine(CharSequence text, int start, int end) {
+        return new NagiosPerformanceDataException(
+                "received invalid performance data line: '" + text.subSequence(start, end) + "'");
+    }
+
+    /**
+     * @return a fingerprint of everything that is rendered by {@link #getLine()}
+     */
+    long fingerprint() {
+        long hash = NagiosFingerprint.add(NagiosFingerprint.EMPTY, name);
+        hash = NagiosFingerprint.add(hash, current);
+        hash = NagiosFingerprint.add(hash, unit);
+        hash = NagiosFingerprint.add(hash, warning);
+        hash = NagiosFingerprint.add(hash, warningRange);
+        hash = NagiosFingerprint.add(hash, critical);
+        hash = NagiosFingerprint.add(hash, criticalRange);
+        hash = NagiosFingerprint.add(hash, minimum);
+        hash = NagiosFingerprint.add(hash, maximum);
+        return NagiosFingerprint.add(hash, isInteger ? 1L : 0L);
     }
 
     public String getName() {
         return name;
     }
 
+    void setName(String name) {
+        Validate.notEmpty(name);
+        this.name = name;
+    }
+
     public Double getCurrent() {
         return current;
     }
 
+    public String getUnit() {
+        return unit;
+    }
+
     public Double getWarning() {
         return warning;
     }
 
+    public String getWarningRange() {
+        return warningRange;
+    }
+
     public boolean hasWarning() {
         return warning != DEFAULT_VALUE;
     }
@@ -149,6 +477,10 @@ public class NagiosPerformanceData implements Serializable {
         return critical;
     }
 
+    public String getCriticalRange() {
+        return criticalRange;
+    }
+
     public boolean hasCritical() {
         return critical != DEFAULT_VALUE;
     }
@@ -179,16 +511,77 @@ public class NagiosPerformanceData implements Serializable {
         return maximum != DEFAULT_VALUE;
     }
 
-    public void replace(Map<String, String> perfDataReplacements)
-            throws NagiosPerformanceDataException {
-        for (Map.Entry<String, String> entry : perfDataReplacements.entrySet()) {
-            String newName = name.replaceAll(entry.getKey(), entry.getValue());
-            if (newName.isEmpty()) {
-                throw new NagiosPerformanceDataException(
-                        "running replace on performance data name '" + name
-                                + "' failed. Name must not become empty");
-            }
-            name = newName;
+    boolean isInteger() {
+        return isInteger;
+    }
+
+    /**
+     * Multiplies all values and ranges by the given factor and replaces the
+     * unit of measure, e.g. to convert <code>MB</code> to <code>B</code>.
+     */
+    void scale(double factor, String unit) {
+        Validate.notNull(unit);
+        current *= factor;
+        warning = scaleValue(warning, factor);
+        critical = scaleValue(critical, factor);
+        minimum = scaleValue(minimum, factor);
+        maximum = scaleValue(maximum, factor);
+        isInteger = isInteger && factor == Math.rint(factor);
+        warningRange = scaleRange(warningRange, factor);
+        criticalRange = scaleRange(criticalRange, factor);
+        this.unit = unit;
+    }
+
+    /**
+     * Replaces the value by one derived from it, like the rate of a counter.
+     * Unit, thresholds and limits of the original value do not apply anymore.
+     * A delta of an integer stays an integer, a rate is always rendered as a
+     * decimal so its format does not change from one run to the next.
+     */
+    void derive(double value, boolean rate) {
+        current = value;
+        unit = "";
+        warning = DEFAULT_VALUE;
+        critical = DEFAULT_VALUE;
+        minimum = DEFAULT_VALUE;
+        maximum = DEFAULT_VALUE;
+        warningRange = null;
+        criticalRange = null;
+        isInteger = isInteger && !rate;
+    }
+
+    private static double scaleValue(double value, double factor) {
+        return value == DEFAULT_VALUE ? value : value * factor;
+    }
+
+    private String scaleRange(String range, double factor) {
+        if (range == null) {
+            return null;
+        }
+        final StringBuilder scaled = new StringBuilder(range.length() + 8);
+        int pos = 0;
+        if (range.charAt(0) == '@') {
+            scaled.append('@');
+            pos++;
+        }
+        final int colon = range.indexOf(':', pos);
+        if (colon < 0) {
+            appendScaledBound(scaled, range.substring(pos), factor);
+        } else {
+            appendScaledBound(scaled, range.substring(pos, colon), factor);
+            scaled.append(':');
+            appendScaledBound(scaled, range.substring(colon + 1), factor);
+        }
+        return scaled.toString();
+    }
+
+    private void appendScaledBound(StringBuilder scaled, String bound, double factor) {
+        final double value = parseOptionalValue(bound, 0, bound.length());
+        if (value == DEFAULT_VALUE) {
+            // keep open bounds like ~ or an empty end
+            scaled.append(bound);
+        } else {
+            scaled.append(value2String(value * factor));
         }
     }
 }
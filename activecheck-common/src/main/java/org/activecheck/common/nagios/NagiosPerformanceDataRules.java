@@ -0,0 +1,225 @@
+package org.activecheck.common.nagios;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * Rewrites performance data before it is reported or sent. The rules are
+ * compiled once from the plugin configuration:
+ * <ul>
+ * <li><code>perfdata_rename = search =&gt; replace</code> replaces every match
+ * of the regular expression in the label, rules are applied in the given
+ * order</li>
+ * <li><code>perfdata_drop = regex</code> drops matching labels</li>
+ * <li><code>perfdata_keep = regex</code> drops all labels that do not match</li>
+ * <li><code>perfdata_normalize_units = true</code> converts KB, MB, GB and TB to
+ * B and ms and us to s</li>
+ * </ul>
+ * Drop and keep are matched against the renamed label. The outcome for every
+ * label is memoized, so known labels are rewritten without pattern matching.
+ * Instances are immutable apart from that cache and safe to share.
+ */
+public final class NagiosPerformanceDataRules {
+    private static final Logger logger = LoggerFactory.getLogger(NagiosPerformanceDataRules.class);
+    private static final String RENAME_SEPARATOR = "=>";
+    private static final int MAX_CACHED_LABELS = 10000;
+    private static final double KILO = 1024;
+
+    // marks dropped labels in the cache, compared by identity
+    private static final String DROPPED = new String("");
+
+    public static final NagiosPerformanceDataRules EMPTY = new NagiosPerformanceDataRules(
+            Collections.<Pattern>emptyList(), Collections.<String>emptyList(),
+            Collections.<Pattern>emptyList(), Collections.<Pattern>emptyList(), false);
+
+    private final List<Pattern> renamePatterns;
+    private final List<String> renameReplacements;
+    private final List<Pattern> dropPatterns;
+    private final List<Pattern> keepPatterns;
+    private final boolean normalizeUnits;
+    private final ConcurrentMap<String, String> labels = new ConcurrentHashMap<>();
+
+    private NagiosPerformanceDataRules(List<Pattern> renamePatterns, List<String> renameReplacements,
+                                       List<Pattern> dropPatterns, List<Pattern> keepPatterns,
+                                       boolean normalizeUnits) {
+        this.renamePatterns = renamePatterns;
+        this.renameReplacements = renameReplacements;
+        this.dropPatterns = dropPatterns;
+        this.keepPatterns = keepPatterns;
+        this.normalizeUnits = normalizeUnits;
+    }
+
+    public static NagiosPerformanceDataRules fromProperties(PropertiesConfiguration properties) {
+        return EMPTY.withProperties(properties);
+    }
+
+    /**
+     * @return a copy of these rules extended by the rules configured in the
+     * given properties
+     * @throws IllegalArgumentException if a rule is malformed
+     */
+    public NagiosPerformanceDataRules withProperties(PropertiesConfiguration properties)
+            throws IllegalArgumentException {
+        Validate.notNull(properties);
+        final List<Pattern> renames = new ArrayList<>(renamePatterns);
+        final List<String> replacements = new ArrayList<>(renameReplacements);
+        for (String rule : properties.getStringArray("perfdata_rename")) {
+            final int separator = rule.indexOf(RENAME_SEPARATOR);
+            Validate.isTrue(separator > 0, "perfdata_rename must be 'search => replace': ", rule);
+            renames.add(Pattern.compile(rule.substring(0, separator).trim()));
+            replacements.add(rule.substring(separator + RENAME_SEPARATOR.length()).trim());
+        }
+        return new NagiosPerformanceDataRules(renames, replacements,
+                compileAll(dropPatterns, properties.getStringArray("perfdata_drop")),
+                compileAll(keepPatterns, properties.getStringArray("perfdata_keep")),
+                properties.getBoolean("perfdata_normalize_units", normalizeUnits));
+    }
+
+    /**
+     * @return a copy of these rules that additionally replaces every match of
+     * <code>search</code> in the label with <code>replace</code>
+     */
+    public NagiosPerformanceDataRules withRename(String search, String replace) {
+        Validate.notEmpty(search);
+        Validate.notNull(replace);
+        final List<Pattern> renames = new ArrayList<>(renamePatterns);
+        final List<String> replacements = new ArrayList<>(renameReplacements);
+        renames.add(Pattern.compile(search));
+        replacements.add(replace);
+        return new NagiosPerformanceDataRules(renames, replacements, dropPatterns, keepPatterns, normalizeUnits);
+    }
+
+    private static List<Pattern> compileAll(List<Pattern> patterns, String[] expressions) {
+        final List<Pattern> compiled = new ArrayList<>(patterns);
+        for (String expression : expressions) {
+            compiled.add(Pattern.compile(expression.trim()));
+        }
+        return compiled;
+    }
+
+    public boolean isEmpty() {
+        return renamePatterns.isEmpty() && dropPatterns.isEmpty() && keepPatterns.isEmpty() && !normalizeUnits;
+    }
+
+    /**
+     * Rewrites the given performance data in place.
+     *
+     * @return false if the performance data should be dropped
+     */
+    public boolean apply(NagiosPerformanceData perfData) {
+        final String label = rewrite(perfData.getName());
+        if (label == DROPPED) {
+            return false;
+        }
+        perfData.setName(label);
+        if (normalizeUnits) {
+            normalizeUnit(perfData);
+        }
+        return true;
+    }
+
+    /**
+     * Rewrites the given performance data in place and removes dropped items
+     * from the list.
+     */
+    public void apply(List<NagiosPerformanceData> perfDataList) {
+        if (isEmpty()) {
+            return;
+        }
+        final Iterator<NagiosPerformanceData> iterator = perfDataList.iterator();
+        while (iterator.hasNext()) {
+            if (!apply(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the given report if there are no rules, otherwise a copy of it
+     * with rewritten performance data
+     */
+    public NagiosServiceReportSnapshot apply(NagiosServiceReportSnapshot report) {
+        if (isEmpty()) {
+            return report;
+        }
+        final List<NagiosPerformanceData> perfDataList = new ArrayList<>(report.getPerfData().size());
+        for (NagiosPerformanceData perfData : report.getPerfData()) {
+            final NagiosPerformanceData copy = new NagiosPerformanceData(perfData);
+            if (apply(copy)) {
+                perfDataList.add(copy);
+            }
+        }
+        return report.withPerfData(perfDataList);
+    }
+
+    private String rewrite(String label) {
+        String rewritten = labels.get(label);
+        if (rewritten == null) {
+            rewritten = evaluate(label);
+            if (labels.size() < MAX_CACHED_LABELS) {
+                labels.put(label, rewritten);
+            }
+        }
+        return rewritten;
+    }
+
+    private String evaluate(String label) {
+        String rewritten = label;
+        for (int i = 0; i < renamePatterns.size(); i++) {
+            rewritten = renamePatterns.get(i).matcher(rewritten).replaceAll(renameReplacements.get(i));
+        }
+        if (rewritten.isEmpty()) {
+            logger.debug("Dropping performance data '{}' as its name became empty", label);
+            return DROPPED;
+        }
+        for (Pattern pattern : dropPatterns) {
+            if (pattern.matcher(rewritten).matches()) {
+                return DROPPED;
+            }
+        }
+        if (!keepPatterns.isEmpty()) {
+            for (Pattern pattern : keepPatterns) {
+                if (pattern.matcher(rewritten).matches()) {
+                    return rewritten;
+                }
+            }
+            return DROPPED;
+        }
+        return rewritten;
+    }
+
+    private static void normalizeUnit(NagiosPerformanceData perfData) {
+        switch (perfData.getUnit()) {
+            case "KB":
+                perfData.scale(KILO, "B");
+                break;
+            case "MB":
+                perfData.scale(KILO * KILO, "B");
+                break;
+            case "GB":
+                perfData.scale(KILO * KILO * KILO, "B");
+                break;
+            case "TB":
+                perfData.scale(KILO * KILO * KILO * KILO, "B");
+                break;
+            case "ms":
+                perfData.scale(0.001, "s");
+                break;
+            case "us":
+                perfData.scale(0.000001, "s");
+                break;
+            default:
+                break;
+        }
+    }
+}
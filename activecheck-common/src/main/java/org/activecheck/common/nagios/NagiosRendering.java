@@ -0,0 +1,30 @@
+package org.activecheck.common.nagios;
+
+import java.io.IOException;
+
+/**
+ * Renders the <code>appendTo</code> style methods of this package, which write
+ * to any {@link Appendable}, into a {@link StringBuilder}.
+ */
+final class NagiosRendering {
+    private NagiosRendering() {
+    }
+
+    interface AppendableWriter {
+        void appendTo(Appendable out) throws IOException;
+    }
+
+    static String render(int capacity, AppendableWriter writer) {
+        return append(new StringBuilder(capacity), writer).toString();
+    }
+
+    static StringBuilder append(StringBuilder text, AppendableWriter writer) {
+        try {
+            writer.appendTo(text);
+        } catch (IOException e) {
+            // a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return text;
+    }
+}
@@ -1,6 +1,6 @@
 package org.activecheck.common.nagios;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import java.io.IOException;
 
 public class NagiosServiceReport extends NagiosCheckResult implements Comparable<NagiosServiceReport> {
     private static final long serialVersionUID = -4631772558439693705L;
@@ -88,10 +88,8 @@ public class NagiosServiceReport extends NagiosCheckResult implements Comparable
 
     public boolean hasChanged(NagiosServiceReport report) {
         if (report != null) {
-            final String md5self = DigestUtils.md5Hex(toString());
-            final String md5report = DigestUtils.md5Hex(report.toString());
             changed = getStatus() != report.getStatus()
-                    || !md5self.equals(md5report);
+                    || getFingerprint() != report.getFingerprint();
         }
         return changed;
     }
@@ -100,6 +98,10 @@ public class NagiosServiceReport extends NagiosCheckResult implements Comparable
         return changed;
     }
 
+    final void setChanged(boolean changed) {
+        this.changed = changed;
+    }
+
     /*
      * Note: this class has a natural ordering that is inconsistent with equals.
      */
@@ -124,8 +126,16 @@ public class NagiosServiceReport extends NagiosCheckResult implements Comparable
         return (serviceHost + serviceName).hashCode();
     }
 
+    /**
+     * Appends the same as {@link #toString()} to the given buffer.
+     */
+    public final void appendTo(Appendable out) throws IOException {
+        out.append(getStatus().toString()).append(" - ");
+        appendMessageWithPerformancedata(out);
+    }
+
     @Override
     public String toString() {
-        return getStatus() + " - " + getMessageWithPerformancedata();
+        return NagiosRendering.render(128, this::appendTo);
     }
 }
@@ -0,0 +1,524 @@
+package org.activecheck.common.nagios;
+
+import org.activecheck.common.Encoding;
+import org.apache.commons.lang.Validate;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes reports into a compact binary format and back, replacing Java
+ * serialization on the wire. Every frame is
+ * <pre>
+ * frame   = varint(length) payload
+ * payload = version flags [name] [host] varint(status) zigzag(start) zigzag(finish)
+ *           string(concatenator) varint(n) string(message){n} varint(m) perfdata{m}
+ * perfdata = varint(flags) string(name) string(unit) value(current)
+ *            [value(warning)] [string(warning range)] [value(critical)]
+ *            [string(critical range)] [value(minimum)] [value(maximum)]
+ * string  = varint(length) utf-8 bytes
+ * value   = zigzag(long) if flagged as whole number, otherwise 8 byte double
+ * </pre>
+ * A receiver may answer with acknowledgements, each a varint with the number
+ * of frames it accepted since the previous one, so clients can pipeline
+ * frames and resend unacknowledged ones after a reconnect.
+ * Decoders skip unknown bytes at the end of a payload, so fields can be
+ * appended without changing the version. Frames are limited to
+ * {@link #MAX_FRAME_LENGTH} bytes and no classes are instantiated from the
+ * input. Instances keep reusable buffers and are not thread safe, the static
+ * decode methods are.
+ */
+public final class NagiosServiceReportCodec {
+    public static final int VERSION = 1;
+    public static final int MAX_FRAME_LENGTH = 1024 * 1024;
+    private static final int DEFAULT_CAPACITY = 512;
+    private static final int MAX_VARINT_LENGTH = 5;
+
+    // report flags
+    private static final int HAS_NAME = 1;
+    private static final int HAS_HOST = 1 << 1;
+    private static final int CHANGED = 1 << 2;
+    private static final int REPORT_RESULTS = 1 << 3;
+    private static final int GRAPH_RESULTS = 1 << 4;
+    private static final int GRAPH_PERFDATA = 1 << 5;
+
+    // performance data flags
+    private static final int INTEGER = 1;
+    private static final int WHOLE_VALUES = 1 << 1;
+    private static final int HAS_WARNING = 1 << 2;
+    private static final int HAS_WARNING_RANGE = 1 << 3;
+    private static final int HAS_CRITICAL = 1 << 4;
+    private static final int HAS_CRITICAL_RANGE = 1 << 5;
+    private static final int HAS_MINIMUM = 1 << 6;
+    private static final int HAS_MAXIMUM = 1 << 7;
+
+    // values up to 2^53 are converted between long and double without loss
+    private static final double MAX_WHOLE_VALUE = 9007199254740992d;
+
+    private ByteBuffer buffer;
+    private byte[] readBuffer = new byte[0];
+
+    public NagiosServiceReportCodec() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public NagiosServiceReportCodec(int capacity) {
+        Validate.isTrue(capacity > MAX_VARINT_LENGTH, "capacity is too small");
+        buffer = ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * @return a view of the encoded frame including its length prefix, valid
+     * until this codec is used again
+     * @throws IllegalArgumentException if the frame is longer than
+     *                                  {@link #MAX_FRAME_LENGTH}
+     */
+    public ByteBuffer encode(NagiosServiceReport report) throws IllegalArgumentException {
+        Validate.notNull(report);
+        Validate.notNull(report.getStatus());
+        // leave room for the length, it is written in front of the payload
+        buffer.clear();
+        buffer.position(MAX_VARINT_LENGTH);
+        encodePayload(report);
+
+        final int length = buffer.position() - MAX_VARINT_LENGTH;
+        Validate.isTrue(length <= MAX_FRAME_LENGTH, "report exceeds the maximum frame length");
+        final int start = MAX_VARINT_LENGTH - varintLength(length);
+        final int end = buffer.position();
+        buffer.position(start);
+        putVarint(length);
+        buffer.position(start).limit(end);
+        return buffer.slice();
+    }
+
+    public void write(NagiosServiceReport report, OutputStream out) throws IOException {
+        final ByteBuffer frame = encode(report);
+        out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+    }
+
+    /**
+     * Reads exactly one frame from the given stream.
+     *
+     * @return the decoded report or null if the stream ended before a frame
+     * @throws EOFException                       if the stream ended within a frame
+     * @throws NagiosServiceReportCodecException if the frame is malformed
+     */
+    public NagiosServiceReport read(InputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return null;
+                }
+                throw new EOFException("stream ended within a frame length");
+            }
+            if (shift == 28 && (b & 0xf0) != 0) {
+                throw new NagiosServiceReportCodecException("frame length is too long");
+            }
+            length |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        checkFrameLength(length);
+        if (readBuffer.length < length) {
+            readBuffer = new byte[Math.max(length, Math.min(MAX_FRAME_LENGTH, readBuffer.length * 2))];
+        }
+        int read = 0;
+        while (read < length) {
+            final int n = in.read(readBuffer, read, length - read);
+            if (n < 0) {
+                throw new EOFException("stream ended within a frame");
+            }
+            read += n;
+        }
+        return decodePayload(ByteBuffer.wrap(readBuffer, 0, length));
+    }
+
+    /**
+     * Decodes the next frame from the given buffer. If the buffer does not
+     * contain a complete frame yet, its position is not changed.
+     *
+     * @return the decoded report or null if the frame is incomplete
+     * @throws NagiosServiceReportCodecException if the frame is malformed
+     */
+    public static NagiosServiceReport decode(ByteBuffer in) throws NagiosServiceReportCodecException {
+        final int start = in.position();
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (!in.hasRemaining()) {
+                in.position(start);
+                return null;
+            }
+            final int b = in.get();
+            if (shift == 28 && (b & 0xf0) != 0) {
+                throw new NagiosServiceReportCodecException("frame length is too long");
+            }
+            length |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        checkFrameLength(length);
+        if (in.remaining() < length) {
+            in.position(start);
+            return null;
+        }
+        final ByteBuffer payload = in.slice();
+        payload.limit(length);
+        in.position(in.position() + length);
+        return decodePayload(payload);
+    }
+
+    /**
+     * Writes an acknowledgement, the number of frames a receiver accepted
+     * since its previous acknowledgement, as a varint. The buffer needs room
+     * for five bytes.
+     */
+    public static void putAcknowledgement(ByteBuffer out, int count) {
+        Validate.isTrue(count > 0, "count must be positive");
+        putVarint(out, count);
+    }
+
+    /**
+     * Reads an acknowledgement written by
+     * {@link #putAcknowledgement(ByteBuffer, int)}.
+     *
+     * @return the number of accepted frames or -1 if the stream ended
+     * @throws NagiosServiceReportCodecException if the acknowledgement is invalid
+     */
+    public static int readAcknowledgement(InputStream in) throws IOException {
+        int count = 0;
+        for (int shift = 0; ; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                if (shift == 0) {
+                    return -1;
+                }
+                throw new EOFException("stream ended within an acknowledgement");
+            }
+            if (shift == 28 && (b & 0xf8) != 0) {
+                throw new NagiosServiceReportCodecException("invalid acknowledgement");
+            }
+            count |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return count;
+            }
+        }
+    }
+
+    private static void checkFrameLength(int length) throws NagiosServiceReportCodecException {
+        if (length <= 0 || length > MAX_FRAME_LENGTH) {
+            throw new NagiosServiceReportCodecException("invalid frame length " + length);
+        }
+    }
+
+    private void encodePayload(NagiosServiceReport report) {
+        final NagiosServiceReportRouting routing = report.getRouting();
+        int flags = 0;
+        flags |= report.getServiceName() != null ? HAS_NAME : 0;
+        flags |= report.getServiceHost() != null ? HAS_HOST : 0;
+        flags |= report.hasChanged() ? CHANGED : 0;
+        flags |= routing.doReportResults() ? REPORT_RESULTS : 0;
+        flags |= routing.doGraphResults() ? GRAPH_RESULTS : 0;
+        flags |= routing.doGraphPerfdata() ? GRAPH_PERFDATA : 0;
+
+        ensureRemaining(2);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) flags);
+        if (report.getServiceName() != null) {
+            putString(report.getServiceName());
+        }
+        if (report.getServiceHost() != null) {
+            putString(report.getServiceHost());
+        }
+        ensureRemaining(MAX_VARINT_LENGTH + 20);
+        putVarint(report.getStatus().getStatusCode());
+        putVarlong(report.getStartTime());
+        putVarlong(report.getFinishTime());
+        putString(report.getConcatenator());
+
+        final List<String> messages = report.getMessages();
+        ensureRemaining(MAX_VARINT_LENGTH);
+        putVarint(messages.size());
+        for (String message : messages) {
+            putString(message);
+        }
+
+        final List<NagiosPerformanceData> perfDataList = report.getPerfData();
+        ensureRemaining(MAX_VARINT_LENGTH);
+        putVarint(perfDataList.size());
+        for (NagiosPerformanceData perfData : perfDataList) {
+            encodePerfData(perfData);
+        }
+    }
+
+    private void encodePerfData(NagiosPerformanceData perfData) {
+        int flags = 0;
+        flags |= perfData.isInteger() ? INTEGER : 0;
+        flags |= perfData.hasWarning() ? HAS_WARNING : 0;
+        flags |= perfData.getWarningRange() != null ? HAS_WARNING_RANGE : 0;
+        flags |= perfData.hasCritical() ? HAS_CRITICAL : 0;
+        flags |= perfData.getCriticalRange() != null ? HAS_CRITICAL_RANGE : 0;
+        flags |= perfData.hasMinimum() ? HAS_MINIMUM : 0;
+        flags |= perfData.hasMaximum() ? HAS_MAXIMUM : 0;
+        final boolean whole = isWhole(perfData.getCurrent())
+                && (!perfData.hasWarning() || isWhole(perfData.getWarning()))
+                && (!perfData.hasCritical() || isWhole(perfData.getCritical()))
+                && (!perfData.hasMinimum() || isWhole(perfData.getMinimum()))
+                && (!perfData.hasMaximum() || isWhole(perfData.getMaximum()));
+        flags |= whole ? WHOLE_VALUES : 0;
+
+        ensureRemaining(MAX_VARINT_LENGTH);
+        putVarint(flags);
+        putString(perfData.getName());
+        putString(perfData.getUnit());
+        putValue(perfData.getCurrent(), whole);
+        if (perfData.hasWarning()) {
+            putValue(perfData.getWarning(), whole);
+        }
+        if (perfData.getWarningRange() != null) {
+            putString(perfData.getWarningRange());
+        }
+        if (perfData.hasCritical()) {
+            putValue(perfData.getCritical(), whole);
+        }
+        if (perfData.getCriticalRange() != null) {
+            putString(perfData.getCriticalRange());
+        }
+        if (perfData.hasMinimum()) {
+            putValue(perfData.getMinimum(), whole);
+        }
+        if (perfData.hasMaximum()) {
+            putValue(perfData.getMaximum(), whole);
+        }
+    }
+
+    private static boolean isWhole(double value) {
+        return value == Math.rint(value) && Math.abs(value) <= MAX_WHOLE_VALUE
+                && (value != 0 || 1 / value > 0);
+    }
+
+    private static NagiosServiceReport decodePayload(ByteBuffer in) throws NagiosServiceReportCodecException {
+        try {
+            final int version = in.get() & 0xff;
+            if (version != VERSION) {
+                throw new NagiosServiceReportCodecException("unsupported version " + version);
+            }
+            final int flags = in.get() & 0xff;
+            final String serviceName = (flags & HAS_NAME) != 0 ? getString(in) : null;
+            final String serviceHost = (flags & HAS_HOST) != 0 ? getString(in) : null;
+            final int statusCode = getVarint(in);
+            final NagiosServiceStatus status = NagiosServiceStatus.statusCodeToStatus(statusCode);
+            if (status == null) {
+                throw new NagiosServiceReportCodecException("unknown status code " + statusCode);
+            }
+
+            final NagiosServiceReport report = new NagiosServiceReport(serviceName, serviceHost, status);
+            report.setStartTime(getVarlong(in));
+            report.setFinishTime(getVarlong(in));
+            report.setConcatenator(getString(in));
+            report.setChanged((flags & CHANGED) != 0);
+            final NagiosServiceReportRouting routing = report.getRouting();
+            routing.setReportResults((flags & REPORT_RESULTS) != 0);
+            routing.setGraphResults((flags & GRAPH_RESULTS) != 0);
+            routing.setGraphPerfdata((flags & GRAPH_PERFDATA) != 0);
+
+            final int messageCount = getCount(in);
+            final List<String> messages = new ArrayList<>(messageCount);
+            for (int i = 0; i < messageCount; i++) {
+                messages.add(getString(in));
+            }
+            final int perfDataCount = getCount(in);
+            final List<NagiosPerformanceData> perfDataList = new ArrayList<>(perfDataCount);
+            for (int i = 0; i < perfDataCount; i++) {
+                perfDataList.add(decodePerfData(in));
+            }
+            report.addAll(messages, perfDataList);
+            return report;
+        } catch (BufferUnderflowException e) {
+            throw new NagiosServiceReportCodecException("frame is truncated");
+        } catch (IllegalArgumentException e) {
+            throw new NagiosServiceReportCodecException("invalid performance data: " + e.getMessage());
+        }
+    }
+
+    private static NagiosPerformanceData decodePerfData(ByteBuffer in) throws NagiosServiceReportCodecException {
+        final int flags = getVarint(in);
+        final boolean whole = (flags & WHOLE_VALUES) != 0;
+        final String name = getString(in);
+        final String unit = getString(in);
+        final double current = getValue(in, whole);
+        final double warning = (flags & HAS_WARNING) != 0 ? getValue(in, whole) : NagiosPerformanceData.DEFAULT_VALUE;
+        final String warningRange = (flags & HAS_WARNING_RANGE) != 0 ? getString(in) : null;
+        final double critical = (flags & HAS_CRITICAL) != 0 ? getValue(in, whole) : NagiosPerformanceData.DEFAULT_VALUE;
+        final String criticalRange = (flags & HAS_CRITICAL_RANGE) != 0 ? getString(in) : null;
+        final double minimum = (flags & HAS_MINIMUM) != 0 ? getValue(in, whole) : NagiosPerformanceData.DEFAULT_VALUE;
+        final double maximum = (flags & HAS_MAXIMUM) != 0 ? getValue(in, whole) : NagiosPerformanceData.DEFAULT_VALUE;
+        return new NagiosPerformanceData(name, current, unit, warning, warningRange, critical, criticalRange,
+                minimum, maximum, (flags & INTEGER) != 0);
+    }
+
+    private void putValue(double value, boolean whole) {
+        ensureRemaining(10);
+        if (whole) {
+            putVarlong((long) value);
+        } else {
+            buffer.putDouble(value);
+        }
+    }
+
+    private static double getValue(ByteBuffer in, boolean whole) throws NagiosServiceReportCodecException {
+        return whole ? getVarlong(in) : in.getDouble();
+    }
+
+    private void putString(String text) {
+        final int length = utf8Length(text);
+        ensureRemaining(MAX_VARINT_LENGTH + length);
+        putVarint(length);
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xc0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xf0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, encoded as replacement like String.getBytes
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xe0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    private static int utf8Length(String text) {
+        int length = text.length();
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c >= 0x800 && !Character.isSurrogate(c)) {
+                length += 2;
+            } else if (c >= 0x80 && c < 0x800) {
+                length += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                // two chars, four bytes
+                length += 2;
+                i++;
+            }
+        }
+        return length;
+    }
+
+    private static String getString(ByteBuffer in) throws NagiosServiceReportCodecException {
+        final int length = getVarint(in);
+        if (length > in.remaining()) {
+            throw new NagiosServiceReportCodecException("frame is truncated");
+        }
+        final String text;
+        if (in.hasArray()) {
+            text = new String(in.array(), in.arrayOffset() + in.position(), length, Encoding.UTF8);
+            in.position(in.position() + length);
+        } else {
+            final byte[] bytes = new byte[length];
+            in.get(bytes);
+            text = new String(bytes, Encoding.UTF8);
+        }
+        return text;
+    }
+
+    private static int getCount(ByteBuffer in) throws NagiosServiceReportCodecException {
+        // every item takes at least one byte, larger counts can not be valid
+        final int count = getVarint(in);
+        if (count > in.remaining()) {
+            throw new NagiosServiceReportCodecException("frame is truncated");
+        }
+        return count;
+    }
+
+    private void putVarint(int value) {
+        putVarint(buffer, value);
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        int remaining = value;
+        while ((remaining & ~0x7f) != 0) {
+            out.put((byte) ((remaining & 0x7f) | 0x80));
+            remaining >>>= 7;
+        }
+        out.put((byte) remaining);
+    }
+
+    private void putVarlong(long value) {
+        // zigzag encoding keeps small negative values short
+        long remaining = (value << 1) ^ (value >> 63);
+        while ((remaining & ~0x7fL) != 0) {
+            buffer.put((byte) ((remaining & 0x7f) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    private static int getVarint(ByteBuffer in) throws NagiosServiceReportCodecException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = in.get();
+            if (shift == 28 && (b & 0xf8) != 0) {
+                // does not fit into a non-negative int
+                break;
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new NagiosServiceReportCodecException("invalid varint");
+    }
+
+    private static long getVarlong(ByteBuffer in) throws NagiosServiceReportCodecException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            final long b = in.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new NagiosServiceReportCodecException("invalid varlong");
+    }
+
+    private static int varintLength(int value) {
+        int length = 1;
+        int remaining = value;
+        while ((remaining & ~0x7f) != 0) {
+            remaining >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private void ensureRemaining(int bytes) {
+        if (buffer.remaining() < bytes) {
+            final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.activecheck.common.nagios;
+
+import java.io.IOException;
+
+/**
+ * Thrown if a frame received by {@link NagiosServiceReportCodec} is malformed.
+ * The connection it was read from can not be resynchronized afterwards.
+ */
+public class NagiosServiceReportCodecException extends IOException {
+    private static final long serialVersionUID = -2306813870520479516L;
+
+    public NagiosServiceReportCodecException(String message) {
+        super(message);
+    }
+}
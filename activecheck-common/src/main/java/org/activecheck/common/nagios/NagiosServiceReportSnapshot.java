@@ -0,0 +1,190 @@
+package org.activecheck.common.nagios;
+
+import org.apache.commons.lang.Validate;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of a {@link NagiosServiceReport} as it was published. One
+ * snapshot is created per report and shared by all collectors, so it can be
+ * handed to several threads without copying or locking. Messages and
+ * performance data are kept in arrays, the rendered forms are created on
+ * first use and then reused. The performance data items must not be changed.
+ */
+public final class NagiosServiceReportSnapshot {
+    private static final NagiosPerformanceData[] NO_PERFDATA = new NagiosPerformanceData[0];
+
+    private final String serviceName;
+    private final String serviceHost;
+    private final NagiosServiceStatus status;
+    private final long startTime;
+    private final long finishTime;
+    private final boolean changed;
+    private final long fingerprint;
+    private final boolean reportResults;
+    private final boolean graphResults;
+    private final boolean graphPerfdata;
+    private final String[] messages;
+    private final String concatenator;
+    private final NagiosPerformanceData[] perfData;
+    private final List<NagiosPerformanceData> perfDataList;
+
+    // rendered on first use, racy but idempotent like String.hashCode
+    private String message = null;
+    private String messageWithPerformancedata = null;
+
+    /**
+     * Copies the given report. The defaults are used for host and times if the
+     * report does not define them.
+     */
+    public NagiosServiceReportSnapshot(NagiosServiceReport report, String defaultHost,
+                                       long defaultStartTime, long defaultFinishTime) {
+        Validate.notNull(report);
+        serviceName = report.getServiceName();
+        serviceHost = report.getServiceHost() != null ? report.getServiceHost() : defaultHost;
+        status = report.getStatus();
+        startTime = report.getStartTime() > 0 ? report.getStartTime() : defaultStartTime;
+        finishTime = report.getFinishTime() > 0 ? report.getFinishTime() : defaultFinishTime;
+        changed = report.hasChanged();
+        fingerprint = report.getFingerprint();
+        final NagiosServiceReportRouting routing = report.getRouting();
+        reportResults = routing.doReportResults();
+        graphResults = routing.doGraphResults();
+        graphPerfdata = routing.doGraphPerfdata();
+        messages = report.getMessages().toArray(new String[0]);
+        concatenator = report.getConcatenator();
+        perfData = new NagiosPerformanceData[report.getPerfData().size()];
+        for (int i = 0; i < perfData.length; i++) {
+            perfData[i] = new NagiosPerformanceData(report.getPerfData().get(i));
+        }
+        perfDataList = Collections.unmodifiableList(Arrays.asList(perfData));
+    }
+
+    public NagiosServiceReportSnapshot(NagiosServiceReport report) {
+        this(report, null, -1, -1);
+    }
+
+    private NagiosServiceReportSnapshot(NagiosServiceReportSnapshot snapshot, NagiosPerformanceData[] perfData) {
+        serviceName = snapshot.serviceName;
+        serviceHost = snapshot.serviceHost;
+        status = snapshot.status;
+        startTime = snapshot.startTime;
+        finishTime = snapshot.finishTime;
+        changed = snapshot.changed;
+        reportResults = snapshot.reportResults;
+        graphResults = snapshot.graphResults;
+        graphPerfdata = snapshot.graphPerfdata;
+        messages = snapshot.messages;
+        concatenator = snapshot.concatenator;
+        message = snapshot.message;
+        this.perfData = perfData;
+        perfDataList = Collections.unmodifiableList(Arrays.asList(perfData));
+        // the performance data changed, so the fingerprint has to change too
+        long hash = NagiosFingerprint.EMPTY;
+        for (NagiosPerformanceData item : perfData) {
+            hash = NagiosFingerprint.add(hash, item.fingerprint());
+        }
+        fingerprint = NagiosFingerprint.add(snapshot.fingerprint, hash);
+    }
+
+    /**
+     * @return a snapshot that only differs in the given performance data,
+     * which is owned by the new snapshot afterwards
+     */
+    NagiosServiceReportSnapshot withPerfData(List<NagiosPerformanceData> perfData) {
+        return new NagiosServiceReportSnapshot(this, perfData.toArray(NO_PERFDATA));
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getServiceHost() {
+        return serviceHost;
+    }
+
+    public NagiosServiceStatus getStatus() {
+        return status;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    public boolean hasChanged() {
+        return changed;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public boolean doReportResults() {
+        return reportResults;
+    }
+
+    public boolean doGraphResults() {
+        return graphResults;
+    }
+
+    public boolean doGraphPerfdata() {
+        return graphPerfdata;
+    }
+
+    /**
+     * @return an unmodifiable view of the performance data
+     */
+    public List<NagiosPerformanceData> getPerfData() {
+        return perfDataList;
+    }
+
+    public String getMessage() {
+        String rendered = message;
+        if (rendered == null) {
+            rendered = NagiosRendering.render(64, this::appendMessage);
+            message = rendered;
+        }
+        return rendered;
+    }
+
+    public String getMessageWithPerformancedata() {
+        String rendered = messageWithPerformancedata;
+        if (rendered == null) {
+            final StringBuilder text = new StringBuilder(128);
+            text.append(getMessage());
+            if (perfData.length > 0) {
+                text.append(" | ");
+                for (int i = 0; i < perfData.length; i++) {
+                    if (i > 0) {
+                        text.append(' ');
+                    }
+                    perfData[i].appendLine(text);
+                }
+            }
+            rendered = text.toString();
+            messageWithPerformancedata = rendered;
+        }
+        return rendered;
+    }
+
+    private void appendMessage(Appendable out) throws IOException {
+        for (int i = 0; i < messages.length; i++) {
+            if (i > 0) {
+                NagiosCheckResult.appendEscaped(out, concatenator);
+            }
+            NagiosCheckResult.appendEscaped(out, messages[i]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return status + " - " + getMessageWithPerformancedata();
+    }
+}
@@ -0,0 +1,183 @@
+package org.activecheck.common.nagios;
+
+import org.apache.commons.lang.Validate;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An immutable warning or critical threshold, compiled once from its
+ * definition. Numeric thresholds follow the Nagios range syntax
+ * (http://nagios-plugins.org/doc/guidelines.html#THRESHOLDFORMAT):
+ * <ul>
+ * <li><code>10</code> alerts if the value is below 0 or above 10</li>
+ * <li><code>-10</code> alerts if the value is above -10, like before range
+ * support</li>
+ * <li><code>10:</code> alerts if the value is below 10</li>
+ * <li><code>~:10</code> alerts if the value is above 10</li>
+ * <li><code>10:20</code> alerts if the value is outside of 10 to 20</li>
+ * <li><code>@10:20</code> alerts if the value is inside of 10 to 20</li>
+ * </ul>
+ * The activecheck prefixes are supported as well: <code>&gt;10</code> alerts
+ * if the value is above 10 and <code>&lt;10</code> or <code>^10</code> if it
+ * is below 10. Strings are matched case insensitively against the definition
+ * as a regular expression, so <code>a|b</code> matches either value. The
+ * prefixes <code>&lt;</code> and <code>^</code> invert a string match.
+ * Numeric ranges starting above their end, like <code>10:5</code>, are
+ * rejected when they are compiled.
+ */
+public final class NagiosThreshold {
+    private final String definition;
+    private final boolean lessThan;
+    private final boolean inverted;
+    private final boolean numeric;
+    private final double start;
+    private final double end;
+    private final boolean inside;
+    private final Pattern pattern;
+    private final boolean booleanValue;
+
+    private NagiosThreshold(String definition, boolean lessThan, boolean inverted, boolean numeric,
+                            double start, double end, boolean inside) {
+        this.definition = definition;
+        this.lessThan = lessThan;
+        this.inverted = inverted;
+        this.numeric = numeric;
+        this.start = start;
+        this.end = end;
+        this.inside = inside;
+        this.pattern = compilePattern(definition);
+        this.booleanValue = Boolean.parseBoolean(definition);
+    }
+
+    /**
+     * @return the compiled threshold or <code>null</code> if the definition is
+     * empty
+     * @throws IllegalArgumentException if the range starts above its end
+     */
+    public static NagiosThreshold compile(String threshold) {
+        if (threshold == null || threshold.isEmpty()) {
+            return null;
+        }
+
+        // activecheck prefixes
+        final char prefix = threshold.charAt(0);
+        if (prefix == '<' || prefix == '^' || prefix == '>') {
+            final String definition = threshold.substring(1);
+            final double value = parseNumber(definition);
+            final boolean lessThan = prefix != '>';
+            if (Double.isNaN(value)) {
+                return new NagiosThreshold(definition, lessThan, lessThan, false, 0, 0, false);
+            } else if (lessThan) {
+                return new NagiosThreshold(definition, true, true, true, value, Double.POSITIVE_INFINITY, false);
+            } else {
+                return new NagiosThreshold(definition, false, false, true, Double.NEGATIVE_INFINITY, value, false);
+            }
+        }
+
+        // nagios ranges
+        final boolean inside = prefix == '@';
+        final String range = inside ? threshold.substring(1) : threshold;
+        final int colon = range.indexOf(':');
+        double start = 0;
+        double end;
+        if (colon < 0) {
+            end = parseNumber(range);
+            if (end < 0) {
+                // 0:-10 is no range, keep comparing like before
+                start = Double.NEGATIVE_INFINITY;
+            }
+        } else {
+            final String rangeStart = range.substring(0, colon);
+            final String rangeEnd = range.substring(colon + 1);
+            if (rangeStart.equals("~")) {
+                start = Double.NEGATIVE_INFINITY;
+            } else if (!rangeStart.isEmpty()) {
+                start = parseNumber(rangeStart);
+            }
+            end = rangeEnd.isEmpty() ? Double.POSITIVE_INFINITY : parseNumber(rangeEnd);
+        }
+        if (Double.isNaN(start) || Double.isNaN(end)) {
+            return new NagiosThreshold(threshold, false, false, false, 0, 0, false);
+        }
+        Validate.isTrue(start <= end, "threshold '" + threshold + "' starts above its end");
+        final boolean lessThan = !inside && end == Double.POSITIVE_INFINITY;
+        return new NagiosThreshold(threshold, lessThan, false, true, start, end, inside);
+    }
+
+    private static double parseNumber(String value) {
+        if (value.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static Pattern compilePattern(String definition) {
+        try {
+            return Pattern.compile(definition, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            // treat the alternatives as literals if they are no valid expression
+            final StringBuilder literals = new StringBuilder();
+            for (String alternative : definition.split("\\|", -1)) {
+                if (literals.length() > 0) {
+                    literals.append('|');
+                }
+                literals.append(Pattern.quote(alternative));
+            }
+            return Pattern.compile(literals.toString(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        }
+    }
+
+    /**
+     * @return true if the given value violates this threshold
+     * @throws IllegalArgumentException if this threshold is not numeric
+     */
+    public boolean matches(double value) throws IllegalArgumentException {
+        if (!numeric) {
+            throw new IllegalArgumentException("threshold '" + definition + "' is not numeric");
+        }
+        final boolean inRange = value >= start && value <= end;
+        return inside == inRange;
+    }
+
+    /**
+     * @return true if the given value violates this threshold
+     */
+    public boolean matches(String value) {
+        return inverted != pattern.matcher(value).matches();
+    }
+
+    /**
+     * @return true if the given value violates this threshold
+     */
+    public boolean matches(boolean value) {
+        return value == booleanValue;
+    }
+
+    /**
+     * @return the threshold without activecheck prefixes
+     */
+    public String getDefinition() {
+        return definition;
+    }
+
+    /**
+     * @return true if values below the threshold raise an alert
+     */
+    public boolean isLessThan() {
+        return lessThan;
+    }
+
+    public boolean isNumeric() {
+        return numeric;
+    }
+
+    @Override
+    public String toString() {
+        return definition;
+    }
+}
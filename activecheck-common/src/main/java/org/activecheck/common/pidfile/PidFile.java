@@ -10,17 +10,19 @@ import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.util.Observable;
 import java.util.Optional;
-import java.util.concurrent.TimeUnit;
 
-public class PidFile extends Observable implements Runnable {
+/**
+ * The pid read from a file. Observers are notified when it changes, the file
+ * is watched by the {@link PidFileFactory}.
+ */
+public class PidFile extends Observable {
     private static final Logger logger = LoggerFactory.getLogger(PidFile.class);
-    private static final int checkIntervalInSeconds = 10;
 
     private String filename = null;
-    private int pid = -1;
-    private boolean pidChanged = false;
+    private volatile int pid = -1;
+    private volatile boolean pidChanged = false;
 
-    private void check() {
+    void check() {
         if (filename != null) {
             logger.debug("checking pidfile {}", filename);
             try (final BufferedReader reader = new BufferedReader(
@@ -35,19 +37,6 @@ public class PidFile extends Observable implements Runnable {
         }
     }
 
-    @Override
-    public void run() {
-        while (countObservers() > 0) {
-            check();
-            try {
-                TimeUnit.SECONDS.sleep(checkIntervalInSeconds);
-            } catch (InterruptedException e) {
-                logger.error("Failed to sleep thread for {}s", checkIntervalInSeconds);
-                logger.trace(e.getMessage(), e);
-            }
-        }
-    }
-
     private void setPid(int newPid) {
         pidChanged = newPid != pid;
         if (pidChanged) {
@@ -13,36 +13,47 @@ public class PidFileFactory {
 
     // define class members
     private final Map<String, PidFile> pidFileMap;
+    private PidFileWatcher watcher = null;
 
     public PidFileFactory() {
         pidFileMap = new HashMap<>();
     }
 
     public static PidFile create(String pidfilePath, Observer observer) {
-        PidFile pidfile = instance.pidFileMap.get(pidfilePath);
-        if (pidfile == null || pidfile.countObservers() == 0) {
-            logger.info("Instantiating PidFile for '{}'", pidfilePath);
-
-            // create pidfile watcher
-            pidfile = new PidFile();
-            pidfile.setFilename(pidfilePath);
-            instance.pidFileMap.put(pidfilePath, pidfile);
-
-            // run pidfile watcher
-            Thread t = new Thread(pidfile);
-            t.setName("PidFile(" + pidfilePath + ")");
-            t.start();
+        synchronized (instance) {
+            PidFile pidfile = instance.pidFileMap.get(pidfilePath);
+            if (pidfile == null || pidfile.countObservers() == 0) {
+                logger.info("Instantiating PidFile for '{}'", pidfilePath);
+
+                // all pidfiles share one watcher thread
+                if (instance.watcher == null) {
+                    instance.watcher = new PidFileWatcher("PidFileWatcher");
+                }
+                if (pidfile != null) {
+                    instance.watcher.remove(pidfile);
+                }
+                pidfile = new PidFile();
+                pidfile.setFilename(pidfilePath);
+                instance.pidFileMap.put(pidfilePath, pidfile);
+                instance.watcher.add(pidfile);
+            }
+            pidfile.addObserver(observer);
+
+            return pidfile;
         }
-        pidfile.addObserver(observer);
-
-        return pidfile;
     }
 
     public static void delete(String pidfilePath, Observer observer) {
-        PidFile pidfile = instance.pidFileMap.get(pidfilePath);
-        if (pidfile != null) {
-            logger.info("Removing PidFile for '{}'", pidfilePath);
-            pidfile.deleteObserver(observer);
+        synchronized (instance) {
+            PidFile pidfile = instance.pidFileMap.get(pidfilePath);
+            if (pidfile != null) {
+                logger.info("Removing PidFile for '{}'", pidfilePath);
+                pidfile.deleteObserver(observer);
+                if (pidfile.countObservers() == 0) {
+                    instance.pidFileMap.remove(pidfilePath);
+                    instance.watcher.remove(pidfile);
+                }
+            }
         }
     }
 }
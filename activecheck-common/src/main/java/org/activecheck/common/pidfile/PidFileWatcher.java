@@ -0,0 +1,253 @@
+package org.activecheck.common.pidfile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches all pidfiles with one {@link WatchService} and one thread. A
+ * pidfile is read again shortly after it is created, modified or deleted, so
+ * a pidfile being written is read once it is complete. Pidfiles in
+ * directories that cannot be watched, for example because they do not exist
+ * yet, are read every {@link #CHECK_INTERVAL_SECONDS} seconds until their
+ * directory can be watched.
+ * <p>
+ * Pidfiles are read and their observers notified on a pool of threads, so a
+ * slow observer, like one connecting to the new process, does not delay
+ * noticing changes of other pidfiles. Each pidfile is read by at most one
+ * thread at a time, a change noticed meanwhile reads it again afterwards.
+ */
+final class PidFileWatcher implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(PidFileWatcher.class);
+    static final int CHECK_INTERVAL_SECONDS = 10;
+    // pidfiles are usually truncated before they are written
+    private static final long SETTLE_MILLIS = 50;
+
+    private final WatchService watchService;
+    // guarded by this
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+    private final Map<Path, Set<PidFile>> pidfiles = new HashMap<>();
+    private final Set<PidFile> unwatched = new HashSet<>();
+    // pidfiles being read, mapped to whether to read them again, guarded by itself
+    private final Map<PidFile, Boolean> reading = new HashMap<>();
+    private final ExecutorService readers = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "PidFileReader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    PidFileWatcher(String threadName) {
+        WatchService newWatchService = null;
+        try {
+            newWatchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("Cannot watch pidfiles, reading them every {}s: {}", CHECK_INTERVAL_SECONDS, e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+        watchService = newWatchService;
+
+        final Thread thread = new Thread(this, threadName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void add(PidFile pidfile) {
+        final Path directory = directoryOf(pidfile);
+        Set<PidFile> watched = pidfiles.get(directory);
+        if (watched == null) {
+            watched = new HashSet<>();
+            pidfiles.put(directory, watched);
+        }
+        watched.add(pidfile);
+        if (!register(directory)) {
+            unwatched.add(pidfile);
+        }
+    }
+
+    synchronized void remove(PidFile pidfile) {
+        final Path directory = directoryOf(pidfile);
+        unwatched.remove(pidfile);
+        final Set<PidFile> watched = pidfiles.get(directory);
+        if (watched != null) {
+            watched.remove(pidfile);
+            if (watched.isEmpty()) {
+                pidfiles.remove(directory);
+                final WatchKey key = keys.remove(directory);
+                if (key != null) {
+                    key.cancel();
+                }
+            }
+        }
+    }
+
+    private static Path directoryOf(PidFile pidfile) {
+        final Path directory = Paths.get(pidfile.getFilename()).toAbsolutePath().getParent();
+        return directory == null ? Paths.get("/") : directory;
+    }
+
+    /**
+     * @return true if the directory is watched
+     */
+    private boolean register(Path directory) {
+        if (keys.containsKey(directory)) {
+            return true;
+        }
+        if (watchService == null) {
+            return false;
+        }
+        try {
+            keys.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Cannot watch directory '{}': {}", directory, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void run() {
+        long nextSweep = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CHECK_INTERVAL_SECONDS);
+        while (true) {
+            try {
+                final long wait = Math.max(1, nextSweep - System.currentTimeMillis());
+                final List<PidFile> changed = new ArrayList<>();
+                if (watchService == null) {
+                    TimeUnit.MILLISECONDS.sleep(wait);
+                } else {
+                    WatchKey key = watchService.poll(wait, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        TimeUnit.MILLISECONDS.sleep(SETTLE_MILLIS);
+                    }
+                    while (key != null) {
+                        for (PidFile pidfile : changed(key)) {
+                            if (!changed.contains(pidfile)) {
+                                changed.add(pidfile);
+                            }
+                        }
+                        key = watchService.poll();
+                    }
+                }
+                if (System.currentTimeMillis() >= nextSweep) {
+                    for (PidFile pidfile : sweep()) {
+                        if (!changed.contains(pidfile)) {
+                            changed.add(pidfile);
+                        }
+                    }
+                    nextSweep = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CHECK_INTERVAL_SECONDS);
+                }
+                // observers are notified without holding the lock
+                for (PidFile pidfile : changed) {
+                    read(pidfile);
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (RuntimeException e) {
+                logger.error("Error watching pidfiles: " + e.getMessage());
+                logger.trace(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void read(PidFile pidfile) {
+        synchronized (reading) {
+            if (reading.containsKey(pidfile)) {
+                reading.put(pidfile, true);
+                return;
+            }
+            reading.put(pidfile, false);
+        }
+        readers.execute(() -> {
+            do {
+                try {
+                    pidfile.check();
+                } catch (RuntimeException e) {
+                    logger.error("Error notifying observers of pidfile '" + pidfile.getFilename() + "': "
+                            + e.getMessage());
+                    logger.trace(e.getMessage(), e);
+                }
+            } while (readAgain(pidfile));
+        });
+    }
+
+    private boolean readAgain(PidFile pidfile) {
+        synchronized (reading) {
+            if (reading.get(pidfile)) {
+                reading.put(pidfile, false);
+                return true;
+            }
+            reading.remove(pidfile);
+            return false;
+        }
+    }
+
+    /**
+     * @return the pidfiles not watched, whose directories are watched from
+     * now on if they can be
+     */
+    private synchronized List<PidFile> sweep() {
+        final List<PidFile> changed = new ArrayList<>(unwatched);
+        for (PidFile pidfile : changed) {
+            if (register(directoryOf(pidfile))) {
+                unwatched.remove(pidfile);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the pidfiles to read after the events of the key
+     */
+    private synchronized List<PidFile> changed(WatchKey key) {
+        final List<PidFile> changed = new ArrayList<>();
+        final Path directory = (Path) key.watchable();
+        final Set<PidFile> watched = pidfiles.get(directory);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (watched == null) {
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed.addAll(watched);
+            } else {
+                final Path name = (Path) event.context();
+                for (PidFile pidfile : watched) {
+                    if (!changed.contains(pidfile)
+                            && Paths.get(pidfile.getFilename()).getFileName().equals(name)) {
+                        changed.add(pidfile);
+                    }
+                }
+            }
+        }
+        if (!key.reset() && keys.get(directory) == key) {
+            // the directory is gone, read its pidfiles until it is back
+            keys.remove(directory);
+            if (watched != null) {
+                unwatched.addAll(watched);
+                for (PidFile pidfile : watched) {
+                    if (!changed.contains(pidfile)) {
+                        changed.add(pidfile);
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+}
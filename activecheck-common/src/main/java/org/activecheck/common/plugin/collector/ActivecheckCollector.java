@@ -1,6 +1,8 @@
 package org.activecheck.common.plugin.collector;
 
-import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosCounterDerivation;
+import org.activecheck.common.nagios.NagiosPerformanceDataRules;
+import org.activecheck.common.nagios.NagiosServiceReportSnapshot;
 import org.activecheck.common.plugin.ActivecheckPlugin;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.slf4j.Logger;
@@ -14,6 +16,8 @@ abstract public class ActivecheckCollector extends ActivecheckPlugin implements
 
     protected final GenericCollector host = new GenericCollector();
     private final ActivecheckCollectorType type;
+    private NagiosPerformanceDataRules perfDataRules = NagiosPerformanceDataRules.EMPTY;
+    private NagiosCounterDerivation counterDerivation = NagiosCounterDerivation.EMPTY;
 
     @SuppressWarnings("unused")
     public ActivecheckCollector(PropertiesConfiguration properties, ActivecheckCollectorType type) {
@@ -35,22 +39,34 @@ abstract public class ActivecheckCollector extends ActivecheckPlugin implements
     }
 
     private void pluginInit() {
-        // change host
-        host.setFqdn(properties.getString("host", null));
+        // change host, collectors that do not connect anywhere need none
+        final String fqdn = properties.getString("host", null);
+        if (fqdn != null) {
+            host.setFqdn(fqdn);
+        }
         host.setPort(properties.getInteger("port", 0));
+
+        // performance data rules and counters of this collector only
+        try {
+            perfDataRules = NagiosPerformanceDataRules.fromProperties(properties);
+            counterDerivation = NagiosCounterDerivation.fromProperties(properties);
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid performance data rules for collector '{}': {}", getPluginName(), e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
     }
 
     public String getCollectorEndpointName() {
         return host.getUrl();
     }
 
-    public final void send(NagiosServiceReport report) {
+    public final void send(NagiosServiceReportSnapshot report) {
         final String serviceName = report.getServiceName();
 
         switch (type) {
             case GRAPHING:
-                final boolean graphPerfData = report.getRouting().doGraphPerfdata();
-                final boolean graphNagiosStatus = report.getRouting().doGraphResults();
+                final boolean graphPerfData = report.doGraphPerfdata();
+                final boolean graphNagiosStatus = report.doGraphResults();
                 if (!graphNagiosStatus && !graphPerfData) {
                     logger.info("nothing should be graphed");
                 } else if (!report.hasChanged()) {
@@ -58,16 +74,16 @@ abstract public class ActivecheckCollector extends ActivecheckPlugin implements
                 } else if (serviceName == null || serviceName.isEmpty()) {
                     logger.debug("Not sending metrics for an unnamed service");
                 } else {
-                    sendImpl(report);
+                    sendImpl(rewrite(report));
                 }
                 break;
 
             case REPORTING:
-                final boolean reportResults = report.getRouting().doReportResults();
+                final boolean reportResults = report.doReportResults();
                 if (!reportResults) {
                     logger.info("check results should not be submitted for service '{}'", serviceName);
                 } else {
-                    sendImpl(report);
+                    sendImpl(rewrite(report));
                 }
                 break;
 
@@ -77,6 +93,10 @@ abstract public class ActivecheckCollector extends ActivecheckPlugin implements
         }
     }
 
+    private NagiosServiceReportSnapshot rewrite(NagiosServiceReportSnapshot report) {
+        return counterDerivation.apply(perfDataRules.apply(report));
+    }
+
     @Override
     protected final void pluginReload() {
         pluginInit();
@@ -85,7 +105,7 @@ abstract public class ActivecheckCollector extends ActivecheckPlugin implements
 
     abstract protected void collectorInit();
 
-    abstract public void sendImpl(NagiosServiceReport report);
+    abstract public void sendImpl(NagiosServiceReportSnapshot report);
 
     abstract public void disconnect() throws Exception;
 }
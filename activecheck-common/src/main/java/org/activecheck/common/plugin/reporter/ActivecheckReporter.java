@@ -3,6 +3,7 @@ package org.activecheck.common.plugin.reporter;
 import org.activecheck.common.Encoding;
 import org.activecheck.common.nagios.NagiosCheckResult;
 import org.activecheck.common.nagios.NagiosPerformanceData;
+import org.activecheck.common.nagios.NagiosPerformanceDataRules;
 import org.activecheck.common.nagios.NagiosServiceReport;
 import org.activecheck.common.nagios.NagiosServiceReportRouting;
 import org.activecheck.common.nagios.NagiosServiceStatus;
@@ -45,8 +46,12 @@ public abstract class ActivecheckReporter extends ActivecheckPlugin implements R
     private long lastScheduleTime = 0;
     private long lastScheduleDelay = 0;
     private final NagiosServiceReportRouting reportRouting;
+    private NagiosPerformanceDataRules perfDataRules = NagiosPerformanceDataRules.EMPTY;
     private int errorCountMax = 0;
     private int errorCount = 0;
+    private ActivecheckReporterCompletion completion = null;
+    private ActivecheckTargetLimiter targetLimiter = null;
+    private String limitedTarget = null;
 
     public ActivecheckReporter(PropertiesConfiguration properties) {
         super(properties);
@@ -64,6 +69,12 @@ public abstract class ActivecheckReporter extends ActivecheckPlugin implements R
     private void pluginInit() {
         errorCountMax = properties.getInt("max_errors", errorCountMax);
         reportRouting.setFromProperties(properties);
+        try {
+            perfDataRules = compilePerfDataRules();
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid performance data rules for service '{}': {}", overallServiceName, e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
 
         // calculate intervals
         checkInterval = properties.getInt("check_interval", DEFAULT_CHECK_INTERVAL);
@@ -88,38 +99,125 @@ public abstract class ActivecheckReporter extends ActivecheckPlugin implements R
             // kill this reporter
             kill();
         } else if (status == ActivecheckReporterStatus.SCHEDULED) {
+            final String target = getTarget();
+            if (targetLimiter != null && target != null) {
+                if (!targetLimiter.acquire(target, this)) {
+                    // executed again by the limiter, the reporter stays scheduled
+                    return;
+                }
+                limitedTarget = target;
+            }
+
             // run task
             lastRunTime = System.currentTimeMillis();
             status = ActivecheckReporterStatus.RUNNING;
+            ActivecheckReporterException error = null;
             try {
                 runCommand();
-
-                // clear error count
-                errorCount = 0;
-                status = ActivecheckReporterStatus.REQUEUE;
             } catch (ActivecheckReporterException e) {
-                setOverallServiceReport(NagiosServiceStatus.CRITICAL, e.getMessage());
-
-                // increase error count
-                errorCount++;
-                logger.debug("error count for service {} = {}", overallServiceName, errorCount);
-                if (errorCountMax > 0 && errorCount >= errorCountMax) {
-                    status = ActivecheckReporterStatus.REQUESTSHUTDOWN;
-                    logger.error("reached max errors of {} for service {}. Requesting shutdown",
-                            errorCountMax, overallServiceName);
-                } else {
-                    status = ActivecheckReporterStatus.ERROR;
-                    logger.error(e.getMessage());
-                    logger.debug(e.getMessage(), e);
-                }
+                error = e;
+            } catch (RuntimeException e) {
+                // the run never finishes, do not block the target
+                releaseTarget();
+                throw e;
             }
-            executionTime = System.currentTimeMillis() - lastRunTime;
+            final ActivecheckReporterCompletion deferred = completion;
+            completion = null;
+            if (deferred == null) {
+                finishRun(error);
+            } else {
+                // finishes the run unless the command is still running
+                deferred.returned(error);
+            }
+            return;
         }
         // notify observers
         setChanged();
         notifyObservers(status);
     }
 
+    /**
+     * Ends a run, which requeues the reporter.
+     *
+     * @param e the error of the command, null if it succeeded
+     */
+    final void finishRun(ActivecheckReporterException e) {
+        if (e == null) {
+            // clear error count
+            errorCount = 0;
+            status = ActivecheckReporterStatus.REQUEUE;
+        } else {
+            setOverallServiceReport(NagiosServiceStatus.CRITICAL, e.getMessage());
+
+            // increase error count
+            errorCount++;
+            logger.debug("error count for service {} = {}", overallServiceName, errorCount);
+            if (errorCountMax > 0 && errorCount >= errorCountMax) {
+                status = ActivecheckReporterStatus.REQUESTSHUTDOWN;
+                logger.error("reached max errors of {} for service {}. Requesting shutdown",
+                        errorCountMax, overallServiceName);
+            } else {
+                status = ActivecheckReporterStatus.ERROR;
+                logger.error(e.getMessage());
+                logger.debug(e.getMessage(), e);
+            }
+        }
+        executionTime = System.currentTimeMillis() - lastRunTime;
+
+        releaseTarget();
+
+        // notify observers
+        setChanged();
+        notifyObservers(status);
+    }
+
+    /**
+     * Lets the next reporter of the same target run.
+     */
+    private void releaseTarget() {
+        if (limitedTarget != null) {
+            final String target = limitedTarget;
+            limitedTarget = null;
+            targetLimiter.release(target);
+        }
+    }
+
+    /**
+     * Lets {@link #runCommand()} return before its command has finished,
+     * e.g. to wait for a response without blocking a reporter thread. The
+     * reporter stays running and is neither requeued nor are its reports
+     * published until the returned completion is called.
+     *
+     * @return the completion of the current run, or one doing nothing if the
+     * command is not run by the scheduler, e.g. over JMX
+     */
+    protected final ActivecheckReporterCompletion deferCompletion() {
+        if (status != ActivecheckReporterStatus.RUNNING) {
+            return new ActivecheckReporterCompletion(null);
+        }
+        completion = new ActivecheckReporterCompletion(this);
+        return completion;
+    }
+
+    /**
+     * Sets the limiter of runs in flight per target, null for no limit.
+     */
+    public final void setTargetLimiter(ActivecheckTargetLimiter targetLimiter) {
+        this.targetLimiter = targetLimiter;
+    }
+
+    /**
+     * Identifies the endpoint the checks of this reporter run against, e.g.
+     * host and port. Runs against the same target are limited by the
+     * {@link ActivecheckTargetLimiter} of the scheduler.
+     *
+     * @return the target, null if runs are not limited
+     */
+    @Override
+    public String getTarget() {
+        return null;
+    }
+
     public final String getOverallServiceName() {
         return overallServiceName;
     }
@@ -231,6 +329,8 @@ public abstract class ActivecheckReporter extends ActivecheckPlugin implements R
             logger.error("Please use setOverallServiceReport instead");
         } else {
             report.setRouting(reportRouting);
+            report.applyPerfDataRules(perfDataRules);
+            stamp(report);
             report.hasChanged(serviceReports.get(reportServiceName));
             serviceReports.put(reportServiceName, report);
             logger.info("Service '{}': '{} - {}'", reportServiceName, report.getStatus(), report.getMessage());
@@ -243,6 +343,8 @@ public abstract class ActivecheckReporter extends ActivecheckPlugin implements R
             logger.error("Cannot use report of '{}' for '{}'", reportServiceName, overallServiceName);
         } else {
             report.setRouting(reportRouting);
+            report.applyPerfDataRules(perfDataRules);
+            stamp(report);
             report.hasChanged(serviceReports.get(reportServiceName));
             overallServiceStatus = report.getStatus();
             serviceReports.put(reportServiceName, report);
@@ -250,6 +352,12 @@ public abstract class ActivecheckReporter extends ActivecheckPlugin implements R
         }
     }
 
+    private void stamp(NagiosServiceReport report) {
+        // times are set once, so a report published again keeps them
+        report.setStartTime(lastRunTime);
+        report.setFinishTime(System.currentTimeMillis());
+    }
+
     protected final void setOverallServiceReport(NagiosCheckResult checkResult) {
         final NagiosServiceReport report = new NagiosServiceReport(
                 overallServiceName, overallServiceHost, checkResult);
@@ -343,6 +451,9 @@ public abstract class ActivecheckReporter extends ActivecheckPlugin implements R
         if (sf != null) {
             sf.cancel(true);
         }
+        if (targetLimiter != null) {
+            targetLimiter.remove(this);
+        }
 
         // run cleanup jobs
         cleanUp();
@@ -354,6 +465,14 @@ public abstract class ActivecheckReporter extends ActivecheckPlugin implements R
         return super.disable();
     }
 
+    /**
+     * Compiles the performance data rules of this reporter. Called on every
+     * configuration reload, reporters may override it to add default rules.
+     */
+    protected NagiosPerformanceDataRules compilePerfDataRules() {
+        return NagiosPerformanceDataRules.fromProperties(properties);
+    }
+
     abstract protected void reporterInit();
 
     abstract protected void cleanUp();
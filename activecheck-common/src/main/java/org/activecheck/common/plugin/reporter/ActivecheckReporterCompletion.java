@@ -0,0 +1,66 @@
+package org.activecheck.common.plugin.reporter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Completes a run of an {@link ActivecheckReporter} whose command finishes
+ * after {@link ActivecheckReporter#runCommand()} has returned, see
+ * {@link ActivecheckReporter#deferCompletion()}. The run ends once the
+ * command has returned and the completion has been called, in any order and
+ * on any thread. Only the first call of {@link #complete()} or
+ * {@link #fail(ActivecheckReporterException)} counts.
+ */
+public final class ActivecheckReporterCompletion {
+    private final ActivecheckReporter reporter;
+    // the command returning and the completion
+    private final AtomicInteger parties = new AtomicInteger(2);
+    private final AtomicBoolean completed = new AtomicBoolean(false);
+    private volatile ActivecheckReporterException error = null;
+
+    /**
+     * @param reporter the reporter to finish, null if the command is not run
+     *                 by the reporter itself
+     */
+    ActivecheckReporterCompletion(ActivecheckReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    /**
+     * Called when the command has returned. A command failing right away
+     * finishes the run, a later completion is ignored then.
+     */
+    void returned(ActivecheckReporterException e) {
+        if (e != null && completed.compareAndSet(false, true)) {
+            error = e;
+            parties.decrementAndGet();
+        }
+        arrive();
+    }
+
+    /**
+     * The command has finished and has set its reports.
+     */
+    public void complete() {
+        if (completed.compareAndSet(false, true)) {
+            arrive();
+        }
+    }
+
+    /**
+     * The command has failed, like {@link ActivecheckReporter#runCommand()}
+     * throwing the exception.
+     */
+    public void fail(ActivecheckReporterException e) {
+        if (completed.compareAndSet(false, true)) {
+            error = e;
+            arrive();
+        }
+    }
+
+    private void arrive() {
+        if (parties.decrementAndGet() == 0 && reporter != null) {
+            reporter.finishRun(error);
+        }
+    }
+}
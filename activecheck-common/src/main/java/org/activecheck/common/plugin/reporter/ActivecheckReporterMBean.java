@@ -12,6 +12,9 @@ public interface ActivecheckReporterMBean extends ActivecheckPluginMBean {
     // @Description("Nagios service name")
     String getOverallServiceName();
 
+    // @Description("endpoint the checks run against")
+    String getTarget();
+
     // @Description("Nagios service host")
     String getOverallServiceHost();
 
@@ -0,0 +1,195 @@
+package org.activecheck.common.plugin.reporter;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Limits the number of runs in flight per target endpoint, see
+ * {@link ActivecheckReporter#getTarget()}. A reporter due while its target is
+ * at the limit does not wait on a worker thread. It is queued in order of
+ * arrival and handed to the executor as soon as a run of the same target has
+ * finished, taking over its slot.
+ */
+public final class ActivecheckTargetLimiter implements ActivecheckTargetLimiterMBean {
+    private static final Logger logger = LoggerFactory.getLogger(ActivecheckTargetLimiter.class);
+
+    private final Executor executor;
+    private final Map<String, Target> targets = new HashMap<>();
+    private volatile int maxPerTarget;
+
+    private static final class Target {
+        private int inFlight = 0;
+        private final Queue<ActivecheckReporter> waiting = new ArrayDeque<>();
+        // reporters a slot has been handed to, but which have not run yet
+        private final Set<ActivecheckReporter> granted = new HashSet<>();
+    }
+
+    /**
+     * @param executor     runs reporters taken from a queue
+     * @param maxPerTarget the maximum number of runs in flight per target, 0
+     *                     for no limit
+     */
+    public ActivecheckTargetLimiter(Executor executor, int maxPerTarget) {
+        Validate.notNull(executor);
+        this.executor = executor;
+        setMaxPerTarget(maxPerTarget);
+    }
+
+    /**
+     * Takes a slot for a run of the reporter.
+     *
+     * @return false if the target is at its limit, the reporter is executed
+     * again once a slot is free then
+     */
+    synchronized boolean acquire(String target, ActivecheckReporter reporter) {
+        final Target state = getOrCreate(target);
+        if (state.granted.remove(reporter)) {
+            return true;
+        }
+        // reporters already waiting go first
+        if (maxPerTarget <= 0 || state.inFlight < maxPerTarget && state.waiting.isEmpty()) {
+            state.inFlight++;
+            return true;
+        }
+        if (!state.waiting.contains(reporter)) {
+            state.waiting.add(reporter);
+            logger.debug("Service '{}' waits for target '{}' ({} queued)",
+                    reporter.getOverallServiceName(), target, state.waiting.size());
+        }
+        return false;
+    }
+
+    /**
+     * Frees a slot taken by {@link #acquire(String, ActivecheckReporter)}.
+     */
+    void release(String target) {
+        ActivecheckReporter next;
+        synchronized (this) {
+            next = handOver(target);
+        }
+        execute(target, next);
+    }
+
+    /**
+     * Removes a reporter that will not run anymore, giving back a slot that
+     * has been handed to it.
+     */
+    void remove(ActivecheckReporter reporter) {
+        String target = null;
+        ActivecheckReporter next = null;
+        synchronized (this) {
+            for (Map.Entry<String, Target> entry : targets.entrySet()) {
+                final Target state = entry.getValue();
+                if (state.waiting.remove(reporter)) {
+                    break;
+                }
+                if (state.granted.remove(reporter)) {
+                    target = entry.getKey();
+                    break;
+                }
+            }
+            if (target != null) {
+                next = handOver(target);
+            }
+        }
+        if (target != null) {
+            execute(target, next);
+        }
+    }
+
+    private Target getOrCreate(String target) {
+        Target state = targets.get(target);
+        if (state == null) {
+            state = new Target();
+            targets.put(target, state);
+        }
+        return state;
+    }
+
+    /**
+     * @return the next reporter taking over the slot, null if the slot has
+     * been freed
+     */
+    private ActivecheckReporter handOver(String target) {
+        final Target state = targets.get(target);
+        if (state == null) {
+            return null;
+        }
+        // a lowered limit frees slots instead of handing them over
+        final ActivecheckReporter next = maxPerTarget <= 0 || state.inFlight <= maxPerTarget
+                ? state.waiting.poll() : null;
+        if (next == null) {
+            state.inFlight--;
+            if (state.inFlight <= 0 && state.waiting.isEmpty()) {
+                targets.remove(target);
+            }
+        } else {
+            state.granted.add(next);
+        }
+        return next;
+    }
+
+    private void execute(String target, ActivecheckReporter next) {
+        if (next != null) {
+            try {
+                executor.execute(next);
+            } catch (RejectedExecutionException e) {
+                logger.error("Unable to run service '{}': {}", next.getOverallServiceName(), e.getMessage());
+                logger.trace(e.getMessage(), e);
+                remove(next);
+            }
+        }
+    }
+
+    @Override
+    public int getMaxPerTarget() {
+        return maxPerTarget;
+    }
+
+    /**
+     * Raising the limit takes effect for reporters due from now on, queued
+     * ones keep waiting for a run of their target to finish.
+     */
+    @Override
+    public void setMaxPerTarget(int maxPerTarget) {
+        this.maxPerTarget = maxPerTarget;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getQueueDepths() {
+        final Map<String, Integer> depths = new TreeMap<>();
+        for (Map.Entry<String, Target> entry : targets.entrySet()) {
+            depths.put(entry.getKey(), entry.getValue().waiting.size());
+        }
+        return depths;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getInFlight() {
+        final Map<String, Integer> inFlight = new TreeMap<>();
+        for (Map.Entry<String, Target> entry : targets.entrySet()) {
+            inFlight.put(entry.getKey(), entry.getValue().inFlight);
+        }
+        return inFlight;
+    }
+
+    @Override
+    public synchronized int getQueued() {
+        int queued = 0;
+        for (Target state : targets.values()) {
+            queued += state.waiting.size();
+        }
+        return queued;
+    }
+}
@@ -0,0 +1,20 @@
+package org.activecheck.common.plugin.reporter;
+
+import java.util.Map;
+
+public interface ActivecheckTargetLimiterMBean {
+    // @Description("max runs in flight per target, 0 for no limit")
+    int getMaxPerTarget();
+
+    // @Description("max runs in flight per target, 0 for no limit")
+    void setMaxPerTarget(int maxPerTarget);
+
+    // @Description("reporters waiting per target")
+    Map<String, Integer> getQueueDepths();
+
+    // @Description("runs in flight per target")
+    Map<String, Integer> getInFlight();
+
+    // @Description("reporters waiting for any target")
+    int getQueued();
+}
@@ -0,0 +1,31 @@
+package org.activecheck.common;
+
+import static org.testng.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+public class Utf8BufferTest {
+	private static String decode(ByteBuffer bytes) {
+		return Encoding.UTF8.decode(bytes).toString();
+	}
+
+	@Test(description = "Test encoding")
+	public void testEncoding() {
+		String text = "ascii äöü € 😀 | end";
+		Utf8Buffer buffer = new Utf8Buffer(4);
+		buffer.append(text);
+		assertEquals(buffer.length(), text.getBytes(Encoding.UTF8).length);
+		assertEquals(decode(buffer.getBytes()), text);
+	}
+
+	@Test(description = "Test reusing the buffer")
+	public void testReuse() {
+		Utf8Buffer buffer = new Utf8Buffer();
+		buffer.append("first").append(' ').append("second", 0, 3);
+		assertEquals(decode(buffer.getBytes()), "first sec");
+		buffer.clear().append('x');
+		assertEquals(decode(buffer.getBytes()), "x");
+	}
+}
@@ -201,4 +201,40 @@ public class NagiosCheckResultTest {
 		assertEquals(checkResult.getPerfData().get(3).getName(),
 				"perfdata.line4");
 	}
+
+	@Test(description = "Test quoted labels and units")
+	public void testQuotedLabelsAndUnits() {
+		NagiosCheckResult checkResult = NagiosCheckResult
+				.fromMessage("DISK OK | '/ free'=20%;10;5 '/var free'=1GB;;;0;8\n'/tmp free'=3GB");
+		assertEquals(checkResult.getMessage(), "DISK OK");
+		assertEquals(checkResult.getPerfData().size(), 3);
+		assertEquals(checkResult.getPerfData().get(0).getName(), "/ free");
+		assertEquals(checkResult.getPerfData().get(0).getUnit(), "%");
+		assertEquals(checkResult.getPerfData().get(1).getName(), "/var free");
+		assertEquals(checkResult.getPerfData().get(1).getMaximum(), 8.0);
+		assertEquals(checkResult.getPerfData().get(2).getName(), "/tmp free");
+	}
+
+	@Test(description = "Test reusing a result object")
+	public void testReusingResult() throws IOException {
+		NagiosCheckResult checkResult = new NagiosCheckResult();
+		checkResult.parseMessage(Files.readFile(ClassLoader
+				.getSystemResourceAsStream("output_case3.txt")));
+		checkResult.parseMessage("message_line1\r\n\r\nmessage_line2 | a=1\r\n",
+				NagiosServiceStatus.WARNING);
+		assertEquals(checkResult.getStatus(), NagiosServiceStatus.WARNING);
+		assertEquals(checkResult.getMessage(),
+				"message_line1\r\n\r\nmessage_line2");
+		assertEquals(checkResult.getPerfData().size(), 1);
+	}
+
+	@Test(description = "Test the messages can not be modified", expectedExceptions = UnsupportedOperationException.class)
+	public void testUnmodifiableMessages() {
+		NagiosCheckResult.fromMessage("DISK OK | root=1").getMessages().add("changed");
+	}
+
+	@Test(description = "Test the performance data can not be modified", expectedExceptions = UnsupportedOperationException.class)
+	public void testUnmodifiablePerfData() {
+		NagiosCheckResult.fromMessage("DISK OK | root=1").getPerfData().clear();
+	}
 }
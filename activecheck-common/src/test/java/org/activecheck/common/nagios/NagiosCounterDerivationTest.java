@@ -0,0 +1,132 @@
+package org.activecheck.common.nagios;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.testng.annotations.Test;
+
+public class NagiosCounterDerivationTest {
+	private static NagiosServiceReportSnapshot report(String host, String perfData, long finishTime) {
+		return new NagiosServiceReportSnapshot(new NagiosServiceReport("gc", host,
+				NagiosServiceStatus.OK, "OK | " + perfData, finishTime - 10, finishTime));
+	}
+
+	private static NagiosCounterDerivation derivation() {
+		PropertiesConfiguration properties = new PropertiesConfiguration();
+		properties.addProperty("perfdata_rate", ".*_total");
+		properties.addProperty("perfdata_delta", "gc_count");
+		return NagiosCounterDerivation.fromProperties(properties);
+	}
+
+	@Test(description = "Test without configured counters")
+	public void testEmpty() {
+		NagiosCounterDerivation derivation = NagiosCounterDerivation
+				.fromProperties(new PropertiesConfiguration());
+		assertTrue(derivation.isEmpty());
+		NagiosServiceReportSnapshot report = report("a", "requests_total=10c", 1000);
+		assertSame(derivation.apply(report), report);
+	}
+
+	@Test(description = "Test rates and deltas")
+	public void testRateAndDelta() {
+		NagiosCounterDerivation derivation = derivation();
+
+		// the first report only initializes the series
+		NagiosServiceReportSnapshot derived = derivation.apply(report("a",
+				"requests_total=100c;;;0 gc_count=5 heap=300MB", 1000));
+		assertEquals(derived.getPerfData().size(), 1);
+		assertEquals(derived.getPerfData().get(0).getName(), "heap");
+
+		derived = derivation.apply(report("a",
+				"requests_total=300c;;;0 gc_count=8 heap=310MB", 3000));
+		assertEquals(derived.getPerfData().size(), 3);
+		assertEquals(derived.getPerfData().get(0).getName(), "requests_total");
+		assertEquals(derived.getPerfData().get(0).getCurrent(), 100.0);
+		assertEquals(derived.getPerfData().get(0).getUnit(), "");
+		assertEquals(derived.getPerfData().get(0).hasMinimum(), false);
+		assertEquals(derived.getPerfData().get(1).getCurrent(), 3.0);
+		assertEquals(derived.getPerfData().get(2).getCurrent(), 310.0);
+	}
+
+	private static NagiosServiceReportSnapshot integerReport(int requests, int gcCount, long finishTime)
+			throws NagiosPerformanceDataException {
+		NagiosServiceReport report = new NagiosServiceReport("gc", "a", NagiosServiceStatus.OK);
+		report.setFinishTime(finishTime);
+		report.addPerformanceData(new NagiosPerformanceData("requests_total", requests, null, null, null, null));
+		report.addPerformanceData(new NagiosPerformanceData("gc_count", gcCount, null, null, null, null));
+		return new NagiosServiceReportSnapshot(report);
+	}
+
+	@Test(description = "Test the format of derived integer counters does not change between runs")
+	public void testIntegerFormat() throws NagiosPerformanceDataException {
+		NagiosCounterDerivation derivation = derivation();
+		derivation.apply(integerReport(100, 5, 1000));
+
+		NagiosServiceReportSnapshot derived = derivation.apply(integerReport(300, 8, 3000));
+		assertEquals(derived.getPerfData().get(0).getLine(), "requests_total=100.000000");
+		assertEquals(derived.getPerfData().get(1).getLine(), "gc_count=3");
+
+		derived = derivation.apply(integerReport(313, 9, 6000));
+		assertEquals(derived.getPerfData().get(0).getLine(), "requests_total=4.333333");
+		assertEquals(derived.getPerfData().get(1).getLine(), "gc_count=1");
+	}
+
+	@Test(description = "Test series are kept per host")
+	public void testSeriesPerHost() {
+		NagiosCounterDerivation derivation = derivation();
+		derivation.apply(report("a", "gc_count=5", 1000));
+		derivation.apply(report("b", "gc_count=50", 1000));
+		assertEquals(derivation.apply(report("a", "gc_count=6", 2000))
+				.getPerfData().get(0).getCurrent(), 1.0);
+		assertEquals(derivation.apply(report("b", "gc_count=70", 2000))
+				.getPerfData().get(0).getCurrent(), 20.0);
+	}
+
+	@Test(description = "Test counter resets and wraps")
+	public void testResetAndWrap() {
+		NagiosCounterDerivation derivation = derivation();
+		derivation.apply(report("a", "gc_count=500 wrap_total=250c;;;0;255", 1000));
+
+		NagiosServiceReportSnapshot derived = derivation.apply(report("a",
+				"gc_count=20 wrap_total=4c;;;0;255", 2000));
+		assertEquals(derived.getPerfData().get(0).getCurrent(), 20.0);
+		// 250 to 255, 0 and up to 4
+		assertEquals(derived.getPerfData().get(1).getCurrent(), 10.0);
+	}
+
+	@Test(description = "Test a counter wrapping from its maximum to 0")
+	public void testWrapToZero() {
+		NagiosCounterDerivation derivation = derivation();
+		derivation.apply(report("a", "wrap_total=255c;;;0;255", 1000));
+		assertEquals(derivation.apply(report("a", "wrap_total=0c;;;0;255", 2000))
+				.getPerfData().get(0).getCurrent(), 1.0);
+		assertEquals(derivation.apply(report("a", "wrap_total=0c;;;0;255", 3000))
+				.getPerfData().get(0).getCurrent(), 0.0);
+	}
+
+	@Test(description = "Test repeated reports are not derived twice")
+	public void testRepeatedReport() {
+		NagiosCounterDerivation derivation = derivation();
+		derivation.apply(report("a", "gc_count=1", 1000));
+		NagiosServiceReportSnapshot report = report("a", "gc_count=3", 2000);
+		assertEquals(derivation.apply(report).getPerfData().size(), 1);
+		assertEquals(derivation.apply(report).getPerfData().size(), 0);
+
+		// the original report is not changed
+		assertEquals(report.getPerfData().get(0).getCurrent(), 3.0);
+	}
+
+	@Test(description = "Test many series")
+	public void testManySeries() {
+		NagiosCounterDerivation derivation = derivation();
+		for (int i = 0; i < 1000; i++) {
+			derivation.apply(report("host" + i, "gc_count=" + i, 1000));
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(derivation.apply(report("host" + i, "gc_count=" + (2 * i), 2000))
+					.getPerfData().get(0).getCurrent(), (double) i);
+		}
+	}
+}
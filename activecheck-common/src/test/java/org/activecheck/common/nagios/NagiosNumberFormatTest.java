@@ -0,0 +1,64 @@
+package org.activecheck.common.nagios;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+public class NagiosNumberFormatTest {
+	private static String fixed(double value) throws IOException {
+		StringBuilder text = new StringBuilder();
+		NagiosNumberFormat.appendFixed(text, value);
+		return text.toString();
+	}
+
+	private static String integer(long value) throws IOException {
+		StringBuilder text = new StringBuilder();
+		NagiosNumberFormat.appendLong(text, value);
+		return text.toString();
+	}
+
+	@Test(description = "Test special values")
+	public void testSpecialValues() throws IOException {
+		double[] values = { 0.0, -0.0, 1.0, -1.0, 0.5, 0.0000005, 0.0000015,
+				-0.0000001, 0.9999995, 0.99999949, 123.456, 2016.0 * 1024 * 1024,
+				1e15, 1e20, -1e300, Double.MAX_VALUE, Double.MIN_VALUE,
+				Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for (double value : values) {
+			assertEquals(fixed(value), String.format(Locale.ROOT, "%f", value),
+					"formatting " + value);
+		}
+	}
+
+	@Test(description = "Test random values")
+	public void testRandomValues() throws IOException {
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			double value = (random.nextDouble() - 0.5)
+					* Math.pow(10, random.nextInt(24) - 8);
+			assertEquals(fixed(value), String.format(Locale.ROOT, "%f", value),
+					"formatting " + value);
+		}
+	}
+
+	@Test(description = "Test rounding boundaries")
+	public void testRoundingBoundaries() throws IOException {
+		for (int i = 0; i < 100000; i++) {
+			double value = i / 1000000.0 + 0.0000005;
+			assertEquals(fixed(value), String.format(Locale.ROOT, "%f", value),
+					"formatting " + value);
+		}
+	}
+
+	@Test(description = "Test integers")
+	public void testIntegers() throws IOException {
+		long[] values = { 0, 1, -1, 9, 10, 99, 100, 1234567890123L,
+				Long.MAX_VALUE, Long.MIN_VALUE };
+		for (long value : values) {
+			assertEquals(integer(value), Long.toString(value));
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package org.activecheck.common.nagios;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.testng.annotations.Test;
+
+public class NagiosPerformanceDataRulesTest {
+	private static final String DISK_OUTPUT = "DISK OK | "
+			+ "root_free=2016MB;@900:1000;~:500;0;9842 var_free=12GB tmp_free=1KB";
+
+	@Test(description = "Test empty rules")
+	public void testEmptyRules() throws NagiosPerformanceDataException {
+		NagiosPerformanceDataRules rules = NagiosPerformanceDataRules
+				.fromProperties(new PropertiesConfiguration());
+		assertTrue(rules.isEmpty());
+
+		NagiosPerformanceData perfData = new NagiosPerformanceData("a_b=1ms");
+		assertTrue(rules.apply(perfData));
+		assertEquals(perfData.getName(), "a_b");
+		assertEquals(perfData.getUnit(), "ms");
+	}
+
+	@Test(description = "Test renaming in order")
+	public void testRename() throws NagiosPerformanceDataException {
+		PropertiesConfiguration properties = new PropertiesConfiguration();
+		properties.addProperty("perfdata_rename", "_ => .");
+		properties.addProperty("perfdata_rename", "^root\\. => /");
+		NagiosPerformanceDataRules rules = NagiosPerformanceDataRules
+				.fromProperties(properties);
+
+		NagiosCheckResult checkResult = new NagiosCheckResult();
+		checkResult.setPerfDataRules(rules);
+		checkResult.parseMessage(DISK_OUTPUT);
+		assertEquals(checkResult.getPerfData().size(), 3);
+		assertEquals(checkResult.getPerfData().get(0).getName(), "/free");
+		assertEquals(checkResult.getPerfData().get(1).getName(), "var.free");
+
+		// memoized labels give the same result
+		checkResult.parseMessage(DISK_OUTPUT);
+		assertEquals(checkResult.getPerfData().get(0).getName(), "/free");
+	}
+
+	@Test(description = "Test dropping and keeping")
+	public void testDropAndKeep() {
+		PropertiesConfiguration properties = new PropertiesConfiguration();
+		properties.addProperty("perfdata_keep", ".*_free");
+		properties.addProperty("perfdata_drop", "tmp_.*");
+		NagiosPerformanceDataRules rules = NagiosPerformanceDataRules
+				.fromProperties(properties);
+
+		NagiosCheckResult checkResult = NagiosCheckResult.fromMessage(DISK_OUTPUT
+				+ " inodes=95%");
+		checkResult.applyPerfDataRules(rules);
+		assertEquals(checkResult.getPerfData().size(), 2);
+		assertEquals(checkResult.getPerfData().get(0).getName(), "root_free");
+		assertEquals(checkResult.getPerfData().get(1).getName(), "var_free");
+	}
+
+	@Test(description = "Test renaming to an empty label")
+	public void testRenameToEmptyLabel() throws NagiosPerformanceDataException {
+		NagiosPerformanceDataRules rules = NagiosPerformanceDataRules.EMPTY
+				.withRename(".*", "");
+		assertFalse(rules.apply(new NagiosPerformanceData("label=1")));
+	}
+
+	@Test(description = "Test unit normalization")
+	public void testNormalizeUnits() {
+		PropertiesConfiguration properties = new PropertiesConfiguration();
+		properties.addProperty("perfdata_normalize_units", true);
+		NagiosPerformanceDataRules rules = NagiosPerformanceDataRules
+				.fromProperties(properties);
+
+		NagiosCheckResult checkResult = NagiosCheckResult.fromMessage(DISK_OUTPUT
+				+ " time=250ms");
+		checkResult.applyPerfDataRules(rules);
+		NagiosPerformanceData root = checkResult.getPerfData().get(0);
+		assertEquals(root.getUnit(), "B");
+		assertEquals(root.getCurrent(), 2016.0 * 1024 * 1024);
+		assertEquals(root.getMaximum(), 9842.0 * 1024 * 1024);
+		assertEquals(root.getWarningRange(), "@943718400.000000:1048576000.000000");
+		assertEquals(root.getCriticalRange(), "~:524288000.000000");
+		assertEquals(checkResult.getPerfData().get(1).getCurrent(), 12.0 * 1024 * 1024 * 1024);
+		assertEquals(checkResult.getPerfData().get(2).getCurrent(), 1024.0);
+		assertEquals(checkResult.getPerfData().get(3).getUnit(), "s");
+		assertEquals(checkResult.getPerfData().get(3).getCurrent(), 0.25);
+	}
+
+	@Test(description = "Test rewriting a copy of a report")
+	public void testReportCopy() {
+		NagiosPerformanceDataRules rules = NagiosPerformanceDataRules.EMPTY
+				.withRename("_", ".");
+		NagiosServiceReportSnapshot report = new NagiosServiceReportSnapshot(
+				new NagiosServiceReport("disk", "localhost",
+						NagiosServiceStatus.WARNING, DISK_OUTPUT, 1, 2));
+		assertSame(NagiosPerformanceDataRules.EMPTY.apply(report), report);
+
+		NagiosServiceReportSnapshot copy = rules.apply(report);
+		assertNotSame(copy, report);
+		assertEquals(copy.getServiceName(), "disk");
+		assertEquals(copy.getStatus(), NagiosServiceStatus.WARNING);
+		assertEquals(copy.getMessage(), "DISK OK");
+		assertEquals(copy.getStartTime(), 1);
+		assertEquals(copy.getPerfData().get(0).getName(), "root.free");
+		assertEquals(report.getPerfData().get(0).getName(), "root_free");
+	}
+
+	@Test(description = "Test invalid rename rule", expectedExceptions = IllegalArgumentException.class)
+	public void testInvalidRename() {
+		PropertiesConfiguration properties = new PropertiesConfiguration();
+		properties.addProperty("perfdata_rename", "no separator");
+		NagiosPerformanceDataRules.fromProperties(properties);
+	}
+}
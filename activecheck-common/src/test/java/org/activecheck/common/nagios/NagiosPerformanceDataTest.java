@@ -35,4 +35,60 @@ public class NagiosPerformanceDataTest {
 	public void testDecimalWithComma() throws NagiosPerformanceDataException {
 		new NagiosPerformanceData("nan", "8,2342", null, null, null, null);
 	}
+
+	@Test(description = "Test quoted label with unit")
+	public void testQuotedLabelWithUnit() throws NagiosPerformanceDataException {
+		NagiosPerformanceData perfData = new NagiosPerformanceData(
+				"'free space /var'=2016MB;9832;9822;0;9842");
+		assertEquals(perfData.getName(), "free space /var");
+		assertEquals(perfData.getCurrent(), 2016.0);
+		assertEquals(perfData.getUnit(), "MB");
+		assertEquals(perfData.getMaximum(), 9842.0);
+	}
+
+	@Test(description = "Test quoted label with escaped quote")
+	public void testQuotedLabelWithEscapedQuote() throws NagiosPerformanceDataException {
+		NagiosPerformanceData perfData = new NagiosPerformanceData(
+				"'it''s=time'=5s");
+		assertEquals(perfData.getName(), "it's=time");
+		assertEquals(perfData.getCurrent(), 5.0);
+		assertEquals(perfData.getUnit(), "s");
+		assertEquals(perfData.getLine(), "'it''s=time'=5.000000s");
+	}
+
+	@Test(description = "Test ranges")
+	public void testRanges() throws NagiosPerformanceDataException {
+		NagiosPerformanceData perfData = new NagiosPerformanceData(
+				"time=0.02s;@10:20;~:30;0;");
+		assertEquals(perfData.getWarning(), 20.0);
+		assertEquals(perfData.getWarningRange(), "@10:20");
+		assertEquals(perfData.getCritical(), 30.0);
+		assertEquals(perfData.getCriticalRange(), "~:30");
+		assertEquals(perfData.getMinimum(), 0.0);
+		assertEquals(perfData.hasMaximum(), false);
+		assertEquals(perfData.getLine(), "time=0.020000s;@10:20;~:30;0.000000");
+	}
+
+	@Test(description = "Test open ended range")
+	public void testOpenEndedRange() throws NagiosPerformanceDataException {
+		NagiosPerformanceData perfData = new NagiosPerformanceData(
+				"users=3;10:;5");
+		assertEquals(perfData.getWarning(), 10.0);
+		assertEquals(perfData.getWarningRange(), "10:");
+		assertEquals(perfData.getCritical(), 5.0);
+		assertEquals(perfData.getCriticalRange(), null);
+	}
+
+	@Test(description = "Test exponent and precision")
+	public void testExponentAndPrecision() throws NagiosPerformanceDataException {
+		assertEquals(new NagiosPerformanceData("a=1.5e3").getCurrent(), 1500.0);
+		assertEquals(new NagiosPerformanceData("a=-0.000001").getCurrent(), -0.000001);
+		assertEquals(new NagiosPerformanceData("a=12345678901234567890").getCurrent(),
+				12345678901234567890.0);
+	}
+
+	@Test(description = "Test missing value", expectedExceptions = NagiosPerformanceDataException.class)
+	public void testMissingValue() throws NagiosPerformanceDataException {
+		new NagiosPerformanceData("a=;1;2");
+	}
 }
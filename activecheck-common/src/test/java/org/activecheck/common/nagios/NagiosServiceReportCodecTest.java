@@ -0,0 +1,130 @@
+package org.activecheck.common.nagios;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+public class NagiosServiceReportCodecTest {
+	private static final String OUTPUT = "DISK OK - free space: / 7326 MB (78% inode=95%)\n"
+			+ "long text ä€😀 | /=2016MB;9832;9822;0;9842 "
+			+ "'/var lib'=12016.5MB;@9000:9832;~:9822;0;19842 load1=0.2;4;8;0; count=-3c";
+
+	private static NagiosServiceReport report() {
+		NagiosServiceReport report = new NagiosServiceReport("disk",
+				"localhost", NagiosServiceStatus.WARNING, OUTPUT,
+				1400000000000L, 1400000000123L);
+		report.getRouting().setGraphResults(true);
+		report.getRouting().setReportResults(false);
+		return report;
+	}
+
+	private static void assertSameReport(NagiosServiceReport decoded,
+			NagiosServiceReport report) {
+		assertEquals(decoded.getServiceName(), report.getServiceName());
+		assertEquals(decoded.getServiceHost(), report.getServiceHost());
+		assertEquals(decoded.getStatus(), report.getStatus());
+		assertEquals(decoded.getStartTime(), report.getStartTime());
+		assertEquals(decoded.getFinishTime(), report.getFinishTime());
+		assertEquals(decoded.hasChanged(), report.hasChanged());
+		assertEquals(decoded.getMessages(), report.getMessages());
+		assertEquals(decoded.getMessageWithPerformancedata(),
+				report.getMessageWithPerformancedata());
+		assertEquals(decoded.getFingerprint(), report.getFingerprint());
+		assertEquals(decoded.getRouting().doReportResults(), report.getRouting().doReportResults());
+		assertEquals(decoded.getRouting().doGraphResults(), report.getRouting().doGraphResults());
+		assertEquals(decoded.getRouting().doGraphPerfdata(), report.getRouting().doGraphPerfdata());
+	}
+
+	@Test(description = "Test encoding and decoding a report")
+	public void testRoundTrip() throws IOException {
+		NagiosServiceReport report = report();
+		NagiosServiceReportCodec codec = new NagiosServiceReportCodec(8);
+		ByteBuffer frame = codec.encode(report);
+		NagiosServiceReport decoded = NagiosServiceReportCodec.decode(frame);
+		assertFalse(frame.hasRemaining());
+		assertSameReport(decoded, report);
+		assertEquals(decoded.getPerfData().get(0).getMaximum(), 9842.0);
+		assertEquals(decoded.getPerfData().get(1).getWarningRange(), "@9000:9832");
+		assertEquals(decoded.getPerfData().get(3).getCurrent(), -3.0);
+	}
+
+	@Test(description = "Test a report without name, host and times")
+	public void testEmptyReport() throws IOException {
+		NagiosServiceReport report = new NagiosServiceReport(null, null,
+				NagiosServiceStatus.UNKNOWN);
+		NagiosServiceReport decoded = NagiosServiceReportCodec
+				.decode(new NagiosServiceReportCodec().encode(report));
+		assertSameReport(decoded, report);
+		assertNull(decoded.getServiceHost());
+		assertEquals(decoded.getStartTime(), -1);
+	}
+
+	@Test(description = "Test decoding incomplete and consecutive frames")
+	public void testFraming() throws IOException {
+		NagiosServiceReportCodec codec = new NagiosServiceReportCodec();
+		ByteBuffer frame = codec.encode(report());
+		ByteBuffer stream = ByteBuffer.allocate(frame.remaining() * 2);
+		stream.put(frame.duplicate()).put(frame.duplicate());
+		stream.flip();
+
+		ByteBuffer partial = stream.duplicate();
+		partial.limit(frame.remaining() - 1);
+		assertNull(NagiosServiceReportCodec.decode(partial));
+		assertEquals(partial.position(), 0);
+
+		assertSameReport(NagiosServiceReportCodec.decode(stream), report());
+		assertSameReport(NagiosServiceReportCodec.decode(stream), report());
+		assertNull(NagiosServiceReportCodec.decode(stream));
+	}
+
+	@Test(description = "Test reading frames from a stream")
+	public void testStream() throws IOException {
+		NagiosServiceReportCodec codec = new NagiosServiceReportCodec();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		codec.write(report(), out);
+		codec.write(new NagiosServiceReport("load", "localhost",
+				NagiosServiceStatus.OK, "OK", 1, 2), out);
+
+		ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+		assertSameReport(codec.read(in), report());
+		assertEquals(codec.read(in).getServiceName(), "load");
+		assertNull(codec.read(in));
+	}
+
+	@Test(description = "Test the encoding is much smaller than Java serialization")
+	public void testSize() throws IOException {
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		ObjectOutputStream objectOutput = new ObjectOutputStream(serialized);
+		objectOutput.writeObject(report());
+		objectOutput.close();
+		int encoded = new NagiosServiceReportCodec().encode(report()).remaining();
+		assertTrue(encoded * 4 < serialized.size(), encoded + " / " + serialized.size());
+	}
+
+	@Test(description = "Test an unknown version is rejected", expectedExceptions = NagiosServiceReportCodecException.class)
+	public void testUnknownVersion() throws IOException {
+		NagiosServiceReportCodec.decode(ByteBuffer.wrap(new byte[] { 2, 2, 0 }));
+	}
+
+	@Test(description = "Test oversized frames are rejected", expectedExceptions = NagiosServiceReportCodecException.class)
+	public void testOversizedFrame() throws IOException {
+		NagiosServiceReportCodec.decode(ByteBuffer.wrap(new byte[] {
+				(byte) 0xff, (byte) 0xff, (byte) 0xff, 0x7f }));
+	}
+
+	@Test(description = "Test truncated payloads are rejected", expectedExceptions = NagiosServiceReportCodecException.class)
+	public void testTruncatedPayload() throws IOException {
+		// the message count claims more messages than the frame contains
+		NagiosServiceReportCodec.decode(ByteBuffer.wrap(new byte[] {
+				8, 1, 0, 0, 0, 0, 1, '\n', 100 }));
+	}
+}
@@ -0,0 +1,83 @@
+package org.activecheck.common.nagios;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class NagiosServiceReportSnapshotTest {
+	private static final String OUTPUT = "DISK OK - a|b | root=2016MB;9832;9822;0;9842 load=0.2";
+
+	@Test(description = "Test the snapshot renders like the report")
+	public void testRendering() {
+		NagiosServiceReport report = new NagiosServiceReport("disk", "localhost",
+				NagiosServiceStatus.OK, OUTPUT, 1, 2);
+		report.addMessage("second line");
+		NagiosServiceReportSnapshot snapshot = new NagiosServiceReportSnapshot(report);
+		assertEquals(snapshot.getServiceName(), "disk");
+		assertEquals(snapshot.getServiceHost(), "localhost");
+		assertEquals(snapshot.getStatus(), NagiosServiceStatus.OK);
+		assertEquals(snapshot.getFingerprint(), report.getFingerprint());
+		assertEquals(snapshot.getMessage(), report.getMessage());
+		assertEquals(snapshot.getMessageWithPerformancedata(),
+				report.getMessageWithPerformancedata());
+		assertSame(snapshot.getMessage(), snapshot.getMessage());
+	}
+
+	@Test(description = "Test a report with its own host keeps that host")
+	public void testHost() {
+		NagiosServiceReport report = new NagiosServiceReport("disk", "servicehost",
+				NagiosServiceStatus.OK, "OK", 1, 2);
+		assertEquals(new NagiosServiceReportSnapshot(report, "fqdn", 10, 20)
+				.getServiceHost(), "servicehost");
+		assertEquals(new NagiosServiceReportSnapshot(report, null, 10, 20)
+				.getServiceHost(), "servicehost");
+	}
+
+	@Test(description = "Test host and times default to the given values")
+	public void testDefaults() {
+		NagiosServiceReport report = new NagiosServiceReport("disk", null,
+				NagiosServiceStatus.WARNING);
+		NagiosServiceReportSnapshot snapshot = new NagiosServiceReportSnapshot(
+				report, "fqdn", 10, 20);
+		assertEquals(snapshot.getServiceHost(), "fqdn");
+		assertEquals(snapshot.getStartTime(), 10);
+		assertEquals(snapshot.getFinishTime(), 20);
+
+		report = new NagiosServiceReport("disk", "localhost",
+				NagiosServiceStatus.WARNING, "OK", 1, 2);
+		snapshot = new NagiosServiceReportSnapshot(report, "fqdn", 10, 20);
+		assertEquals(snapshot.getServiceHost(), "localhost");
+		assertEquals(snapshot.getStartTime(), 1);
+		assertEquals(snapshot.getFinishTime(), 2);
+	}
+
+	@Test(description = "Test the snapshot is not affected by later changes")
+	public void testIsolation() {
+		NagiosServiceReport report = new NagiosServiceReport("disk", "localhost",
+				NagiosServiceStatus.OK, OUTPUT, 1, 2);
+		NagiosServiceReportSnapshot snapshot = new NagiosServiceReportSnapshot(report);
+		String rendered = snapshot.getMessageWithPerformancedata();
+
+		report.setStatus(NagiosServiceStatus.CRITICAL);
+		report.addMessage("changed");
+		report.getPerfData().get(0).setName("changed");
+		report.getRouting().setGraphPerfdata(false);
+
+		assertEquals(snapshot.getStatus(), NagiosServiceStatus.OK);
+		assertEquals(snapshot.getPerfData().get(0).getName(), "root");
+		assertEquals(snapshot.getMessageWithPerformancedata(), rendered);
+		assertTrue(new NagiosServiceReportSnapshot(report).getMessage().contains("changed"));
+		assertTrue(snapshot.doGraphPerfdata());
+		assertFalse(new NagiosServiceReportSnapshot(report).doGraphPerfdata());
+	}
+
+	@Test(description = "Test the performance data can not be modified", expectedExceptions = UnsupportedOperationException.class)
+	public void testUnmodifiablePerfData() {
+		new NagiosServiceReportSnapshot(new NagiosServiceReport("disk",
+				"localhost", NagiosServiceStatus.OK, OUTPUT, 1, 2)).getPerfData()
+				.clear();
+	}
+}
@@ -1,6 +1,9 @@
 package org.activecheck.common.nagios;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -40,4 +43,56 @@ public class NagiosServiceReportTest {
 		assertEquals(reports.get(6).getStatus(), NagiosServiceStatus.OK);
 		assertEquals(reports.get(7).getStatus(), NagiosServiceStatus.OK);
 	}
+
+	@Test(description = "Detect changes by fingerprint")
+	public void testHasChanged() {
+		NagiosServiceReport previous = new NagiosServiceReport("test", "testhost",
+				NagiosServiceStatus.OK, "OK | a=1;2;3 b=4s", 1, 2);
+		NagiosServiceReport same = new NagiosServiceReport("test", "testhost",
+				NagiosServiceStatus.OK, "OK | a=1;2;3 b=4s", 3, 4);
+		assertEquals(same.getFingerprint(), previous.getFingerprint());
+		assertFalse(same.hasChanged(previous));
+		assertFalse(same.hasChanged());
+
+		assertTrue(new NagiosServiceReport("test", "testhost",
+				NagiosServiceStatus.WARNING, "OK | a=1;2;3 b=4s", 3, 4)
+				.hasChanged(previous));
+		assertTrue(new NagiosServiceReport("test", "testhost",
+				NagiosServiceStatus.OK, "OK | a=1;2;3 b=5s", 3, 4)
+				.hasChanged(previous));
+		assertTrue(new NagiosServiceReport("test", "testhost",
+				NagiosServiceStatus.OK, "OK | a=1;2;3 b=4ms", 3, 4)
+				.hasChanged(previous));
+		assertTrue(new NagiosServiceReport("test", "testhost",
+				NagiosServiceStatus.OK, "OK! | a=1;2;3 b=4s", 3, 4)
+				.hasChanged(previous));
+		assertTrue(new NagiosServiceReport("test", "testhost",
+				NagiosServiceStatus.OK, "OK | b=4s a=1;2;3", 3, 4)
+				.hasChanged(previous));
+	}
+
+	@Test(description = "Fingerprint follows merges and rewrites")
+	public void testFingerprintIsIncremental() {
+		NagiosCheckResult checkResult = NagiosCheckResult.fromMessage("OK | a_b=1");
+		NagiosServiceReport merged = new NagiosServiceReport("test", "testhost", checkResult);
+		assertEquals(merged.getFingerprint(), checkResult.getFingerprint());
+
+		merged.applyPerfDataRules(NagiosPerformanceDataRules.EMPTY.withRename("_", "."));
+		assertNotEquals(merged.getFingerprint(), checkResult.getFingerprint());
+		assertEquals(merged.getFingerprint(),
+				NagiosCheckResult.fromMessage("OK | a.b=1").getFingerprint());
+
+		checkResult.parseMessage("OK | a.b=1");
+		assertEquals(merged.getFingerprint(), checkResult.getFingerprint());
+	}
+
+	@Test(description = "Fingerprint follows the concatenator")
+	public void testFingerprintConcatenator() {
+		NagiosCheckResult checkResult = NagiosCheckResult.fromMessage("OK\nsecond | a=1");
+		long fingerprint = checkResult.getFingerprint();
+		checkResult.setConcatenator(", ");
+		assertNotEquals(checkResult.getFingerprint(), fingerprint);
+		checkResult.setConcatenator("\n");
+		assertEquals(checkResult.getFingerprint(), fingerprint);
+	}
 }
@@ -0,0 +1,114 @@
+package org.activecheck.common.nagios;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+public class NagiosThresholdTest {
+	@Test(description = "Test empty threshold")
+	public void testEmpty() {
+		assertNull(NagiosThreshold.compile(null));
+		assertNull(NagiosThreshold.compile(""));
+	}
+
+	@Test(description = "Test range 10")
+	public void testUpperBound() {
+		NagiosThreshold threshold = NagiosThreshold.compile("10");
+		assertFalse(threshold.matches(0));
+		assertFalse(threshold.matches(10));
+		assertTrue(threshold.matches(10.5));
+		assertTrue(threshold.matches(-1));
+	}
+
+	@Test(description = "Test range 10:")
+	public void testLowerBound() {
+		NagiosThreshold threshold = NagiosThreshold.compile("10:");
+		assertTrue(threshold.matches(9.99));
+		assertFalse(threshold.matches(10));
+		assertFalse(threshold.matches(Double.MAX_VALUE));
+		assertTrue(threshold.isLessThan());
+	}
+
+	@Test(description = "Test range ~:10")
+	public void testNegativeInfinity() {
+		NagiosThreshold threshold = NagiosThreshold.compile("~:10");
+		assertFalse(threshold.matches(-1000));
+		assertFalse(threshold.matches(10));
+		assertTrue(threshold.matches(11));
+	}
+
+	@Test(description = "Test range 10:20")
+	public void testOutside() {
+		NagiosThreshold threshold = NagiosThreshold.compile("10:20");
+		assertTrue(threshold.matches(9));
+		assertFalse(threshold.matches(10));
+		assertFalse(threshold.matches(20));
+		assertTrue(threshold.matches(21));
+	}
+
+	@Test(description = "Test range @10:20")
+	public void testInside() {
+		NagiosThreshold threshold = NagiosThreshold.compile("@10:20");
+		assertFalse(threshold.matches(9));
+		assertTrue(threshold.matches(10));
+		assertTrue(threshold.matches(20));
+		assertFalse(threshold.matches(21));
+		assertEquals(threshold.getDefinition(), "@10:20");
+	}
+
+	@Test(description = "Test activecheck prefixes")
+	public void testPrefixes() {
+		NagiosThreshold threshold = NagiosThreshold.compile(">0.5");
+		assertTrue(threshold.matches(0.6));
+		assertFalse(threshold.matches(0.5));
+		assertFalse(threshold.matches(-10));
+		assertEquals(threshold.getDefinition(), "0.5");
+
+		threshold = NagiosThreshold.compile("<30");
+		assertTrue(threshold.matches(29));
+		assertFalse(threshold.matches(30));
+		assertTrue(threshold.isLessThan());
+	}
+
+	@Test(description = "Test strings")
+	public void testStrings() {
+		NagiosThreshold threshold = NagiosThreshold.compile("Stopped|Failed.*");
+		assertTrue(threshold.matches("stopped"));
+		assertTrue(threshold.matches("FAILED to start"));
+		assertFalse(threshold.matches("Started"));
+
+		threshold = NagiosThreshold.compile("^Started");
+		assertTrue(threshold.matches("Stopped"));
+		assertFalse(threshold.matches("started"));
+	}
+
+	@Test(description = "Test invalid expression is matched literally")
+	public void testLiteralStrings() {
+		NagiosThreshold threshold = NagiosThreshold.compile("a(b|c");
+		assertTrue(threshold.matches("a(b"));
+		assertTrue(threshold.matches("c"));
+		assertFalse(threshold.matches("ab"));
+	}
+
+	@Test(description = "Test string threshold on numbers", expectedExceptions = IllegalArgumentException.class)
+	public void testNotNumeric() {
+		NagiosThreshold.compile("Started").matches(1);
+	}
+
+	@Test(description = "Test a negative number alerts above it")
+	public void testNegative() {
+		NagiosThreshold threshold = NagiosThreshold.compile("-5");
+		assertTrue(threshold.isNumeric());
+		assertTrue(threshold.matches(-4));
+		assertFalse(threshold.matches(-5));
+		assertFalse(threshold.matches(-100));
+	}
+
+	@Test(description = "Test a range starting above its end", expectedExceptions = IllegalArgumentException.class)
+	public void testReversedRange() {
+		NagiosThreshold.compile("10:5");
+	}
+}
@@ -0,0 +1,151 @@
+package org.activecheck.common.pidfile;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class PidFileFactoryTest {
+	private Path directory;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("activecheck");
+	}
+
+	@AfterClass
+	public void tearDown() throws IOException {
+		Files.walk(directory).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	/**
+	 * Collects the pids observed.
+	 */
+	private static class Pids implements Observer {
+		private final BlockingQueue<Optional<Integer>> pids = new LinkedBlockingQueue<>();
+
+		@Override
+		public void update(Observable o, Object arg) {
+			pids.add(((PidFile) o).getPid());
+		}
+
+		Optional<Integer> take() throws InterruptedException {
+			Optional<Integer> pid = pids.poll(PidFileWatcher.CHECK_INTERVAL_SECONDS * 2, TimeUnit.SECONDS);
+			assertNotNull(pid, "pid change not observed");
+			return pid;
+		}
+	}
+
+	private static void write(Path file, String content) throws IOException {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static int watcherThreads() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("PidFileWatcher")) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test(description = "Test changes of pidfiles are observed by one thread")
+	public void testWatch() throws Exception {
+		Path first = directory.resolve("first.pid");
+		Path second = directory.resolve("second.pid");
+		write(first, "100\n");
+		Pids firstPids = new Pids();
+		Pids secondPids = new Pids();
+		PidFile firstPidFile = PidFileFactory.create(first.toString(), firstPids);
+		PidFile secondPidFile = PidFileFactory.create(second.toString(), secondPids);
+		assertEquals(firstPidFile.getPid(), Optional.of(100));
+		assertFalse(secondPidFile.getPid().isPresent());
+		assertEquals(watcherThreads(), 1);
+
+		write(first, "200\n");
+		assertEquals(firstPids.take(), Optional.of(200));
+		write(second, "300\n");
+		assertEquals(secondPids.take(), Optional.of(300));
+		Files.delete(first);
+		assertEquals(firstPids.take(), Optional.empty());
+
+		PidFileFactory.delete(first.toString(), firstPids);
+		PidFileFactory.delete(second.toString(), secondPids);
+		assertEquals(firstPidFile.countObservers(), 0);
+	}
+
+	@Test(description = "Test a slow observer does not delay other pidfiles")
+	public void testSlowObserver() throws Exception {
+		Path slow = directory.resolve("slow.pid");
+		Path fast = directory.resolve("fast.pid");
+		CountDownLatch release = new CountDownLatch(1);
+		Pids slowPids = new Pids() {
+			@Override
+			public void update(Observable o, Object arg) {
+				super.update(o, arg);
+				try {
+					release.await(30, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		Pids fastPids = new Pids();
+		PidFileFactory.create(slow.toString(), slowPids);
+		PidFileFactory.create(fast.toString(), fastPids);
+		try {
+			write(slow, "600\n");
+			assertEquals(slowPids.take(), Optional.of(600));
+			write(slow, "700\n");
+			write(fast, "800\n");
+			assertEquals(fastPids.take(), Optional.of(800));
+
+			// the pidfile changed while its observer was busy is read again
+			release.countDown();
+			assertEquals(slowPids.take(), Optional.of(700));
+		} finally {
+			release.countDown();
+			PidFileFactory.delete(slow.toString(), slowPids);
+			PidFileFactory.delete(fast.toString(), fastPids);
+		}
+	}
+
+	@Test(description = "Test a pidfile in a directory created later is observed")
+	public void testMissingDirectory() throws Exception {
+		Path later = directory.resolve("later");
+		Path file = later.resolve("later.pid");
+		Pids pids = new Pids();
+		PidFile pidfile = PidFileFactory.create(file.toString(), pids);
+		assertFalse(pidfile.getPid().isPresent());
+
+		Files.createDirectory(later);
+		write(file, "400\n");
+		assertEquals(pids.take(), Optional.of(400));
+
+		// watched from now on
+		long start = System.currentTimeMillis();
+		write(file, "500\n");
+		assertEquals(pids.take(), Optional.of(500));
+		assertTrue(System.currentTimeMillis() - start < PidFileWatcher.CHECK_INTERVAL_SECONDS * 1000);
+		PidFileFactory.delete(file.toString(), pids);
+	}
+}
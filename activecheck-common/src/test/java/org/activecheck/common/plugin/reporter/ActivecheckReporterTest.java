@@ -0,0 +1,133 @@
+package org.activecheck.common.plugin.reporter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+public class ActivecheckReporterTest {
+	private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+
+	private static class DeferringReporter extends ActivecheckReporter {
+		private ActivecheckReporterCompletion completion = null;
+		private boolean complete = false;
+		private ActivecheckReporterException error = null;
+		private final List<ActivecheckReporterStatus> notified = new ArrayList<>();
+
+		DeferringReporter() {
+			super(properties());
+			addObserver(new Observer() {
+				@Override
+				public void update(Observable o, Object arg) {
+					notified.add((ActivecheckReporterStatus) arg);
+				}
+			});
+		}
+
+		private static PropertiesConfiguration properties() {
+			PropertiesConfiguration properties = new PropertiesConfiguration();
+			properties.setProperty("servicename", "deferred");
+			return properties;
+		}
+
+		@Override
+		protected void reporterInit() {
+		}
+
+		@Override
+		protected void cleanUp() {
+		}
+
+		@Override
+		public void runCommand() throws ActivecheckReporterException {
+			completion = deferCompletion();
+			if (complete) {
+				completion.complete();
+			}
+			if (error != null) {
+				throw error;
+			}
+		}
+
+		void finish() {
+			setOverallServiceReport(NagiosServiceStatus.OK, "finished");
+			completion.complete();
+		}
+	}
+
+	@AfterClass
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	private DeferringReporter runScheduled(DeferringReporter reporter) {
+		reporter.schedule(executor, 60000);
+		reporter.run();
+		return reporter;
+	}
+
+	@Test(description = "Test a deferred run ends when it is completed")
+	public void testDeferred() {
+		DeferringReporter reporter = runScheduled(new DeferringReporter());
+		assertEquals(reporter.getStatus(), ActivecheckReporterStatus.RUNNING);
+		assertTrue(reporter.notified.isEmpty());
+
+		reporter.finish();
+		assertEquals(reporter.getStatus(), ActivecheckReporterStatus.REQUEUE);
+		assertEquals(reporter.notified.size(), 1);
+		assertEquals(reporter.getOverallServiceStatus(), "OK");
+
+		// later completions are ignored
+		reporter.completion.complete();
+		assertEquals(reporter.notified.size(), 1);
+	}
+
+	@Test(description = "Test a deferred run completed before the command returned")
+	public void testCompletedEarly() {
+		DeferringReporter reporter = new DeferringReporter();
+		reporter.complete = true;
+		runScheduled(reporter);
+		assertEquals(reporter.getStatus(), ActivecheckReporterStatus.REQUEUE);
+		assertEquals(reporter.notified.size(), 1);
+	}
+
+	@Test(description = "Test a deferred run failing")
+	public void testFailed() {
+		DeferringReporter reporter = runScheduled(new DeferringReporter());
+		reporter.completion.fail(new ActivecheckReporterException("failed"));
+		assertEquals(reporter.getStatus(), ActivecheckReporterStatus.ERROR);
+		assertEquals(reporter.getOverallServiceStatus(), "CRITICAL");
+		assertEquals(reporter.notified.size(), 1);
+	}
+
+	@Test(description = "Test a command throwing after deferring ends the run")
+	public void testThrown() {
+		DeferringReporter reporter = new DeferringReporter();
+		reporter.error = new ActivecheckReporterException("thrown");
+		runScheduled(reporter);
+		assertEquals(reporter.getStatus(), ActivecheckReporterStatus.ERROR);
+		assertEquals(reporter.notified.size(), 1);
+
+		reporter.finish();
+		assertEquals(reporter.getStatus(), ActivecheckReporterStatus.ERROR);
+		assertEquals(reporter.notified.size(), 1);
+	}
+
+	@Test(description = "Test a command run outside the scheduler is not deferred")
+	public void testRunCommandOperation() {
+		DeferringReporter reporter = new DeferringReporter();
+		reporter.runCommandOperation();
+		reporter.finish();
+		assertEquals(reporter.getStatus(), ActivecheckReporterStatus.NEW);
+		assertTrue(reporter.notified.isEmpty());
+	}
+}
@@ -0,0 +1,186 @@
+package org.activecheck.common.plugin.reporter;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+public class ActivecheckTargetLimiterTest {
+	private final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+
+	private static class RecordingExecutor implements Executor {
+		private final List<Runnable> executed = new ArrayList<>();
+
+		@Override
+		public void execute(Runnable command) {
+			executed.add(command);
+		}
+	}
+
+	private static class TargetReporter extends ActivecheckReporter {
+		private final String target;
+		private ActivecheckReporterCompletion completion = null;
+		private RuntimeException error = null;
+
+		TargetReporter(String name, String target) {
+			super(properties(name));
+			this.target = target;
+		}
+
+		private static PropertiesConfiguration properties(String name) {
+			PropertiesConfiguration properties = new PropertiesConfiguration();
+			properties.setProperty("servicename", name);
+			return properties;
+		}
+
+		@Override
+		public String getTarget() {
+			return target;
+		}
+
+		@Override
+		protected void reporterInit() {
+		}
+
+		@Override
+		protected void cleanUp() {
+		}
+
+		@Override
+		public void runCommand() throws ActivecheckReporterException {
+			completion = deferCompletion();
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+
+	@AfterClass
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	private TargetReporter due(String name, String target, ActivecheckTargetLimiter limiter) {
+		TargetReporter reporter = new TargetReporter(name, target);
+		reporter.setTargetLimiter(limiter);
+		reporter.schedule(scheduler, 60000);
+		reporter.run();
+		return reporter;
+	}
+
+	@Test(description = "Test reporters of a target at its limit wait without a thread")
+	public void testLimit() {
+		RecordingExecutor executor = new RecordingExecutor();
+		ActivecheckTargetLimiter limiter = new ActivecheckTargetLimiter(executor, 2);
+		TargetReporter first = due("first", "host:5666", limiter);
+		TargetReporter second = due("second", "host:5666", limiter);
+		TargetReporter third = due("third", "host:5666", limiter);
+		assertEquals(first.getStatus(), ActivecheckReporterStatus.RUNNING);
+		assertEquals(second.getStatus(), ActivecheckReporterStatus.RUNNING);
+		assertEquals(third.getStatus(), ActivecheckReporterStatus.SCHEDULED);
+		assertEquals(limiter.getInFlight(), Collections.singletonMap("host:5666", 2));
+		assertEquals(limiter.getQueueDepths(), Collections.singletonMap("host:5666", 1));
+		assertEquals(limiter.getQueued(), 1);
+		assertTrue(executor.executed.isEmpty());
+
+		// the finished run hands its slot to the waiting reporter
+		first.completion.complete();
+		assertEquals(executor.executed, Collections.singletonList(third));
+		assertEquals(limiter.getQueued(), 0);
+		third.run();
+		assertEquals(third.getStatus(), ActivecheckReporterStatus.RUNNING);
+		assertEquals(limiter.getInFlight(), Collections.singletonMap("host:5666", 2));
+
+		second.completion.complete();
+		third.completion.complete();
+		assertTrue(limiter.getInFlight().isEmpty());
+	}
+
+	@Test(description = "Test waiting reporters run in order of arrival")
+	public void testFairness() {
+		RecordingExecutor executor = new RecordingExecutor();
+		ActivecheckTargetLimiter limiter = new ActivecheckTargetLimiter(executor, 1);
+		TargetReporter running = due("running", "jmx", limiter);
+		List<TargetReporter> waiting = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			waiting.add(due("waiting" + i, "jmx", limiter));
+		}
+		assertEquals(limiter.getQueueDepths(), Collections.singletonMap("jmx", 5));
+
+		running.completion.complete();
+		for (int i = 0; i < 5; i++) {
+			assertEquals(executor.executed.get(i), waiting.get(i));
+			waiting.get(i).run();
+			// a reporter due meanwhile queues behind the waiting ones
+			due("late" + i, "jmx", limiter);
+			waiting.get(i).completion.complete();
+		}
+		// the first late reporter has taken over the slot
+		assertEquals(limiter.getQueueDepths(), Collections.singletonMap("jmx", 4));
+		assertEquals(((TargetReporter) executor.executed.get(5)).getOverallServiceName(), "late0");
+	}
+
+	@Test(description = "Test targets are limited independently and reporters without target not at all")
+	public void testTargets() {
+		RecordingExecutor executor = new RecordingExecutor();
+		ActivecheckTargetLimiter limiter = new ActivecheckTargetLimiter(executor, 1);
+		assertEquals(due("a", "a:1", limiter).getStatus(), ActivecheckReporterStatus.RUNNING);
+		assertEquals(due("b", "b:1", limiter).getStatus(), ActivecheckReporterStatus.RUNNING);
+		assertEquals(due("none1", null, limiter).getStatus(), ActivecheckReporterStatus.RUNNING);
+		assertEquals(due("none2", null, limiter).getStatus(), ActivecheckReporterStatus.RUNNING);
+		assertEquals(limiter.getQueued(), 0);
+	}
+
+	@Test(description = "Test a limit of 0 does not limit")
+	public void testUnlimited() {
+		ActivecheckTargetLimiter limiter = new ActivecheckTargetLimiter(new RecordingExecutor(), 0);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(due("unlimited" + i, "host", limiter).getStatus(), ActivecheckReporterStatus.RUNNING);
+		}
+		assertEquals(limiter.getInFlight(), Collections.singletonMap("host", 10));
+	}
+
+	@Test(description = "Test a disabled reporter leaves the queue and gives back its slot")
+	public void testRemoved() {
+		RecordingExecutor executor = new RecordingExecutor();
+		ActivecheckTargetLimiter limiter = new ActivecheckTargetLimiter(executor, 1);
+		TargetReporter running = due("running", "host", limiter);
+		TargetReporter disabled = due("disabled", "host", limiter);
+		TargetReporter granted = due("granted", "host", limiter);
+		TargetReporter last = due("last", "host", limiter);
+		disabled.disable();
+		assertEquals(limiter.getQueueDepths(), Collections.singletonMap("host", 2));
+
+		running.completion.complete();
+		assertEquals(executor.executed, Collections.singletonList(granted));
+		granted.disable();
+		assertEquals(executor.executed.get(1), last);
+		last.run();
+		assertEquals(last.getStatus(), ActivecheckReporterStatus.RUNNING);
+		assertEquals(limiter.getInFlight(), Collections.singletonMap("host", 1));
+	}
+
+	@Test(description = "Test a command throwing unexpectedly gives back its slot")
+	public void testRuntimeException() {
+		RecordingExecutor executor = new RecordingExecutor();
+		ActivecheckTargetLimiter limiter = new ActivecheckTargetLimiter(executor, 1);
+		TargetReporter failing = new TargetReporter("failing", "host");
+		failing.error = new IllegalStateException("unexpected");
+		failing.setTargetLimiter(limiter);
+		failing.schedule(scheduler, 60000);
+		try {
+			failing.run();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(due("next", "host", limiter).getStatus(), ActivecheckReporterStatus.RUNNING);
+	}
+}
@@ -0,0 +1,22 @@
+package org.activecheck.plugin.reporter.exec;
+
+/**
+ * Receives the outcome of an {@link ExecRequest}. The methods are called on
+ * the thread of the {@link ExecEngine} and must not block.
+ */
+public interface ExecCallback {
+	/**
+	 * @param exitCode
+	 *            the exit code of the plugin
+	 * @param output
+	 *            the standard output of the plugin, truncated to
+	 *            {@link ExecEngine#MAX_OUTPUT} bytes
+	 */
+	void completed(int exitCode, String output);
+
+	/**
+	 * Called if the plugin could not be started or has been killed after
+	 * its timeout.
+	 */
+	void failed(Exception e);
+}
@@ -0,0 +1,111 @@
+package org.activecheck.plugin.reporter.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.activecheck.common.nagios.NagiosCheck;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+
+/**
+ * A plugin command line, split into arguments like a shell does for words in
+ * single or double quotes and backslash escapes. Nothing else is expanded as
+ * no shell is run.
+ */
+public class ExecCommand extends NagiosCheck {
+	private final String commandLine;
+	private final String[] command;
+
+	public ExecCommand(String commandLine) {
+		Validate.notEmpty(commandLine, "the command must be set");
+		this.commandLine = commandLine;
+		command = split(commandLine);
+		Validate.notEmpty(command, "the command must be set");
+
+		checkResult.setStatus(NagiosServiceStatus.UNKNOWN);
+	}
+
+	static String[] split(String commandLine) {
+		final List<String> arguments = new ArrayList<>();
+		final StringBuilder argument = new StringBuilder();
+		boolean inArgument = false;
+		char quote = 0;
+		for (int i = 0; i < commandLine.length(); i++) {
+			final char c = commandLine.charAt(i);
+			if (quote == '\'') {
+				if (c == '\'') {
+					quote = 0;
+				} else {
+					argument.append(c);
+				}
+			} else if (c == '\\' && i + 1 < commandLine.length()) {
+				final char escaped = commandLine.charAt(++i);
+				// within double quotes only quotes and backslashes are escaped
+				if (quote == '"' && escaped != '"' && escaped != '\\') {
+					argument.append(c);
+				}
+				argument.append(escaped);
+				inArgument = true;
+			} else if (quote == '"') {
+				if (c == '"') {
+					quote = 0;
+				} else {
+					argument.append(c);
+				}
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+				inArgument = true;
+			} else if (Character.isWhitespace(c)) {
+				if (inArgument) {
+					arguments.add(argument.toString());
+					argument.setLength(0);
+					inArgument = false;
+				}
+			} else {
+				argument.append(c);
+				inArgument = true;
+			}
+		}
+		Validate.isTrue(quote == 0, "unterminated quote in command '" + commandLine + "'");
+		if (inArgument) {
+			arguments.add(argument.toString());
+		}
+		return arguments.toArray(new String[arguments.size()]);
+	}
+
+	/**
+	 * @return the plugin followed by its arguments
+	 */
+	public String[] getCommand() {
+		return command.clone();
+	}
+
+	/**
+	 * Sets the result from the output and exit code of the plugin, handling
+	 * exit codes out of bounds like Nagios does.
+	 */
+	public void parseOutput(int exitCode, String output) {
+		output = StringUtils.stripEnd(output, "\r\n");
+		if (exitCode < 0 || exitCode > NagiosServiceStatus.UNKNOWN.getStatusCode()) {
+			final String message;
+			if (exitCode == 126) {
+				message = "(Return code of 126 is out of bounds - plugin may not be executable)";
+			} else if (exitCode == 127) {
+				message = "(Return code of 127 is out of bounds - plugin may be missing)";
+			} else {
+				message = "(Return code of " + exitCode + " is out of bounds)";
+			}
+			checkResult.parseMessage(StringUtils.isBlank(output) ? message : message + " " + output,
+					NagiosServiceStatus.CRITICAL);
+		} else {
+			final NagiosServiceStatus status = NagiosServiceStatus.statusCodeToStatus(exitCode);
+			checkResult.parseMessage(StringUtils.isBlank(output) ? "(No output returned from plugin)" : output, status);
+		}
+	}
+
+	@Override
+	public String getQuery() {
+		return commandLine;
+	}
+}
@@ -0,0 +1,319 @@
+package org.activecheck.plugin.reporter.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.activecheck.common.Encoding;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link ExecRequest}s without blocking the caller.
+ * <p>
+ * At most {@link #getMaxProcesses()} plugins run at the same time, further
+ * requests wait in order of submission. One thread starts the plugins and
+ * collects their output. Process pipes cannot be selected, so the thread
+ * reads only the bytes already available from every pipe and waits a few
+ * milliseconds while none of the plugins has written anything. It never
+ * blocks on a single plugin, and plugins never block on a full pipe.
+ * <p>
+ * Plugins are started in a session of their own with <code>setsid</code> if
+ * it is available. A plugin exceeding its timeout is killed together with
+ * all processes it has started. Its standard error is discarded like nrpe
+ * does.
+ */
+public final class ExecEngine implements Runnable, Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(ExecEngine.class);
+	public static final int MAX_OUTPUT = 64 * 1024;
+	public static final int DEFAULT_MAX_PROCESSES = 4;
+	private static final long POLL_INTERVAL_MILLIS = 5;
+	private static final File NULL_FILE = new File("/dev/null");
+	private static final String[] SETSID_PATHS = { "/usr/bin/setsid", "/bin/setsid" };
+
+	private static ExecEngine instance = null;
+
+	private final Thread thread;
+	private final String setsid;
+	private final BlockingQueue<ExecRequest> submitted = new LinkedBlockingQueue<>();
+	// used by the engine thread only
+	private final Queue<ExecRequest> waiting = new ArrayDeque<>();
+	private final List<Execution> executions = new ArrayList<>();
+	private final byte[] readBuffer = new byte[8192];
+	private volatile boolean running = true;
+	private volatile int maxProcesses = DEFAULT_MAX_PROCESSES;
+	private volatile int processes = 0;
+	private final AtomicInteger queued = new AtomicInteger();
+
+	/**
+	 * @return the engine shared by all exec reporters
+	 */
+	public static synchronized ExecEngine getInstance() {
+		if (instance == null) {
+			instance = new ExecEngine("ExecEngine");
+		}
+		return instance;
+	}
+
+	public ExecEngine(String threadName) {
+		setsid = findSetsid();
+		thread = new Thread(this, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static String findSetsid() {
+		for (String path : SETSID_PATHS) {
+			if (new File(path).canExecute()) {
+				return path;
+			}
+		}
+		logger.warn("setsid not found, only the plugin itself is killed on timeout");
+		return null;
+	}
+
+	/**
+	 * Starts the plugin of a request as soon as fewer than the maximum number
+	 * of plugins are running.
+	 */
+	public void submit(ExecRequest request) {
+		if (!running) {
+			fail(request, new IOException("the exec engine has been closed"));
+			return;
+		}
+		queued.incrementAndGet();
+		submitted.add(request);
+	}
+
+	/**
+	 * @param maxProcesses
+	 *            the maximum number of plugins running at the same time
+	 */
+	public void setMaxProcesses(int maxProcesses) {
+		Validate.isTrue(maxProcesses > 0, "the maximum number of processes must be positive");
+		this.maxProcesses = maxProcesses;
+	}
+
+	public int getMaxProcesses() {
+		return maxProcesses;
+	}
+
+	/**
+	 * @return the number of plugins running
+	 */
+	public int getProcesses() {
+		return processes;
+	}
+
+	/**
+	 * @return the number of requests waiting for a plugin to finish
+	 */
+	public int getQueued() {
+		return queued.get();
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				// wait for a request while nothing is running
+				final ExecRequest next = executions.isEmpty() && waiting.isEmpty() ? submitted.take()
+						: submitted.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+				if (next != null) {
+					waiting.add(next);
+					submitted.drainTo(waiting);
+				}
+				while (executions.size() < maxProcesses && !waiting.isEmpty()) {
+					start(waiting.poll());
+				}
+				final long now = System.currentTimeMillis();
+				final Iterator<Execution> iterator = executions.iterator();
+				while (iterator.hasNext()) {
+					if (iterator.next().poll(now)) {
+						iterator.remove();
+					}
+				}
+				processes = executions.size();
+			} catch (InterruptedException e) {
+				break;
+			} catch (RuntimeException e) {
+				logger.error("Error in the exec engine: " + e.getMessage());
+				logger.trace(e.getMessage(), e);
+			}
+		}
+		final IOException closed = new IOException("the exec engine has been closed");
+		for (Execution execution : executions) {
+			execution.kill();
+			fail(execution.request, closed);
+		}
+		waiting.addAll(submitted);
+		for (ExecRequest request : waiting) {
+			fail(request, closed);
+		}
+	}
+
+	private void start(ExecRequest request) {
+		queued.decrementAndGet();
+		final List<String> command = new ArrayList<>(request.getCommand().size() + 1);
+		if (setsid != null) {
+			command.add(setsid);
+		}
+		command.addAll(request.getCommand());
+		try {
+			final Process process = new ProcessBuilder(command).redirectInput(NULL_FILE).redirectError(NULL_FILE)
+					.start();
+			executions.add(new Execution(request, process, System.currentTimeMillis()));
+		} catch (IOException | RuntimeException e) {
+			fail(request, e);
+		}
+	}
+
+	private static void fail(ExecRequest request, Exception e) {
+		try {
+			request.getCallback().failed(e);
+		} catch (RuntimeException re) {
+			logger.error("Unable to process the failure of " + request.getCommand().get(0) + ": "
+					+ re.getMessage());
+			logger.trace(re.getMessage(), re);
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the process id, or -1 if it cannot be determined
+	 */
+	private static long pid(Process process) {
+		try {
+			// Process.pid() exists since Java 9
+			return ((Number) Process.class.getMethod("pid").invoke(process)).longValue();
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			try {
+				final Field field = process.getClass().getDeclaredField("pid");
+				field.setAccessible(true);
+				return field.getInt(process);
+			} catch (ReflectiveOperationException | RuntimeException e2) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * A running plugin.
+	 */
+	private final class Execution {
+		private final ExecRequest request;
+		private final Process process;
+		private final InputStream output;
+		private final long deadline;
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+
+		private Execution(ExecRequest request, Process process, long start) {
+			this.request = request;
+			this.process = process;
+			output = process.getInputStream();
+			deadline = start + request.getTimeoutMillis();
+		}
+
+		/**
+		 * Reads the output written so far and completes the request once the
+		 * plugin has exited or timed out.
+		 *
+		 * @return true if the request has been completed
+		 */
+		private boolean poll(long now) {
+			final String result;
+			try {
+				// a plugin that has exited has written all of its output
+				final boolean exited = !process.isAlive();
+				read();
+				if (!exited) {
+					if (now >= deadline) {
+						kill();
+						fail(request, new TimeoutException("plugin timed out after "
+								+ request.getTimeoutMillis() / 1000 + " seconds"));
+						return true;
+					}
+					return false;
+				}
+				close();
+				result = buffer.toString(Encoding.UTF8.name());
+			} catch (IOException e) {
+				kill();
+				fail(request, e);
+				return true;
+			}
+			try {
+				request.getCallback().completed(process.exitValue(), result);
+			} catch (RuntimeException e) {
+				logger.error("Unable to process the result of " + request.getCommand().get(0) + ": "
+						+ e.getMessage());
+				logger.trace(e.getMessage(), e);
+			}
+			return true;
+		}
+
+		/**
+		 * Reads the bytes available without blocking, bytes beyond
+		 * {@link ExecEngine#MAX_OUTPUT} are dropped.
+		 */
+		private void read() throws IOException {
+			int available;
+			while ((available = output.available()) > 0) {
+				final int read = output.read(readBuffer, 0, Math.min(available, readBuffer.length));
+				if (read < 0) {
+					break;
+				}
+				buffer.write(readBuffer, 0, Math.max(0, Math.min(read, MAX_OUTPUT - buffer.size())));
+			}
+		}
+
+		private void kill() {
+			if (setsid != null) {
+				final long pid = pid(process);
+				if (pid > 0) {
+					try {
+						// the plugin leads its own process group
+						new ProcessBuilder("kill", "-KILL", "--", "-" + pid).redirectInput(NULL_FILE)
+								.redirectOutput(NULL_FILE).redirectError(NULL_FILE).start();
+					} catch (IOException e) {
+						logger.trace(e.getMessage(), e);
+					}
+				}
+			}
+			process.destroyForcibly();
+			close();
+		}
+
+		private void close() {
+			try {
+				output.close();
+			} catch (IOException e) {
+				logger.trace(e.getMessage(), e);
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.activecheck.plugin.reporter.exec;
+
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.activecheck.common.plugin.ActivecheckPluginProperties;
+import org.activecheck.common.plugin.reporter.ActivecheckReporter;
+import org.activecheck.common.plugin.reporter.ActivecheckReporterCompletion;
+import org.activecheck.common.plugin.reporter.ActivecheckReporterException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// reporter properties
+
+@ActivecheckPluginProperties(propertiesToMerge = { "exec_timeout",
+		"exec_max_processes" })
+public class ExecReporter extends ActivecheckReporter implements
+		ExecReporterMBean {
+	private static final Logger logger = LoggerFactory
+			.getLogger(ExecReporter.class);
+
+	private static final int DEFAULT_EXEC_TIMEOUT = 10;
+
+	private int timeout = DEFAULT_EXEC_TIMEOUT;
+	private ExecCommand execCommand = null;
+
+	public ExecReporter(PropertiesConfiguration newProperties) {
+		super(newProperties);
+
+		// initialize what has not been initialized
+		reporterInit();
+	}
+
+	@Override
+	protected void reporterInit() {
+		timeout = properties.getInt("exec_timeout", DEFAULT_EXEC_TIMEOUT);
+		Validate.isTrue(timeout > 0, "exec_timeout must be positive");
+		ExecEngine.getInstance().setMaxProcesses(
+				properties.getInt("exec_max_processes",
+						ExecEngine.DEFAULT_MAX_PROCESSES));
+
+		// commas in the command line are list delimiters for the properties
+		String[] command = properties.getStringArray("command");
+		execCommand = command.length == 0 ? null : new ExecCommand(
+				StringUtils.join(command, ","));
+	}
+
+	@Override
+	public void runCommand() throws ActivecheckReporterException {
+		if (execCommand == null) {
+			String errorMessage = "no command has been defined for service '"
+					+ getOverallServiceName() + "'";
+			logger.error(errorMessage);
+			setOverallServiceReport(NagiosServiceStatus.WARNING, errorMessage);
+		} else {
+			logger.debug("Service '" + getOverallServiceName()
+					+ "': Running plugin '" + execCommand.getQuery() + "'");
+
+			final ExecCommand command = execCommand;
+			final ActivecheckReporterCompletion completion = deferCompletion();
+			ExecEngine.getInstance().submit(
+					new ExecRequest(command.getCommand(), timeout * 1000,
+							new ExecCallback() {
+								@Override
+								public void completed(int exitCode,
+										String output) {
+									command.parseOutput(exitCode, output);
+									setOverallServiceReport(command
+											.getCheckResult());
+									logger.debug("Service '"
+											+ getOverallServiceName()
+											+ "': '"
+											+ command.getCheckResult()
+													.getMessageWithPerformancedata()
+											+ "'");
+									completion.complete();
+								}
+
+								@Override
+								public void failed(Exception e) {
+									logger.error("Error running plugin: '"
+											+ command.getQuery() + "': "
+											+ e.getMessage());
+									logger.trace(e.getMessage(), e);
+									setOverallServiceReport(
+											NagiosServiceStatus.CRITICAL,
+											e.getMessage());
+									completion.complete();
+								}
+							}));
+		}
+	}
+
+	@Override
+	public int getProcessesRunning() {
+		return ExecEngine.getInstance().getProcesses();
+	}
+
+	@Override
+	public int getProcessesQueued() {
+		return ExecEngine.getInstance().getQueued();
+	}
+
+	@Override
+	protected void cleanUp() {
+		return;
+	}
+}
@@ -0,0 +1,12 @@
+package org.activecheck.plugin.reporter.exec;
+
+import org.activecheck.common.plugin.reporter.ActivecheckReporterMBean;
+
+@SuppressWarnings("unused")
+public interface ExecReporterMBean extends ActivecheckReporterMBean {
+	// @Description("plugins of all reporters running")
+	int getProcessesRunning();
+
+	// @Description("plugins of all reporters waiting to be started")
+	int getProcessesQueued();
+}
@@ -0,0 +1,42 @@
+package org.activecheck.plugin.reporter.exec;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * A plugin run by the {@link ExecEngine}.
+ */
+public final class ExecRequest {
+	private final List<String> command;
+	private final int timeoutMillis;
+	private final ExecCallback callback;
+
+	/**
+	 * @param command
+	 *            the plugin followed by its arguments
+	 * @param timeoutMillis
+	 *            the time after which the plugin and its children are killed
+	 */
+	public ExecRequest(String[] command, int timeoutMillis, ExecCallback callback) {
+		Validate.notEmpty(command, "the command must be set");
+		Validate.isTrue(timeoutMillis > 0, "the exec timeout must be positive");
+		Validate.notNull(callback);
+		this.command = Arrays.asList(command.clone());
+		this.timeoutMillis = timeoutMillis;
+		this.callback = callback;
+	}
+
+	public List<String> getCommand() {
+		return command;
+	}
+
+	public int getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public ExecCallback getCallback() {
+		return callback;
+	}
+}
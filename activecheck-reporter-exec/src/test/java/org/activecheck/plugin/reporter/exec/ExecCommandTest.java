@@ -0,0 +1,44 @@
+package org.activecheck.plugin.reporter.exec;
+
+import static org.testng.Assert.assertEquals;
+
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.testng.annotations.Test;
+
+public class ExecCommandTest {
+	@Test(description = "Test command lines are split like a shell does")
+	public void testSplit() {
+		assertEquals(ExecCommand.split("/usr/lib/nagios/plugins/check_disk  -w 20% -c 10%"),
+				new String[] { "/usr/lib/nagios/plugins/check_disk", "-w", "20%", "-c", "10%" });
+		assertEquals(ExecCommand.split("check_http -H 'my host' -s \"a \\\"b\\\" \\c\""),
+				new String[] { "check_http", "-H", "my host", "-s", "a \"b\" \\c" });
+		assertEquals(ExecCommand.split("check_procs -a a\\ b '' x'y'z 'it\\'"),
+				new String[] { "check_procs", "-a", "a b", "", "xyz", "it\\" });
+	}
+
+	@Test(description = "Test an unterminated quote is rejected", expectedExceptions = IllegalArgumentException.class)
+	public void testUnterminatedQuote() {
+		ExecCommand.split("check_http -H 'host");
+	}
+
+	@Test(description = "Test exit codes are mapped like Nagios does")
+	public void testExitCodes() {
+		ExecCommand command = new ExecCommand("check_test");
+		command.parseOutput(2, "CRITICAL - down\n");
+		assertEquals(command.getCheckResult().getStatus(), NagiosServiceStatus.CRITICAL);
+		assertEquals(command.getCheckResult().getMessage(), "CRITICAL - down");
+
+		command.parseOutput(3, "");
+		assertEquals(command.getCheckResult().getStatus(), NagiosServiceStatus.UNKNOWN);
+		assertEquals(command.getCheckResult().getMessage(), "(No output returned from plugin)");
+
+		command.parseOutput(127, "");
+		assertEquals(command.getCheckResult().getStatus(), NagiosServiceStatus.CRITICAL);
+		assertEquals(command.getCheckResult().getMessage(),
+				"(Return code of 127 is out of bounds - plugin may be missing)");
+
+		command.parseOutput(4, "weird");
+		assertEquals(command.getCheckResult().getStatus(), NagiosServiceStatus.CRITICAL);
+		assertEquals(command.getCheckResult().getMessage(), "(Return code of 4 is out of bounds) weird");
+	}
+}
@@ -0,0 +1,186 @@
+package org.activecheck.plugin.reporter.exec;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class ExecEngineTest {
+	private ExecEngine engine;
+	private Path directory;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+		engine = new ExecEngine("ExecEngineTest");
+		directory = Files.createTempDirectory("activecheck");
+	}
+
+	@AfterClass
+	public void tearDown() throws IOException {
+		engine.close();
+		Files.walk(directory).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+	}
+
+	/**
+	 * Collects the outcome of requests.
+	 */
+	private static class Outcomes implements ExecCallback {
+		private final BlockingQueue<Object> outcomes = new LinkedBlockingQueue<>();
+
+		@Override
+		public void completed(int exitCode, String output) {
+			ExecCommand command = new ExecCommand("plugin");
+			command.parseOutput(exitCode, output);
+			outcomes.add(command);
+		}
+
+		@Override
+		public void failed(Exception e) {
+			outcomes.add(e);
+		}
+
+		Object take() throws InterruptedException {
+			Object outcome = outcomes.poll(10, TimeUnit.SECONDS);
+			assertNotNull(outcome, "no outcome within 10s");
+			return outcome;
+		}
+	}
+
+	private String plugin(String name, String script) throws IOException {
+		File file = directory.resolve(name).toFile();
+		Files.write(file.toPath(), ("#!/bin/sh\n" + script + "\n").getBytes(StandardCharsets.UTF_8));
+		assertTrue(file.setExecutable(true));
+		return file.getAbsolutePath();
+	}
+
+	private Object run(String plugin, int timeoutMillis, String... arguments) throws InterruptedException {
+		String[] command = new String[arguments.length + 1];
+		command[0] = plugin;
+		System.arraycopy(arguments, 0, command, 1, arguments.length);
+		Outcomes outcomes = new Outcomes();
+		engine.submit(new ExecRequest(command, timeoutMillis, outcomes));
+		return outcomes.take();
+	}
+
+	@Test(description = "Test the output and exit code of a plugin are parsed")
+	public void testResult() throws Exception {
+		String plugin = plugin("check_result", "echo \"DISK WARNING - $1 free | free=$1;20;10\"\nexit 1");
+		ExecCommand command = (ExecCommand) run(plugin, 5000, "15%");
+		assertEquals(command.getCheckResult().getStatus(), NagiosServiceStatus.WARNING);
+		assertEquals(command.getCheckResult().getMessage(), "DISK WARNING - 15% free");
+		assertEquals(command.getCheckResult().getPerfData().size(), 1);
+	}
+
+	@Test(description = "Test output longer than a pipe buffer is read while the plugin runs")
+	public void testLongOutput() throws Exception {
+		// 200 KiB do not fit into the pipe, the plugin blocks unless read
+		String plugin = plugin("check_long", "echo 'LONG OK'\nhead -c 204800 /dev/zero | tr '\\0' 'x'\nexit 0");
+		ExecCommand command = (ExecCommand) run(plugin, 5000);
+		assertEquals(command.getCheckResult().getStatus(), NagiosServiceStatus.OK);
+		String message = command.getCheckResult().getMessage();
+		assertTrue(message.startsWith("LONG OK\n"));
+		assertEquals(message.length(), ExecEngine.MAX_OUTPUT);
+	}
+
+	@Test(description = "Test a plugin exceeding its timeout is killed with its children")
+	public void testTimeout() throws Exception {
+		File pidfile = directory.resolve("child.pid").toFile();
+		String plugin = plugin("check_hang", "sleep 30 &\necho $! > " + pidfile + "\nwait");
+		long start = System.currentTimeMillis();
+		Object outcome = run(plugin, 500);
+		assertTrue(outcome instanceof TimeoutException, String.valueOf(outcome));
+		assertTrue(System.currentTimeMillis() - start < 5000);
+
+		// the child is killed with the process group of the plugin
+		String pid = new String(Files.readAllBytes(pidfile.toPath()), StandardCharsets.UTF_8).trim();
+		File proc = new File("/proc/" + pid);
+		for (int i = 0; i < 100 && isRunning(proc); i++) {
+			Thread.sleep(20);
+		}
+		assertFalse(isRunning(proc), "child " + pid + " still running");
+	}
+
+	private static boolean isRunning(File proc) throws IOException {
+		if (!proc.exists()) {
+			return false;
+		}
+		// a killed child not reaped yet is a zombie
+		String stat = new String(Files.readAllBytes(new File(proc, "stat").toPath()), StandardCharsets.UTF_8);
+		return !stat.substring(stat.lastIndexOf(')') + 2).startsWith("Z");
+	}
+
+	@Test(description = "Test no more than the maximum number of plugins run at the same time")
+	public void testMaxProcesses() throws Exception {
+		ExecEngine limited = new ExecEngine("ExecEngineTestLimited");
+		try {
+			limited.setMaxProcesses(2);
+			String plugin = plugin("check_slow", "sleep 0.3\necho 'SLOW OK'");
+			Outcomes outcomes = new Outcomes();
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < 6; i++) {
+				limited.submit(new ExecRequest(new String[] { plugin }, 5000, outcomes));
+			}
+			Thread.sleep(100);
+			assertEquals(limited.getProcesses(), 2);
+			assertEquals(limited.getQueued(), 4);
+			for (int i = 0; i < 6; i++) {
+				ExecCommand command = (ExecCommand) outcomes.take();
+				assertEquals(command.getCheckResult().getMessage(), "SLOW OK");
+			}
+			assertTrue(System.currentTimeMillis() - start >= 900);
+			assertEquals(limited.getQueued(), 0);
+		} finally {
+			limited.close();
+		}
+	}
+
+	@Test(description = "Test a callback throwing on the result is not failed afterwards")
+	public void testThrowingCallback() throws Exception {
+		String plugin = plugin("check_throwing", "echo 'THROWING OK'");
+		Outcomes outcomes = new Outcomes() {
+			@Override
+			public void completed(int exitCode, String output) {
+				super.completed(exitCode, output);
+				throw new IllegalStateException("callback failed");
+			}
+		};
+		engine.submit(new ExecRequest(new String[] { plugin }, 500, outcomes));
+		assertTrue(outcomes.take() instanceof ExecCommand);
+
+		// the engine goes on and the request is not timed out later
+		assertTrue(run(plugin("check_next", "echo 'NEXT OK'"), 5000) instanceof ExecCommand);
+		Thread.sleep(1000);
+		assertEquals(outcomes.outcomes.size(), 0, String.valueOf(outcomes.outcomes));
+		assertEquals(engine.getProcesses(), 0);
+	}
+
+	@Test(description = "Test a missing plugin fails")
+	public void testMissing() throws Exception {
+		Object outcome = run(directory.resolve("check_missing").toString(), 5000);
+		// setsid reports a missing plugin by its exit code
+		if (outcome instanceof ExecCommand) {
+			ExecCommand command = (ExecCommand) outcome;
+			assertEquals(command.getCheckResult().getStatus(), NagiosServiceStatus.CRITICAL);
+			assertTrue(command.getCheckResult().getMessage().startsWith("(Return code of"),
+					command.getCheckResult().getMessage());
+		} else {
+			assertTrue(outcome instanceof IOException, String.valueOf(outcome));
+		}
+	}
+}
@@ -8,7 +8,10 @@ import org.activecheck.plugin.reporter.jmx.query.JMXQuery;
 import org.activecheck.plugin.reporter.jmx.query.JMXQueryExecutor;
 import org.activecheck.plugin.reporter.jmx.query.JMXQueryExecutorException;
 import org.activecheck.plugin.reporter.jmx.query.JMXQueryExecutorFactory;
+import org.activecheck.plugin.reporter.jmx.query.JMXQueryExecutorNotConnectedException;
 import org.apache.commons.configuration.PropertiesConfiguration;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,12 +21,16 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-@ActivecheckPluginProperties(propertiesToMerge = {"jmx.username", "jmx.password"})
-public class JMXReporter extends ActivecheckReporter {
+@ActivecheckPluginProperties(propertiesToMerge = {"jmx.username", "jmx.password", "jmx.cache_ttl",
+        "jmx.connect_timeout", "jmx.read_timeout"})
+public class JMXReporter extends ActivecheckReporter implements JMXReporterMBean {
     private static final Logger logger = LoggerFactory.getLogger(JMXReporter.class);
+    private static final int DEFAULT_CONNECT_TIMEOUT = 5;
+    private static final int DEFAULT_READ_TIMEOUT = 10;
 
-    private JMXQueryExecutor jmxQueryExecutor = null;
+    private volatile JMXQueryExecutor jmxQueryExecutor = null;
     private JMXQuery jmxQuery = null;
+    private long cacheTtl = -1;
 
     public JMXReporter(PropertiesConfiguration properties) {
         super(properties);
@@ -36,7 +43,9 @@ public class JMXReporter extends ActivecheckReporter {
     protected void reporterInit() {
         // parse configuration file
         // recreate JMXNagiosService instances
-        final String query = properties.getString("query");
+        // commas in object names are list delimiters for the properties
+        final String[] queryParts = properties.getStringArray("query");
+        final String query = queryParts.length == 0 ? null : StringUtils.join(queryParts, ",");
         final boolean isOperation = properties.getBoolean("operation", false);
         final List<Object> rawArguments = properties.getList("arguments", null);
         Object[] arguments = new Object[0];
@@ -62,6 +71,16 @@ public class JMXReporter extends ActivecheckReporter {
                     .toArray();
         }
         jmxQuery = new JMXQuery(query, isOperation, arguments);
+
+        // in milliseconds, half the interval of the next run if not set
+        cacheTtl = properties.getLong("jmx.cache_ttl", -1);
+
+        // in seconds, shared by all jmx connections
+        final int connectTimeout = properties.getInt("jmx.connect_timeout", DEFAULT_CONNECT_TIMEOUT);
+        final int readTimeout = properties.getInt("jmx.read_timeout", DEFAULT_READ_TIMEOUT);
+        Validate.isTrue(connectTimeout > 0, "jmx.connect_timeout must be positive");
+        Validate.isTrue(readTimeout > 0, "jmx.read_timeout must be positive");
+        JMXQueryExecutorFactory.getInstance().setTimeouts(connectTimeout * 1000, readTimeout * 1000);
     }
 
     @Override
@@ -81,6 +100,12 @@ public class JMXReporter extends ActivecheckReporter {
                     jmxQueryExecutor = JMXQueryExecutorFactory.getInstance()
                             .connectUrl(url, username, password);
                 }
+            } catch (JMXQueryExecutorNotConnectedException e) {
+                // not a configuration error, the jvm is down or (re)starting
+                jmxQueryExecutor = null;
+                logger.debug("Service '" + getOverallServiceName() + "': " + e.getMessage());
+                setOverallServiceReport(NagiosServiceStatus.UNKNOWN, e.getMessage());
+                return;
             } catch (JMXQueryExecutorException | IOException e) {
                 jmxQueryExecutor = null;
                 final String errorMessage = "JMXReporter Configuration Error for service '"
@@ -104,7 +129,7 @@ public class JMXReporter extends ActivecheckReporter {
                     + "': Running JMX query '" + jmxQuery.getQuery()
                     + "' on url '" + jmxQueryExecutor.getUrl() + "'");
             try {
-                jmxQuery.execute(jmxQueryExecutor);
+                jmxQuery.execute(jmxQueryExecutor, getCacheTtl());
 
                 // generate report
                 setOverallServiceReport(jmxQuery.getCheckResult());
@@ -114,6 +139,12 @@ public class JMXReporter extends ActivecheckReporter {
                         + jmxQuery.getCheckResult()
                         .getMessageWithPerformancedata() + "'");
 
+            } catch (IOException e) {
+                logger.warn("Connection lost running JMX query: '" + jmxQuery.getQuery()
+                        + "': " + e.getMessage());
+                logger.trace(e.getMessage(), e);
+                setOverallServiceReport(NagiosServiceStatus.UNKNOWN,
+                        e.getMessage());
             } catch (Exception e) {
                 logger.error("Error running JMX query: '" + jmxQuery.getQuery()
                         + "': " + e.getMessage());
@@ -124,6 +155,50 @@ public class JMXReporter extends ActivecheckReporter {
         }
     }
 
+    /**
+     * @return how old attribute values read by other reporters on the same url
+     * may be to be used by this one
+     */
+    private long getCacheTtl() {
+        return cacheTtl >= 0 ? cacheTtl : getScheduleIntervalInSeconds() * 500L;
+    }
+
+    @Override
+    public long getCacheHits() {
+        final JMXQueryExecutor executor = jmxQueryExecutor;
+        return executor == null ? 0 : executor.getCacheHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        final JMXQueryExecutor executor = jmxQueryExecutor;
+        return executor == null ? 0 : executor.getCacheMisses();
+    }
+
+    @Override
+    public long getCacheCoalesced() {
+        final JMXQueryExecutor executor = jmxQueryExecutor;
+        return executor == null ? 0 : executor.getCacheCoalesced();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        final JMXQueryExecutor executor = jmxQueryExecutor;
+        if (executor == null) {
+            return 0;
+        }
+        final long hits = executor.getCacheHits() + executor.getCacheCoalesced();
+        final long reads = hits + executor.getCacheMisses();
+        return reads == 0 ? 0 : (double) hits / reads;
+    }
+
+    @Override
+    public String getTarget() {
+        // the jvm of a pidfile is local, its url is only known once connected
+        final String pidfilePath = properties.getString("pidfile", null);
+        return pidfilePath != null ? pidfilePath : properties.getString("url", null);
+    }
+
     @Override
     protected void cleanUp() {
         JMXQueryExecutorFactory.getInstance().disconnect(jmxQueryExecutor);
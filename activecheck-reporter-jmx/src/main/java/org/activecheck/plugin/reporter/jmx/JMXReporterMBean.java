@@ -0,0 +1,18 @@
+package org.activecheck.plugin.reporter.jmx;
+
+import org.activecheck.common.plugin.reporter.ActivecheckReporterMBean;
+
+@SuppressWarnings("unused")
+public interface JMXReporterMBean extends ActivecheckReporterMBean {
+    // @Description("attribute reads of all reporters on the url answered from the cache")
+    long getCacheHits();
+
+    // @Description("attribute reads of all reporters on the url sent to the jvm")
+    long getCacheMisses();
+
+    // @Description("attribute reads of all reporters on the url that waited for the same read")
+    long getCacheCoalesced();
+
+    // @Description("share of attribute reads on the url not sent to the jvm")
+    double getCacheHitRate();
+}
@@ -5,15 +5,36 @@ import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * The default implementation of a JMXProvider based on the static factory
  * method provided by the Java platform.
+ * <p>
+ * Connections use the {@link JMXTimeoutSocketFactory} for the lookup of the
+ * RMI registry and for all requests, and check every
+ * {@link #HEARTBEAT_PERIOD_MILLIS} whether the JVM is still reachable.
+ * Their {@link javax.management.remote.JMXConnectionNotification}s tell once
+ * it is not.
  */
 public class DefaultJMXProvider implements JMXProvider {
+	public static final long HEARTBEAT_PERIOD_MILLIS = 10000;
+	private static final String JNDI_SOCKET_FACTORY = "com.sun.jndi.rmi.factory.socket";
+	private static final String HEARTBEAT_PERIOD = "jmx.remote.x.client.connection.check.period";
+
+	public DefaultJMXProvider() {
+		JMXTimeoutSocketFactory.install();
+	}
+
 	public JMXConnector getConnector(JMXServiceURL url, Map<String, ?> env)
 			throws IOException {
-		return JMXConnectorFactory.connect(url, env);
+		final Map<String, Object> timeoutEnv = new HashMap<>();
+		timeoutEnv.put(JNDI_SOCKET_FACTORY, JMXTimeoutSocketFactory.getInstance());
+		timeoutEnv.put(HEARTBEAT_PERIOD, HEARTBEAT_PERIOD_MILLIS);
+		if (env != null) {
+			timeoutEnv.putAll(env);
+		}
+		return JMXConnectorFactory.connect(url, timeoutEnv);
 	}
 }
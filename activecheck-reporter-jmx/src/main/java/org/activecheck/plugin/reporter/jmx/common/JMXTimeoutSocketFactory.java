@@ -0,0 +1,118 @@
+package org.activecheck.plugin.reporter.jmx.common;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMISocketFactory;
+
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the RMI client sockets of JMX connections with a connect timeout
+ * and a read timeout, so an unreachable or hanging JVM fails a connect or a
+ * request instead of blocking it for the minutes of the TCP timeouts.
+ * <p>
+ * The RMI stubs of most JVMs use the default socket factory, so the factory
+ * is installed as the default of this JVM by {@link #install()}. Server
+ * sockets are created like RMI does by default.
+ */
+public final class JMXTimeoutSocketFactory extends RMISocketFactory implements Serializable {
+	private static final long serialVersionUID = 2306829410384718245L;
+	private static final Logger logger = LoggerFactory.getLogger(JMXTimeoutSocketFactory.class);
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10000;
+
+	private static final JMXTimeoutSocketFactory instance = new JMXTimeoutSocketFactory();
+	private static boolean installed = false;
+
+	private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+	private volatile int readTimeoutMillis = DEFAULT_READ_TIMEOUT_MILLIS;
+
+	private JMXTimeoutSocketFactory() {
+	}
+
+	public static JMXTimeoutSocketFactory getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Makes the factory the default RMI socket factory unless another one has
+	 * been set.
+	 *
+	 * @return true if the factory is the default
+	 */
+	public static synchronized boolean install() {
+		if (!installed) {
+			try {
+				if (RMISocketFactory.getSocketFactory() == null) {
+					RMISocketFactory.setSocketFactory(instance);
+				}
+			} catch (IOException | SecurityException e) {
+				logger.warn("Cannot set the RMI socket factory, JMX requests have no timeouts: " + e.getMessage());
+				logger.trace(e.getMessage(), e);
+			}
+			installed = RMISocketFactory.getSocketFactory() == instance;
+		}
+		return installed;
+	}
+
+	/**
+	 * @param connectTimeoutMillis
+	 *            the timeout of establishing a connection
+	 * @param readTimeoutMillis
+	 *            the timeout of every read, which limits the time a request
+	 *            waits for its response
+	 */
+	public void setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+		Validate.isTrue(connectTimeoutMillis > 0, "the jmx connect timeout must be positive");
+		Validate.isTrue(readTimeoutMillis > 0, "the jmx read timeout must be positive");
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	public int getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+
+	public int getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		final Socket socket = new Socket();
+		try {
+			socket.setSoTimeout(readTimeoutMillis);
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		return socket;
+	}
+
+	@Override
+	public ServerSocket createServerSocket(int port) throws IOException {
+		return RMISocketFactory.getDefaultSocketFactory().createServerSocket(port);
+	}
+
+	// RMI reuses connections created by equal factories
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof JMXTimeoutSocketFactory;
+	}
+
+	@Override
+	public int hashCode() {
+		return JMXTimeoutSocketFactory.class.hashCode();
+	}
+
+	private Object readResolve() {
+		return instance;
+	}
+}
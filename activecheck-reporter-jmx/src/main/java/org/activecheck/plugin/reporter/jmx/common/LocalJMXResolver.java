@@ -0,0 +1,206 @@
+package org.activecheck.plugin.reporter.jmx.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the JMX connectors of a local JVM by its pid without running other
+ * programs.
+ * <p>
+ * The JVM is asked for the address of its local connector through the
+ * Attach API first, as that connector needs neither credentials nor SSL. A
+ * JVM started with <code>-Dcom.sun.management.jmxremote.port</code> may also
+ * be connected through that port, which is read from
+ * <code>/proc/&lt;pid&gt;/cmdline</code>. The local management agent is only
+ * started by attaching if the JVM has no such port. The Attach API is loaded
+ * at runtime, from the tools.jar of the JDK up to Java 8, and only used for
+ * processes running a JVM, as attaching signals the process.
+ * <p>
+ * Addresses are kept for the lifetime of the process, which is told apart
+ * from a later process with the same pid by its start time.
+ */
+public final class LocalJMXResolver {
+	private static final Logger logger = LoggerFactory.getLogger(LocalJMXResolver.class);
+	private static final String PORT_PROPERTY = "-Dcom.sun.management.jmxremote.port=";
+	private static final String LOCAL_CONNECTOR_ADDRESS = "com.sun.management.jmxremote.localConnectorAddress";
+	private static final String VIRTUAL_MACHINE = "com.sun.tools.attach.VirtualMachine";
+
+	private static final ConcurrentHashMap<String, List<String>> addresses = new ConcurrentHashMap<>();
+	private static Class<?> virtualMachine = null;
+
+	private LocalJMXResolver() {
+	}
+
+	/**
+	 * @return the JMX service urls of the JVM in the order they should be
+	 *         tried, empty if none can be found
+	 */
+	public static List<String> resolve(int pid) {
+		final String process = pid + "@" + startTime(pid).orElse("");
+		final List<String> cached = addresses.get(process);
+		if (cached != null) {
+			return cached;
+		}
+		final Optional<String> port = jmxPort(pid);
+		final List<String> urls = new ArrayList<>(2);
+		boolean complete = true;
+		if (isJvm(pid)) {
+			final Optional<String> local = attach(pid, !port.isPresent());
+			local.ifPresent(urls::add);
+			// a starting jvm may not be attachable yet
+			complete = local.isPresent();
+		}
+		port.ifPresent(p -> urls.add(urlFromHostAndPort("127.0.0.1", p)));
+		if (complete && !urls.isEmpty()) {
+			logger.debug("JMX urls of pid {} are {}", pid, urls);
+			addresses.put(process, Collections.unmodifiableList(urls));
+		}
+		return Collections.unmodifiableList(urls);
+	}
+
+	public static String urlFromHostAndPort(String host, String port) {
+		return "service:jmx:rmi:///jndi/rmi://" + host + ":" + port + "/jmxrmi";
+	}
+
+	/**
+	 * @return the start time of the process in clock ticks since boot, empty
+	 *         without /proc
+	 */
+	private static Optional<String> startTime(int pid) {
+		try {
+			final String stat = new String(Files.readAllBytes(Paths.get("/proc", String.valueOf(pid), "stat")),
+					StandardCharsets.UTF_8);
+			// the command in parentheses may contain spaces
+			final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+			return fields.length > 19 ? Optional.of(fields[19]) : Optional.empty();
+		} catch (IOException | RuntimeException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @return the port of <code>-Dcom.sun.management.jmxremote.port</code>
+	 */
+	private static Optional<String> jmxPort(int pid) {
+		try {
+			return jmxPort(Files.readAllBytes(Paths.get("/proc", String.valueOf(pid), "cmdline")));
+		} catch (NoSuchFileException e) {
+			return Optional.empty();
+		} catch (IOException e) {
+			logger.debug("Unable to read command line of PID {}: {}", pid, e.getMessage());
+			logger.trace(e.getMessage(), e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @param cmdline
+	 *            the arguments of a process, each terminated by a null byte
+	 */
+	static Optional<String> jmxPort(byte[] cmdline) {
+		Optional<String> port = Optional.empty();
+		for (String argument : new String(cmdline, StandardCharsets.UTF_8).split("\0")) {
+			// the last definition wins like for java
+			if (argument.startsWith(PORT_PROPERTY) && argument.substring(PORT_PROPERTY.length()).matches("[0-9]+")) {
+				port = Optional.of(argument.substring(PORT_PROPERTY.length()));
+			}
+		}
+		return port;
+	}
+
+	/**
+	 * @return false if the process does not map a JVM, true without /proc
+	 */
+	private static boolean isJvm(int pid) {
+		try {
+			final String maps = new String(Files.readAllBytes(Paths.get("/proc", String.valueOf(pid), "maps")),
+					StandardCharsets.UTF_8);
+			return maps.contains("/libjvm.so") || maps.contains("/libjvm.dylib");
+		} catch (NoSuchFileException e) {
+			return !new File("/proc/self").exists();
+		} catch (IOException e) {
+			logger.debug("Unable to read memory map of PID {}: {}", pid, e.getMessage());
+			logger.trace(e.getMessage(), e);
+			// attaching needs the same permissions, so it would fail anyway
+			return false;
+		}
+	}
+
+	/**
+	 * @param startAgent
+	 *            starts the local management agent if it is not running
+	 */
+	private static Optional<String> attach(int pid, boolean startAgent) {
+		try {
+			final Class<?> vmClass = virtualMachine();
+			logger.debug("Attaching to PID {}", pid);
+			final Object vm = vmClass.getMethod("attach", String.class).invoke(null, String.valueOf(pid));
+			try {
+				String address = localConnectorAddress(vmClass, vm);
+				if (address == null && startAgent) {
+					logger.info("Starting the local management agent of PID {}", pid);
+					try {
+						// since Java 9
+						address = (String) vmClass.getMethod("startLocalManagementAgent").invoke(vm);
+					} catch (NoSuchMethodException e) {
+						final Properties properties = (Properties) vmClass.getMethod("getSystemProperties").invoke(vm);
+						final String agent = properties.getProperty("java.home") + File.separator + "lib"
+								+ File.separator + "management-agent.jar";
+						vmClass.getMethod("loadAgent", String.class).invoke(vm, agent);
+						address = localConnectorAddress(vmClass, vm);
+					}
+				}
+				return Optional.ofNullable(address);
+			} finally {
+				vmClass.getMethod("detach").invoke(vm);
+			}
+		} catch (InvocationTargetException e) {
+			logger.debug("Unable to attach to PID {}: {}", pid, e.getCause().getMessage());
+			logger.trace(e.getMessage(), e);
+		} catch (ReflectiveOperationException | IOException | RuntimeException e) {
+			logger.debug("Unable to attach to PID {}: {}", pid, e.getMessage());
+			logger.trace(e.getMessage(), e);
+		}
+		return Optional.empty();
+	}
+
+	private static String localConnectorAddress(Class<?> vmClass, Object vm) throws ReflectiveOperationException {
+		final Properties properties = (Properties) vmClass.getMethod("getAgentProperties").invoke(vm);
+		return properties.getProperty(LOCAL_CONNECTOR_ADDRESS);
+	}
+
+	private static synchronized Class<?> virtualMachine() throws ClassNotFoundException, IOException {
+		if (virtualMachine == null) {
+			try {
+				virtualMachine = Class.forName(VIRTUAL_MACHINE);
+			} catch (ClassNotFoundException e) {
+				// the jre of a jdk up to Java 8
+				final File toolsJar = new File(System.getProperty("java.home"), ".." + File.separator + "lib"
+						+ File.separator + "tools.jar");
+				if (!toolsJar.isFile()) {
+					throw new ClassNotFoundException("the Attach API needs a JDK, " + toolsJar + " not found");
+				}
+				final ClassLoader loader = new URLClassLoader(new URL[] { toolsJar.toURI().toURL() },
+						LocalJMXResolver.class.getClassLoader());
+				virtualMachine = Class.forName(VIRTUAL_MACHINE, true, loader);
+			}
+		}
+		return virtualMachine;
+	}
+}
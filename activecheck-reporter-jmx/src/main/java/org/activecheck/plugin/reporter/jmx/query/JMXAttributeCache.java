@@ -0,0 +1,128 @@
+package org.activecheck.plugin.reporter.jmx.query;
+
+import javax.management.ObjectName;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The attribute values read through one {@link JMXQueryExecutor}, shared by
+ * all reporters using it. Every read states how old a cached value may be,
+ * and a read of an attribute already being fetched waits for that fetch
+ * instead of starting another one.
+ */
+final class JMXAttributeCache {
+    private final ConcurrentHashMap<Key, Value> values = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, CompletableFuture<Value>> fetches = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    static final class Key {
+        private final ObjectName objectName;
+        private final String attributeName;
+
+        Key(ObjectName objectName, String attributeName) {
+            this.objectName = objectName;
+            this.attributeName = attributeName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return objectName.equals(key.objectName) && attributeName.equals(key.attributeName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * objectName.hashCode() + attributeName.hashCode();
+        }
+    }
+
+    /**
+     * A value read at a point in time, null values are values too.
+     */
+    static final class Value {
+        private final Object value;
+        private final long readMillis;
+
+        Value(Object value, long readMillis) {
+            this.value = value;
+            this.readMillis = readMillis;
+        }
+
+        Object get() {
+            return value;
+        }
+    }
+
+    /**
+     * @return the cached value if it is not older than maxAgeMillis, null
+     * otherwise
+     */
+    Value get(Key key, long maxAgeMillis) {
+        final Value value = values.get(key);
+        if (value != null && System.currentTimeMillis() - value.readMillis <= maxAgeMillis) {
+            hits.incrementAndGet();
+            return value;
+        }
+        return null;
+    }
+
+    /**
+     * Registers a fetch of the attribute.
+     *
+     * @return null if the caller has to fetch the attribute and complete the
+     * returned future with {@link #put(Key, CompletableFuture, Object)} or
+     * {@link #fail(Key, CompletableFuture, Throwable)}, or the fetch already
+     * running, which the caller waits for
+     */
+    CompletableFuture<Value> join(Key key, CompletableFuture<Value> fetch) {
+        final CompletableFuture<Value> running = fetches.putIfAbsent(key, fetch);
+        if (running == null) {
+            misses.incrementAndGet();
+        } else {
+            coalesced.incrementAndGet();
+        }
+        return running;
+    }
+
+    void put(Key key, CompletableFuture<Value> fetch, Object value) {
+        final Value read = new Value(value, System.currentTimeMillis());
+        values.put(key, read);
+        fetches.remove(key, fetch);
+        fetch.complete(read);
+    }
+
+    /**
+     * Ends a fetch that did not read the attribute. Waiting callers get null
+     * if cause is null, the cause otherwise.
+     */
+    void fail(Key key, CompletableFuture<Value> fetch, Throwable cause) {
+        fetches.remove(key, fetch);
+        if (cause == null) {
+            fetch.complete(null);
+        } else {
+            fetch.completeExceptionally(cause);
+        }
+    }
+
+    void clear() {
+        values.clear();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    long getCoalesced() {
+        return coalesced.get();
+    }
+}
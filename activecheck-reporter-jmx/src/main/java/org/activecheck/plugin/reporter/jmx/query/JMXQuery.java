@@ -1,19 +1,29 @@
 package org.activecheck.plugin.reporter.jmx.query;
 
-import org.activecheck.common.Encoding;
 import org.activecheck.common.nagios.NagiosCheck;
 import org.activecheck.common.nagios.NagiosServiceStatus;
 import org.apache.commons.lang.Validate;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.CompositeDataSupport;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class JMXQuery extends NagiosCheck {
+    private static final Pattern OPERATOR_PATTERN = Pattern.compile("^\\(([^\\(\\)]*?)\\(.*\\)\\)$");
+
     private final JMXQuery parent;
     private final List<JMXQuery> children = new ArrayList<>();
     private final boolean isOperation;
@@ -22,9 +32,12 @@ public class JMXQuery extends NagiosCheck {
     private String query = null;
     private JMXQueryOperator queryOperator = JMXQueryOperator.NONE;
     private String object = null;
+    private ObjectName objectName = null;
     private String attributeName = null;
     private String attributeKey = null;
     private String defaultValue = null;
+    private JMXQueryAggregation aggregation = null;
+    private String[] signature = null;
 
     public JMXQuery(String query, boolean isOperation) {
         this(query, isOperation, null, null);
@@ -49,8 +62,7 @@ public class JMXQuery extends NagiosCheck {
         }
 
         // query seems valid
-        Pattern p = Pattern.compile("^\\(([^\\(\\)]*?)\\(.*\\)\\)$");
-        Matcher operatorMatcher = p.matcher(query);
+        Matcher operatorMatcher = OPERATOR_PATTERN.matcher(query);
 
         if (operatorMatcher.find()) {
             queryOperator = JMXQueryOperator.fromString(operatorMatcher.group(1));
@@ -65,7 +77,7 @@ public class JMXQuery extends NagiosCheck {
             int countClosingBrackets = 0;
             int beginIndex = 0;
             int i = 0;
-            for (byte character : query.getBytes(Encoding.UTF8)) {
+            for (char character : query.toCharArray()) {
                 if (character == '(') {
                     countOpeningBrackets++;
                 } else if (character == ')') {
@@ -121,16 +133,37 @@ public class JMXQuery extends NagiosCheck {
             // set object
             Validate.notEmpty(parts[0], "object cannot be empty. Malformed query string");
             object = parts[0];
+            try {
+                objectName = new ObjectName(object);
+            } catch (MalformedObjectNameException e) {
+                // reported when the attribute is read
+                objectName = null;
+            }
 
-            // set attributeName and attributeKey
+            // set attributeName, attributeKey and aggregation
             Validate.notEmpty(parts[1], "attributeName cannot be empty. Malformed query string");
-            String[] attributeParts = parts[1].split(":");
+            String attribute = parts[1];
+            final int aggregationIndex = attribute.lastIndexOf('@');
+            if (aggregationIndex >= 0) {
+                aggregation = JMXQueryAggregation.fromString(attribute.substring(aggregationIndex + 1));
+                attribute = attribute.substring(0, aggregationIndex);
+            }
+            String[] attributeParts = attribute.split(":");
             attributeName = attributeParts[0];
+            Validate.notEmpty(attributeName, "attributeName cannot be empty. Malformed query string");
             if (attributeParts.length > 1) {
-                attributeKey = parts[1].split(":")[1];
+                attributeKey = attributeParts[1];
             } else {
                 attributeKey = null;
             }
+            if (objectName != null && objectName.isPattern()) {
+                Validate.isTrue(!isOperation, "operations cannot be invoked on pattern '" + object + "'");
+                Validate.notNull(aggregation, "pattern '" + object
+                        + "' needs an aggregation of the attribute like " + attributeName + "@sum");
+            }
+            if (isOperation) {
+                signature = JMXQueryExecutor.getSignature(arguments);
+            }
 
             // set warning threshold
             if (parts.length >= 3) {
@@ -151,9 +184,106 @@ public class JMXQuery extends NagiosCheck {
         }
     }
 
+    /**
+     * Runs the query. The attributes of all leaves are read first, with one
+     * round trip per MBean, and the tree is evaluated over the values read.
+     */
     public boolean execute(JMXQueryExecutor executor) throws IllegalArgumentException, JMXQueryExecutorException, IOException {
+        return execute(executor, 0);
+    }
+
+    /**
+     * Runs the query like {@link #execute(JMXQueryExecutor)}, using attribute
+     * values not older than maxAgeMillis read through the same executor for
+     * other queries.
+     */
+    public boolean execute(JMXQueryExecutor executor, long maxAgeMillis)
+            throws IllegalArgumentException, JMXQueryExecutorException, IOException {
         Validate.notNull(executor, "jmx executor cannot be NULL");
+        return execute(executor, fetchAttributes(executor, maxAgeMillis), maxAgeMillis);
+    }
 
+    /**
+     * Reads the attributes of all leaves of the tree grouped by MBean. Single
+     * attributes of an MBean and attributes that cannot be read in a batch
+     * are left to {@link JMXQueryExecutor#getAttribute(ObjectName, String, long)},
+     * which reports their errors.
+     *
+     * @return the values by MBean and attribute name
+     */
+    private Map<ObjectName, Map<String, Object>> fetchAttributes(JMXQueryExecutor executor, long maxAgeMillis)
+            throws JMXQueryExecutorException, IOException {
+        if (isOperation) {
+            return Collections.emptyMap();
+        }
+        final Map<ObjectName, Set<String>> attributeNames = new LinkedHashMap<>();
+        collectAttributeNames(executor, attributeNames);
+        final Map<ObjectName, Map<String, Object>> values = new HashMap<>();
+        for (Map.Entry<ObjectName, Set<String>> entry : attributeNames.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                final Set<String> names = entry.getValue();
+                values.put(entry.getKey(),
+                        executor.getAttributes(entry.getKey(), names.toArray(new String[names.size()]), maxAgeMillis));
+            }
+        }
+        return values;
+    }
+
+    private void collectAttributeNames(JMXQueryExecutor executor, Map<ObjectName, Set<String>> attributeNames)
+            throws JMXQueryExecutorException, IOException {
+        if (query == null) {
+            for (JMXQuery child : children) {
+                child.collectAttributeNames(executor, attributeNames);
+            }
+        } else if (objectName != null) {
+            for (ObjectName name : getObjectNames(executor)) {
+                Set<String> names = attributeNames.get(name);
+                if (names == null) {
+                    names = new LinkedHashSet<>();
+                    attributeNames.put(name, names);
+                }
+                names.add(attributeName);
+            }
+        }
+    }
+
+    /**
+     * @return the MBeans matching the pattern of the leaf, or its MBean
+     */
+    private Set<ObjectName> getObjectNames(JMXQueryExecutor executor) throws JMXQueryExecutorException, IOException {
+        return objectName.isPattern() ? executor.queryNames(objectName) : Collections.singleton(objectName);
+    }
+
+    /**
+     * Reads the attribute of all MBeans of the leaf and combines the values
+     * or the values of the attribute key.
+     */
+    private Number aggregate(JMXQueryExecutor executor, Map<ObjectName, Map<String, Object>> fetched,
+                             long maxAgeMillis) throws JMXQueryExecutorException, IOException {
+        final Set<ObjectName> names = getObjectNames(executor);
+        if (names.isEmpty()) {
+            throw new JMXQueryExecutorException("No MBean matches '" + object + "'");
+        }
+        final List<Object> values = new ArrayList<>(names.size());
+        for (ObjectName name : names) {
+            final Map<String, Object> attributes = fetched.get(name);
+            Object value;
+            if (attributes != null && attributes.containsKey(attributeName)) {
+                value = attributes.get(attributeName);
+            } else {
+                value = executor.getAttribute(name, attributeName, maxAgeMillis);
+            }
+            if (value instanceof CompositeData) {
+                Validate.notNull(attributeKey, "attributeKey is missing");
+                value = ((CompositeData) value).get(attributeKey);
+            }
+            values.add(value);
+        }
+        return aggregation.aggregate(values);
+    }
+
+    private boolean execute(JMXQueryExecutor executor, Map<ObjectName, Map<String, Object>> fetched, long maxAgeMillis)
+            throws IllegalArgumentException, JMXQueryExecutorException, IOException {
         checkResult.clear(NagiosServiceStatus.OK);
         Optional<Boolean> result = Optional.empty();
 
@@ -161,8 +291,17 @@ public class JMXQuery extends NagiosCheck {
             Object checkData;
             Object value;
             try {
+                final Map<String, Object> values = objectName == null ? null : fetched.get(objectName);
                 if (isOperation) {
-                    value = executor.invoke(object, attributeName, arguments);
+                    value = objectName == null ? executor.invoke(object, attributeName, arguments)
+                            : executor.invoke(objectName, attributeName, arguments == null ? new Object[0] : arguments,
+                            signature);
+                } else if (aggregation != null && objectName != null) {
+                    value = aggregate(executor, fetched, maxAgeMillis);
+                } else if (values != null && values.containsKey(attributeName)) {
+                    value = values.get(attributeName);
+                } else if (objectName != null) {
+                    value = executor.getAttribute(objectName, attributeName, maxAgeMillis);
                 } else {
                     value = executor.getAttribute(object, attributeName);
                 }
@@ -175,7 +314,12 @@ public class JMXQuery extends NagiosCheck {
 
             // set report message
             String message = object.substring(object.indexOf("=") + 1) + ":" + attributeName;
-            if (value instanceof CompositeDataSupport) {
+            if (aggregation != null) {
+                // keys of composite values are read by aggregate
+                checkData = value;
+                message += (attributeKey == null ? "" : "." + attributeKey) + "@" + aggregation + "=" + checkData;
+                addPerformanceData(attributeName, checkData);
+            } else if (value instanceof CompositeDataSupport) {
                 Validate.notNull(attributeKey, "attributeKey is missing");
                 checkData = ((CompositeDataSupport) value).get(attributeKey);
                 message += '.' + attributeKey + "=" + checkData;
@@ -191,8 +335,11 @@ public class JMXQuery extends NagiosCheck {
         } else {
             for (JMXQuery child : children) {
                 try {
-                    result = Optional.of(queryOperator.calculate(result, child.execute(executor)));
+                    result = Optional.of(queryOperator.calculate(result, child.execute(executor, fetched, maxAgeMillis)));
                     checkResult.merge(child.getCheckResult());
+                } catch (IOException e) {
+                    // the connection is down, which fails all children
+                    throw e;
                 } catch (Exception e) {
                     result = Optional.of(queryOperator.calculate(result, false));
                     if (!result.get()) {
@@ -241,4 +388,8 @@ public class JMXQuery extends NagiosCheck {
     public String getDefaultValue() {
         return defaultValue;
     }
+
+    public JMXQueryAggregation getAggregation() {
+        return aggregation;
+    }
 }
@@ -0,0 +1,84 @@
+package org.activecheck.plugin.reporter.jmx.query;
+
+import java.util.List;
+
+/**
+ * Combines the values of an attribute read from all MBeans matching a pattern.
+ */
+public enum JMXQueryAggregation {
+    SUM("sum"), MAX("max"), MIN("min"), AVG("avg");
+
+    private String functionString;
+
+    private JMXQueryAggregation(String functionString) {
+        this.functionString = functionString;
+    }
+
+    @Override
+    public String toString() {
+        return functionString;
+    }
+
+    /**
+     * @return a long if all values are integral and the function is not avg,
+     * a double otherwise
+     */
+    public Number aggregate(List<Object> values) {
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to " + functionString);
+        }
+        boolean integral = this != AVG;
+        for (Object value : values) {
+            if (!(value instanceof Number)) {
+                throw new IllegalArgumentException("Cannot " + functionString + " '" + value
+                        + "', it is not of type Number");
+            }
+            integral &= value instanceof Long || value instanceof Integer
+                    || value instanceof Short || value instanceof Byte;
+        }
+        if (integral) {
+            long result = ((Number) values.get(0)).longValue();
+            for (Object value : values.subList(1, values.size())) {
+                result = combine(result, ((Number) value).longValue());
+            }
+            return result;
+        }
+        double result = ((Number) values.get(0)).doubleValue();
+        for (Object value : values.subList(1, values.size())) {
+            result = combine(result, ((Number) value).doubleValue());
+        }
+        return this == AVG ? result / values.size() : result;
+    }
+
+    private long combine(long result, long value) {
+        switch (this) {
+            case MAX:
+                return Math.max(result, value);
+            case MIN:
+                return Math.min(result, value);
+            default:
+                return result + value;
+        }
+    }
+
+    private double combine(double result, double value) {
+        switch (this) {
+            case MAX:
+                return Math.max(result, value);
+            case MIN:
+                return Math.min(result, value);
+            default:
+                return result + value;
+        }
+    }
+
+    public static JMXQueryAggregation fromString(String functionString) {
+        for (JMXQueryAggregation aggregation : JMXQueryAggregation.values()) {
+            if (aggregation.functionString.equalsIgnoreCase(functionString)) {
+                return aggregation;
+            }
+        }
+        throw new IllegalArgumentException("Invalid aggregation '"
+                + functionString + "'");
+    }
+}
@@ -2,16 +2,37 @@ package org.activecheck.plugin.reporter.jmx.query;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import javax.management.remote.JMXConnectionNotification;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXServiceURL;
 
 import org.activecheck.plugin.reporter.jmx.common.JMXProvider;
+import org.activecheck.plugin.reporter.jmx.common.JMXTimeoutSocketFactory;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.slf4j.Logger;
@@ -36,36 +57,191 @@ public class JMXQueryExecutor {
     private String url = null;
     private String username = null;
     private String password = null;
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 60000;
+    private static final ExecutorService CONNECTORS = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "JMXConnector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private JMXConnector connector;
     private final JMXProvider jmxProvider;
-    private MBeanServerConnection connection = null;
-    private boolean connected = false;
+    private volatile MBeanServerConnection connection = null;
+    private volatile boolean connected = false;
+    private volatile int connectTimeoutMillis = JMXTimeoutSocketFactory.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+    // the state of connecting, guarded by this
+    private Future<?> connecting = null;
+    private long generation = 0;
+    private int failures = 0;
+    private long nextAttemptMillis = 0;
+    private IOException lastFailure = null;
+    private final NotificationListener connectionListener = (notification, handback) -> {
+        if (JMXConnectionNotification.FAILED.equals(notification.getType())
+                || JMXConnectionNotification.CLOSED.equals(notification.getType())) {
+            connectionLost((JMXConnector) handback);
+        }
+    };
+    private final JMXAttributeCache cache = new JMXAttributeCache();
+    // the MBeans matching a pattern until one is (un)registered
+    private final Map<ObjectName, Set<ObjectName>> patterns = new ConcurrentHashMap<>();
+    private final AtomicLong registrations = new AtomicLong();
+    // the connection notifying registrations, guarded by this
+    private MBeanServerConnection subscribed = null;
+    private final NotificationListener registrationListener = (notification, handback) -> {
+        registrations.incrementAndGet();
+        if (notification instanceof MBeanServerNotification) {
+            final ObjectName name = ((MBeanServerNotification) notification).getMBeanName();
+            patterns.keySet().removeIf(pattern -> pattern.apply(name));
+        } else {
+            // registrations may have been missed
+            patterns.clear();
+        }
+    };
 
     public JMXQueryExecutor(final JMXProvider jmxProvider, final String url) {
         this.url = url;
         this.jmxProvider = jmxProvider;
     }
 
-    public synchronized void reconnect() throws JMXQueryExecutorException, IOException {
+    /**
+     * Makes sure the executor is connected. The connection is established by
+     * a background thread. The caller starting the attempt waits for it up to
+     * the connect timeout, all other callers fail at once while it runs, and
+     * after a failed attempt until the next attempt is due.
+     *
+     * @throws JMXQueryExecutorNotConnectedException if not connected
+     */
+    public void reconnect() throws JMXQueryExecutorException, IOException {
+        final Future<?> attempt;
+        synchronized (this) {
+            if (connected) {
+                return;
+            }
+            if (url == null) {
+                throw new JMXQueryExecutorException("JMX URL cannot be null");
+            }
+            if (connecting != null) {
+                throw new JMXQueryExecutorNotConnectedException("Still connecting to '" + url + "'");
+            }
+            final long wait = nextAttemptMillis - System.currentTimeMillis();
+            if (wait > 0) {
+                throw new JMXQueryExecutorNotConnectedException("JMX not connected to '" + url + "', retrying in "
+                        + (wait + 999) / 1000 + "s: " + lastFailure.getMessage(), lastFailure);
+            }
+            connecting = CONNECTORS.submit(newAttempt());
+            attempt = connecting;
+        }
+
         try {
-            Validate.notNull(url, "JMX URL cannot be null");
+            attempt.get(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new JMXQueryExecutorNotConnectedException("Connecting to '" + url + "' takes longer than "
+                    + connectTimeoutMillis + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMXQueryExecutorNotConnectedException("Interrupted while connecting to '" + url + "'");
+        } catch (ExecutionException e) {
+            // failures are kept by the attempt
+            logger.trace(e.getMessage(), e);
+        }
+        synchronized (this) {
             if (!connected) {
-                logger.info("Connecting to '" + url + "'");
-                final JMXServiceURL jmxUrl = new JMXServiceURL(url);
+                final IOException failure = lastFailure;
+                throw new JMXQueryExecutorNotConnectedException("JMX not connected to '" + url + "'"
+                        + (failure == null ? "" : ": " + failure.getMessage()), failure);
+            }
+        }
+    }
 
-                if (username != null) {
-                    final Map<String, String[]> m = new HashMap<>();
-                    m.put(JMXConnector.CREDENTIALS, new String[]{username, password});
-                    connector = jmxProvider.getConnector(jmxUrl, m);
-                } else {
-                    connector = jmxProvider.getConnector(jmxUrl, null);
+    /**
+     * @return a connect of the current url and credentials, which is dropped if
+     * they change while it runs
+     */
+    private Runnable newAttempt() {
+        final long attemptGeneration = generation;
+        final String attemptUrl = url;
+        final String attemptUsername = username;
+        final String attemptPassword = password;
+        return () -> {
+            JMXConnector newConnector = null;
+            try {
+                logger.info("Connecting to '" + attemptUrl + "'");
+                final JMXServiceURL jmxUrl = new JMXServiceURL(attemptUrl);
+                final Map<String, Object> env = new HashMap<>();
+                if (attemptUsername != null) {
+                    env.put(JMXConnector.CREDENTIALS, new String[]{attemptUsername, attemptPassword});
+                }
+                newConnector = jmxProvider.getConnector(jmxUrl, env);
+                newConnector.addConnectionNotificationListener(connectionListener, null, newConnector);
+                final MBeanServerConnection newConnection = newConnector.getMBeanServerConnection();
+                final JMXConnector previous;
+                synchronized (this) {
+                    connecting = null;
+                    if (generation != attemptGeneration) {
+                        previous = newConnector;
+                    } else {
+                        previous = connector;
+                        connector = newConnector;
+                        connection = newConnection;
+                        connected = true;
+                        subscribed = null;
+                        patterns.clear();
+                        failures = 0;
+                        lastFailure = null;
+                    }
                 }
-                connection = connector.getMBeanServerConnection();
-                connected = true;
+                close(previous, attemptUrl);
+            } catch (IOException | RuntimeException e) {
+                final IOException failure = e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+                final long backoff;
+                synchronized (this) {
+                    connecting = null;
+                    failures++;
+                    backoff = Math.min(MAX_BACKOFF_MILLIS, MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+                    nextAttemptMillis = System.currentTimeMillis() + backoff;
+                    lastFailure = failure;
+                }
+                logger.error("Connecting to '" + attemptUrl + "' failed, retrying in " + backoff / 1000 + "s: "
+                        + e.getMessage());
+                logger.trace(e.getMessage(), e);
+                close(newConnector, attemptUrl);
             }
-        } catch (IllegalArgumentException e) {
-            throw new JMXQueryExecutorException(e);
+        };
+    }
+
+    private static void close(final JMXConnector oldConnector, final String oldUrl) {
+        if (oldConnector != null) {
+            try {
+                oldConnector.close();
+            } catch (IOException e) {
+                logger.warn("Failed to disconnect from '" + oldUrl + "': " + e.getMessage());
+                logger.trace(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Marks the executor disconnected after a request failed. The next
+     * request starts a new attempt.
+     */
+    private synchronized void connectionLost(final JMXConnector lostConnector) {
+        if (lostConnector == connector && connected) {
+            connected = false;
+            logger.warn("Lost connection to '" + url + "'");
+        }
+    }
+
+    /**
+     * @return the connection, established if needed
+     */
+    private MBeanServerConnection connection() throws JMXQueryExecutorException, IOException {
+        reconnect();
+        final MBeanServerConnection current = connection;
+        if (current == null) {
+            throw new JMXQueryExecutorNotConnectedException("JMX not connected to '" + url + "'");
         }
+        return current;
     }
 
     public void authenticate(final String newUsername, final String newPassword) throws JMXQueryExecutorException, IOException {
@@ -77,34 +253,56 @@ public class JMXQueryExecutor {
     }
 
     public void connect(final String newUrl, final String newUsername, final String newPassword) throws JMXQueryExecutorException, IOException {
-        // disconnect jmxQueryExecutor if something changed
-        if (newUrl == null || (url != null && !url.equals(newUrl))
-                || (username != null && !username.equals(newUsername))
-                || (password != null && !password.equals(newPassword))) {
-            disconnect();
+        synchronized (this) {
+            // disconnect jmxQueryExecutor if something changed
+            if (newUrl == null || (url != null && !url.equals(newUrl))
+                    || (username != null && !username.equals(newUsername))
+                    || (password != null && !password.equals(newPassword))) {
+                disconnect();
+            }
+
+            url = newUrl;
+            username = newUsername;
+            password = newPassword;
         }
 
         // (re)connect
-        url = newUrl;
-        username = newUsername;
-        password = newPassword;
         reconnect();
     }
 
+    /**
+     * Drops the connection and any attempt to establish one. The connector is
+     * closed in the background as closing may wait for the JVM.
+     */
     public synchronized void disconnect() {
         connected = false;
+        cache.clear();
+        subscribed = null;
+        patterns.clear();
+        generation++;
+        connecting = null;
+        failures = 0;
+        nextAttemptMillis = 0;
+        lastFailure = null;
         if (connector != null) {
             logger.info("Disconnecting from '" + url + "'");
-            try {
-                connector.close();
-                connector = null;
-            } catch (IOException e) {
-                logger.warn("Failed to disconnect from '" + url + "': " + e.getMessage());
-                logger.trace(e.getMessage(), e);
-            }
+            final JMXConnector oldConnector = connector;
+            final String oldUrl = url;
+            connector = null;
+            connection = null;
+            CONNECTORS.execute(() -> close(oldConnector, oldUrl));
         }
     }
 
+    /**
+     * @param connectTimeoutMillis
+     *            how long the caller starting a connect waits for it
+     */
+    public void setConnectTimeout(final int connectTimeoutMillis) {
+        Validate.isTrue(connectTimeoutMillis > 0, "the jmx connect timeout must be positive");
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
     public String getUrl() {
         return url;
     }
@@ -117,17 +315,40 @@ public class JMXQueryExecutor {
         if (params == null) {
             params = new Object[0];
         }
+        final ObjectName objectName;
+        try {
+            objectName = new ObjectName(object);
+        } catch (MalformedObjectNameException e) {
+            final String message = "Could not invoke operation '" + attributeName + "(" + StringUtils.join(params, ",")
+                    + ")' on '" + object + "': " + e.getMessage();
+            logger.error(message);
+            logger.trace(e.getMessage(), e);
+            throw new JMXQueryExecutorException(message, e);
+        }
+        return invoke(objectName, attributeName, params, getSignature(params));
+    }
 
+    /**
+     * @return the class names of the parameters
+     */
+    public static String[] getSignature(final Object[] params) {
+        if (params == null) {
+            return new String[0];
+        }
         final List<String> signatureList = new ArrayList<>();
         for (Object param : params) {
             signatureList.add(param.getClass().getName());
         }
-        String[] signature = signatureList.toArray(new String[signatureList.size()]);
+        return signatureList.toArray(new String[signatureList.size()]);
+    }
 
+    public Object invoke(final ObjectName objectName, final String attributeName, final Object[] params,
+                         final String[] signature) throws JMXQueryExecutorException, IOException {
         Object result;
         try {
-            reconnect();
-            result = connection.invoke(new ObjectName(object), attributeName, params, signature);
+            result = connection().invoke(objectName, attributeName, params, signature);
+        } catch (JMXQueryExecutorNotConnectedException e) {
+            throw e;
         } catch (IOException e) {
             connected = false;
             final String message = "JMX not connected";
@@ -136,7 +357,7 @@ public class JMXQueryExecutor {
             throw e;
         } catch (Exception e) {
             final String message = "Could not invoke operation '" + attributeName + "(" + StringUtils.join(params, ",")
-                    + ")' on '" + object + "': " + e.getMessage();
+                    + ")' on '" + objectName + "': " + e.getMessage();
             logger.error(message);
             logger.trace(e.getMessage(), e);
             throw new JMXQueryExecutorException(message, e);
@@ -145,10 +366,25 @@ public class JMXQueryExecutor {
     }
 
     public Object getAttribute(final String object, final String attributeName) throws JMXQueryExecutorException, IOException {
+        final ObjectName objectName;
+        try {
+            objectName = new ObjectName(object);
+        } catch (MalformedObjectNameException e) {
+            final String message =
+                    "Could not get value for attribute '" + attributeName + "' on '" + object + "': " + e.getMessage();
+            logger.error(message);
+            logger.trace(e.getMessage(), e);
+            throw new JMXQueryExecutorException(message, e);
+        }
+        return getAttribute(objectName, attributeName);
+    }
+
+    public Object getAttribute(final ObjectName objectName, final String attributeName) throws JMXQueryExecutorException, IOException {
         Object result;
         try {
-            reconnect();
-            result = connection.getAttribute(new ObjectName(object), attributeName);
+            result = connection().getAttribute(objectName, attributeName);
+        } catch (JMXQueryExecutorNotConnectedException e) {
+            throw e;
         } catch (IOException e) {
             connected = false;
             final String message = "JMX not connected";
@@ -157,11 +393,256 @@ public class JMXQueryExecutor {
             throw e;
         } catch (Exception e) {
             final String message =
-                    "Could not get value for attribute '" + attributeName + "' on '" + object + "': " + e.getMessage();
+                    "Could not get value for attribute '" + attributeName + "' on '" + objectName + "': " + e.getMessage();
             logger.error(message);
             logger.trace(e.getMessage(), e);
             throw new JMXQueryExecutorException(message, e);
         }
         return result;
     }
+
+    /**
+     * Resolves a pattern to the names of the MBeans matching it. The names are
+     * kept until an MBean matching the pattern is registered or unregistered.
+     *
+     * @return the names in their natural order
+     */
+    public Set<ObjectName> queryNames(final ObjectName pattern) throws JMXQueryExecutorException, IOException {
+        final Set<ObjectName> cached = patterns.get(pattern);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            final boolean cacheable = listen();
+            final long registrationsBefore = registrations.get();
+            final Set<ObjectName> result = connection().queryNames(pattern, null);
+            final Set<ObjectName> names = Collections.unmodifiableSet(
+                    result == null ? new TreeSet<>() : new TreeSet<>(result));
+            // names may have changed while they were queried
+            if (cacheable && registrations.get() == registrationsBefore) {
+                patterns.put(pattern, names);
+            }
+            return names;
+        } catch (JMXQueryExecutorNotConnectedException e) {
+            throw e;
+        } catch (IOException e) {
+            connected = false;
+            final String message = "JMX not connected";
+            logger.error(message, e.getMessage());
+            logger.trace(e.getMessage(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Subscribes to the (un)registration of MBeans unless done on the current
+     * connection already.
+     *
+     * @return true if names of MBeans can be kept
+     */
+    private boolean listen() throws JMXQueryExecutorException, IOException {
+        final MBeanServerConnection current = connection();
+        final JMXConnector currentConnector;
+        synchronized (this) {
+            if (subscribed == current) {
+                return true;
+            }
+            currentConnector = connector;
+        }
+        try {
+            current.addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, registrationListener, null, null);
+            if (currentConnector != null) {
+                currentConnector.addConnectionNotificationListener(registrationListener, null, null);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.debug("Cannot subscribe to MBean registrations on '{}': {}", url, e.getMessage());
+            logger.trace(e.getMessage(), e);
+            return false;
+        }
+        synchronized (this) {
+            if (connection == current) {
+                subscribed = current;
+            }
+            return subscribed == current;
+        }
+    }
+
+    /**
+     * Reads an attribute unless a value not older than maxAgeMillis has been
+     * read by any reporter using this executor. If the attribute is being
+     * read already, that read is waited for.
+     */
+    public Object getAttribute(final ObjectName objectName, final String attributeName, final long maxAgeMillis)
+            throws JMXQueryExecutorException, IOException {
+        if (maxAgeMillis <= 0) {
+            return getAttribute(objectName, attributeName);
+        }
+        final JMXAttributeCache.Key key = new JMXAttributeCache.Key(objectName, attributeName);
+        final JMXAttributeCache.Value cached = cache.get(key, maxAgeMillis);
+        if (cached != null) {
+            return cached.get();
+        }
+        final CompletableFuture<JMXAttributeCache.Value> fetch = new CompletableFuture<>();
+        final CompletableFuture<JMXAttributeCache.Value> running = cache.join(key, fetch);
+        if (running != null) {
+            final JMXAttributeCache.Value value = await(running);
+            // not read by a batch, read it to learn why
+            return value != null ? value.get() : getAttribute(objectName, attributeName);
+        }
+        try {
+            final Object value = getAttribute(objectName, attributeName);
+            cache.put(key, fetch, value);
+            return value;
+        } catch (JMXQueryExecutorException | IOException | RuntimeException e) {
+            cache.fail(key, fetch, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads several attributes of one MBean in a single round trip. Attributes
+     * that cannot be read are missing from the result, reading them with
+     * {@link #getAttribute(ObjectName, String)} tells why.
+     *
+     * @return the values by attribute name
+     */
+    public Map<String, Object> getAttributes(final ObjectName objectName, final String[] attributeNames) throws IOException {
+        final Map<String, Object> values = new HashMap<>();
+        fetchAttributes(objectName, attributeNames, values);
+        return values;
+    }
+
+    /**
+     * Reads the attributes like {@link #getAttributes(ObjectName, String[])}
+     * in a single round trip, but only those of which no value younger than
+     * maxAgeMillis has been read and which are not being read already.
+     */
+    public Map<String, Object> getAttributes(final ObjectName objectName, final String[] attributeNames,
+                                             final long maxAgeMillis) throws IOException {
+        if (maxAgeMillis <= 0) {
+            return getAttributes(objectName, attributeNames);
+        }
+        final Map<String, Object> values = new HashMap<>();
+        final Map<String, CompletableFuture<JMXAttributeCache.Value>> fetches = new LinkedHashMap<>();
+        final Map<String, CompletableFuture<JMXAttributeCache.Value>> running = new HashMap<>();
+        for (String attributeName : attributeNames) {
+            final JMXAttributeCache.Key key = new JMXAttributeCache.Key(objectName, attributeName);
+            final JMXAttributeCache.Value cached = cache.get(key, maxAgeMillis);
+            if (cached != null) {
+                values.put(attributeName, cached.get());
+            } else {
+                final CompletableFuture<JMXAttributeCache.Value> fetch = new CompletableFuture<>();
+                final CompletableFuture<JMXAttributeCache.Value> other = cache.join(key, fetch);
+                if (other == null) {
+                    fetches.put(attributeName, fetch);
+                } else {
+                    running.put(attributeName, other);
+                }
+            }
+        }
+
+        // complete the own reads before waiting for others, which may wait for them
+        if (!fetches.isEmpty()) {
+            final Map<String, Object> fetched = new HashMap<>();
+            try {
+                fetchAttributes(objectName, fetches.keySet().toArray(new String[fetches.size()]), fetched);
+            } catch (IOException | RuntimeException e) {
+                for (Map.Entry<String, CompletableFuture<JMXAttributeCache.Value>> entry : fetches.entrySet()) {
+                    cache.fail(new JMXAttributeCache.Key(objectName, entry.getKey()), entry.getValue(), e);
+                }
+                throw e;
+            }
+            for (Map.Entry<String, CompletableFuture<JMXAttributeCache.Value>> entry : fetches.entrySet()) {
+                final JMXAttributeCache.Key key = new JMXAttributeCache.Key(objectName, entry.getKey());
+                if (fetched.containsKey(entry.getKey())) {
+                    cache.put(key, entry.getValue(), fetched.get(entry.getKey()));
+                    values.put(entry.getKey(), fetched.get(entry.getKey()));
+                } else {
+                    cache.fail(key, entry.getValue(), null);
+                }
+            }
+        }
+        for (Map.Entry<String, CompletableFuture<JMXAttributeCache.Value>> entry : running.entrySet()) {
+            try {
+                final JMXAttributeCache.Value value = await(entry.getValue());
+                if (value != null) {
+                    values.put(entry.getKey(), value.get());
+                }
+            } catch (JMXQueryExecutorException e) {
+                // left to getAttribute like attributes missing from a batch
+                logger.trace(e.getMessage(), e);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Waits for a read of another reporter and rethrows its error.
+     */
+    private static JMXAttributeCache.Value await(final CompletableFuture<JMXAttributeCache.Value> fetch)
+            throws JMXQueryExecutorException, IOException {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMXQueryExecutorException("Interrupted while waiting for JMX attribute", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof JMXQueryExecutorException) {
+                throw (JMXQueryExecutorException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new JMXQueryExecutorException(cause.getMessage(), cause);
+        }
+    }
+
+    private void fetchAttributes(final ObjectName objectName, final String[] attributeNames,
+                                 final Map<String, Object> values) throws IOException {
+        try {
+            final AttributeList attributes = connection().getAttributes(objectName, attributeNames);
+            if (attributes != null) {
+                for (Attribute attribute : attributes.asList()) {
+                    values.put(attribute.getName(), attribute.getValue());
+                }
+            }
+        } catch (JMXQueryExecutorNotConnectedException e) {
+            throw e;
+        } catch (IOException e) {
+            connected = false;
+            final String message = "JMX not connected";
+            logger.error(message, e.getMessage());
+            logger.trace(e.getMessage(), e);
+            throw e;
+        } catch (Exception e) {
+            logger.debug("Could not get attributes of '{}': {}", objectName, e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the number of attribute reads answered from values read before
+     */
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    /**
+     * @return the number of attribute reads sent to the MBean server
+     */
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    /**
+     * @return the number of attribute reads that waited for the same read of
+     * another reporter
+     */
+    public long getCacheCoalesced() {
+        return cache.getCoalesced();
+    }
 }
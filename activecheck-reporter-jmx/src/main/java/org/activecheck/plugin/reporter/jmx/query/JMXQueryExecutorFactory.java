@@ -1,17 +1,17 @@
 package org.activecheck.plugin.reporter.jmx.query;
 
-import org.activecheck.common.Encoding;
 import org.activecheck.common.pidfile.PidFile;
 import org.activecheck.common.pidfile.PidFileFactory;
 import org.activecheck.plugin.reporter.jmx.common.DefaultJMXProvider;
 import org.activecheck.plugin.reporter.jmx.common.JMXProvider;
+import org.activecheck.plugin.reporter.jmx.common.JMXTimeoutSocketFactory;
+import org.activecheck.plugin.reporter.jmx.common.LocalJMXResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
@@ -27,6 +27,7 @@ public class JMXQueryExecutorFactory implements Observer {
     private final ConcurrentHashMap<String, JMXQueryExecutor> queryExecutorMap;
     private final ConcurrentHashMap<String, String> pidfile2url;
     private final JMXProvider jmxProvider;
+    private volatile int connectTimeoutMillis = JMXTimeoutSocketFactory.DEFAULT_CONNECT_TIMEOUT_MILLIS;
 
     public JMXQueryExecutorFactory() {
         queryExecutorMap = new ConcurrentHashMap<>();
@@ -34,78 +35,61 @@ public class JMXQueryExecutorFactory implements Observer {
         jmxProvider = new DefaultJMXProvider();
     }
 
-    private String urlFromHostAndPort(String host, String port) {
-        return "service:jmx:rmi:///jndi/rmi://" + host + ":" + port + "/jmxrmi";
-    }
-
-    private String processLineByPid(String pid) {
-        String processLine = null;
-        try {
-            // TODO: Linux only! Port to other OS
-            final Process p = Runtime.getRuntime().exec("ps -p " + pid + " --no-headers -f");
-            try (final BufferedReader input = new BufferedReader(new InputStreamReader(p.getInputStream(), Encoding.UTF8))) {
-                // get rmi port from -Dcom.sun.management.jmxremote.port=<port>
-                processLine = input.readLine();
-            } catch (IOException e) {
-                logger.debug("Unable to read process line from PID: " + e.getMessage());
-                logger.trace(e.getMessage(), e);
-            }
-            p.destroyForcibly();
-        } catch (IOException e) {
-            logger.debug("Unable to execute command to retrieve PID: " + e.getMessage());
-            logger.trace(e.getMessage(), e);
+    /**
+     * Sets the timeouts of all JMX connections.
+     *
+     * @see JMXTimeoutSocketFactory#setTimeouts(int, int)
+     */
+    public void setTimeouts(final int connectTimeoutMillis, final int readTimeoutMillis) {
+        JMXTimeoutSocketFactory.getInstance().setTimeouts(connectTimeoutMillis, readTimeoutMillis);
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        for (JMXQueryExecutor queryExecutor : queryExecutorMap.values()) {
+            queryExecutor.setConnectTimeout(connectTimeoutMillis);
         }
-        return processLine;
     }
 
-    @SuppressWarnings("restriction")
-    public JMXQueryExecutor connectPidfile(String pidfilePath, String username, String password) throws JMXQueryExecutorException {
+    public JMXQueryExecutor connectPidfile(String pidfilePath, String username, String password)
+            throws JMXQueryExecutorException, IOException {
         // retrieve existing JMXQueryExecutor
         final List<String> urls = new ArrayList<>();
         JMXQueryExecutor queryExecutor = null;
-
-        // try to find existing url
-        urls.add(pidfile2url.get(pidfilePath));
+        JMXQueryExecutorNotConnectedException notConnected = null;
 
         // translate pid to url
         final PidFile pidfile = PidFileFactory.create(pidfilePath, this);
         if (pidfile.getPid().isPresent()) {
             final Integer pid = pidfile.getPid().get();
-            try {
-                logger.debug("Trying to connect via pid " + pid);
-                urls.add(sun.management.ConnectorAddressLink.importFrom(pid));
-            } catch (IOException e) {
-                logger.debug("Unable to transform PID to URL: " + e.getMessage());
-                logger.trace(e.getMessage(), e);
-
-                // get rmi port from
-                // -Dcom.sun.management.jmxremote.port=<port>
-                logger.debug("Trying to determine JMX port for PID " + pid);
-                final String line = processLineByPid(pid.toString());
-                if (line != null) {
-                    final String jmxport = line.replaceAll(".*-Dcom\\.sun\\.management\\.jmxremote\\.port=([0-9]+).*", "$1");
-                    if (jmxport != null) {
-                        final String tempurl = urlFromHostAndPort("127.0.0.1", jmxport);
-                        logger.debug("tcp connect URL for PID " + pid + " is " + tempurl);
-                        urls.add(tempurl);
-                    }
-                }
+            logger.debug("Trying to connect via pid " + pid);
+            final List<String> resolved = LocalJMXResolver.resolve(pid);
+            if (resolved.isEmpty()) {
+                logger.debug("Unable to transform PID " + pid + " to URL");
             }
+            urls.addAll(resolved);
         }
 
+        // try to find existing url after the ones of the current pid
+        urls.add(pidfile2url.get(pidfilePath));
+
         // try to connect to an url
-        for (final String url : urls.stream().filter(o -> o != null).collect(Collectors.toSet())) {
-            queryExecutor = queryExecutorMap.get(url);
+        for (final String url : urls.stream().filter(o -> o != null)
+                .collect(Collectors.toCollection(LinkedHashSet::new))) {
             try {
                 queryExecutor = connectUrl(url, username, password);
                 pidfile2url.put(pidfilePath, url);
                 break;
+            } catch (JMXQueryExecutorNotConnectedException e) {
+                logger.debug("Unable to connect to URL: " + e.getMessage());
+                notConnected = e;
             } catch (JMXQueryExecutorException | IOException e) {
                 logger.debug("Unable to connect to URL: " + e.getMessage());
                 logger.trace(e.getMessage(), e);
             }
         }
         if (queryExecutor == null) {
+            // the jvm is known but not reachable right now
+            if (notConnected != null) {
+                throw notConnected;
+            }
             throw new JMXQueryExecutorException("Error transforming PID to URL");
         }
         return queryExecutor;
@@ -117,7 +101,7 @@ public class JMXQueryExecutorFactory implements Observer {
             PidFile pidfile = (PidFile) arg0;
             try {
                 connectPidfile(pidfile.getFilename(), null, null);
-            } catch (JMXQueryExecutorException e) {
+            } catch (JMXQueryExecutorException | IOException e) {
                 logger.error("Reconnecting RMI for pidfile '" + pidfile.getFilename() + "' failed: " + e.getMessage());
                 logger.trace(e.getMessage(), e);
             }
@@ -130,6 +114,7 @@ public class JMXQueryExecutorFactory implements Observer {
         if (queryExecutor == null) {
             logger.debug("Creating new JMXQueryExecutor for '" + url + "'");
             queryExecutor = new JMXQueryExecutor(jmxProvider, url);
+            queryExecutor.setConnectTimeout(connectTimeoutMillis);
             queryExecutorMap.put(url, queryExecutor);
         }
         if (username == null) {
@@ -147,13 +132,13 @@ public class JMXQueryExecutorFactory implements Observer {
                     .map(entry -> entry.getKey())
                     .findFirst();
             if (url.isPresent()) {
-                logger.debug("Removing JMXQueryExecutor for '" + url + "'");
-                queryExecutorMap.remove(url);
+                logger.debug("Removing JMXQueryExecutor for '" + url.get() + "'");
+                queryExecutorMap.remove(url.get());
 
                 // find entry in pidfile2url
                 for (String pidfilePath : pidfile2url.keySet()) {
                     String value = pidfile2url.get(pidfilePath);
-                    if (value.equals(url)) {
+                    if (url.get().equals(value)) {
                         PidFileFactory.delete(pidfilePath, this);
                         pidfile2url.remove(pidfilePath);
                     }
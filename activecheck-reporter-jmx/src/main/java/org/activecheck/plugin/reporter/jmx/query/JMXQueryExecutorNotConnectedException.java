@@ -0,0 +1,19 @@
+package org.activecheck.plugin.reporter.jmx.query;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of waiting for a JVM while its connection is being
+ * (re)established or a reconnect is backed off.
+ */
+public class JMXQueryExecutorNotConnectedException extends IOException {
+	private static final long serialVersionUID = -3158736127709244621L;
+
+	public JMXQueryExecutorNotConnectedException(String message) {
+		super(message);
+	}
+
+	public JMXQueryExecutorNotConnectedException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
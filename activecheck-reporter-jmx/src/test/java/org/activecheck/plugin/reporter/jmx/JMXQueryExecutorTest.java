@@ -5,26 +5,56 @@ import org.activecheck.common.nagios.NagiosServiceStatus;
 import org.activecheck.plugin.reporter.jmx.common.JMXProvider;
 import org.activecheck.plugin.reporter.jmx.query.JMXQuery;
 import org.activecheck.plugin.reporter.jmx.query.JMXQueryExecutor;
+import org.activecheck.plugin.reporter.jmx.query.JMXQueryExecutorException;
+import org.activecheck.plugin.reporter.jmx.query.JMXQueryExecutorNotConnectedException;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
+import javax.management.QueryExp;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.remote.JMXConnectionNotification;
 import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static javax.management.remote.JMXConnector.CREDENTIALS;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 /**
  * Tests for the JMXQuery class.
@@ -438,4 +468,299 @@ public class JMXQueryExecutorTest {
                 NagiosServiceStatus.OK);
         assertEquals(jmxQuery.getCheckResult().getMessage(), "x:baz=2");
     }
+
+    @Test(description = "Test the attributes of one MBean are read in one round trip.")
+    public void testBatchedAttributes() throws Exception {
+        final ObjectName x = ObjectName.getInstance("foo:bar=x");
+        final ObjectName y = ObjectName.getInstance("foo:bar=y");
+        final AttributeList attributes = new AttributeList();
+        attributes.add(new Attribute("baz", 10));
+        attributes.add(new Attribute("bay", 20));
+        when(mBeanServerConnection.getAttributes(eq(x), eq(new String[]{"baz", "bay"})))
+                .thenReturn(attributes);
+        when(mBeanServerConnection.getAttribute(eq(y), eq("baz"))).thenReturn(30);
+
+        JMXQuery jmxQuery = new JMXQuery(
+                "(&(foo:bar=x!baz!15)(|(foo:bar=x!bay!25)(foo:bar=y!baz!35))(foo:bar=x!baz!15))", false);
+        assertEquals(jmxQuery.execute(jmxQueryExecutor), true);
+        assertEquals(jmxQuery.getCheckResult().getMessage(), "x:baz=10 & x:bay=20 & y:baz=30 & x:baz=10");
+        verify(mBeanServerConnection, times(1)).getAttributes(any(ObjectName.class), any(String[].class));
+        verify(mBeanServerConnection, never()).getAttribute(eq(x), anyString());
+        verify(mBeanServerConnection, times(1)).getAttribute(eq(y), eq("baz"));
+    }
+
+    @Test(description = "Test attributes missing from a batch are read on their own.")
+    public void testBatchedAttributeMissing() throws Exception {
+        final ObjectName x = ObjectName.getInstance("foo:bar=x");
+        final AttributeList attributes = new AttributeList();
+        attributes.add(new Attribute("baz", 10));
+        when(mBeanServerConnection.getAttributes(eq(x), any(String[].class))).thenReturn(attributes);
+        when(mBeanServerConnection.getAttribute(eq(x), eq("bay")))
+                .thenThrow(new AttributeNotFoundException("No such attribute: bay"));
+
+        JMXQuery jmxQuery = new JMXQuery("(&(foo:bar=x!baz)(foo:bar=x!bay!!!-1))", false);
+        assertEquals(jmxQuery.execute(jmxQueryExecutor), true);
+        assertEquals(jmxQuery.getCheckResult().getMessage(), "x:baz=10 & x:bay=-1");
+        verify(mBeanServerConnection, never()).getAttribute(eq(x), eq("baz"));
+    }
+
+    @Test(description = "Test attribute values are shared within their maximum age.")
+    public void testCachedAttributes() throws Exception {
+        final ObjectName x = ObjectName.getInstance("foo:bar=x");
+        final AttributeList attributes = new AttributeList();
+        attributes.add(new Attribute("baz", 10));
+        attributes.add(new Attribute("bay", 20));
+        when(mBeanServerConnection.getAttributes(eq(x), any(String[].class))).thenReturn(attributes);
+        when(mBeanServerConnection.getAttribute(eq(x), eq("baz"))).thenReturn(10);
+
+        // the values read in a batch are used by single reads and vice versa
+        JMXQuery batched = new JMXQuery("(&(foo:bar=x!baz!15)(foo:bar=x!bay!25))", false);
+        JMXQuery single = new JMXQuery("foo:bar=x!baz!15", false);
+        assertEquals(batched.execute(jmxQueryExecutor, 60000), true);
+        assertEquals(single.execute(jmxQueryExecutor, 60000), true);
+        assertEquals(batched.execute(jmxQueryExecutor, 60000), true);
+        assertEquals(single.getCheckResult().getMessage(), "x:baz=10");
+        verify(mBeanServerConnection, times(1)).getAttributes(any(ObjectName.class), any(String[].class));
+        verify(mBeanServerConnection, never()).getAttribute(any(ObjectName.class), anyString());
+        assertEquals(jmxQueryExecutor.getCacheMisses(), 2);
+        assertEquals(jmxQueryExecutor.getCacheHits(), 3);
+
+        // values too old are read again
+        Thread.sleep(20);
+        assertEquals(single.execute(jmxQueryExecutor, 10), true);
+        assertEquals(single.execute(jmxQueryExecutor, 0), true);
+        verify(mBeanServerConnection, times(2)).getAttribute(eq(x), eq("baz"));
+
+        // nothing is shared after a reconnect
+        jmxQueryExecutor.disconnect();
+        assertEquals(batched.execute(jmxQueryExecutor, 60000), true);
+        verify(mBeanServerConnection, times(2)).getAttributes(any(ObjectName.class), any(String[].class));
+    }
+
+    @Test(description = "Test concurrent reads of an attribute are sent once.")
+    public void testCoalescedAttributes() throws Exception {
+        final ObjectName x = ObjectName.getInstance("foo:bar=x");
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(mBeanServerConnection.getAttribute(eq(x), eq("baz"))).thenAnswer(invocation -> {
+            reading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return 10;
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Future<Object> first = executor.submit(() -> jmxQueryExecutor.getAttribute(x, "baz", 60000));
+            assertTrue(reading.await(5, TimeUnit.SECONDS));
+            final Future<?>[] others = new Future<?>[3];
+            for (int i = 0; i < others.length; i++) {
+                others[i] = executor.submit(() -> jmxQueryExecutor.getAttribute(x, "baz", 60000));
+            }
+            while (jmxQueryExecutor.getCacheCoalesced() < others.length) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            assertEquals(first.get(5, TimeUnit.SECONDS), 10);
+            for (Future<?> other : others) {
+                assertEquals(other.get(5, TimeUnit.SECONDS), 10);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(mBeanServerConnection, times(1)).getAttribute(eq(x), eq("baz"));
+        assertEquals(jmxQueryExecutor.getCacheMisses(), 1);
+        assertEquals(jmxQueryExecutor.getCacheCoalesced(), 3);
+    }
+
+    @Test(description = "Test errors of a read are passed to the reads waiting for it and not cached.")
+    public void testCoalescedAttributeError() throws Exception {
+        final ObjectName x = ObjectName.getInstance("foo:bar=x");
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(mBeanServerConnection.getAttribute(eq(x), eq("baz"))).thenAnswer(invocation -> {
+            reading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            throw new AttributeNotFoundException("No such attribute: baz");
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<Object> first = executor.submit(() -> jmxQueryExecutor.getAttribute(x, "baz", 60000));
+            assertTrue(reading.await(5, TimeUnit.SECONDS));
+            final Future<Object> second = executor.submit(() -> jmxQueryExecutor.getAttribute(x, "baz", 60000));
+            while (jmxQueryExecutor.getCacheCoalesced() < 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<Object> read : new Future[]{first, second}) {
+                try {
+                    read.get(5, TimeUnit.SECONDS);
+                    throw new AssertionError("read did not fail");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof JMXQueryExecutorException, String.valueOf(e.getCause()));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(jmxQueryExecutor.getCacheHits(), 0);
+    }
+
+    @Test(description = "Test the attribute of all MBeans matching a pattern is aggregated.")
+    public void testPatternAggregation() throws Exception {
+        final ObjectName pattern = ObjectName.getInstance("java.lang:type=GarbageCollector,*");
+        final ObjectName young = ObjectName.getInstance("java.lang:type=GarbageCollector,name=young");
+        final ObjectName old = ObjectName.getInstance("java.lang:type=GarbageCollector,name=old");
+        when(mBeanServerConnection.queryNames(eq(pattern), any(QueryExp.class)))
+                .thenReturn(new HashSet<>(Arrays.asList(young, old)));
+        when(mBeanServerConnection.getAttribute(eq(young), eq("CollectionCount"))).thenReturn(3L);
+        when(mBeanServerConnection.getAttribute(eq(old), eq("CollectionCount"))).thenReturn(4L);
+
+        JMXQuery jmxQuery = new JMXQuery("java.lang:type=GarbageCollector,*!CollectionCount@sum!5!10", false);
+        assertEquals(jmxQuery.execute(jmxQueryExecutor), false);
+        assertEquals(jmxQuery.getCheckResult().getStatus(), NagiosServiceStatus.WARNING);
+        assertEquals(jmxQuery.getCheckResult().getMessage(), "GarbageCollector,*:CollectionCount@sum=7");
+        assertEquals(jmxQuery.getCheckResult().getPerfData().get(0).getCurrent(), 7.0);
+
+        // the names are kept until an MBean matching the pattern is registered
+        final ArgumentCaptor<NotificationListener> listener = ArgumentCaptor.forClass(NotificationListener.class);
+        verify(mBeanServerConnection).addNotificationListener(eq(MBeanServerDelegate.DELEGATE_NAME),
+                listener.capture(), any(NotificationFilter.class), any());
+        jmxQuery.execute(jmxQueryExecutor);
+        verify(mBeanServerConnection, times(1)).queryNames(any(ObjectName.class), any(QueryExp.class));
+        listener.getValue().handleNotification(new MBeanServerNotification(
+                MBeanServerNotification.REGISTRATION_NOTIFICATION, MBeanServerDelegate.DELEGATE_NAME, 1,
+                ObjectName.getInstance("java.lang:type=Memory")), null);
+        jmxQuery.execute(jmxQueryExecutor);
+        verify(mBeanServerConnection, times(1)).queryNames(any(ObjectName.class), any(QueryExp.class));
+        listener.getValue().handleNotification(new MBeanServerNotification(
+                MBeanServerNotification.UNREGISTRATION_NOTIFICATION, MBeanServerDelegate.DELEGATE_NAME, 2, old), null);
+        when(mBeanServerConnection.queryNames(eq(pattern), any(QueryExp.class)))
+                .thenReturn(new HashSet<>(Arrays.asList(young)));
+        assertEquals(jmxQuery.execute(jmxQueryExecutor), true);
+        assertEquals(jmxQuery.getCheckResult().getMessage(), "GarbageCollector,*:CollectionCount@sum=3");
+        verify(mBeanServerConnection, times(2)).queryNames(any(ObjectName.class), any(QueryExp.class));
+    }
+
+    @Test(description = "Test attributes of matching MBeans are batched with other attributes of the MBean.")
+    public void testPatternAggregationBatched() throws Exception {
+        final ObjectName pattern = ObjectName.getInstance("java.lang:type=MemoryPool,*");
+        final ObjectName eden = ObjectName.getInstance("java.lang:type=MemoryPool,name=eden");
+        final ObjectName survivor = ObjectName.getInstance("java.lang:type=MemoryPool,name=survivor");
+        when(mBeanServerConnection.queryNames(eq(pattern), any(QueryExp.class)))
+                .thenReturn(new HashSet<>(Arrays.asList(eden, survivor)));
+        final CompositeType usageType = new CompositeType("MemoryUsage", "MemoryUsage", new String[]{"used", "max"},
+                new String[]{"used", "max"}, new OpenType<?>[]{SimpleType.LONG, SimpleType.LONG});
+        final AttributeList attributes = new AttributeList();
+        attributes.add(new Attribute("Usage", new CompositeDataSupport(usageType, new String[]{"used", "max"},
+                new Object[]{10L, 100L})));
+        attributes.add(new Attribute("Valid", true));
+        when(mBeanServerConnection.getAttributes(eq(eden), any(String[].class))).thenReturn(attributes);
+        when(mBeanServerConnection.getAttribute(eq(survivor), eq("Usage"))).thenReturn(new CompositeDataSupport(
+                usageType, new String[]{"used", "max"}, new Object[]{30L, 100L}));
+
+        JMXQuery jmxQuery = new JMXQuery(
+                "(&(java.lang:type=MemoryPool,*!Usage:used@avg!50)(java.lang:type=MemoryPool,name=eden!Valid!false))",
+                false);
+        assertEquals(jmxQuery.execute(jmxQueryExecutor), true);
+        assertEquals(jmxQuery.getCheckResult().getMessage(),
+                "MemoryPool,*:Usage.used@avg=20.0 & MemoryPool,name=eden:Valid=true");
+        verify(mBeanServerConnection, never()).getAttribute(eq(eden), anyString());
+    }
+
+    @Test(description = "Test a pattern matching no MBean uses the default value.")
+    public void testPatternWithoutMatch() throws Exception {
+        JMXQuery jmxQuery = new JMXQuery("java.lang:type=GarbageCollector,*!CollectionCount@max!5!10!0", false);
+        assertEquals(jmxQuery.execute(jmxQueryExecutor), true);
+        assertEquals(jmxQuery.getCheckResult().getMessage(), "GarbageCollector,*:CollectionCount@max=0");
+    }
+
+    @Test(description = "Test reads fail at once while connecting takes longer than the connect timeout.")
+    @SuppressWarnings("unchecked")
+    public void testConnectFailsFast() throws Exception {
+        final ObjectName x = ObjectName.getInstance("foo:bar=x");
+        final CountDownLatch release = new CountDownLatch(1);
+        final JMXProvider slowProvider = mock(JMXProvider.class);
+        when(slowProvider.getConnector(any(JMXServiceURL.class), any(Map.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return jmxConnector;
+        });
+        when(mBeanServerConnection.getAttribute(eq(x), eq("baz"))).thenReturn(10);
+        final JMXQueryExecutor executor = new JMXQueryExecutor(slowProvider, "service:jmx:some://slow.com");
+        executor.setConnectTimeout(100);
+
+        // the caller starting the connect waits up to the connect timeout
+        long start = System.currentTimeMillis();
+        try {
+            executor.getAttribute(x, "baz");
+            fail("connected to a hanging jvm");
+        } catch (JMXQueryExecutorNotConnectedException e) {
+            assertTrue(System.currentTimeMillis() - start < 1000);
+        }
+
+        // all others fail at once
+        start = System.currentTimeMillis();
+        try {
+            executor.getAttribute(x, "baz");
+            fail("connected to a hanging jvm");
+        } catch (JMXQueryExecutorNotConnectedException e) {
+            assertTrue(System.currentTimeMillis() - start < 50);
+        }
+
+        release.countDown();
+        for (int i = 0; i < 100 && !executor.isConnected(); i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(executor.getAttribute(x, "baz"), 10);
+        verify(slowProvider, times(1)).getConnector(any(JMXServiceURL.class), any(Map.class));
+    }
+
+    @Test(description = "Test reconnects are backed off after a failed connect.")
+    @SuppressWarnings("unchecked")
+    public void testConnectBackoff() throws Exception {
+        final JMXProvider failingProvider = mock(JMXProvider.class);
+        when(failingProvider.getConnector(any(JMXServiceURL.class), any(Map.class)))
+                .thenThrow(new IOException("Connection refused"));
+        final JMXQueryExecutor executor = new JMXQueryExecutor(failingProvider, "service:jmx:some://down.com");
+        try {
+            executor.reconnect();
+            fail("connected to a jvm down");
+        } catch (JMXQueryExecutorNotConnectedException e) {
+            assertTrue(e.getMessage().endsWith("Connection refused"), e.getMessage());
+        }
+        try {
+            executor.reconnect();
+            fail("connected to a jvm down");
+        } catch (JMXQueryExecutorNotConnectedException e) {
+            assertTrue(e.getMessage().contains("retrying in 1s"), e.getMessage());
+        }
+        verify(failingProvider, times(1)).getConnector(any(JMXServiceURL.class), any(Map.class));
+
+        // the backoff ends with the url
+        try {
+            executor.connect("service:jmx:some://other.com");
+            fail("connected to a jvm down");
+        } catch (JMXQueryExecutorNotConnectedException e) {
+            assertTrue(e.getMessage().endsWith("Connection refused"), e.getMessage());
+        }
+        verify(failingProvider, times(2)).getConnector(any(JMXServiceURL.class), any(Map.class));
+    }
+
+    @Test(description = "Test a failed connection is reestablished by the next read.")
+    @SuppressWarnings("unchecked")
+    public void testConnectionLost() throws Exception {
+        final ArgumentCaptor<NotificationListener> listener = ArgumentCaptor.forClass(NotificationListener.class);
+        final ArgumentCaptor<Object> handback = ArgumentCaptor.forClass(Object.class);
+        verify(jmxConnector).addConnectionNotificationListener(listener.capture(), any(NotificationFilter.class),
+                handback.capture());
+        assertTrue(jmxQueryExecutor.isConnected());
+
+        listener.getValue().handleNotification(new JMXConnectionNotification(JMXConnectionNotification.FAILED,
+                jmxConnector, "1", 1, "heartbeat failed", null), handback.getValue());
+        assertFalse(jmxQueryExecutor.isConnected());
+
+        when(mBeanServerConnection.getAttribute(eq(ObjectName.getInstance("foo:bar=x")), eq("baz"))).thenReturn(10);
+        assertEquals(jmxQueryExecutor.getAttribute("foo:bar=x", "baz"), 10);
+        verify(jmxProvider, times(2)).getConnector(any(JMXServiceURL.class), any(Map.class));
+    }
 }
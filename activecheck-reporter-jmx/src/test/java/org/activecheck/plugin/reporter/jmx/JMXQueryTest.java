@@ -2,7 +2,11 @@ package org.activecheck.plugin.reporter.jmx;
 
 import static org.testng.Assert.assertEquals;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.activecheck.plugin.reporter.jmx.query.JMXQuery;
+import org.activecheck.plugin.reporter.jmx.query.JMXQueryAggregation;
 import org.activecheck.plugin.reporter.jmx.query.JMXQueryOperator;
 import org.testng.annotations.Test;
 import org.activecheck.common.nagios.NagiosServiceStatus;
@@ -196,4 +200,34 @@ public class JMXQueryTest {
 		assertEquals(jmxQuery.getCritical(), null);
 		assertEquals(jmxQuery.getDefaultValue(), "def");
 	}
+
+	@Test(description = "Test aggregation over a pattern.")
+	public void testAggregation() {
+		JMXQuery jmxQuery = new JMXQuery("java.lang:type=MemoryPool,name=*!Usage:used@MAX!100", false);
+		assertEquals(jmxQuery.getObject(), "java.lang:type=MemoryPool,name=*");
+		assertEquals(jmxQuery.getAttributeName(), "Usage");
+		assertEquals(jmxQuery.getAttributeKey(), "used");
+		assertEquals(jmxQuery.getAggregation(), JMXQueryAggregation.MAX);
+		assertEquals(jmxQuery.getWarning(), "100");
+	}
+
+	@Test(description = "Test a pattern without aggregation", expectedExceptions = IllegalArgumentException.class)
+	public void testPatternWithoutAggregation() {
+		new JMXQuery("java.lang:type=GarbageCollector,*!CollectionCount", false);
+	}
+
+	@Test(description = "Test an unknown aggregation", expectedExceptions = IllegalArgumentException.class)
+	public void testInvalidAggregation() {
+		new JMXQuery("java.lang:type=GarbageCollector,*!CollectionCount@median", false);
+	}
+
+	@Test(description = "Test the aggregation functions.")
+	public void testAggregationFunctions() {
+		List<Object> values = Arrays.<Object> asList(4, 8L, 6);
+		assertEquals(JMXQueryAggregation.SUM.aggregate(values), 18L);
+		assertEquals(JMXQueryAggregation.MAX.aggregate(values), 8L);
+		assertEquals(JMXQueryAggregation.MIN.aggregate(values), 4L);
+		assertEquals(JMXQueryAggregation.AVG.aggregate(values), 6.0);
+		assertEquals(JMXQueryAggregation.SUM.aggregate(Arrays.<Object> asList(1, 0.5)), 1.5);
+	}
 }
@@ -0,0 +1,33 @@
+package org.activecheck.plugin.reporter.jmx;
+
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import org.activecheck.plugin.reporter.jmx.common.JMXTimeoutSocketFactory;
+import org.testng.annotations.Test;
+
+public class JMXTimeoutSocketFactoryTest {
+	@Test(description = "Test a read from a jvm not answering times out")
+	public void testReadTimeout() throws Exception {
+		JMXTimeoutSocketFactory factory = JMXTimeoutSocketFactory.getInstance();
+		// accepted by the backlog, but never answered
+		try (ServerSocket server = new ServerSocket(0)) {
+			factory.setTimeouts(1000, 200);
+			long start = System.currentTimeMillis();
+			try (Socket socket = factory.createSocket("127.0.0.1", server.getLocalPort())) {
+				socket.getInputStream().read();
+				fail("read did not time out");
+			} catch (SocketTimeoutException e) {
+				long elapsed = System.currentTimeMillis() - start;
+				assertTrue(elapsed >= 150 && elapsed < 2000, String.valueOf(elapsed));
+			}
+		} finally {
+			factory.setTimeouts(JMXTimeoutSocketFactory.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+					JMXTimeoutSocketFactory.DEFAULT_READ_TIMEOUT_MILLIS);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package org.activecheck.plugin.reporter.jmx.common;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+public class LocalJMXResolverTest {
+	@Test(description = "Test the jmx port is read from a command line")
+	public void testJmxPortFromCmdline() {
+		byte[] cmdline = "java\0-Dcom.sun.management.jmxremote.port=9010\0-jar\0app.jar\0"
+				.getBytes(StandardCharsets.UTF_8);
+		assertEquals(LocalJMXResolver.jmxPort(cmdline), Optional.of("9010"));
+		assertFalse(LocalJMXResolver.jmxPort("java\0-jar\0app.jar\0".getBytes(StandardCharsets.UTF_8)).isPresent());
+	}
+
+	@Test(description = "Test the url of a process started with a jmx port is resolved from /proc")
+	public void testResolveFromProc() throws Exception {
+		if (!new File("/proc/self/cmdline").exists()) {
+			throw new SkipException("no /proc");
+		}
+		// any process with the argument will do, it is not attached to
+		Process process = new ProcessBuilder("sh", "-c", "sleep 30", "-Dcom.sun.management.jmxremote.port=19010")
+				.start();
+		try {
+			int pid = pid(process);
+			assertEquals(LocalJMXResolver.resolve(pid),
+					Collections.singletonList("service:jmx:rmi:///jndi/rmi://127.0.0.1:19010/jmxrmi"));
+			assertTrue(process.isAlive());
+		} finally {
+			process.destroy();
+			process.waitFor(5, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test(description = "Test the url of a jvm without jmx port is resolved by attaching to it")
+	public void testResolveByAttach() throws Exception {
+		// a jvm up to Java 8 may attach to itself
+		if (!System.getProperty("java.specification.version").startsWith("1.")) {
+			throw new SkipException("cannot attach to the own jvm");
+		}
+		String name = ManagementFactory.getRuntimeMXBean().getName();
+		int pid = Integer.parseInt(name.substring(0, name.indexOf('@')));
+		List<String> urls = LocalJMXResolver.resolve(pid);
+		if (urls.isEmpty() && !hasAttachApi()) {
+			throw new SkipException("no Attach API");
+		}
+		assertEquals(urls.size(), 1);
+		assertTrue(urls.get(0).startsWith("service:jmx:"), urls.get(0));
+	}
+
+	/**
+	 * Sleeps as a jvm with a jmx port.
+	 */
+	public static class Sleeper {
+		public static void main(String[] args) throws InterruptedException {
+			Thread.sleep(30000);
+		}
+	}
+
+	@Test(description = "Test the local connector of a jvm is tried before its jmx port")
+	public void testLocalConnectorFirst() throws Exception {
+		if (!new File("/proc/self/maps").exists() || !hasAttachApi()) {
+			throw new SkipException("no /proc or Attach API");
+		}
+		File java = new File(System.getProperty("java.home"), "bin" + File.separator + "java");
+		Process process = new ProcessBuilder(java.getPath(), "-Dcom.sun.management.jmxremote.port=19011",
+				"-Dcom.sun.management.jmxremote.authenticate=false", "-Dcom.sun.management.jmxremote.ssl=false",
+				"-cp", System.getProperty("java.class.path"), Sleeper.class.getName()).start();
+		try {
+			int pid = pid(process);
+			List<String> urls = Collections.emptyList();
+			// the agent is started after the jvm
+			for (int i = 0; i < 100 && urls.size() < 2; i++) {
+				Thread.sleep(100);
+				urls = LocalJMXResolver.resolve(pid);
+			}
+			assertEquals(urls.size(), 2, urls.toString());
+			assertTrue(urls.get(0).startsWith("service:jmx:"), urls.get(0));
+			assertEquals(urls.get(1), "service:jmx:rmi:///jndi/rmi://127.0.0.1:19011/jmxrmi");
+		} finally {
+			process.destroy();
+			process.waitFor(5, TimeUnit.SECONDS);
+		}
+	}
+
+	private static boolean hasAttachApi() {
+		try {
+			Class.forName("com.sun.tools.attach.VirtualMachine");
+			return true;
+		} catch (ClassNotFoundException e) {
+			return new File(System.getProperty("java.home"), "../lib/tools.jar").isFile();
+		}
+	}
+
+	private static int pid(Process process) throws ReflectiveOperationException {
+		java.lang.reflect.Field field = process.getClass().getDeclaredField("pid");
+		field.setAccessible(true);
+		return field.getInt(process);
+	}
+}
@@ -236,6 +236,12 @@ public class MongodbReporter extends ActivecheckReporter {
         }
     }
 
+    @Override
+    public String getTarget() {
+        final String socketPath = properties.getString("socket", null);
+        return socketPath != null ? socketPath : properties.getString("url", ServerAddress.defaultHost());
+    }
+
     @Override
     protected void cleanUp() {
         if (mongoClient != null) {
@@ -0,0 +1,24 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the outcome of an {@link NrpeRequest}. The methods are called on
+ * the thread of the {@link NrpeEngine} and must not block.
+ */
+public interface NrpeCallback {
+	/**
+	 * @param response
+	 *            the response packet, only valid during the call
+	 * @throws IOException
+	 *             if the response is not usable, which fails the attempt
+	 *             like a connection error, as does a runtime exception
+	 */
+	void completed(ByteBuffer response) throws IOException;
+
+	/**
+	 * Called once all attempts have failed.
+	 */
+	void failed(Exception e);
+}
@@ -1,8 +1,7 @@
 package org.activecheck.plugin.reporter.nrpe;
 
-import it.jnrpe.net.JNRPERequest;
-import it.jnrpe.net.JNRPEResponse;
-import it.jnrpe.net.PacketVersion;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
 
 import org.activecheck.common.nagios.NagiosCheck;
 import org.activecheck.common.nagios.NagiosServiceStatus;
@@ -10,26 +9,29 @@ import org.activecheck.common.nagios.NagiosServiceStatus;
 public class NrpeCommand extends NagiosCheck {
 	private final String command;
 	private final String arguments;
-	private final JNRPERequest request;
+	private final NrpeQuery query;
 
 	public NrpeCommand(String command, String arguments) {
 		this.command = command;
 		this.arguments = arguments;
-		request = new JNRPERequest(command, arguments);
-		request.setPacketVersion(PacketVersion.VERSION_2);
+		query = new NrpeQuery(command, arguments);
 
 		checkResult.setStatus(NagiosServiceStatus.UNKNOWN);
-		checkResult.addPerfDataReplacement("_", ".");
 	}
 
-	public JNRPERequest getRequest() {
-		return request;
+	public NrpeQuery getNrpeQuery() {
+		return query;
 	}
 
-	public void parseResponse(JNRPEResponse response) {
-		String message = response.getStringMessage();
+	/**
+	 * @param response
+	 *            a complete response packet of any version
+	 */
+	public void parseResponse(ByteBuffer response) throws ProtocolException {
+		NrpePacket.verify(response, NrpePacket.RESPONSE);
+		String message = NrpePacket.getText(response);
 		checkResult.parseMessage(message, NagiosServiceStatus
-				.statusCodeToStatus(response.getResultCode()));
+				.statusCodeToStatus(NrpePacket.getResultCode(response)));
 	}
 
 	@Override
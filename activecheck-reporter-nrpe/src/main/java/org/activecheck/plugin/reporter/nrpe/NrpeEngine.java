@@ -0,0 +1,548 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link NrpeRequest}s without blocking the caller.
+ * <p>
+ * One selector thread connects, runs the TLS handshakes with an
+ * {@link SSLEngine} and exchanges the packets of all requests in flight.
+ * Every attempt has a deadline, and a failed attempt is repeated after the
+ * retry delay of its request without occupying a thread in between. The
+ * callback of a request is called once on the engine thread. TLS sessions are
+ * resumed per host and port like those of {@link NrpeSocketFactory}.
+ * <p>
+ * Queries are sent as version 4 packets first. A daemon closing the
+ * connection without a response gets the query again with the previous
+ * version, down to version 2, and the version a daemon has answered to is
+ * kept for its later requests. Buffers are pooled.
+ */
+public final class NrpeEngine implements Runnable, Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(NrpeEngine.class);
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	// fits tls records and the responses of most checks
+	private static final int BUFFER_SIZE = 32 * 1024;
+	private static final int MAX_POOLED_BUFFERS = 256;
+	private static final Comparator<Attempt> BY_DEADLINE = new Comparator<Attempt>() {
+		@Override
+		public int compare(Attempt a, Attempt b) {
+			return Long.compare(a.deadline, b.deadline);
+		}
+	};
+	private static final Comparator<Attempt> BY_START = new Comparator<Attempt>() {
+		@Override
+		public int compare(Attempt a, Attempt b) {
+			return Long.compare(a.startMillis, b.startMillis);
+		}
+	};
+
+	private static NrpeEngine instance = null;
+
+	private final Selector selector;
+	private final Thread thread;
+	private final Queue<NrpeRequest> submitted = new ConcurrentLinkedQueue<>();
+	// used by the engine thread only
+	private final PriorityQueue<Attempt> delayed = new PriorityQueue<>(11, BY_START);
+	private final PriorityQueue<Attempt> deadlines = new PriorityQueue<>(11, BY_DEADLINE);
+	// the packet version each daemon has answered to
+	private final Map<String, Integer> versions = new HashMap<>();
+	private final Deque<ByteBuffer> buffers = new ArrayDeque<>();
+	private volatile boolean running = true;
+	private volatile int inFlight = 0;
+
+	/**
+	 * @return the engine shared by all nrpe reporters
+	 */
+	public static synchronized NrpeEngine getInstance() throws IOException {
+		if (instance == null) {
+			instance = new NrpeEngine("NrpeEngine");
+		}
+		return instance;
+	}
+
+	public NrpeEngine(String threadName) throws IOException {
+		selector = Selector.open();
+		thread = new Thread(this, threadName);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Starts the first attempt of a request.
+	 */
+	public void submit(NrpeRequest request) {
+		if (!running) {
+			request.getCallback().failed(new IOException("the nrpe engine has been closed"));
+			return;
+		}
+		submitted.add(request);
+		selector.wakeup();
+	}
+
+	/**
+	 * @return the number of requests not completed yet
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				long now = System.currentTimeMillis();
+				NrpeRequest request;
+				while ((request = submitted.poll()) != null) {
+					inFlight++;
+					final Integer version = versions.get(request.getHost() + ":" + request.getPort());
+					new Attempt(request, request.getRetries(), now,
+							version == null ? NrpePacket.VERSION_4 : version).start(now);
+				}
+				while (!delayed.isEmpty() && delayed.peek().startMillis <= now) {
+					delayed.poll().start(now);
+				}
+				while (!deadlines.isEmpty() && (deadlines.peek().done || deadlines.peek().deadline <= now)) {
+					final Attempt attempt = deadlines.poll();
+					if (!attempt.done) {
+						attempt.fail(new SocketTimeoutException("no response from " + attempt.target() + " within "
+								+ attempt.request.getTimeoutMillis() + "ms"));
+					}
+				}
+
+				selector.select(nextTimeout(now));
+				final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					final SelectionKey key = keys.next();
+					keys.remove();
+					((Attempt) key.attachment()).ready(key);
+				}
+			} catch (IOException | ClosedSelectorException e) {
+				if (running) {
+					logger.error("NRPE engine failed: " + e.getMessage());
+					logger.trace(e.getMessage(), e);
+				}
+			}
+		}
+		shutdown();
+	}
+
+	/**
+	 * @return the time until the next attempt starts or times out, 0 to wait
+	 *         for a selected key only
+	 */
+	private long nextTimeout(long now) {
+		long next = Long.MAX_VALUE;
+		if (!delayed.isEmpty()) {
+			next = delayed.peek().startMillis;
+		}
+		if (!deadlines.isEmpty()) {
+			next = Math.min(next, deadlines.peek().deadline);
+		}
+		return next == Long.MAX_VALUE ? 0 : Math.max(1, next - now);
+	}
+
+	private ByteBuffer takeBuffer(int capacity) {
+		if (capacity > BUFFER_SIZE) {
+			return ByteBuffer.allocate(capacity);
+		}
+		final ByteBuffer buffer = buffers.poll();
+		return buffer == null ? ByteBuffer.allocate(BUFFER_SIZE) : buffer;
+	}
+
+	private void releaseBuffer(ByteBuffer buffer) {
+		if (buffer != null && buffer.capacity() == BUFFER_SIZE && buffers.size() < MAX_POOLED_BUFFERS) {
+			buffer.clear();
+			buffers.push(buffer);
+		}
+	}
+
+	/**
+	 * @return a buffer of at least the given capacity with the content of
+	 *         the given one, which is released
+	 */
+	private ByteBuffer grow(ByteBuffer buffer, int capacity) {
+		final ByteBuffer grown = ByteBuffer.allocate(Math.max(capacity, 2 * buffer.capacity()));
+		buffer.flip();
+		grown.put(buffer);
+		releaseBuffer(buffer);
+		return grown;
+	}
+
+	private void shutdown() {
+		final IOException closed = new IOException("the nrpe engine has been closed");
+		for (Attempt attempt : deadlines) {
+			if (!attempt.done) {
+				attempt.close();
+				attempt.finish(closed);
+			}
+		}
+		for (Attempt attempt : delayed) {
+			attempt.finish(closed);
+		}
+		NrpeRequest request;
+		while ((request = submitted.poll()) != null) {
+			request.getCallback().failed(closed);
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			logger.trace(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * One try of a request, from connecting until the response has been read.
+	 */
+	private final class Attempt {
+		private final NrpeRequest request;
+		private final int retriesLeft;
+		private final long startMillis;
+		private final int version;
+		private long deadline = 0;
+		private boolean done = false;
+		private SocketChannel channel = null;
+		private SelectionKey key = null;
+		private SSLEngine sslEngine = null;
+		private boolean handshaken = false;
+		private long handshakeStart = 0;
+		private boolean eof = false;
+		private int responseLength = -1;
+		// the query to send and the response read, and the tls records
+		private ByteBuffer appOut = null;
+		private ByteBuffer appIn = null;
+		private ByteBuffer netOut = null;
+		private ByteBuffer netIn = null;
+
+		private Attempt(NrpeRequest request, int retriesLeft, long startMillis, int version) {
+			this.request = request;
+			this.retriesLeft = retriesLeft;
+			this.startMillis = startMillis;
+			this.version = version;
+		}
+
+		private String target() {
+			return request.getHost() + ":" + request.getPort();
+		}
+
+		private void start(long now) {
+			deadline = now + request.getTimeoutMillis();
+			deadlines.add(this);
+			try {
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				final InetSocketAddress address = new InetSocketAddress(request.getHost(), request.getPort());
+				if (address.isUnresolved()) {
+					throw new UnknownHostException(request.getHost());
+				}
+				if (channel.connect(address)) {
+					connected();
+				} else {
+					key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+				}
+			} catch (IOException | RuntimeException e) {
+				fail(e);
+			}
+		}
+
+		private void ready(SelectionKey key) {
+			if (done) {
+				return;
+			}
+			try {
+				if (key.isConnectable()) {
+					channel.finishConnect();
+					connected();
+				} else {
+					progress();
+				}
+			} catch (IOException | RuntimeException e) {
+				fail(e);
+			}
+		}
+
+		private void connected() throws IOException {
+			appOut = ByteBuffer.wrap(request.getQuery().getPacket(version));
+			if (request.isUseSsl()) {
+				// created for the target so the session cache is keyed by it
+				sslEngine = NrpeSocketFactory.getInstance().getSslContext()
+						.createSSLEngine(request.getHost(), request.getPort());
+				sslEngine.setUseClientMode(true);
+				sslEngine.setEnabledCipherSuites(NrpeSocketFactory.ADH_CIPHER_SUITES);
+				final int packetSize = sslEngine.getSession().getPacketBufferSize();
+				netIn = takeBuffer(packetSize);
+				netOut = takeBuffer(packetSize);
+				netOut.flip();
+				appIn = takeBuffer(sslEngine.getSession().getApplicationBufferSize() + NrpePacket.V2_LENGTH);
+				handshakeStart = System.nanoTime();
+				sslEngine.beginHandshake();
+			} else {
+				appIn = takeBuffer(NrpePacket.V2_LENGTH);
+			}
+			progress();
+		}
+
+		/**
+		 * Moves the exchange on as far as possible without blocking.
+		 */
+		private void progress() throws IOException {
+			if (sslEngine == null) {
+				if (appOut.hasRemaining()) {
+					channel.write(appOut);
+					if (appOut.hasRemaining()) {
+						interest(SelectionKey.OP_WRITE);
+						return;
+					}
+				}
+				while (!received()) {
+					if (!appIn.hasRemaining()) {
+						appIn = grow(appIn, responseLength);
+					}
+					final int read = channel.read(appIn);
+					if (read < 0) {
+						throw new EOFException("connection closed by " + target());
+					} else if (read == 0) {
+						interest(SelectionKey.OP_READ);
+						return;
+					}
+				}
+				complete();
+				return;
+			}
+			while (true) {
+				if (netOut.hasRemaining()) {
+					channel.write(netOut);
+					if (netOut.hasRemaining()) {
+						interest(SelectionKey.OP_WRITE);
+						return;
+					}
+				}
+				switch (sslEngine.getHandshakeStatus()) {
+				case NEED_TASK:
+					Runnable task;
+					while ((task = sslEngine.getDelegatedTask()) != null) {
+						task.run();
+					}
+					break;
+				case NEED_WRAP:
+					wrap(EMPTY);
+					break;
+				case NEED_UNWRAP:
+					if (!unwrap()) {
+						interest(SelectionKey.OP_READ);
+						return;
+					}
+					break;
+				default:
+					if (!handshaken) {
+						handshaken = true;
+						NrpeSocketFactory.getInstance().getStatistics(request.getHost(), request.getPort())
+								.handshakeCompleted(sslEngine.getSession(), System.nanoTime() - handshakeStart);
+					}
+					if (appOut.hasRemaining()) {
+						wrap(appOut);
+					} else if (received()) {
+						complete();
+						return;
+					} else if (!unwrap()) {
+						interest(SelectionKey.OP_READ);
+						return;
+					}
+					break;
+				}
+			}
+		}
+
+		/**
+		 * @return true once the response packet has been read completely
+		 */
+		private boolean received() throws IOException {
+			if (responseLength < 0) {
+				appIn.flip();
+				try {
+					responseLength = NrpePacket.length(appIn, appIn.remaining());
+				} finally {
+					appIn.position(appIn.limit());
+					appIn.limit(appIn.capacity());
+				}
+			}
+			return responseLength >= 0 && appIn.position() >= responseLength;
+		}
+
+		private void wrap(ByteBuffer source) throws IOException {
+			netOut.compact();
+			final SSLEngineResult result;
+			try {
+				result = sslEngine.wrap(source, netOut);
+			} finally {
+				netOut.flip();
+			}
+			if (result.getStatus() != SSLEngineResult.Status.OK) {
+				throw new SSLException("unable to send to " + target() + ": " + result.getStatus());
+			}
+		}
+
+		/**
+		 * @return false if more data has to be received first
+		 */
+		private boolean unwrap() throws IOException {
+			if (!eof && channel.read(netIn) < 0) {
+				eof = true;
+			}
+			netIn.flip();
+			final SSLEngineResult result;
+			try {
+				result = sslEngine.unwrap(netIn, appIn);
+			} finally {
+				netIn.compact();
+			}
+			switch (result.getStatus()) {
+			case OK:
+				return result.bytesConsumed() > 0
+						|| result.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NEED_UNWRAP;
+			case BUFFER_OVERFLOW:
+				// a response longer than a version 2 packet
+				appIn = grow(appIn, appIn.position() + sslEngine.getSession().getApplicationBufferSize());
+				return true;
+			case BUFFER_UNDERFLOW:
+				if (eof) {
+					throw new EOFException("connection closed by " + target());
+				}
+				return false;
+			default:
+				throw new EOFException("connection closed by " + target());
+			}
+		}
+
+		private void interest(int ops) throws IOException {
+			if (key == null) {
+				key = channel.register(selector, ops, this);
+			} else {
+				key.interestOps(ops);
+			}
+		}
+
+		private void complete() {
+			close();
+			if (!versions.containsKey(target())) {
+				versions.put(target(), version);
+			}
+			appIn.flip();
+			appIn.limit(responseLength);
+			try {
+				request.getCallback().completed(appIn);
+			} catch (IOException | RuntimeException e) {
+				retry(e);
+				return;
+			} finally {
+				release();
+			}
+			inFlight--;
+		}
+
+		private void fail(Exception e) {
+			close();
+			final boolean rejected = version > NrpePacket.VERSION_2 && appOut != null && !appOut.hasRemaining()
+					&& appIn != null && appIn.position() == 0 && !(e instanceof SocketTimeoutException);
+			release();
+			if (rejected && !versions.containsKey(target())) {
+				// daemons close the connection on queries of newer versions
+				logger.info("Retrying NRPE request to " + target() + " with packet version " + (version - 1)
+						+ ". Error message: '" + e.getMessage() + "'");
+				delayed.add(new Attempt(request, retriesLeft, System.currentTimeMillis(), version - 1));
+			} else {
+				retry(e);
+			}
+		}
+
+		private void retry(Exception e) {
+			if (retriesLeft > 0) {
+				logger.info("Retrying NRPE request to " + target() + " in " + request.getRetryDelayMillis()
+						+ "ms. Error message: '" + e.getMessage() + "'");
+				delayed.add(new Attempt(request, retriesLeft - 1,
+						System.currentTimeMillis() + request.getRetryDelayMillis(), version));
+			} else {
+				finish(e);
+			}
+		}
+
+		private void finish(Exception e) {
+			inFlight--;
+			try {
+				request.getCallback().failed(e);
+			} catch (RuntimeException re) {
+				logger.error("Unable to process the failure of " + target() + ": " + re.getMessage());
+				logger.trace(re.getMessage(), re);
+			}
+		}
+
+		private void close() {
+			done = true;
+			if (sslEngine != null && handshaken) {
+				// best effort, the daemon closes the connection anyway
+				sslEngine.closeOutbound();
+				try {
+					netOut.clear();
+					sslEngine.wrap(EMPTY, netOut);
+					netOut.flip();
+					channel.write(netOut);
+				} catch (IOException e) {
+					logger.trace(e.getMessage(), e);
+				}
+			}
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					logger.trace(e.getMessage(), e);
+				}
+			}
+		}
+
+		private void release() {
+			releaseBuffer(appIn);
+			releaseBuffer(netIn);
+			releaseBuffer(netOut);
+			appIn = null;
+			netIn = null;
+			netOut = null;
+		}
+	}
+}
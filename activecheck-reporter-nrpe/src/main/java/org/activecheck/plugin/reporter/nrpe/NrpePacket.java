@@ -0,0 +1,160 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.activecheck.common.Encoding;
+import org.apache.commons.lang.Validate;
+
+/**
+ * Encodes and decodes the packets of the NRPE protocol.
+ * <p>
+ * A version 2 packet has a fixed length of 1036 bytes and carries at most
+ * 1023 bytes of text. Packets of version 3 and 4 have a header of 16 bytes
+ * followed by a buffer of the length given in the header, and version 3 adds
+ * three bytes of padding after the buffer. The text in the buffer is
+ * terminated by a null byte. Every packet has a CRC32 checksum, calculated
+ * with the checksum field set to 0.
+ * <p>
+ * Packets are decoded from the position of the given buffer, which has to be
+ * backed by an array.
+ */
+public final class NrpePacket {
+	public static final int VERSION_2 = 2;
+	public static final int VERSION_3 = 3;
+	public static final int VERSION_4 = 4;
+	public static final int QUERY = 1;
+	public static final int RESPONSE = 2;
+	public static final int V2_LENGTH = 1036;
+	public static final int MAX_BUFFER_LENGTH = 64 * 1024;
+	public static final int STATE_UNKNOWN = 3;
+
+	private static final int V2_BUFFER_LENGTH = 1024;
+	private static final int V2_TEXT_OFFSET = 10;
+	private static final int HEADER_LENGTH = 16;
+	private static final int V3_PADDING = 3;
+	private static final byte[] ZERO_CRC = new byte[4];
+
+	private NrpePacket() {
+	}
+
+	/**
+	 * @param text
+	 *            the query or output, truncated to 1023 bytes for version 2
+	 * @return the packet with its checksum
+	 */
+	public static byte[] encode(int version, int type, int resultCode, String text) {
+		byte[] bytes = text.getBytes(Encoding.UTF8);
+		final ByteBuffer packet;
+		if (version == VERSION_2) {
+			packet = ByteBuffer.allocate(V2_LENGTH);
+			packet.putShort((short) version);
+			packet.putShort((short) type);
+			packet.putInt(0);
+			packet.putShort((short) resultCode);
+			packet.put(bytes, 0, Math.min(bytes.length, V2_BUFFER_LENGTH - 1));
+		} else {
+			Validate.isTrue(version == VERSION_3 || version == VERSION_4, "unsupported nrpe packet version " + version);
+			Validate.isTrue(bytes.length < MAX_BUFFER_LENGTH, "the nrpe packet text is too long");
+			// not shorter than version 2 packets, which old daemons read
+			final int bufferLength = Math.max(bytes.length + 1, V2_LENGTH - HEADER_LENGTH);
+			packet = ByteBuffer.allocate(HEADER_LENGTH + bufferLength + (version == VERSION_3 ? V3_PADDING : 0));
+			packet.putShort((short) version);
+			packet.putShort((short) type);
+			packet.putInt(0);
+			packet.putShort((short) resultCode);
+			packet.putShort((short) 0);
+			packet.putInt(bufferLength);
+			packet.put(bytes);
+		}
+		final CRC32 crc = new CRC32();
+		crc.update(packet.array());
+		packet.putInt(4, (int) crc.getValue());
+		return packet.array();
+	}
+
+	/**
+	 * @param available
+	 *            the number of bytes of the packet received so far
+	 * @return the length of the packet, or -1 if it is not known yet
+	 * @throws ProtocolException
+	 *             if the packet is invalid
+	 */
+	public static int length(ByteBuffer packet, int available) throws ProtocolException {
+		if (available < 2) {
+			return -1;
+		}
+		final int base = packet.position();
+		final int version = packet.getShort(base);
+		if (version == VERSION_2) {
+			return V2_LENGTH;
+		}
+		if (version != VERSION_3 && version != VERSION_4) {
+			throw new ProtocolException("unsupported nrpe packet version " + version);
+		}
+		if (available < HEADER_LENGTH) {
+			return -1;
+		}
+		final int bufferLength = packet.getInt(base + 12);
+		if (bufferLength <= 0 || bufferLength > MAX_BUFFER_LENGTH) {
+			throw new ProtocolException("invalid nrpe buffer length " + bufferLength);
+		}
+		return HEADER_LENGTH + bufferLength + (version == VERSION_3 ? V3_PADDING : 0);
+	}
+
+	/**
+	 * Checks the packet, which has to be complete.
+	 *
+	 * @throws ProtocolException
+	 *             if the packet is not of the given type or its checksum does
+	 *             not match
+	 */
+	public static void verify(ByteBuffer packet, int type) throws ProtocolException {
+		final int length = length(packet, packet.remaining());
+		if (length < 0 || packet.remaining() < length) {
+			throw new ProtocolException("incomplete nrpe packet");
+		}
+		final int base = packet.position();
+		if (packet.getShort(base + 2) != type) {
+			throw new ProtocolException("unexpected nrpe packet type " + packet.getShort(base + 2));
+		}
+		final int offset = packet.arrayOffset() + base;
+		final CRC32 crc = new CRC32();
+		crc.update(packet.array(), offset, 4);
+		crc.update(ZERO_CRC, 0, ZERO_CRC.length);
+		crc.update(packet.array(), offset + 8, length - 8);
+		if ((int) crc.getValue() != packet.getInt(base + 4)) {
+			throw new ProtocolException("invalid nrpe packet checksum");
+		}
+	}
+
+	public static int getVersion(ByteBuffer packet) {
+		return packet.getShort(packet.position());
+	}
+
+	public static int getResultCode(ByteBuffer packet) {
+		return packet.getShort(packet.position() + 8);
+	}
+
+	/**
+	 * @return the text of a complete packet up to its null byte
+	 */
+	public static String getText(ByteBuffer packet) {
+		final int base = packet.position();
+		final int start;
+		final int end;
+		if (getVersion(packet) == VERSION_2) {
+			start = base + V2_TEXT_OFFSET;
+			end = start + V2_BUFFER_LENGTH;
+		} else {
+			start = base + HEADER_LENGTH;
+			end = start + packet.getInt(base + 12);
+		}
+		int length = 0;
+		while (start + length < end && packet.get(start + length) != 0) {
+			length++;
+		}
+		return new String(packet.array(), packet.arrayOffset() + start, length, Encoding.UTF8);
+	}
+}
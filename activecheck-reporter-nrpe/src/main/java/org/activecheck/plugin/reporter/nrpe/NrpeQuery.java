@@ -0,0 +1,38 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.Validate;
+
+/**
+ * A command with its arguments, encoded once as query packet of every
+ * supported NRPE version.
+ */
+public final class NrpeQuery {
+	private final String query;
+	private final byte[][] packets = new byte[NrpePacket.VERSION_4 + 1][];
+
+	/**
+	 * @param arguments
+	 *            the arguments separated by <code>!</code>, null if there are
+	 *            none
+	 */
+	public NrpeQuery(String command, String arguments) {
+		Validate.notEmpty(command, "the nrpe command must be set");
+		query = StringUtils.isEmpty(arguments) ? command : command + "!" + arguments;
+		for (int version = NrpePacket.VERSION_2; version <= NrpePacket.VERSION_4; version++) {
+			packets[version] = NrpePacket.encode(version, NrpePacket.QUERY, NrpePacket.STATE_UNKNOWN, query);
+		}
+	}
+
+	/**
+	 * @return the query packet of the given version, not to be modified
+	 */
+	public byte[] getPacket(int version) {
+		return packets[version];
+	}
+
+	@Override
+	public String toString() {
+		return query;
+	}
+}
@@ -1,13 +1,16 @@
 package org.activecheck.plugin.reporter.nrpe;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
+import org.activecheck.common.nagios.NagiosPerformanceDataRules;
 import org.activecheck.common.nagios.NagiosServiceStatus;
 import org.activecheck.common.plugin.ActivecheckPluginProperties;
 import org.activecheck.common.plugin.reporter.ActivecheckReporter;
+import org.activecheck.common.plugin.reporter.ActivecheckReporterCompletion;
 import org.activecheck.common.plugin.reporter.ActivecheckReporterException;
 import org.apache.commons.configuration.PropertiesConfiguration;
-import org.apache.commons.lang.Validate;
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,7 +18,8 @@ import org.slf4j.LoggerFactory;
 
 @ActivecheckPluginProperties(propertiesToMerge = { "nrpe_port", "nrpe_host",
 		"nrpe_ssl", "nrpe_timeout" })
-public class NrpeReporter extends ActivecheckReporter {
+public class NrpeReporter extends ActivecheckReporter implements
+		NrpeReporterMBean {
 	private static final Logger logger = LoggerFactory
 			.getLogger(NrpeReporter.class);
 
@@ -23,6 +27,7 @@ public class NrpeReporter extends ActivecheckReporter {
 	private static final int DEFAULT_NRPE_PORT = 5666;
 	private static final boolean DEFAULT_NRPE_SSL = true;
 	private static final int DEFAULT_NRPE_TIMEOUT = 10;
+	private static final int RETRIES = 1;
 	private static final int RETRY_DELAY = 1000;
 
 	private String host = DEFAULT_NRPE_HOST;
@@ -49,7 +54,15 @@ public class NrpeReporter extends ActivecheckReporter {
 		// redefine values
 		String command = properties.getString("command", null);
 		String arguments = properties.getString("arguments", null);
-		nrpeCommand = new NrpeCommand(command, arguments);
+		nrpeCommand = command == null ? null : new NrpeCommand(command,
+				arguments);
+	}
+
+	@Override
+	protected NagiosPerformanceDataRules compilePerfDataRules() {
+		// underscores in nrpe labels have always been reported as dots
+		return NagiosPerformanceDataRules.EMPTY.withRename("_", ".")
+				.withProperties(properties);
 	}
 
 	@Override
@@ -65,36 +78,88 @@ public class NrpeReporter extends ActivecheckReporter {
 					+ "': Running NRPE command '" + nrpeCommand.getQuery()
 					+ "'");
 
+			final NrpeCommand command = nrpeCommand;
+			final ActivecheckReporterCompletion completion = deferCompletion();
+			final NrpeRequest request = new NrpeRequest(host, port, useSsl,
+					timeout * 1000, RETRIES, RETRY_DELAY,
+					command.getNrpeQuery(), new NrpeCallback() {
+						@Override
+						public void completed(ByteBuffer response)
+								throws IOException {
+							command.parseResponse(response);
+							if (StringUtils.isEmpty(command.getCheckResult()
+									.getMessage())) {
+								throw new IOException("empty response");
+							}
+							setOverallServiceReport(command.getCheckResult());
+							logger.debug("Service '"
+									+ getOverallServiceName()
+									+ "': '"
+									+ command.getCheckResult()
+											.getMessageWithPerformancedata()
+									+ "'");
+							completion.complete();
+						}
+
+						@Override
+						public void failed(Exception e) {
+							logger.error("Error running NRPE command: '"
+									+ command.getQuery() + "': "
+									+ e.getMessage());
+							logger.trace(e.getMessage(), e);
+							setOverallServiceReport(
+									NagiosServiceStatus.CRITICAL,
+									e.getMessage());
+							completion.complete();
+						}
+					});
 			try {
-				try {
-					// run nrpe command
-					NrpeCommandInvoker.execute(host, port, useSsl, timeout,
-							nrpeCommand);
-					Validate.notEmpty(nrpeCommand.getCheckResult().getMessage());
-				} catch (IOException | NullPointerException
-						| IllegalArgumentException e) {
-					logger.info("Rerunning NRPE command in " + RETRY_DELAY
-							+ "ms. Error message: '" + e.getMessage() + "'");
-					Thread.sleep(RETRY_DELAY);
-					NrpeCommandInvoker.execute(host, port, useSsl, timeout,
-							nrpeCommand);
-				}
-				setOverallServiceReport(nrpeCommand.getCheckResult());
-				logger.debug("Service '"
-						+ getOverallServiceName()
-						+ "': '"
-						+ nrpeCommand.getCheckResult()
-								.getMessageWithPerformancedata() + "'");
-			} catch (Exception e) {
-				logger.error("Error running NRPE command: '"
-						+ nrpeCommand.getQuery() + "': " + e.getMessage());
-				logger.trace(e.getMessage(), e);
-				setOverallServiceReport(NagiosServiceStatus.CRITICAL,
-						e.getMessage());
+				NrpeEngine.getInstance().submit(request);
+			} catch (IOException e) {
+				throw new ActivecheckReporterException(
+						"unable to start the NRPE engine: " + e.getMessage(), e);
 			}
 		}
 	}
 
+	@Override
+	public String getTarget() {
+		return host + ":" + port;
+	}
+
+	@Override
+	public int getRequestsInFlight() {
+		try {
+			return NrpeEngine.getInstance().getInFlight();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	@Override
+	public long getTlsHandshakes() {
+		return NrpeSocketFactory.getInstance().getStatistics(host, port)
+				.getHandshakes();
+	}
+
+	@Override
+	public long getTlsResumptions() {
+		return NrpeSocketFactory.getInstance().getStatistics(host, port)
+				.getResumptions();
+	}
+
+	@Override
+	public double getTlsHandshakeMillis() {
+		return NrpeSocketFactory.getInstance().getStatistics(host, port)
+				.getAverageHandshakeMillis();
+	}
+
+	@Override
+	public double getTlsResumptionMillis() {
+		return NrpeSocketFactory.getInstance().getStatistics(host, port)
+				.getAverageResumptionMillis();
+	}
+
 	@Override
 	protected void cleanUp() {
 		return;
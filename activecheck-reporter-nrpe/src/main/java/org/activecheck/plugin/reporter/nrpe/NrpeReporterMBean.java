@@ -0,0 +1,21 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import org.activecheck.common.plugin.reporter.ActivecheckReporterMBean;
+
+@SuppressWarnings("unused")
+public interface NrpeReporterMBean extends ActivecheckReporterMBean {
+	// @Description("nrpe requests of all reporters in flight")
+	int getRequestsInFlight();
+
+	// @Description("full TLS handshakes with the nrpe daemon")
+	long getTlsHandshakes();
+
+	// @Description("resumed TLS sessions with the nrpe daemon")
+	long getTlsResumptions();
+
+	// @Description("average full TLS handshake time in milliseconds")
+	double getTlsHandshakeMillis();
+
+	// @Description("average TLS resumption time in milliseconds")
+	double getTlsResumptionMillis();
+}
@@ -0,0 +1,75 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * A query to an NRPE daemon run by the {@link NrpeEngine}.
+ */
+public final class NrpeRequest {
+	private final String host;
+	private final int port;
+	private final boolean useSsl;
+	private final int timeoutMillis;
+	private final int retries;
+	private final int retryDelayMillis;
+	private final NrpeQuery query;
+	private final NrpeCallback callback;
+
+	/**
+	 * @param timeoutMillis
+	 *            the deadline of every attempt, including connecting and the
+	 *            TLS handshake
+	 * @param retries
+	 *            how often a failed attempt is repeated
+	 * @param retryDelayMillis
+	 *            the time between a failed attempt and the next one
+	 */
+	public NrpeRequest(String host, int port, boolean useSsl, int timeoutMillis, int retries, int retryDelayMillis,
+			NrpeQuery query, NrpeCallback callback) {
+		Validate.notEmpty(host, "the nrpe host must be set");
+		Validate.isTrue(timeoutMillis > 0, "the nrpe timeout must be positive");
+		Validate.isTrue(retries >= 0, "the nrpe retries must not be negative");
+		Validate.notNull(query);
+		Validate.notNull(callback);
+		this.host = host;
+		this.port = port;
+		this.useSsl = useSsl;
+		this.timeoutMillis = timeoutMillis;
+		this.retries = retries;
+		this.retryDelayMillis = retryDelayMillis;
+		this.query = query;
+		this.callback = callback;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public boolean isUseSsl() {
+		return useSsl;
+	}
+
+	public int getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public int getRetries() {
+		return retries;
+	}
+
+	public int getRetryDelayMillis() {
+		return retryDelayMillis;
+	}
+
+	public NrpeQuery getQuery() {
+		return query;
+	}
+
+	public NrpeCallback getCallback() {
+		return callback;
+	}
+}
@@ -0,0 +1,173 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Opens connections to NRPE daemons.
+ * <p>
+ * All TLS connections are created from one {@link SSLContext}. Its client
+ * session cache is keyed by the host and port a socket is created for, so a
+ * connection to a daemon that has been connected before resumes the cached
+ * session instead of running a full anonymous DH handshake, as long as the
+ * daemon still knows the session. Handshakes and resumptions are counted per
+ * target, see {@link #getStatistics(String, int)}.
+ */
+public final class NrpeSocketFactory {
+	static final String[] ADH_CIPHER_SUITES = new String[] { "TLS_DH_anon_WITH_AES_128_CBC_SHA" };
+	// the default session timeout of OpenSSL, which nrpe uses
+	private static final int SESSION_TIMEOUT_SECONDS = 300;
+
+	private static final NrpeSocketFactory instance = new NrpeSocketFactory();
+
+	private final ConcurrentMap<String, NrpeTlsStatistics> statistics = new ConcurrentHashMap<>();
+	private SSLContext sslContext = null;
+
+	private NrpeSocketFactory() {
+	}
+
+	public static NrpeSocketFactory getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return the context of all TLS connections to NRPE daemons
+	 */
+	synchronized SSLContext getSslContext() throws IOException {
+		if (sslContext == null) {
+			try {
+				SSLContext context = SSLContext.getInstance("TLS");
+
+				// Trust all certificates, anonymous suites do not send any
+				TrustManager[] tm = { new X509TrustManager() {
+					@Override
+					public X509Certificate[] getAcceptedIssuers() {
+						return new X509Certificate[0];
+					}
+
+					@Override
+					public void checkServerTrusted(final X509Certificate[] chain, final String authType) {
+					}
+
+					@Override
+					public void checkClientTrusted(final X509Certificate[] chain, final String authType) {
+					}
+				} };
+
+				context.init(null, tm, new SecureRandom());
+				context.getClientSessionContext().setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+				sslContext = context;
+			} catch (GeneralSecurityException e) {
+				throw new IOException("unable to initialize TLS: " + e.getMessage(), e);
+			}
+		}
+		return sslContext;
+	}
+
+	/**
+	 * Connects to a daemon and, if <code>useSsl</code> is set, completes the
+	 * TLS handshake.
+	 *
+	 * @param timeoutMillis
+	 *            the timeout of the connect, the handshake and every read
+	 * @return the connected socket, to be closed by the caller
+	 */
+	public Socket connect(String host, int port, boolean useSsl, int timeoutMillis) throws IOException {
+		final Socket socket = new Socket();
+		try {
+			socket.setSoTimeout(timeoutMillis);
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+			if (!useSsl) {
+				return socket;
+			}
+			// layering the TLS socket with the target name keys the
+			// session cache by host and port
+			final SSLSocket sslSocket = (SSLSocket) getSslContext().getSocketFactory().createSocket(socket, host, port, true);
+			sslSocket.setEnabledCipherSuites(ADH_CIPHER_SUITES);
+			final long start = System.nanoTime();
+			sslSocket.startHandshake();
+			getStatistics(host, port).handshakeCompleted(sslSocket.getSession(), System.nanoTime() - start);
+			return sslSocket;
+		} catch (IOException | RuntimeException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the TLS statistics of connections to the given target, shared
+	 *         by all reporters using it
+	 */
+	public NrpeTlsStatistics getStatistics(String host, int port) {
+		final String target = host + ":" + port;
+		NrpeTlsStatistics targetStatistics = statistics.get(target);
+		if (targetStatistics == null) {
+			targetStatistics = new NrpeTlsStatistics();
+			NrpeTlsStatistics previous = statistics.putIfAbsent(target, targetStatistics);
+			if (previous != null) {
+				targetStatistics = previous;
+			}
+		}
+		return targetStatistics;
+	}
+
+	/**
+	 * Counts the TLS handshakes with one target. A handshake resumed a
+	 * session if it ended with the session of the previous one.
+	 */
+	public static final class NrpeTlsStatistics {
+		private byte[] lastSessionId = null;
+		private long handshakes = 0;
+		private long resumptions = 0;
+		private long handshakeNanos = 0;
+		private long resumptionNanos = 0;
+
+		synchronized void handshakeCompleted(SSLSession session, long nanos) {
+			final byte[] sessionId = session.getId();
+			if (lastSessionId != null && sessionId.length > 0 && Arrays.equals(sessionId, lastSessionId)) {
+				resumptions++;
+				resumptionNanos += nanos;
+			} else {
+				handshakes++;
+				handshakeNanos += nanos;
+			}
+			lastSessionId = sessionId;
+		}
+
+		/**
+		 * @return the number of full handshakes
+		 */
+		public synchronized long getHandshakes() {
+			return handshakes;
+		}
+
+		/**
+		 * @return the number of resumed sessions
+		 */
+		public synchronized long getResumptions() {
+			return resumptions;
+		}
+
+		public synchronized double getAverageHandshakeMillis() {
+			return handshakes == 0 ? 0 : handshakeNanos / 1e6 / handshakes;
+		}
+
+		public synchronized double getAverageResumptionMillis() {
+			return resumptions == 0 ? 0 : resumptionNanos / 1e6 / resumptions;
+		}
+	}
+}
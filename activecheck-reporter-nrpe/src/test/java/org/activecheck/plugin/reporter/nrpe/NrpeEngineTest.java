@@ -0,0 +1,215 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class NrpeEngineTest {
+	private static final int REQUESTS = 100;
+	private static final NrpeQuery QUERY = new NrpeQuery("check_stub", "1!2");
+
+	private NrpeEngine engine;
+
+	@BeforeClass
+	public void setUp() throws IOException {
+		engine = new NrpeEngine("NrpeEngineTest");
+	}
+
+	@AfterClass
+	public void tearDown() {
+		engine.close();
+	}
+
+	/**
+	 * Collects the outcome of requests, rejecting the first responses.
+	 */
+	private static class Outcomes implements NrpeCallback {
+		private final BlockingQueue<Object> outcomes = new LinkedBlockingQueue<>();
+		private final AtomicInteger rejections;
+
+		Outcomes(int rejections) {
+			this.rejections = new AtomicInteger(rejections);
+		}
+
+		@Override
+		public void completed(ByteBuffer response) throws IOException {
+			if (rejections.getAndDecrement() > 0) {
+				throw new IOException("rejected");
+			}
+			// the response buffer is reused
+			ByteBuffer packet = ByteBuffer.allocate(response.remaining());
+			packet.put(response).flip();
+			outcomes.add(packet);
+		}
+
+		@Override
+		public void failed(Exception e) {
+			outcomes.add(e);
+		}
+
+		Object take() throws InterruptedException {
+			Object outcome = outcomes.poll(10, TimeUnit.SECONDS);
+			assertNotNull(outcome, "no outcome within 10s");
+			return outcome;
+		}
+	}
+
+	private NrpeRequest request(int port, boolean useSsl, int timeoutMillis,
+			int retries, NrpeCallback callback) {
+		return new NrpeRequest("localhost", port, useSsl, timeoutMillis,
+				retries, 50, QUERY, callback);
+	}
+
+	private static void assertResponse(Object outcome, int version,
+			String output) throws IOException {
+		assertTrue(outcome instanceof ByteBuffer, String.valueOf(outcome));
+		ByteBuffer response = (ByteBuffer) outcome;
+		NrpePacket.verify(response, NrpePacket.RESPONSE);
+		assertEquals(NrpePacket.getVersion(response), version);
+		assertEquals(NrpePacket.getText(response), output);
+	}
+
+	private static void assertResponse(Object outcome) throws IOException {
+		assertResponse(outcome, NrpePacket.VERSION_4, NrpeStubServer.OUTPUT);
+	}
+
+	@Test(description = "Test many requests in flight over TLS")
+	public void testConcurrentRequests() throws Exception {
+		try (NrpeStubServer server = new NrpeStubServer(true)) {
+			Outcomes outcomes = new Outcomes(0);
+			// the following requests resume the session of the first
+			engine.submit(request(server.getPort(), true, 10000, 0, outcomes));
+			assertResponse(outcomes.take());
+			for (int i = 0; i < REQUESTS; i++) {
+				engine.submit(request(server.getPort(), true, 10000, 0,
+						outcomes));
+			}
+			for (int i = 0; i < REQUESTS; i++) {
+				assertResponse(outcomes.take());
+			}
+			NrpeSocketFactory.NrpeTlsStatistics statistics = NrpeSocketFactory
+					.getInstance().getStatistics("localhost", server.getPort());
+			assertEquals(statistics.getHandshakes(), 1);
+			assertEquals(statistics.getResumptions(), REQUESTS);
+		}
+	}
+
+	@Test(description = "Test plain requests")
+	public void testPlain() throws Exception {
+		try (NrpeStubServer server = new NrpeStubServer(false, false,
+				NrpePacket.VERSION_4, NrpeStubServer.OUTPUT)) {
+			Outcomes outcomes = new Outcomes(0);
+			engine.submit(request(server.getPort(), false, 5000, 0, outcomes));
+			assertResponse(outcomes.take());
+		}
+	}
+
+	@Test(description = "Test rejected responses are retried")
+	public void testRetry() throws Exception {
+		try (NrpeStubServer server = new NrpeStubServer(true)) {
+			Outcomes outcomes = new Outcomes(2);
+			engine.submit(request(server.getPort(), true, 5000, 2, outcomes));
+			assertResponse(outcomes.take());
+
+			outcomes = new Outcomes(2);
+			engine.submit(request(server.getPort(), true, 5000, 1, outcomes));
+			Object outcome = outcomes.take();
+			assertTrue(outcome instanceof IOException, String.valueOf(outcome));
+		}
+	}
+
+	@Test(description = "Test a daemon not answering times out every attempt")
+	public void testTimeout() throws Exception {
+		try (ServerSocket silent = new ServerSocket(0, 50,
+				InetAddress.getLoopbackAddress())) {
+			Outcomes outcomes = new Outcomes(0);
+			long start = System.currentTimeMillis();
+			engine.submit(request(silent.getLocalPort(), true, 200, 2, outcomes));
+			// the engine keeps serving others meanwhile
+			try (NrpeStubServer server = new NrpeStubServer(true)) {
+				Outcomes others = new Outcomes(0);
+				engine.submit(request(server.getPort(), true, 5000, 0, others));
+				assertResponse(others.take());
+			}
+			Object outcome = outcomes.take();
+			assertTrue(outcome instanceof SocketTimeoutException, String.valueOf(outcome));
+			// three attempts and two retry delays
+			assertTrue(System.currentTimeMillis() - start >= 3 * 200 + 2 * 50);
+			List<Socket> attempts = new ArrayList<>();
+			silent.setSoTimeout(100);
+			try {
+				while (true) {
+					attempts.add(silent.accept());
+				}
+			} catch (SocketTimeoutException e) {
+				// all accepted
+			}
+			assertEquals(attempts.size(), 3);
+			for (Socket socket : attempts) {
+				socket.close();
+			}
+		}
+	}
+
+	@Test(description = "Test a refused connection fails")
+	public void testRefused() throws Exception {
+		int port;
+		try (ServerSocket closed = new ServerSocket(0, 1,
+				InetAddress.getLoopbackAddress())) {
+			port = closed.getLocalPort();
+		}
+		Outcomes outcomes = new Outcomes(0);
+		engine.submit(request(port, true, 5000, 1, outcomes));
+		Object outcome = outcomes.take();
+		assertTrue(outcome instanceof IOException, String.valueOf(outcome));
+	}
+
+	@Test(description = "Test queries are negotiated down to the version of the daemon")
+	public void testNegotiation() throws Exception {
+		for (int version = NrpePacket.VERSION_2; version <= NrpePacket.VERSION_4; version++) {
+			try (NrpeStubServer server = new NrpeStubServer(true, true,
+					version, NrpeStubServer.OUTPUT)) {
+				Outcomes outcomes = new Outcomes(0);
+				engine.submit(request(server.getPort(), true, 5000, 0, outcomes));
+				assertResponse(outcomes.take(), version, NrpeStubServer.OUTPUT);
+				// the version is kept for the daemon
+				engine.submit(request(server.getPort(), true, 5000, 0, outcomes));
+				assertResponse(outcomes.take(), version, NrpeStubServer.OUTPUT);
+				assertEquals(server.getQueries(version), 2);
+			}
+		}
+	}
+
+	@Test(description = "Test outputs longer than a version 2 packet")
+	public void testLongOutput() throws Exception {
+		StringBuilder output = new StringBuilder("OK - long|");
+		for (int i = 0; output.length() < 40000; i++) {
+			output.append("label").append(i).append("=").append(i).append(";; ");
+		}
+		for (boolean useSsl : new boolean[] { true, false }) {
+			try (NrpeStubServer server = new NrpeStubServer(useSsl, true,
+					NrpePacket.VERSION_4, output.toString())) {
+				Outcomes outcomes = new Outcomes(0);
+				engine.submit(request(server.getPort(), useSsl, 5000, 0, outcomes));
+				assertResponse(outcomes.take(), NrpePacket.VERSION_4, output.toString());
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+public class NrpePacketTest {
+	private static final String TEXT = "WARNING - load|load1=2.5;2;4";
+
+	@Test(description = "Test packets of all versions are decoded as encoded")
+	public void testEncodeDecode() throws ProtocolException {
+		for (int version = NrpePacket.VERSION_2; version <= NrpePacket.VERSION_4; version++) {
+			byte[] bytes = NrpePacket.encode(version, NrpePacket.RESPONSE, 1, TEXT);
+			// decoded from the middle of a larger buffer
+			ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 10);
+			buffer.position(5);
+			buffer.put(bytes);
+			buffer.position(5);
+			assertEquals(NrpePacket.length(buffer, bytes.length), bytes.length);
+			NrpePacket.verify(buffer, NrpePacket.RESPONSE);
+			assertEquals(NrpePacket.getVersion(buffer), version);
+			assertEquals(NrpePacket.getResultCode(buffer), 1);
+			assertEquals(NrpePacket.getText(buffer), TEXT);
+		}
+	}
+
+	@Test(description = "Test the lengths of packets")
+	public void testLength() throws ProtocolException {
+		assertEquals(NrpePacket.encode(2, NrpePacket.QUERY, 3, "check_load").length, 1036);
+		assertEquals(NrpePacket.encode(3, NrpePacket.QUERY, 3, "check_load").length, 1039);
+		assertEquals(NrpePacket.encode(4, NrpePacket.QUERY, 3, "check_load").length, 1036);
+
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 5000) {
+			text.append("0123456789");
+		}
+		ByteBuffer v2 = ByteBuffer.wrap(NrpePacket.encode(2, NrpePacket.RESPONSE, 0, text.toString()));
+		assertEquals(v2.remaining(), 1036);
+		assertEquals(NrpePacket.getText(v2), text.substring(0, 1023));
+		ByteBuffer v4 = ByteBuffer.wrap(NrpePacket.encode(4, NrpePacket.RESPONSE, 0, text.toString()));
+		assertEquals(v4.remaining(), 16 + 5001);
+		assertEquals(NrpePacket.getText(v4), text.toString());
+
+		// the length is known once the header has been received
+		assertEquals(NrpePacket.length(v4, 1), -1);
+		assertEquals(NrpePacket.length(v4, 15), -1);
+		assertEquals(NrpePacket.length(v4, 16), 16 + 5001);
+		assertEquals(NrpePacket.length(v2, 2), 1036);
+	}
+
+	@Test(description = "Test invalid packets are rejected")
+	public void testInvalid() {
+		byte[] packet = NrpePacket.encode(4, NrpePacket.RESPONSE, 0, TEXT);
+		packet[20] ^= 1;
+		assertInvalid(packet, NrpePacket.RESPONSE);
+		assertInvalid(NrpePacket.encode(4, NrpePacket.QUERY, 0, TEXT), NrpePacket.RESPONSE);
+
+		packet = NrpePacket.encode(4, NrpePacket.RESPONSE, 0, TEXT);
+		packet[1] = 5;
+		assertInvalid(packet, NrpePacket.RESPONSE);
+
+		packet = NrpePacket.encode(4, NrpePacket.RESPONSE, 0, TEXT);
+		ByteBuffer.wrap(packet).putInt(12, NrpePacket.MAX_BUFFER_LENGTH + 1);
+		assertInvalid(packet, NrpePacket.RESPONSE);
+	}
+
+	private static void assertInvalid(byte[] packet, int type) {
+		try {
+			NrpePacket.verify(ByteBuffer.wrap(packet), type);
+			fail("accepted an invalid packet");
+		} catch (ProtocolException e) {
+			// expected
+		}
+	}
+
+	@Test(description = "Test queries are encoded once per version")
+	public void testQuery() {
+		NrpeQuery query = new NrpeQuery("check_disk", "20%!10%!/");
+		assertEquals(query.toString(), "check_disk!20%!10%!/");
+		assertEquals(new NrpeQuery("check_load", null).toString(), "check_load");
+		ByteBuffer packet = ByteBuffer.wrap(query.getPacket(NrpePacket.VERSION_3));
+		assertEquals(NrpePacket.getVersion(packet), 3);
+		assertEquals(NrpePacket.getText(packet), "check_disk!20%!10%!/");
+		assertEquals(query.getPacket(NrpePacket.VERSION_2), query.getPacket(NrpePacket.VERSION_2));
+	}
+}
@@ -0,0 +1,71 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import org.activecheck.plugin.reporter.nrpe.NrpeSocketFactory.NrpeTlsStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+public class NrpeSocketFactoryTest {
+	private static final Logger logger = LoggerFactory
+			.getLogger(NrpeSocketFactoryTest.class);
+	private static final int CONNECTIONS = 50;
+
+	private NrpeTlsStatistics run(boolean resumption) throws Exception {
+		try (NrpeStubServer server = new NrpeStubServer(resumption)) {
+			// a new target for every run
+			String host = resumption ? "localhost" : "127.0.0.1";
+			long start = System.nanoTime();
+			for (int i = 0; i < CONNECTIONS; i++) {
+				try (Socket socket = NrpeSocketFactory.getInstance().connect(
+						host, server.getPort(), true, 5000)) {
+					ByteBuffer response = NrpeStubServer.query(socket,
+							NrpePacket.VERSION_2);
+					assertEquals(NrpePacket.getText(response),
+							NrpeStubServer.OUTPUT);
+				}
+			}
+			NrpeTlsStatistics statistics = NrpeSocketFactory.getInstance()
+					.getStatistics(host, server.getPort());
+			logger.info("{} connections {} resumption took {}ms: {} handshakes of {}ms, {} resumptions of {}ms",
+					CONNECTIONS, resumption ? "with" : "without",
+					(System.nanoTime() - start) / 1000000,
+					statistics.getHandshakes(),
+					statistics.getAverageHandshakeMillis(),
+					statistics.getResumptions(),
+					statistics.getAverageResumptionMillis());
+			return statistics;
+		}
+	}
+
+	@Test(description = "Test sessions are resumed per target")
+	public void testResumption() throws Exception {
+		NrpeTlsStatistics statistics = run(true);
+		assertEquals(statistics.getHandshakes(), 1);
+		assertEquals(statistics.getResumptions(), CONNECTIONS - 1);
+	}
+
+	@Test(description = "Test a full handshake is counted if the daemon does not resume")
+	public void testNoResumption() throws Exception {
+		NrpeTlsStatistics statistics = run(false);
+		assertEquals(statistics.getHandshakes(), CONNECTIONS);
+		assertEquals(statistics.getResumptions(), 0);
+		assertTrue(statistics.getAverageHandshakeMillis() > 0);
+	}
+
+	@Test(description = "Test plain connections are not counted")
+	public void testPlain() throws Exception {
+		try (NrpeStubServer server = new NrpeStubServer(true);
+				Socket socket = NrpeSocketFactory.getInstance().connect(
+						"localhost", server.getPort(), false, 1000)) {
+			NrpeTlsStatistics statistics = NrpeSocketFactory.getInstance()
+					.getStatistics("localhost", server.getPort());
+			assertEquals(statistics.getHandshakes(), 0);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package org.activecheck.plugin.reporter.nrpe;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A local NRPE daemon answering every query with the same output, over
+ * anonymous DH TLS like nrpe or in plain text. Without <code>resumption</code>
+ * every session is invalidated after its handshake, so each connection needs
+ * a full handshake. Queries of a packet version above
+ * <code>maxVersion</code> are dropped by closing the connection, like older
+ * daemons do.
+ */
+public class NrpeStubServer implements Runnable, Closeable {
+	static final String OUTPUT = "OK - stub|time=0.001s";
+	private static final int BACKLOG = 1000;
+
+	private final ServerSocket serverSocket;
+	private final boolean resumption;
+	private final int maxVersion;
+	private final String output;
+	private final AtomicIntegerArray queries = new AtomicIntegerArray(
+			NrpePacket.VERSION_4 + 1);
+	private final Thread thread;
+
+	static {
+		// anonymous suites are disabled by default since Java 8u51
+		String disabled = Security.getProperty("jdk.tls.disabledAlgorithms");
+		if (disabled != null) {
+			Security.setProperty("jdk.tls.disabledAlgorithms",
+					disabled.replaceAll("(^|,)\\s*anon\\s*(?=,|$)", ""));
+		}
+	}
+
+	public NrpeStubServer(boolean resumption) throws Exception {
+		this(true, resumption, NrpePacket.VERSION_4, OUTPUT);
+	}
+
+	public NrpeStubServer(boolean useSsl, boolean resumption, int maxVersion,
+			String output) throws Exception {
+		if (useSsl) {
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, null, null);
+			SSLServerSocket sslServerSocket = (SSLServerSocket) sslContext
+					.getServerSocketFactory().createServerSocket(0, BACKLOG,
+							InetAddress.getLoopbackAddress());
+			sslServerSocket
+					.setEnabledCipherSuites(NrpeSocketFactory.ADH_CIPHER_SUITES);
+			serverSocket = sslServerSocket;
+		} else {
+			serverSocket = new ServerSocket(0, BACKLOG,
+					InetAddress.getLoopbackAddress());
+		}
+		this.resumption = resumption;
+		this.maxVersion = maxVersion;
+		this.output = output;
+		thread = new Thread(this, "NrpeStubServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return the number of queries answered with the given packet version
+	 */
+	public int getQueries(int version) {
+		return queries.get(version);
+	}
+
+	@Override
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			try (Socket socket = serverSocket.accept()) {
+				answer(socket);
+			} catch (IOException e) {
+				// the client went away or the server has been closed
+			}
+		}
+	}
+
+	private void answer(Socket socket) throws IOException {
+		if (socket instanceof SSLSocket) {
+			((SSLSocket) socket).startHandshake();
+			if (!resumption) {
+				((SSLSocket) socket).getSession().invalidate();
+			}
+		}
+		ByteBuffer query = read(socket);
+		int version = NrpePacket.getVersion(query);
+		if (version > maxVersion) {
+			return;
+		}
+		NrpePacket.verify(query, NrpePacket.QUERY);
+		queries.incrementAndGet(version);
+		socket.getOutputStream().write(
+				NrpePacket.encode(version, NrpePacket.RESPONSE, 0, output));
+	}
+
+	/**
+	 * @return a complete packet
+	 */
+	static ByteBuffer read(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		byte[] header = new byte[16];
+		in.readFully(header);
+		byte[] packet = Arrays.copyOf(header,
+				NrpePacket.length(ByteBuffer.wrap(header), header.length));
+		in.readFully(packet, header.length, packet.length - header.length);
+		return ByteBuffer.wrap(packet);
+	}
+
+	/**
+	 * Sends a query and reads the response.
+	 */
+	static ByteBuffer query(Socket socket, int version) throws IOException {
+		socket.getOutputStream().write(
+				new NrpeQuery("check_stub", null).getPacket(version));
+		return read(socket);
+	}
+
+	@Override
+	public void close() throws IOException {
+		serverSocket.close();
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -8,7 +8,12 @@ import org.activecheck.common.plugin.ActivecheckPlugin;
 import org.activecheck.common.plugin.collector.ActivecheckCollector;
 import org.activecheck.common.plugin.reporter.ActivecheckReporter;
 import org.activecheck.net.ActivecheckServer;
+import org.activecheck.net.ExternalCommandFileReader;
+import org.activecheck.net.NscaActivecheckServer;
+import org.activecheck.net.RelayActivecheckServer;
 import org.activecheck.net.TcpActivecheckServer;
+import org.activecheck.net.UnixActivecheckServer;
+import org.activecheck.net.UnixDatagramActivecheckServer;
 import org.activecheck.plugin.ActivecheckPluginFactory;
 import org.activecheck.plugin.collector.ActivecheckPacketProcessor;
 import org.activecheck.plugin.collector.StdoutHost;
@@ -139,7 +144,7 @@ public class Activecheck {
         checkDumper.setFilter(configuration.getCheckDumpFilters());
 
         // update worker pool size and cleanup dead reporters
-        reporterScheduler.setupExecutorService(configuration.getWorker());
+        reporterScheduler.setupExecutorService(configuration.getWorker(), configuration.getMaxPerTarget());
 
         // update plugins and reporters
         pluginFactory.setPluginDir(configuration.getPluginDir());
@@ -185,6 +190,91 @@ public class Activecheck {
                 System.exit(1);
             }
         }
+        if (configuration.isNscaListener()) {
+            // accept packets from send_nsca
+            final String bindAddress = configuration.getNscaListenerAddress();
+            final int bindPort = configuration.getNscaListenerPort();
+            try {
+                final ActivecheckServer nscaServer = new NscaActivecheckServer(
+                        InetAddress.getByName(bindAddress), bindPort,
+                        configuration.getNscaEncryptionMethod(), configuration.getNscaPassword(),
+                        configuration.getNscaMaxPacketAge());
+                nscaServer.addObserver(activecheckPacketProcessor);
+                final Thread t = new Thread(nscaServer);
+                t.setName("NscaActivecheckServer");
+                t.start();
+            } catch (IOException | IllegalArgumentException e) {
+                final String errorMessage = String.format("Unable to create an NSCA listener at %s:%d: %s",
+                        bindAddress, bindPort, e.getMessage());
+                logger.error(errorMessage);
+                logger.trace(e.getMessage(), e);
+                System.exit(1);
+            }
+        }
+        if (configuration.isRelay()) {
+            // accept reports from remote agents
+            final String bindAddress = configuration.getRelayAddress();
+            final int bindPort = configuration.getRelayPort();
+            try {
+                final RelayActivecheckServer relayServer = new RelayActivecheckServer(
+                        InetAddress.getByName(bindAddress), bindPort,
+                        configuration.getRelaySecret(), configuration.getRelayWindow(),
+                        configuration.getRelayHandshakeTimeout());
+                relayServer.addObserver(activecheckPacketProcessor);
+                MBeanRegistry.getInstance().register("Relay", null, relayServer);
+                final Thread t = new Thread(relayServer);
+                t.setName("RelayActivecheckServer");
+                t.start();
+            } catch (IOException | IllegalArgumentException e) {
+                final String errorMessage = String.format("Unable to create a relay listener at %s:%d: %s",
+                        bindAddress, bindPort, e.getMessage());
+                logger.error(errorMessage);
+                logger.trace(e.getMessage(), e);
+                System.exit(1);
+            }
+        }
+        final String unixPath = configuration.getUnixListenerPath();
+        final String unixDatagramPath = configuration.getUnixDatagramPath();
+        if (unixPath != null || unixDatagramPath != null) {
+            // accept reports from local clients allowed by file permissions
+            try {
+                final UnixActivecheckServer.Format format = configuration.getUnixListenerFormat();
+                final String permissions = configuration.getUnixListenerPermissions();
+                final String group = configuration.getUnixListenerGroup();
+                if (unixPath != null) {
+                    final ActivecheckServer unixServer = new UnixActivecheckServer(
+                            new File(unixPath), format, permissions, group);
+                    unixServer.addObserver(activecheckPacketProcessor);
+                    final Thread t = new Thread(unixServer);
+                    t.setName("UnixActivecheckServer");
+                    t.start();
+                }
+                if (unixDatagramPath != null) {
+                    final ActivecheckServer datagramServer = new UnixDatagramActivecheckServer(
+                            new File(unixDatagramPath), format, permissions, group);
+                    datagramServer.addObserver(activecheckPacketProcessor);
+                    final Thread t = new Thread(datagramServer);
+                    t.setName("UnixDatagramActivecheckServer");
+                    t.start();
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                final String errorMessage = String.format("Unable to create a unix domain socket: %s", e.getMessage());
+                logger.error(errorMessage);
+                logger.trace(e.getMessage(), e);
+                System.exit(1);
+            }
+        }
+
+        final String externalCommandFile = configuration.getExternalCommandFile();
+        if (externalCommandFile != null) {
+            // read passive check results written for nagios
+            final ActivecheckServer externalCommandReader = new ExternalCommandFileReader(
+                    new File(externalCommandFile), configuration.getExternalCommandPollInterval());
+            externalCommandReader.addObserver(activecheckPacketProcessor);
+            final Thread t = new Thread(externalCommandReader);
+            t.setName("ExternalCommandFileReader");
+            t.start();
+        }
 
         // main loop
         long lastReloadMillis = System.currentTimeMillis();
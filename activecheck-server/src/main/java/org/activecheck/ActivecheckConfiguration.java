@@ -1,5 +1,6 @@
 package org.activecheck;
 
+import org.activecheck.net.UnixActivecheckServer;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.PropertiesConfiguration;
 import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
@@ -12,6 +13,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 
 public class ActivecheckConfiguration {
     private static final Logger logger = LoggerFactory.getLogger(ActivecheckConfiguration.class);
@@ -19,7 +21,21 @@ public class ActivecheckConfiguration {
     // define defaults
     private static final int DEFAULT_ACTIVECHECK_BIND_PORT = 5623;
     private static final int DEFAULT_WORKER = 1;
+    private static final int DEFAULT_MAX_PER_TARGET = 0;
     private static final boolean DEFAULT_NSCA_PROXY = false;
+    private static final boolean DEFAULT_NSCA_LISTENER = false;
+    private static final String DEFAULT_NSCA_LISTENER_ADDRESS = "127.0.0.1";
+    private static final int DEFAULT_NSCA_LISTENER_PORT = 5667;
+    private static final int DEFAULT_NSCA_ENCRYPTION_METHOD = 1;
+    private static final int DEFAULT_NSCA_MAX_PACKET_AGE = 30;
+    private static final boolean DEFAULT_RELAY = false;
+    private static final String DEFAULT_RELAY_ADDRESS = "127.0.0.1";
+    private static final int DEFAULT_RELAY_PORT = 5624;
+    private static final long DEFAULT_RELAY_WINDOW = 1000;
+    private static final long DEFAULT_RELAY_HANDSHAKE_TIMEOUT = 10000;
+    private static final String DEFAULT_UNIX_LISTENER_FORMAT = "native";
+    private static final String DEFAULT_UNIX_LISTENER_PERMISSIONS = "rw-rw----";
+    private static final long DEFAULT_EXTERNAL_COMMAND_POLL_INTERVAL = 1000;
     private static final int DEFAULT_CONFIGURATION_RELOAD_INTERVAL = 60;
     private static final int DEFAULT_HOSTCHECK_INTERVAL = 10;
     private static final int DEFAULT_CHECKDUMP_INTERVAL = 10;
@@ -66,6 +82,86 @@ public class ActivecheckConfiguration {
         return properties.getBoolean("nsca_proxy", DEFAULT_NSCA_PROXY);
     }
 
+    public boolean isNscaListener() {
+        return properties.getBoolean("nsca_listener", DEFAULT_NSCA_LISTENER);
+    }
+
+    public String getNscaListenerAddress() {
+        return properties.getString("nsca_listener_address", DEFAULT_NSCA_LISTENER_ADDRESS);
+    }
+
+    public int getNscaListenerPort() {
+        return properties.getInt("nsca_listener_port", DEFAULT_NSCA_LISTENER_PORT);
+    }
+
+    public int getNscaEncryptionMethod() {
+        return properties.getInt("nsca_encryption_method", DEFAULT_NSCA_ENCRYPTION_METHOD);
+    }
+
+    public String getNscaPassword() {
+        return properties.getString("nsca_password", null);
+    }
+
+    public int getNscaMaxPacketAge() {
+        return properties.getInt("nsca_max_packet_age", DEFAULT_NSCA_MAX_PACKET_AGE);
+    }
+
+    public boolean isRelay() {
+        return properties.getBoolean("relay", DEFAULT_RELAY);
+    }
+
+    public String getRelayAddress() {
+        return properties.getString("relay_address", DEFAULT_RELAY_ADDRESS);
+    }
+
+    public int getRelayPort() {
+        return properties.getInt("relay_port", DEFAULT_RELAY_PORT);
+    }
+
+    public String getRelaySecret() {
+        return properties.getString("relay_secret", null);
+    }
+
+    public long getRelayWindow() {
+        return properties.getLong("relay_window", DEFAULT_RELAY_WINDOW);
+    }
+
+    public long getRelayHandshakeTimeout() {
+        return properties.getLong("relay_handshake_timeout", DEFAULT_RELAY_HANDSHAKE_TIMEOUT);
+    }
+
+    public String getUnixListenerPath() {
+        return properties.getString("unix_listener_path", null);
+    }
+
+    public String getUnixDatagramPath() {
+        return properties.getString("unix_datagram_path", null);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public UnixActivecheckServer.Format getUnixListenerFormat() {
+        final String format = properties.getString("unix_listener_format", DEFAULT_UNIX_LISTENER_FORMAT);
+        return UnixActivecheckServer.Format.valueOf(format.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+    public String getUnixListenerPermissions() {
+        return properties.getString("unix_listener_permissions", DEFAULT_UNIX_LISTENER_PERMISSIONS);
+    }
+
+    public String getUnixListenerGroup() {
+        return properties.getString("unix_listener_group", null);
+    }
+
+    public String getExternalCommandFile() {
+        return properties.getString("external_command_file", null);
+    }
+
+    public long getExternalCommandPollInterval() {
+        return properties.getLong("external_command_poll_interval", DEFAULT_EXTERNAL_COMMAND_POLL_INTERVAL);
+    }
+
     public boolean logToConsole() {
         return properties.getBoolean("console_log", DEFAULT_CONSOLE_LOG);
     }
@@ -117,6 +213,13 @@ public class ActivecheckConfiguration {
         return properties.getInt("worker", DEFAULT_WORKER);
     }
 
+    /**
+     * @return the maximum number of runs in flight per target, 0 for no limit
+     */
+    public int getMaxPerTarget() {
+        return Math.max(0, properties.getInt("max_per_target", DEFAULT_MAX_PER_TARGET));
+    }
+
     public int getHostCheckInterval() {
         return properties.getInt("hostcheck_interval", DEFAULT_HOSTCHECK_INTERVAL);
     }
@@ -0,0 +1,87 @@
+package org.activecheck;
+
+import com.beust.jcommander.JCommander;
+import org.activecheck.common.Encoding;
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.activecheck.net.ActivecheckClient;
+import org.activecheck.net.LineFormat;
+import org.activecheck.net.RelayActivecheckClient;
+import org.activecheck.net.TcpActivecheckClient;
+import org.activecheck.net.UnixActivecheckClient;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Command line tool that submits check results to a local activecheck with
+ * <code>nsca_proxy</code> enabled. It reads the input format of
+ * <code>send_nsca</code> from stdin, one result per line:
+ * <pre>
+ * host[tab]service[tab]return code[tab]plugin output
+ * host[tab]return code[tab]plugin output
+ * </pre>
+ * All results are streamed over a single pipelined connection, to the unix
+ * domain socket of activecheck if one is given. Given an agent name and a
+ * secret file, results are sent to an activecheck relay instead.
+ */
+public class ActivecheckSend {
+    /**
+     * The main method, invoked when running from command line.
+     *
+     * @param args The supplied parameters.
+     */
+    public static void main(String[] args) {
+        final ActivecheckSendParameters params = new ActivecheckSendParameters();
+        final JCommander jcmd = new JCommander(params, args);
+        jcmd.setProgramName("activecheck-send");
+        if (params.help) {
+            jcmd.usage();
+            System.exit(NagiosServiceStatus.OK.getStatusCode());
+        }
+
+        int sent = 0;
+        int lineNumber = 0;
+        try (final ActivecheckClient client = createClient(params);
+             final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, Encoding.UTF8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final NagiosServiceReport report = LineFormat.parse(line, params.delimiter, System.currentTimeMillis());
+                if (report == null) {
+                    System.err.printf("Ignoring invalid input on line %d%n", lineNumber);
+                    continue;
+                }
+                client.send(report);
+                sent++;
+            }
+            client.flush();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(NagiosServiceStatus.CRITICAL.getStatusCode());
+        }
+        System.out.printf("%d data packet(s) sent to host successfully.%n", sent);
+        System.exit(NagiosServiceStatus.OK.getStatusCode());
+    }
+
+    private static ActivecheckClient createClient(ActivecheckSendParameters params) throws IOException {
+        final int timeoutMillis = params.timeout * 1000;
+        if (params.socket != null) {
+            return new UnixActivecheckClient(params.socket, params.window, timeoutMillis);
+        } else if (params.agent != null) {
+            if (params.secretFile == null) {
+                throw new IOException("A secret file is required to send to a relay");
+            }
+            final String secret = new String(Files.readAllBytes(Paths.get(params.secretFile)), Encoding.UTF8).trim();
+            return new RelayActivecheckClient(params.host, params.port, params.agent, secret,
+                    params.window, timeoutMillis);
+        }
+        return new TcpActivecheckClient(params.host, params.port, params.window, timeoutMillis);
+    }
+}
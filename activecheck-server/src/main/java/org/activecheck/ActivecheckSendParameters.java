@@ -0,0 +1,33 @@
+package org.activecheck;
+
+import com.beust.jcommander.Parameter;
+import org.activecheck.net.LineFormat;
+
+public class ActivecheckSendParameters {
+    @Parameter(names = {"-help", "--help", "-h", "-usage", "--usage"}, description = "print help and exit", help = true)
+    public boolean help = false;
+
+    @Parameter(names = {"-H", "--host"}, description = "address of the activecheck nsca proxy")
+    public String host = "127.0.0.1";
+
+    @Parameter(names = {"-p", "--port"}, description = "port of the activecheck nsca proxy")
+    public int port = 5623;
+
+    @Parameter(names = {"-S", "--socket"}, description = "path of the unix domain socket of activecheck, used instead of host and port")
+    public String socket = null;
+
+    @Parameter(names = {"-a", "--agent"}, description = "name of this agent when sending to an activecheck relay")
+    public String agent = null;
+
+    @Parameter(names = {"-k", "--secret-file"}, description = "file holding the secret of the activecheck relay")
+    public String secretFile = null;
+
+    @Parameter(names = {"-d", "--delimiter"}, description = "field delimiter of the input, a tab by default")
+    public String delimiter = LineFormat.DEFAULT_DELIMITER;
+
+    @Parameter(names = {"-to", "--timeout"}, description = "connection timeout in seconds")
+    public int timeout = 10;
+
+    @Parameter(names = {"-w", "--window"}, description = "number of reports sent before waiting for acknowledgements")
+    public int window = 1000;
+}
@@ -26,7 +26,10 @@ public class MBeanRegistry {
     private String generateJmxPath(String type, String name) {
         final StringBuilder sb = new StringBuilder();
         sb.append(String.format("%s:type=%s", JMX_OBJECT_PREFIX, type));
-        if (name != null) {
+        if (name != null && name.startsWith("\"")) {
+            // quoted by ObjectName.quote, any character is allowed
+            sb.append(",name=").append(name);
+        } else if (name != null) {
             sb.append(",name=").append(name.replaceAll(":", "_"));
         }
         return sb.toString();
@@ -2,9 +2,12 @@ package org.activecheck.net;
 
 import org.activecheck.common.nagios.NagiosServiceReport;
 
+import java.io.Closeable;
+import java.io.IOException;
+
 
 @SuppressWarnings("unused")
-public abstract class ActivecheckClient {
+public abstract class ActivecheckClient implements Closeable {
     protected final String address;
     protected final int port;
 
@@ -13,5 +16,14 @@ public abstract class ActivecheckClient {
         this.port = port;
     }
 
-    public abstract void send(NagiosServiceReport report);
+    /**
+     * Queues the report for sending, it may not have been delivered when this
+     * method returns.
+     */
+    public abstract void send(NagiosServiceReport report) throws IOException;
+
+    /**
+     * Blocks until all reports have been delivered.
+     */
+    public abstract void flush() throws IOException;
 }
@@ -0,0 +1,244 @@
+package org.activecheck.net;
+
+import org.activecheck.common.Encoding;
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reads passive check results in the format of the Nagios external command
+ * file, see {@link ExternalCommandFormat}, from a named pipe or from a file
+ * other programs append to. Other commands are ignored.
+ * <p>
+ * A named pipe is opened for reading and writing like Nagios does, so it
+ * stays open while writers come and go. A regular file is followed from its
+ * end at startup like <code>tail -F</code>: the offset of the next unread
+ * byte is kept, the file is polled once it has been read completely and is
+ * reopened from the start if it was rotated or truncated.
+ * <p>
+ * All complete lines of a read are passed to the observers as one
+ * unmodifiable list of reports.
+ */
+public class ExternalCommandFileReader extends ActivecheckServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ExternalCommandFileReader.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path path;
+    private final long pollIntervalMillis;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private volatile boolean running = true;
+    private volatile FileChannel channel = null;
+    private Object fileKey = null;
+    private boolean discarding = false;
+
+    /**
+     * @param pollIntervalMillis how long to wait for more data once a regular
+     *                           file has been read completely
+     */
+    public ExternalCommandFileReader(File file, long pollIntervalMillis) {
+        this.path = file.toPath();
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    @Override
+    public void run() {
+        try {
+            final BasicFileAttributes attributes = waitForFile();
+            if (attributes == null) {
+                return;
+            }
+            if (attributes.isOther()) {
+                readPipe();
+            } else if (attributes.isRegularFile()) {
+                readFile(attributes);
+            } else {
+                logger.error("{} is neither a named pipe nor a regular file", path);
+            }
+        } catch (ClosedChannelException e) {
+            logger.debug("Stopped reading {}", path);
+        } catch (IOException e) {
+            logger.error("Unable to read external commands from {}: {}", path, e.getMessage());
+            logger.trace(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    private BasicFileAttributes waitForFile() throws IOException, InterruptedException {
+        while (running) {
+            final BasicFileAttributes attributes = readAttributes();
+            if (attributes != null) {
+                return attributes;
+            }
+            Thread.sleep(pollIntervalMillis);
+        }
+        return null;
+    }
+
+    private BasicFileAttributes readAttributes() throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void readPipe() throws IOException {
+        // keeping a writer open avoids end of file when the last writer leaves
+        open(StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logger.info("Reading external commands from named pipe {}", path);
+        while (running) {
+            read();
+        }
+    }
+
+    private void readFile(BasicFileAttributes attributes) throws IOException, InterruptedException {
+        open(StandardOpenOption.READ);
+        fileKey = attributes.fileKey();
+        channel.position(channel.size());
+        logger.info("Reading external commands appended to {} from offset {}", path, channel.position());
+        while (running) {
+            if (read() > 0) {
+                continue;
+            }
+            // the file has been read completely, has it been replaced?
+            final BasicFileAttributes current = readAttributes();
+            if (current != null && !Objects.equals(current.fileKey(), fileKey)) {
+                logger.info("{} has been rotated", path);
+                // lines appended before the rotation was noticed
+                while (read() > 0) {
+                    continue;
+                }
+                open(StandardOpenOption.READ);
+                fileKey = current.fileKey();
+                discard();
+            } else if (current != null && current.size() < channel.position()) {
+                logger.info("{} has been truncated", path);
+                channel.position(0);
+                discard();
+            } else {
+                Thread.sleep(pollIntervalMillis);
+            }
+        }
+    }
+
+    private void open(StandardOpenOption... options) throws IOException {
+        final FileChannel previous = channel;
+        channel = FileChannel.open(path, options);
+        if (previous != null) {
+            previous.close();
+        }
+        if (!running) {
+            channel.close();
+            throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Drops an incomplete line left in the buffer.
+     */
+    private void discard() {
+        buffer.clear();
+        discarding = false;
+    }
+
+    /**
+     * Reads once and dispatches the complete lines.
+     *
+     * @return the number of bytes read
+     */
+    private int read() throws IOException {
+        final int read = channel.read(buffer);
+        if (read <= 0) {
+            return 0;
+        }
+        buffer.flip();
+        final List<NagiosServiceReport> reports = decodeLines();
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            logger.warn("Ignoring a line longer than {} bytes in {}", BUFFER_SIZE, path);
+            buffer.clear();
+            discarding = true;
+        }
+        if (!reports.isEmpty()) {
+            dispatch(reports);
+        }
+        return read;
+    }
+
+    private List<NagiosServiceReport> decodeLines() {
+        final List<NagiosServiceReport> reports = new ArrayList<>();
+        final byte[] array = buffer.array();
+        final long time = System.currentTimeMillis();
+        int start = buffer.position();
+        for (int i = start; i < buffer.limit(); i++) {
+            if (array[i] != '\n') {
+                continue;
+            }
+            int end = i;
+            if (end > start && array[end - 1] == '\r') {
+                end--;
+            }
+            if (discarding) {
+                discarding = false;
+            } else if (end > start) {
+                final String line = new String(array, start, end - start, Encoding.UTF8);
+                final NagiosServiceReport report = ExternalCommandFormat.parse(line, time);
+                if (report == null) {
+                    logger.debug("Ignoring external command '{}'", line);
+                } else {
+                    reports.add(report);
+                }
+            }
+            start = i + 1;
+        }
+        buffer.position(start);
+        return reports;
+    }
+
+    private void dispatch(List<NagiosServiceReport> reports) {
+        logger.debug("Read {} reports from {}", reports.size(), path);
+        try {
+            setChanged();
+            notifyObservers(Collections.unmodifiableList(reports));
+        } catch (RuntimeException e) {
+            logger.error("Unable to dispatch reports: {}", e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops reading, a blocked read is interrupted by closing the file.
+     */
+    @Override
+    public void close() {
+        running = false;
+        final FileChannel current = channel;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                logger.error("Unable to close {}: {}", path, e.getMessage());
+                logger.trace(e.getMessage(), e);
+            }
+        }
+    }
+}
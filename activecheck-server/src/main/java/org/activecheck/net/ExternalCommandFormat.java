@@ -0,0 +1,114 @@
+package org.activecheck.net;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+
+/**
+ * The passive check result commands of the Nagios external command file, one
+ * command per line with an optional timestamp in seconds:
+ * <pre>
+ * [time] PROCESS_SERVICE_CHECK_RESULT;host;service;return code;plugin output
+ * [time] PROCESS_HOST_CHECK_RESULT;host;return code;plugin output
+ * </pre>
+ * Lines are split by scanning for the separators once, the plugin output is
+ * the remainder of the line and may contain semicolons.
+ */
+public final class ExternalCommandFormat {
+    public static final String PROCESS_SERVICE_CHECK_RESULT = "PROCESS_SERVICE_CHECK_RESULT";
+    public static final String PROCESS_HOST_CHECK_RESULT = "PROCESS_HOST_CHECK_RESULT";
+
+    private ExternalCommandFormat() {
+    }
+
+    /**
+     * Parses one line without its line terminator.
+     *
+     * @param time the time in milliseconds used if the line has no timestamp
+     * @return the report or null if the line is invalid or holds another
+     * command
+     */
+    public static NagiosServiceReport parse(String line, long time) {
+        int position = 0;
+        final int length = line.length();
+        if (length > 0 && line.charAt(0) == '[') {
+            final int end = line.indexOf(']');
+            if (end < 0) {
+                return null;
+            }
+            try {
+                time = Long.parseLong(line.substring(1, end).trim()) * 1000;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            position = end + 1;
+            while (position < length && line.charAt(position) == ' ') {
+                position++;
+            }
+        }
+
+        final boolean isHostCheck;
+        if (startsWithCommand(line, position, PROCESS_SERVICE_CHECK_RESULT)) {
+            isHostCheck = false;
+            position += PROCESS_SERVICE_CHECK_RESULT.length() + 1;
+        } else if (startsWithCommand(line, position, PROCESS_HOST_CHECK_RESULT)) {
+            isHostCheck = true;
+            position += PROCESS_HOST_CHECK_RESULT.length() + 1;
+        } else {
+            return null;
+        }
+
+        final int hostEnd = line.indexOf(';', position);
+        if (hostEnd <= position) {
+            return null;
+        }
+        final String host = line.substring(position, hostEnd);
+        position = hostEnd + 1;
+
+        String serviceName = null;
+        if (!isHostCheck) {
+            final int serviceEnd = line.indexOf(';', position);
+            if (serviceEnd <= position) {
+                return null;
+            }
+            serviceName = line.substring(position, serviceEnd);
+            position = serviceEnd + 1;
+        }
+
+        int codeEnd = line.indexOf(';', position);
+        if (codeEnd < 0) {
+            codeEnd = length;
+        }
+        final NagiosServiceStatus status = parseStatus(line, position, codeEnd);
+        if (status == null) {
+            return null;
+        }
+        final String output = codeEnd < length ? line.substring(codeEnd + 1) : "";
+        return new NagiosServiceReport(serviceName, host, status, output, time, time);
+    }
+
+    private static boolean startsWithCommand(String line, int position, String command) {
+        final int end = position + command.length();
+        return line.startsWith(command, position) && end < line.length() && line.charAt(end) == ';';
+    }
+
+    private static NagiosServiceStatus parseStatus(String line, int start, int end) {
+        while (start < end && line.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && line.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end || end - start > 3) {
+            return null;
+        }
+        int code = 0;
+        for (int i = start; i < end; i++) {
+            final char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            code = code * 10 + c - '0';
+        }
+        return NagiosServiceStatus.statusCodeToStatus(code);
+    }
+}
@@ -0,0 +1,46 @@
+package org.activecheck.net;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The input format of <code>send_nsca</code>, one result per line:
+ * <pre>
+ * host[tab]service[tab]return code[tab]plugin output
+ * host[tab]return code[tab]plugin output
+ * </pre>
+ */
+public final class LineFormat {
+    public static final String DEFAULT_DELIMITER = "\t";
+
+    private LineFormat() {
+    }
+
+    /**
+     * Parses one line without its line terminator.
+     *
+     * @return the report or null if the line is invalid
+     */
+    public static NagiosServiceReport parse(String line, String delimiter, long time) {
+        final String[] fields = StringUtils.splitByWholeSeparatorPreserveAllTokens(line, delimiter);
+        if (fields == null || fields.length < 3 || fields[0].isEmpty()) {
+            return null;
+        }
+        final boolean isHostCheck = fields.length == 3;
+        final int codeField = isHostCheck ? 1 : 2;
+        final NagiosServiceStatus status;
+        try {
+            status = NagiosServiceStatus.statusCodeToStatus(Integer.parseInt(fields[codeField].trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (status == null) {
+            return null;
+        }
+        final String serviceName = isHostCheck ? null : fields[1];
+        // the plugin output may contain the delimiter itself
+        final String output = StringUtils.join(fields, delimiter, codeField + 1, fields.length);
+        return new NagiosServiceReport(serviceName, fields[0], status, output, time, time);
+    }
+}
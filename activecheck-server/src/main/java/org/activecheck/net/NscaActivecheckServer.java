@@ -0,0 +1,171 @@
+package org.activecheck.net;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.zip.CRC32;
+
+/**
+ * Receives passive check results from send_nsca and compatible clients such
+ * as jsendnsca. Every connection starts with the server sending a random IV
+ * and its time, after which the client may send any number of version 3
+ * packets encrypted with the configured method and password. Packets with
+ * 512 and 4096 characters of plugin output are accepted, the size is
+ * detected from the first packet of a connection. A packet that fails the
+ * CRC32 check or is older than the maximum packet age closes the connection
+ * like it does in NSCA.
+ */
+public class NscaActivecheckServer extends SelectorActivecheckServer {
+    static final int PACKET_VERSION = 3;
+    static final int HOST_LENGTH = 64;
+    static final int SERVICE_LENGTH = 128;
+    static final int HEADER_LENGTH = 206;
+    static final int SMALL_PACKET_SIZE = HEADER_LENGTH + 512 + 2;
+    static final int LARGE_PACKET_SIZE = HEADER_LENGTH + 4096 + 2;
+    private static final int CRC_OFFSET = 4;
+    private static final int TIMESTAMP_OFFSET = 8;
+    private static final int RETURN_CODE_OFFSET = 12;
+    private static final int HOST_OFFSET = 14;
+    private static final int SERVICE_OFFSET = HOST_OFFSET + HOST_LENGTH;
+
+    private final SecureRandom random = new SecureRandom();
+    private final int encryptionMethod;
+    private final String password;
+    private final int maxPacketAge;
+
+    /**
+     * @param encryptionMethod the {@code decryption_method} of nsca.cfg
+     * @param maxPacketAge     the maximum age of a packet in seconds, 0 to
+     *                         accept packets of any age
+     * @throws IllegalArgumentException if the encryption method is not
+     *                                  supported
+     */
+    public NscaActivecheckServer(InetAddress bindAddress, int bindPort, int encryptionMethod,
+                                 String password, int maxPacketAge) throws IOException {
+        this(bindAddress, bindPort, encryptionMethod, password, maxPacketAge, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public NscaActivecheckServer(InetAddress bindAddress, int bindPort, int encryptionMethod,
+                                 String password, int maxPacketAge, int queueCapacity) throws IOException {
+        super("NscaActivecheckServer", bindAddress, bindPort, queueCapacity);
+        try {
+            // fail early on unsupported methods
+            new NscaEncryption(encryptionMethod, password, new byte[NscaEncryption.IV_LENGTH], true);
+        } catch (IllegalArgumentException e) {
+            release();
+            throw e;
+        }
+        this.encryptionMethod = encryptionMethod;
+        this.password = password;
+        this.maxPacketAge = maxPacketAge;
+    }
+
+    @Override
+    protected Connection newConnection(SocketChannel channel) throws IOException {
+        return new NscaConnection(channel);
+    }
+
+    /**
+     * @return the CRC32 of the packet with a zeroed CRC field
+     */
+    static long crc32(byte[] packet, int offset, int length) {
+        final CRC32 crc = new CRC32();
+        crc.update(packet, offset, CRC_OFFSET);
+        crc.update(new byte[4], 0, 4);
+        crc.update(packet, offset + TIMESTAMP_OFFSET, length - TIMESTAMP_OFFSET);
+        return crc.getValue();
+    }
+
+    private static String readString(byte[] packet, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && packet[end] != 0) {
+            end++;
+        }
+        return new String(packet, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private final class NscaConnection extends Connection {
+        private NscaEncryption encryption;
+        private int packetSize = 0;
+        // the number of decrypted bytes of the packet at the buffer position
+        private int decrypted = 0;
+
+        private NscaConnection(SocketChannel channel) throws IOException {
+            super(channel, LARGE_PACKET_SIZE);
+        }
+
+        /**
+         * Sends the IV and the current time.
+         */
+        @Override
+        protected void opened() {
+            final byte[] iv = new byte[NscaEncryption.IV_LENGTH];
+            random.nextBytes(iv);
+            encryption = new NscaEncryption(encryptionMethod, password, iv, true);
+            output = ByteBuffer.allocate(NscaEncryption.IV_LENGTH + 4);
+            output.put(iv).putInt((int) (System.currentTimeMillis() / 1000));
+            output.flip();
+        }
+
+        @Override
+        protected NagiosServiceReport decode() throws IOException {
+            final byte[] data = buffer.array();
+            final int start = buffer.arrayOffset() + buffer.position();
+            final int available = buffer.remaining();
+            if (packetSize == 0) {
+                decrypt(data, start, Math.min(available, SMALL_PACKET_SIZE));
+                if (available < SMALL_PACKET_SIZE) {
+                    return null;
+                }
+                final long crc = buffer.getInt(buffer.position() + CRC_OFFSET) & 0xffffffffL;
+                packetSize = crc == crc32(data, start, SMALL_PACKET_SIZE) ? SMALL_PACKET_SIZE : LARGE_PACKET_SIZE;
+            }
+            decrypt(data, start, Math.min(available, packetSize));
+            if (available < packetSize) {
+                return null;
+            }
+            final NagiosServiceReport report = parse(data, start);
+            buffer.position(buffer.position() + packetSize);
+            decrypted = 0;
+            return report;
+        }
+
+        private void decrypt(byte[] data, int start, int length) {
+            if (length > decrypted) {
+                encryption.apply(data, start + decrypted, length - decrypted, decrypted);
+                decrypted = length;
+            }
+        }
+
+        private NagiosServiceReport parse(byte[] data, int start) throws ProtocolException {
+            final ByteBuffer packet = ByteBuffer.wrap(data, start, packetSize).slice();
+            final int version = packet.getShort(0);
+            if (version != PACKET_VERSION) {
+                throw new ProtocolException("unsupported packet version " + version);
+            }
+            if ((packet.getInt(CRC_OFFSET) & 0xffffffffL) != crc32(data, start, packetSize)) {
+                throw new ProtocolException("invalid CRC32, the password or encryption method may not match");
+            }
+            final long timestamp = packet.getInt(TIMESTAMP_OFFSET) & 0xffffffffL;
+            if (maxPacketAge > 0 && Math.abs(System.currentTimeMillis() / 1000 - timestamp) > maxPacketAge) {
+                throw new ProtocolException("stale packet from " + timestamp);
+            }
+            NagiosServiceStatus status = NagiosServiceStatus.statusCodeToStatus(packet.getShort(RETURN_CODE_OFFSET));
+            if (status == null) {
+                status = NagiosServiceStatus.UNKNOWN;
+            }
+            final String host = readString(data, start + HOST_OFFSET, HOST_LENGTH);
+            final String service = readString(data, start + SERVICE_OFFSET, SERVICE_LENGTH);
+            final String output = readString(data, start + HEADER_LENGTH, packetSize - HEADER_LENGTH);
+            return new NagiosServiceReport(service.isEmpty() ? null : service, host, status, output,
+                    timestamp * 1000, timestamp * 1000);
+        }
+    }
+}
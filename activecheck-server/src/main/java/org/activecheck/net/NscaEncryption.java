@@ -0,0 +1,101 @@
+package org.activecheck.net;
+
+import org.apache.commons.lang.Validate;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+/**
+ * The encryption methods of NSCA, identified by the numbers used for
+ * {@code decryption_method} in nsca.cfg. The ciphers run in 8 bit CFB mode
+ * over all packets of a connection like mcrypt does, the key is the password
+ * padded with zeros and the IV is taken from the start of the IV the server
+ * sent when the connection was opened.
+ */
+final class NscaEncryption {
+    static final int NONE = 0;
+    static final int XOR = 1;
+    static final int DES = 2;
+    static final int TRIPLE_DES = 3;
+    static final int BLOWFISH = 8;
+    static final int RIJNDAEL_128 = 14;
+    static final int IV_LENGTH = 128;
+
+    private final int method;
+    private final byte[] iv;
+    private final byte[] password;
+    private final Cipher cipher;
+
+    /**
+     * @param decrypt true on the receiving side
+     * @throws IllegalArgumentException if the method is not supported
+     */
+    NscaEncryption(int method, String password, byte[] iv, boolean decrypt) {
+        Validate.isTrue(iv.length == IV_LENGTH, "the IV must have " + IV_LENGTH + " bytes");
+        this.method = method;
+        this.iv = iv;
+        this.password = password == null ? new byte[0] : password.getBytes(StandardCharsets.UTF_8);
+        switch (method) {
+            case NONE:
+            case XOR:
+                cipher = null;
+                break;
+            case DES:
+                cipher = cipher("DES", 8, 8, decrypt);
+                break;
+            case TRIPLE_DES:
+                cipher = cipher("DESede", 24, 8, decrypt);
+                break;
+            case BLOWFISH:
+                cipher = cipher("Blowfish", 56, 8, decrypt);
+                break;
+            case RIJNDAEL_128:
+                cipher = cipher("AES", 32, 16, decrypt);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported NSCA encryption method " + method);
+        }
+    }
+
+    private Cipher cipher(String algorithm, int keyLength, int blockSize, boolean decrypt) {
+        try {
+            final Cipher cipher = Cipher.getInstance(algorithm + "/CFB8/NoPadding");
+            cipher.init(decrypt ? Cipher.DECRYPT_MODE : Cipher.ENCRYPT_MODE,
+                    new SecretKeySpec(Arrays.copyOf(password, keyLength), algorithm),
+                    new IvParameterSpec(Arrays.copyOf(iv, blockSize)));
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Unable to initialize " + algorithm + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Encrypts or decrypts the given bytes in place.
+     *
+     * @param packetOffset the offset of the first byte within its packet,
+     *                     the XOR key restarts with every packet
+     */
+    void apply(byte[] data, int offset, int length, int packetOffset) {
+        if (method == XOR) {
+            for (int i = 0; i < length; i++) {
+                final int position = packetOffset + i;
+                byte b = (byte) (data[offset + i] ^ iv[position % IV_LENGTH]);
+                if (password.length > 0) {
+                    b ^= password[position % password.length];
+                }
+                data[offset + i] = b;
+            }
+        } else if (cipher != null) {
+            try {
+                cipher.update(data, offset, length, data, offset);
+            } catch (GeneralSecurityException e) {
+                // cannot happen for stream modes without padding
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.activecheck.net;
+
+import org.apache.commons.lang.Validate;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Sends reports to a {@link RelayActivecheckServer} like
+ * {@link TcpActivecheckClient} does, after authenticating as the given agent
+ * on every connection.
+ */
+public class RelayActivecheckClient extends TcpActivecheckClient {
+    private final String agent;
+    private final String secret;
+
+    public RelayActivecheckClient(String address, int port, String agent, String secret) {
+        super(address, port);
+        this.agent = agent;
+        this.secret = secret;
+        validate();
+    }
+
+    public RelayActivecheckClient(String address, int port, String agent, String secret, int window,
+                                  int timeoutMillis) {
+        super(address, port, window, timeoutMillis);
+        this.agent = agent;
+        this.secret = secret;
+        validate();
+    }
+
+    private void validate() {
+        Validate.notEmpty(agent, "the agent name must be set");
+        Validate.notEmpty(secret, "the relay secret must be set");
+        // fails early on invalid agent names
+        RelayAuthentication.answer(agent, secret, new byte[RelayAuthentication.CHALLENGE_LENGTH]);
+    }
+
+    @Override
+    protected Socket openSocket(int timeoutMillis) throws IOException {
+        final Socket socket = super.openSocket(timeoutMillis);
+        try {
+            socket.setSoTimeout(timeoutMillis);
+            final byte[] challenge = new byte[RelayAuthentication.CHALLENGE_LENGTH];
+            new DataInputStream(socket.getInputStream()).readFully(challenge);
+            socket.getOutputStream().write(RelayAuthentication.answer(agent, secret, challenge));
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+}
@@ -0,0 +1,318 @@
+package org.activecheck.net;
+
+import org.activecheck.MBeanRegistry;
+import org.activecheck.common.Encoding;
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportCodec;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Receives reports from remote agents, e.g. other activecheck instances or
+ * <code>activecheck-send</code>, for a region. Agents authenticate with a
+ * shared secret, see {@link RelayActivecheckClient}, and then send the frames
+ * of {@link TcpActivecheckServer}.
+ * <p>
+ * Reports are collected for <code>windowMillis</code> and then handed to the
+ * observers as one unmodifiable list. Within a window only the latest report
+ * per host and service is kept, which drops reports sent again by
+ * reconnecting agents and results superseded before they were forwarded. A
+ * window of 0 forwards every report on its own.
+ * <p>
+ * Agents that do not authenticate within the handshake timeout are
+ * disconnected. Statistics per agent and of the forwarding are published over
+ * JMX.
+ */
+public class RelayActivecheckServer extends SelectorActivecheckServer implements RelayActivecheckServerMBean {
+    private static final Logger logger = LoggerFactory.getLogger(RelayActivecheckServer.class);
+    private static final String JMX_OBJECT_TYPE = "RelayAgents";
+    public static final long DEFAULT_HANDSHAKE_TIMEOUT_MILLIS = 10000;
+    // the largest frame including a five byte length prefix
+    private static final int MAX_BUFFER_SIZE = NagiosServiceReportCodec.MAX_FRAME_LENGTH + 5;
+
+    private final SecureRandom random = new SecureRandom();
+    private final String secret;
+    private final long windowMillis;
+    private final long handshakeTimeoutMillis;
+    private final Map<String, RelayAgent> agents = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private Map<String, NagiosServiceReport> window = new LinkedHashMap<>();
+    private volatile long reportsForwarded = 0;
+    private volatile long reportsCoalesced = 0;
+    private volatile long batchesForwarded = 0;
+    private volatile int lastBatchSize = 0;
+
+    /**
+     * @param secret       the secret shared with all agents
+     * @param windowMillis how long reports are collected before they are
+     *                     forwarded, 0 to forward them at once
+     */
+    public RelayActivecheckServer(InetAddress bindAddress, int bindPort, String secret, long windowMillis)
+            throws IOException {
+        this(bindAddress, bindPort, secret, windowMillis, DEFAULT_HANDSHAKE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param handshakeTimeoutMillis how long an agent may take to
+     *                               authenticate, 0 for no limit
+     */
+    public RelayActivecheckServer(InetAddress bindAddress, int bindPort, String secret, long windowMillis,
+                                  long handshakeTimeoutMillis) throws IOException {
+        this(bindAddress, bindPort, secret, windowMillis, handshakeTimeoutMillis, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public RelayActivecheckServer(InetAddress bindAddress, int bindPort, String secret, long windowMillis,
+                                  long handshakeTimeoutMillis, int queueCapacity) throws IOException {
+        super("RelayActivecheckServer", bindAddress, bindPort, queueCapacity);
+        try {
+            Validate.notEmpty(secret, "the relay secret must be set");
+            Validate.isTrue(windowMillis >= 0, "the relay window must not be negative");
+            Validate.isTrue(handshakeTimeoutMillis >= 0, "the relay handshake timeout must not be negative");
+        } catch (IllegalArgumentException e) {
+            release();
+            throw e;
+        }
+        this.secret = secret;
+        this.windowMillis = windowMillis;
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+    }
+
+    @Override
+    protected Connection newConnection(SocketChannel channel) throws IOException {
+        return new RelayConnection(channel);
+    }
+
+    @Override
+    public void run() {
+        if (windowMillis == 0) {
+            super.run();
+            return;
+        }
+        final Thread forwarder = new Thread(new Forwarder());
+        forwarder.setName("RelayForwarder");
+        forwarder.setDaemon(true);
+        forwarder.start();
+        try {
+            super.run();
+        } finally {
+            // forwards the last window
+            forwarder.interrupt();
+            try {
+                forwarder.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    protected void dispatch(NagiosServiceReport report) {
+        if (windowMillis == 0) {
+            forward(Collections.singletonList(report));
+            return;
+        }
+        final String serviceName = report.getServiceName();
+        final String key = serviceName == null ? report.getServiceHost() : report.getServiceHost() + '\0' + serviceName;
+        synchronized (lock) {
+            final NagiosServiceReport previous = window.get(key);
+            if (previous != null) {
+                reportsCoalesced++;
+                if (previous.getFinishTime() > report.getFinishTime()) {
+                    return;
+                }
+            }
+            window.put(key, report);
+        }
+    }
+
+    private void forwardWindow() {
+        final Map<String, NagiosServiceReport> reports;
+        synchronized (lock) {
+            if (window.isEmpty()) {
+                return;
+            }
+            reports = window;
+            window = new LinkedHashMap<>();
+        }
+        forward(new ArrayList<>(reports.values()));
+    }
+
+    private void forward(List<NagiosServiceReport> reports) {
+        logger.debug("Forwarding {} reports", reports.size());
+        reportsForwarded += reports.size();
+        batchesForwarded++;
+        lastBatchSize = reports.size();
+        try {
+            setChanged();
+            notifyObservers(Collections.unmodifiableList(reports));
+        } catch (RuntimeException e) {
+            logger.error("Unable to forward {} reports: {}", reports.size(), e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+    }
+
+    private RelayAgent getAgent(String agentName) {
+        RelayAgent agent = agents.get(agentName);
+        if (agent == null) {
+            agent = new RelayAgent(agentName);
+            agents.put(agentName, agent);
+            // agent names are chosen by the agents and may contain , = or :
+            MBeanRegistry.getInstance().register(JMX_OBJECT_TYPE, ObjectName.quote(agentName), agent);
+        }
+        return agent;
+    }
+
+    /**
+     * @return the agents seen since the relay started
+     */
+    public Map<String, RelayAgent> getAgents() {
+        return Collections.unmodifiableMap(agents);
+    }
+
+    @Override
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    @Override
+    public long getHandshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    @Override
+    public long getReportsForwarded() {
+        return reportsForwarded;
+    }
+
+    @Override
+    public long getReportsCoalesced() {
+        return reportsCoalesced;
+    }
+
+    @Override
+    public long getBatchesForwarded() {
+        return batchesForwarded;
+    }
+
+    @Override
+    public int getLastBatchSize() {
+        return lastBatchSize;
+    }
+
+    private final class RelayConnection extends Connection {
+        private final byte[] challenge = new byte[RelayAuthentication.CHALLENGE_LENGTH];
+        private final ByteBuffer ack = ByteBuffer.allocate(5);
+        private RelayAgent agent = null;
+
+        private RelayConnection(SocketChannel channel) throws IOException {
+            super(channel, MAX_BUFFER_SIZE);
+        }
+
+        @Override
+        protected void opened() {
+            random.nextBytes(challenge);
+            output = ByteBuffer.wrap(challenge);
+        }
+
+        @Override
+        protected boolean isEstablished() {
+            return agent != null;
+        }
+
+        @Override
+        protected NagiosServiceReport decode() throws IOException {
+            if (agent == null && !authenticate()) {
+                return null;
+            }
+            final NagiosServiceReport report = NagiosServiceReportCodec.decode(buffer);
+            if (report != null) {
+                agent.received(report, System.currentTimeMillis());
+            }
+            return report;
+        }
+
+        /**
+         * @return true once the agent has answered the challenge correctly
+         * @throws ProtocolException if the answer is wrong
+         */
+        private boolean authenticate() throws ProtocolException {
+            if (!buffer.hasRemaining()) {
+                return false;
+            }
+            final int nameLength = buffer.get(buffer.position()) & 0xff;
+            if (nameLength == 0) {
+                throw new ProtocolException("missing agent name");
+            }
+            if (buffer.remaining() < 1 + nameLength + RelayAuthentication.MAC_LENGTH) {
+                return false;
+            }
+            final byte[] name = new byte[nameLength];
+            final byte[] mac = new byte[RelayAuthentication.MAC_LENGTH];
+            buffer.get();
+            buffer.get(name);
+            buffer.get(mac);
+            final String agentName = new String(name, Encoding.UTF8);
+            if (!MessageDigest.isEqual(mac, RelayAuthentication.mac(secret, challenge, name))) {
+                throw new ProtocolException("authentication of agent '" + agentName + "' failed");
+            }
+            agent = getAgent(agentName);
+            agent.connected();
+            logger.info("Agent '{}' connected from {}", agentName, remoteAddress);
+            return true;
+        }
+
+        /**
+         * Acknowledges the reports accepted since the last acknowledgement
+         * once the challenge or the previous acknowledgement has been
+         * written.
+         */
+        @Override
+        protected void prepareOutput() {
+            if (!output.hasRemaining() && accepted > 0) {
+                ack.clear();
+                NagiosServiceReportCodec.putAcknowledgement(ack, accepted);
+                ack.flip();
+                output = ack;
+                accepted = 0;
+            }
+        }
+
+        @Override
+        protected void closed() {
+            if (agent != null) {
+                agent.disconnected();
+                logger.info("Agent '{}' disconnected from {}", agent.getAgentName(), remoteAddress);
+            }
+        }
+    }
+
+    private final class Forwarder implements Runnable {
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(windowMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                forwardWindow();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.activecheck.net;
+
+public interface RelayActivecheckServerMBean {
+    long getWindowMillis();
+
+    long getHandshakeTimeoutMillis();
+
+    long getReportsForwarded();
+
+    long getReportsCoalesced();
+
+    long getBatchesForwarded();
+
+    int getLastBatchSize();
+}
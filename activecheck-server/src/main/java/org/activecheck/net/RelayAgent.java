@@ -0,0 +1,73 @@
+package org.activecheck.net;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The statistics of an agent sending to a {@link RelayActivecheckServer},
+ * kept while the relay runs. The lag is the time between a report being
+ * finished by the agent and its arrival at the relay, which includes the
+ * difference between the clocks of both hosts.
+ */
+public class RelayAgent implements RelayAgentMBean {
+    private final String agentName;
+    private final AtomicInteger connections = new AtomicInteger();
+    // written by the selector thread only
+    private volatile long reportsReceived = 0;
+    private volatile long lastReportTimeMillis = 0;
+    private volatile long lastLagMillis = 0;
+    private volatile long maxLagMillis = 0;
+
+    RelayAgent(String agentName) {
+        this.agentName = agentName;
+    }
+
+    void connected() {
+        connections.incrementAndGet();
+    }
+
+    void disconnected() {
+        connections.decrementAndGet();
+    }
+
+    void received(NagiosServiceReport report, long timeMillis) {
+        final long lag = Math.max(0, timeMillis - report.getFinishTime());
+        reportsReceived++;
+        lastReportTimeMillis = timeMillis;
+        lastLagMillis = lag;
+        if (lag > maxLagMillis) {
+            maxLagMillis = lag;
+        }
+    }
+
+    @Override
+    public String getAgentName() {
+        return agentName;
+    }
+
+    @Override
+    public int getConnections() {
+        return connections.get();
+    }
+
+    @Override
+    public long getReportsReceived() {
+        return reportsReceived;
+    }
+
+    @Override
+    public long getLastReportTimeMillis() {
+        return lastReportTimeMillis;
+    }
+
+    @Override
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    @Override
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+}
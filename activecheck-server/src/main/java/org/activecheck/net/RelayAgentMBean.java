@@ -0,0 +1,15 @@
+package org.activecheck.net;
+
+public interface RelayAgentMBean {
+    String getAgentName();
+
+    int getConnections();
+
+    long getReportsReceived();
+
+    long getLastReportTimeMillis();
+
+    long getLastLagMillis();
+
+    long getMaxLagMillis();
+}
@@ -0,0 +1,53 @@
+package org.activecheck.net;
+
+import org.activecheck.common.Encoding;
+import org.apache.commons.lang.Validate;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
+/**
+ * The handshake of an agent connecting to a {@link RelayActivecheckServer}.
+ * The relay sends a random challenge, the agent answers with its name and
+ * the HMAC-SHA256 of the challenge and its name keyed with the shared secret:
+ * <pre>
+ * relay: challenge (16 bytes)
+ * agent: name length (1 byte), name (UTF-8), HMAC (32 bytes)
+ * </pre>
+ * The native frames of {@link TcpActivecheckServer} follow.
+ */
+final class RelayAuthentication {
+    static final int CHALLENGE_LENGTH = 16;
+    static final int MAC_LENGTH = 32;
+    static final int MAX_AGENT_LENGTH = 255;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private RelayAuthentication() {
+    }
+
+    static byte[] mac(String secret, byte[] challenge, byte[] agent) {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(Encoding.UTF8), ALGORITHM));
+            mac.update(challenge);
+            return mac.doFinal(agent);
+        } catch (GeneralSecurityException e) {
+            // every java runtime supports HmacSHA256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the answer of the agent to the challenge
+     */
+    static byte[] answer(String agent, String secret, byte[] challenge) {
+        final byte[] name = agent.getBytes(Encoding.UTF8);
+        Validate.isTrue(name.length > 0 && name.length <= MAX_AGENT_LENGTH,
+                "the agent name must be 1 to " + MAX_AGENT_LENGTH + " bytes long");
+        final ByteBuffer answer = ByteBuffer.allocate(1 + name.length + MAC_LENGTH);
+        answer.put((byte) name.length).put(name).put(mac(secret, challenge, name));
+        return answer.array();
+    }
+}
@@ -0,0 +1,450 @@
+package org.activecheck.net;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives reports from local clients. All connections are served by a single
+ * selector thread, the wire format is implemented by the {@link Connection}
+ * of a subclass. Decoded reports are handed to a dispatcher thread that
+ * notifies the observers, so slow collectors never block the selector. If the
+ * dispatch queue is full, the connection that could not hand over its report
+ * stops being read until there is room again, which pushes back on the
+ * sending client through TCP flow control.
+ * <p>
+ * Subclasses whose connections start with a handshake may limit how long it
+ * takes, connections not established in time are closed.
+ */
+public abstract class SelectorActivecheckServer extends ActivecheckServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SelectorActivecheckServer.class);
+    protected static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final long PARKED_SELECT_TIMEOUT_MILLIS = 100;
+
+    private final String name;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final BlockingQueue<NagiosServiceReport> queue;
+    private final Queue<Connection> parked = new ArrayDeque<>();
+    // connections in the order they were accepted, whose handshake may not be done
+    private final Queue<Connection> handshakes = new ArrayDeque<>();
+    private volatile boolean hasParked = false;
+    private volatile boolean running = true;
+
+    protected SelectorActivecheckServer(String name, InetAddress bindAddress, int bindPort, int queueCapacity)
+            throws IOException {
+        this.name = name;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(bindAddress, bindPort), 0);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+        logger.info("{} listening on {}:{}", name, bindAddress, getLocalPort());
+    }
+
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return how long a new connection may take to become established, 0 for
+     * no limit
+     */
+    protected long getHandshakeTimeoutMillis() {
+        return 0;
+    }
+
+    /**
+     * Creates the state of a newly accepted connection.
+     */
+    protected abstract Connection newConnection(SocketChannel channel) throws IOException;
+
+    @Override
+    public void run() {
+        final Thread dispatcher = new Thread(new Dispatcher());
+        dispatcher.setName(name + "Dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        try {
+            while (running) {
+                selector.select(selectTimeout());
+                resumeParked();
+                expireHandshakes();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    final Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Unable to select on the server socket: {}", e.getMessage());
+            logger.trace(e.getMessage(), e);
+        } finally {
+            dispatcher.interrupt();
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close();
+                }
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                logger.error("Unable to close the server socket: {}", e.getMessage());
+                logger.trace(e.getMessage(), e);
+            }
+            // all acknowledged reports have been dispatched when run returns
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting and reading, open connections are closed by the
+     * selector thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Closes the server socket of a server that is never run, e.g. if a
+     * subclass rejects its configuration.
+     */
+    protected void release() {
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close the server socket: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Hands a report to the observers, called by the dispatcher thread only.
+     */
+    protected void dispatch(NagiosServiceReport report) {
+        logger.debug("Received packet {}", report.getServiceName());
+        try {
+            setChanged();
+            notifyObservers(report);
+        } catch (RuntimeException e) {
+            logger.error("Unable to dispatch report: {}", e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+    }
+
+    private void accept() {
+        try {
+            final SocketChannel channel = serverChannel.accept();
+            if (channel != null) {
+                channel.configureBlocking(false);
+                final Connection connection = newConnection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                logger.debug("Accepted connection from {}", connection.remoteAddress);
+                final long handshakeTimeout = getHandshakeTimeoutMillis();
+                if (handshakeTimeout > 0) {
+                    connection.handshakeDeadline = System.currentTimeMillis() + handshakeTimeout;
+                    handshakes.add(connection);
+                }
+                connection.opened();
+                flush(connection);
+            }
+        } catch (IOException e) {
+            logger.error("Unable to accept a connection: {}", e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+    }
+
+    private void read(Connection connection) {
+        try {
+            final int read = connection.channel.read(connection.buffer);
+            if (read < 0) {
+                logger.debug("Connection from {} closed", connection.remoteAddress);
+                connection.close();
+                return;
+            }
+            connection.buffer.flip();
+            decode(connection);
+        } catch (IOException e) {
+            logger.error("Unable to receive report from {}: {}", connection.remoteAddress, e.getMessage());
+            logger.trace(e.getMessage(), e);
+            connection.close();
+        }
+    }
+
+    private void write(Connection connection) {
+        try {
+            flush(connection);
+        } catch (IOException e) {
+            logger.error("Unable to write to {}: {}", connection.remoteAddress, e.getMessage());
+            logger.trace(e.getMessage(), e);
+            connection.close();
+        }
+    }
+
+    /**
+     * Hands over all complete reports in the buffer of the given connection,
+     * which must be flipped for reading. Parks the connection if the queue is
+     * full, otherwise prepares the buffer for the next read.
+     */
+    private void decode(Connection connection) throws IOException {
+        final ByteBuffer buffer = connection.buffer;
+        while (true) {
+            final NagiosServiceReport report = connection.decode();
+            if (report == null) {
+                break;
+            }
+            if (!queue.offer(report)) {
+                connection.pending = report;
+                parked.add(connection);
+                hasParked = true;
+                flush(connection);
+                return;
+            }
+            connection.accepted++;
+        }
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            connection.grow();
+        }
+        flush(connection);
+    }
+
+    /**
+     * Writes pending output without blocking and updates what the selector
+     * waits for. Parked connections are not read, unfinished output waits for
+     * the connection to become writable.
+     */
+    private void flush(Connection connection) throws IOException {
+        connection.prepareOutput();
+        final ByteBuffer output = connection.output;
+        if (output.hasRemaining()) {
+            connection.channel.write(output);
+        }
+        connection.key.interestOps((connection.pending == null ? SelectionKey.OP_READ : 0)
+                | (output.hasRemaining() ? SelectionKey.OP_WRITE : 0));
+    }
+
+    /**
+     * @return how long to wait for the selector, 0 for no limit
+     */
+    private long selectTimeout() {
+        long timeout = hasParked ? PARKED_SELECT_TIMEOUT_MILLIS : 0;
+        final Connection first = handshakes.peek();
+        if (first != null) {
+            final long remaining = Math.max(1, first.handshakeDeadline - System.currentTimeMillis());
+            timeout = timeout == 0 ? remaining : Math.min(timeout, remaining);
+        }
+        return timeout;
+    }
+
+    /**
+     * Closes connections that did not become established in time. The
+     * timeout is the same for all connections, so the first connection has
+     * the earliest deadline.
+     */
+    private void expireHandshakes() {
+        final long now = System.currentTimeMillis();
+        Connection connection;
+        while ((connection = handshakes.peek()) != null) {
+            if (connection.channel.isOpen() && !connection.isEstablished()) {
+                if (connection.handshakeDeadline > now) {
+                    break;
+                }
+                logger.warn("Closing connection from {}, handshake not done within {}ms",
+                        connection.remoteAddress, getHandshakeTimeoutMillis());
+                connection.close();
+            }
+            handshakes.poll();
+        }
+    }
+
+    private void resumeParked() {
+        final int count = parked.size();
+        for (int i = 0; i < count; i++) {
+            final Connection connection = parked.poll();
+            if (!connection.key.isValid()) {
+                continue;
+            }
+            if (!queue.offer(connection.pending)) {
+                parked.add(connection);
+                continue;
+            }
+            connection.pending = null;
+            connection.accepted++;
+            try {
+                decode(connection);
+            } catch (IOException e) {
+                logger.error("Unable to receive report from {}: {}", connection.remoteAddress, e.getMessage());
+                logger.trace(e.getMessage(), e);
+                connection.close();
+            }
+        }
+        hasParked = !parked.isEmpty();
+    }
+
+    /**
+     * The state of a connection, only used by the selector thread.
+     */
+    protected abstract static class Connection {
+        protected final SocketChannel channel;
+        protected final Object remoteAddress;
+        private final int maxBufferSize;
+        private SelectionKey key;
+        private NagiosServiceReport pending = null;
+        private long handshakeDeadline = 0;
+
+        /**
+         * Received bytes, flipped for reading while {@link #decode()} runs.
+         */
+        protected ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        /**
+         * Bytes to send, flipped for reading.
+         */
+        protected ByteBuffer output = ByteBuffer.allocate(0);
+
+        /**
+         * The number of reports accepted since {@link #prepareOutput()} last
+         * reset it.
+         */
+        protected int accepted = 0;
+
+        protected Connection(SocketChannel channel, int maxBufferSize) throws IOException {
+            this.channel = channel;
+            this.maxBufferSize = maxBufferSize;
+            remoteAddress = channel.getRemoteAddress();
+        }
+
+        /**
+         * Called once after the connection was accepted, e.g. to send a
+         * greeting through {@link #output}.
+         */
+        protected void opened() {
+        }
+
+        /**
+         * @return the next report in {@link #buffer} or null if it is not
+         * complete yet
+         * @throws IOException if the input is malformed, the connection is
+         *                     closed then
+         */
+        protected abstract NagiosServiceReport decode() throws IOException;
+
+        /**
+         * @return false while the handshake of the connection is not done
+         */
+        protected boolean isEstablished() {
+            return true;
+        }
+
+        /**
+         * Called before output is written, e.g. to acknowledge
+         * {@link #accepted} reports.
+         */
+        protected void prepareOutput() {
+        }
+
+        /**
+         * Called once after the connection was closed.
+         */
+        protected void closed() {
+        }
+
+        /**
+         * Makes room for a report larger than the buffer.
+         */
+        private void grow() throws IOException {
+            if (buffer.capacity() >= maxBufferSize) {
+                throw new IOException("report exceeds the read buffer");
+            }
+            final ByteBuffer grown = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, maxBufferSize));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+
+        private void close() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            try {
+                key.cancel();
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Unable to close connection from {}: {}", remoteAddress, e.getMessage());
+            }
+            closed();
+        }
+    }
+
+    private final class Dispatcher implements Runnable {
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    final NagiosServiceReport report = queue.poll(1, TimeUnit.SECONDS);
+                    if (report != null) {
+                        dispatch(report);
+                        if (hasParked) {
+                            selector.wakeup();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // reports accepted before the server stopped have been acknowledged
+            NagiosServiceReport report;
+            while ((report = queue.poll()) != null) {
+                dispatch(report);
+            }
+        }
+    }
+}
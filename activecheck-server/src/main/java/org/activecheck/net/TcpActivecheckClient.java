@@ -1,32 +1,185 @@
 package org.activecheck.net;
 
 import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportCodec;
+import org.activecheck.common.nagios.NagiosServiceReportCodecException;
+import org.apache.commons.lang.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
-@SuppressWarnings("unused")
+/**
+ * Sends reports to a {@link TcpActivecheckServer} over one persistent
+ * connection that is shared by all threads. Reports are pipelined: up to
+ * <code>window</code> reports may be in flight before the client waits for
+ * the server to acknowledge them. If the connection breaks, the client
+ * reconnects once and sends all unacknowledged reports again, so a report may
+ * be delivered twice but is not lost silently. If that fails as well, the
+ * unacknowledged reports are discarded and an exception is thrown.
+ */
 public class TcpActivecheckClient extends ActivecheckClient {
+    private static final Logger logger = LoggerFactory.getLogger(TcpActivecheckClient.class);
+    private static final int DEFAULT_WINDOW = 1000;
+    private static final int DEFAULT_TIMEOUT_MILLIS = 10000;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final NagiosServiceReportCodec codec = new NagiosServiceReportCodec();
+    private final Deque<NagiosServiceReport> unacknowledged = new ArrayDeque<>();
+    private final int window;
+    private final int timeoutMillis;
+    private Socket socket = null;
+    private OutputStream out = null;
+    private InputStream in = null;
+
     public TcpActivecheckClient(String address, int port) {
+        this(address, port, DEFAULT_WINDOW, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public TcpActivecheckClient(String address, int port, int window, int timeoutMillis) {
         super(address, port);
+        Validate.isTrue(window > 0, "window must be positive");
+        this.window = window;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public synchronized void send(NagiosServiceReport report) throws IOException {
+        Validate.notNull(report);
+        unacknowledged.add(report);
+        IOException failure = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            try {
+                if (socket == null) {
+                    // sends all unacknowledged reports including this one
+                    connect();
+                } else {
+                    codec.write(report, out);
+                }
+                if (unacknowledged.size() >= window) {
+                    out.flush();
+                    awaitAcknowledgements(window / 2);
+                }
+                return;
+            } catch (IOException e) {
+                failure = e;
+                disconnect(e);
+            }
+        }
+        throw discard(failure);
     }
 
     @Override
-    public void send(NagiosServiceReport report) {
-        try (final Socket socket = new Socket(address, port)) {
+    public synchronized void flush() throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS && !unacknowledged.isEmpty(); attempt++) {
             try {
-                final ObjectOutputStream objectOutput = new ObjectOutputStream(
-                        socket.getOutputStream());
-                objectOutput.writeObject(report);
+                if (socket == null) {
+                    connect();
+                }
+                out.flush();
+                awaitAcknowledgements(0);
+                return;
             } catch (IOException e) {
-                e.printStackTrace();
+                failure = e;
+                disconnect(e);
             }
-        } catch (UnknownHostException e) {
-            e.printStackTrace();
+        }
+        if (!unacknowledged.isEmpty()) {
+            throw discard(failure);
+        }
+    }
+
+    /**
+     * Delivers all pending reports and closes the connection.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            disconnect(null);
+        }
+    }
+
+    /**
+     * @return a connected socket
+     */
+    protected Socket openSocket(int timeoutMillis) throws IOException {
+        final Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(address, port), timeoutMillis);
+            socket.setTcpNoDelay(true);
         } catch (IOException e) {
-            e.printStackTrace();
+            socket.close();
+            throw e;
         }
+        return socket;
+    }
+
+    /**
+     * @return the server in log and error messages
+     */
+    protected String getEndpoint() {
+        return address + ":" + port;
+    }
+
+    private void connect() throws IOException {
+        logger.debug("Connecting to {}", getEndpoint());
+        socket = openSocket(timeoutMillis);
+        socket.setSoTimeout(timeoutMillis);
+        out = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        in = new BufferedInputStream(socket.getInputStream());
+        for (NagiosServiceReport report : unacknowledged) {
+            codec.write(report, out);
+        }
+    }
+
+    private void awaitAcknowledgements(int maxUnacknowledged) throws IOException {
+        while (unacknowledged.size() > maxUnacknowledged) {
+            final int count = NagiosServiceReportCodec.readAcknowledgement(in);
+            if (count < 0) {
+                throw new EOFException("connection closed by " + getEndpoint());
+            }
+            if (count > unacknowledged.size()) {
+                throw new NagiosServiceReportCodecException("acknowledged more reports than were sent");
+            }
+            for (int i = 0; i < count; i++) {
+                unacknowledged.poll();
+            }
+        }
+    }
+
+    private void disconnect(IOException cause) {
+        if (cause != null) {
+            logger.debug("Connection to {} failed: {}", getEndpoint(), cause.getMessage());
+        }
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.trace(e.getMessage(), e);
+            }
+        }
+        socket = null;
+        out = null;
+        in = null;
+    }
+
+    private IOException discard(IOException failure) {
+        final int count = unacknowledged.size();
+        unacknowledged.clear();
+        return new IOException(String.format("Unable to deliver %d reports to %s: %s",
+                count, getEndpoint(), failure.getMessage()), failure);
     }
 }
@@ -1,51 +1,63 @@
 package org.activecheck.net;
 
 import org.activecheck.common.nagios.NagiosServiceReport;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.activecheck.common.nagios.NagiosServiceReportCodec;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 
-public class TcpActivecheckServer extends ActivecheckServer {
-    private static final Logger logger = LoggerFactory.getLogger(TcpActivecheckServer.class);
-    private final ServerSocket serverSocket;
+/**
+ * Receives reports from local clients. Connections may stay open to send any
+ * number of frames encoded by {@link NagiosServiceReportCodec}. Accepted
+ * reports are acknowledged on the same connection, see
+ * {@link TcpActivecheckClient}.
+ */
+public class TcpActivecheckServer extends SelectorActivecheckServer {
+    // the largest frame including a five byte length prefix
+    private static final int MAX_BUFFER_SIZE = NagiosServiceReportCodec.MAX_FRAME_LENGTH + 5;
 
     public TcpActivecheckServer(InetAddress bindAddress, int bindPort)
             throws IOException {
-        serverSocket = new ServerSocket(bindPort, 0, bindAddress);
-        logger.info("Listening on {}:{}", bindAddress, bindPort);
+        this(bindAddress, bindPort, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public TcpActivecheckServer(InetAddress bindAddress, int bindPort, int queueCapacity)
+            throws IOException {
+        super("ActivecheckServer", bindAddress, bindPort, queueCapacity);
     }
 
     @Override
-    @SuppressWarnings("InfiniteLoopStatement")
-    public void run() {
-        while (true) {
-            try (final Socket socket = serverSocket.accept()) {
-                try {
-                    final ObjectInputStream objectInput = new ObjectInputStream(
-                            socket.getInputStream());
-                    final Object object = objectInput.readObject();
-                    if (object instanceof NagiosServiceReport) {
-                        logger.debug("Received packet from {}", socket.getRemoteSocketAddress());
-                        setChanged();
-                        notifyObservers(object);
-                    } else {
-                        logger.debug("Received unknown payload");
-                    }
-                } catch (IOException e) {
-                    logger.error("Unable to receive Object: {}", e.getMessage());
-                    logger.trace(e.getMessage(), e);
-                } catch (ClassNotFoundException e) {
-                    logger.error("Received unknown payload: {}", e.getMessage());
-                    logger.trace(e.getMessage(), e);
-                }
-            } catch (IOException e) {
-                logger.error("Unable to create a server socket: {}", e.getMessage());
-                logger.trace(e.getMessage(), e);
+    protected Connection newConnection(SocketChannel channel) throws IOException {
+        return new TcpConnection(channel);
+    }
+
+    private static final class TcpConnection extends Connection {
+        private final ByteBuffer ack = ByteBuffer.allocate(5);
+
+        private TcpConnection(SocketChannel channel) throws IOException {
+            super(channel, MAX_BUFFER_SIZE);
+            ack.flip();
+            output = ack;
+        }
+
+        @Override
+        protected NagiosServiceReport decode() throws IOException {
+            return NagiosServiceReportCodec.decode(buffer);
+        }
+
+        /**
+         * Acknowledges the reports accepted since the last acknowledgement
+         * once the previous one has been written.
+         */
+        @Override
+        protected void prepareOutput() {
+            if (!ack.hasRemaining() && accepted > 0) {
+                ack.clear();
+                NagiosServiceReportCodec.putAcknowledgement(ack, accepted);
+                ack.flip();
+                accepted = 0;
             }
         }
     }
@@ -0,0 +1,40 @@
+package org.activecheck.net;
+
+import org.newsclub.net.unix.AFUNIXSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Sends reports to a {@link UnixActivecheckServer} in the native format. The
+ * connection is pipelined and acknowledged like the one of
+ * {@link TcpActivecheckClient}.
+ */
+public class UnixActivecheckClient extends TcpActivecheckClient {
+    public UnixActivecheckClient(String path) {
+        super(path, 0);
+    }
+
+    public UnixActivecheckClient(String path, int window, int timeoutMillis) {
+        super(path, 0, window, timeoutMillis);
+    }
+
+    @Override
+    protected Socket openSocket(int timeoutMillis) throws IOException {
+        final AFUNIXSocket socket = AFUNIXSocket.newInstance();
+        try {
+            socket.connect(AFUNIXSocketAddress.of(new File(address)), timeoutMillis);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    @Override
+    protected String getEndpoint() {
+        return address;
+    }
+}
@@ -0,0 +1,206 @@
+package org.activecheck.net;
+
+import org.activecheck.common.Encoding;
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportCodec;
+import org.activecheck.common.nagios.NagiosServiceReportCodecException;
+import org.newsclub.net.unix.AFUNIXServerSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Receives reports from local clients on a unix domain stream socket, which
+ * saves the TCP stack and a port per client. Clients send either frames of
+ * the native format, which are acknowledged like those sent to
+ * {@link TcpActivecheckServer}, or lines of {@link LineFormat}, which are
+ * not acknowledged. Only clients the permissions of the socket file allow may
+ * connect.
+ * <p>
+ * Every connection is served by its own thread. Reports are handed to the
+ * observers one at a time, a connection is not read while its thread waits
+ * for that, which pushes back on the sending client.
+ */
+public class UnixActivecheckServer extends ActivecheckServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(UnixActivecheckServer.class);
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    public enum Format {
+        NATIVE, LINE
+    }
+
+    private final File path;
+    private final Format format;
+    private final AFUNIXServerSocket serverSocket;
+    private final Set<Socket> connections = Collections.synchronizedSet(new HashSet<Socket>());
+    private volatile boolean running = true;
+    private Object fileKey = null;
+
+    /**
+     * @param permissions the permissions of the socket file in the form of
+     *                    <code>rw-rw----</code>
+     * @param group       the group of the socket file or null to keep it
+     */
+    public UnixActivecheckServer(File path, Format format, String permissions, String group)
+            throws IOException {
+        this.path = path;
+        this.format = format;
+        UnixSocketFiles.removeStale(path);
+        serverSocket = AFUNIXServerSocket.newInstance();
+        try {
+            serverSocket.bind(AFUNIXSocketAddress.of(path));
+            fileKey = UnixSocketFiles.fileKey(path);
+            UnixSocketFiles.restrictAccess(path, permissions, group);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        logger.info("UnixActivecheckServer listening on {}", path);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                final Socket socket = serverSocket.accept();
+                connections.add(socket);
+                final Thread thread = new Thread(new Connection(socket));
+                thread.setName("UnixActivecheckConnection");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException e) {
+            if (running) {
+                logger.error("Unable to accept a connection on {}: {}", path, e.getMessage());
+                logger.trace(e.getMessage(), e);
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stops accepting, closes all connections and removes the socket file.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            logger.error("Unable to close the socket: {}", e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+        synchronized (connections) {
+            for (Socket socket : connections) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    logger.trace(e.getMessage(), e);
+                }
+            }
+            connections.clear();
+        }
+        UnixSocketFiles.remove(path, fileKey);
+    }
+
+    private synchronized void dispatch(NagiosServiceReport report) {
+        logger.debug("Received packet {}", report.getServiceName());
+        try {
+            setChanged();
+            notifyObservers(report);
+        } catch (RuntimeException e) {
+            logger.error("Unable to dispatch report: {}", e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+    }
+
+    private final class Connection implements Runnable {
+        private final Socket socket;
+
+        private Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (format == Format.NATIVE) {
+                    readFrames();
+                } else {
+                    readLines();
+                }
+            } catch (NagiosServiceReportCodecException e) {
+                logger.error("Received invalid payload on {}: {}", path, e.getMessage());
+                logger.trace(e.getMessage(), e);
+            } catch (IOException e) {
+                if (running) {
+                    logger.error("Unable to receive report on {}: {}", path, e.getMessage());
+                    logger.trace(e.getMessage(), e);
+                }
+            } finally {
+                connections.remove(socket);
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    logger.trace(e.getMessage(), e);
+                }
+            }
+        }
+
+        /**
+         * Acknowledges the reports received so far whenever the client has
+         * nothing more to read.
+         */
+        private void readFrames() throws IOException {
+            final NagiosServiceReportCodec codec = new NagiosServiceReportCodec();
+            final BufferedInputStream in = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+            final OutputStream out = socket.getOutputStream();
+            final ByteBuffer ack = ByteBuffer.allocate(5);
+            int accepted = 0;
+            NagiosServiceReport report;
+            while ((report = codec.read(in)) != null) {
+                dispatch(report);
+                accepted++;
+                if (in.available() == 0) {
+                    ack.clear();
+                    NagiosServiceReportCodec.putAcknowledgement(ack, accepted);
+                    out.write(ack.array(), 0, ack.position());
+                    out.flush();
+                    accepted = 0;
+                }
+            }
+        }
+
+        private void readLines() throws IOException {
+            final BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), Encoding.UTF8), BUFFER_SIZE);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final NagiosServiceReport report = LineFormat.parse(line, LineFormat.DEFAULT_DELIMITER,
+                        System.currentTimeMillis());
+                if (report == null) {
+                    logger.warn("Ignoring invalid line received on {}", path);
+                } else {
+                    dispatch(report);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.activecheck.net;
+
+import org.activecheck.common.Encoding;
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportCodec;
+import org.activecheck.common.nagios.NagiosServiceReportCodecException;
+import org.activecheck.net.UnixActivecheckServer.Format;
+import org.newsclub.net.unix.AFUNIXDatagramChannel;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * Receives reports from local clients on a unix domain datagram socket. Every
+ * datagram holds one or more native frames or lines of {@link LineFormat}
+ * and is not acknowledged. Datagrams on unix domain sockets are neither lost
+ * nor reordered, a client blocks while the socket buffer is full. Only
+ * clients the permissions of the socket file allow may send.
+ */
+public class UnixDatagramActivecheckServer extends ActivecheckServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(UnixDatagramActivecheckServer.class);
+    private static final int MAX_DATAGRAM_SIZE = 64 * 1024;
+
+    private final File path;
+    private final Format format;
+    private final AFUNIXDatagramChannel channel;
+    private volatile boolean running = true;
+    private Object fileKey = null;
+
+    /**
+     * @param permissions the permissions of the socket file in the form of
+     *                    <code>rw-rw----</code>
+     * @param group       the group of the socket file or null to keep it
+     */
+    public UnixDatagramActivecheckServer(File path, Format format, String permissions, String group)
+            throws IOException {
+        this.path = path;
+        this.format = format;
+        UnixSocketFiles.removeStale(path);
+        channel = AFUNIXDatagramChannel.open();
+        try {
+            channel.bind(AFUNIXSocketAddress.of(path));
+            fileKey = UnixSocketFiles.fileKey(path);
+            UnixSocketFiles.restrictAccess(path, permissions, group);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        logger.info("UnixDatagramActivecheckServer listening on {}", path);
+    }
+
+    @Override
+    public void run() {
+        final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+        try {
+            while (running) {
+                buffer.clear();
+                channel.receive(buffer);
+                buffer.flip();
+                try {
+                    if (format == Format.NATIVE) {
+                        decodeFrames(buffer);
+                    } else {
+                        decodeLines(buffer);
+                    }
+                } catch (NagiosServiceReportCodecException e) {
+                    logger.error("Received invalid datagram: {}", e.getMessage());
+                    logger.trace(e.getMessage(), e);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            logger.debug("Socket {} closed", path);
+        } catch (IOException e) {
+            logger.error("Unable to receive from {}: {}", path, e.getMessage());
+            logger.trace(e.getMessage(), e);
+        } finally {
+            close();
+        }
+    }
+
+    private void decodeFrames(ByteBuffer buffer) throws NagiosServiceReportCodecException {
+        NagiosServiceReport report;
+        while ((report = NagiosServiceReportCodec.decode(buffer)) != null) {
+            dispatch(report);
+        }
+        if (buffer.hasRemaining()) {
+            throw new NagiosServiceReportCodecException("incomplete frame");
+        }
+    }
+
+    private void decodeLines(ByteBuffer buffer) {
+        final long time = System.currentTimeMillis();
+        final String datagram = new String(buffer.array(), buffer.arrayOffset(), buffer.limit(), Encoding.UTF8);
+        for (String line : datagram.split("\r?\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            final NagiosServiceReport report = LineFormat.parse(line, LineFormat.DEFAULT_DELIMITER, time);
+            if (report == null) {
+                logger.warn("Ignoring invalid line received on {}", path);
+            } else {
+                dispatch(report);
+            }
+        }
+    }
+
+    private void dispatch(NagiosServiceReport report) {
+        logger.debug("Received packet {}", report.getServiceName());
+        try {
+            setChanged();
+            notifyObservers(report);
+        } catch (RuntimeException e) {
+            logger.error("Unable to dispatch report: {}", e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops receiving and removes the socket file.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Unable to close the socket: {}", e.getMessage());
+            logger.trace(e.getMessage(), e);
+        }
+        UnixSocketFiles.remove(path, fileKey);
+    }
+}
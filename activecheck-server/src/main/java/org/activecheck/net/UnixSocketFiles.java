@@ -0,0 +1,84 @@
+package org.activecheck.net;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.GroupPrincipal;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Access to the unix domain sockets of activecheck is controlled by the
+ * permissions of their files instead of the address a port is bound to.
+ */
+final class UnixSocketFiles {
+    private static final Logger logger = LoggerFactory.getLogger(UnixSocketFiles.class);
+
+    private UnixSocketFiles() {
+    }
+
+    /**
+     * Removes the socket a previous instance left behind.
+     *
+     * @throws IOException if the path exists and is no socket
+     */
+    static void removeStale(File path) throws IOException {
+        if (Files.isRegularFile(path.toPath()) || Files.isDirectory(path.toPath())) {
+            throw new IOException(String.format("'%s' exists and is not a socket", path));
+        }
+        Files.deleteIfExists(path.toPath());
+    }
+
+    /**
+     * @return what identifies the file at the path, e.g. its inode, or null
+     * if there is none
+     */
+    static Object fileKey(File path) {
+        try {
+            return Files.readAttributes(path.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Removes the socket unless another instance has replaced it meanwhile.
+     *
+     * @param fileKey the key of the socket when it was bound
+     */
+    static void remove(File path, Object fileKey) {
+        if (fileKey != null && fileKey.equals(fileKey(path)) && !path.delete()) {
+            logger.debug("Unable to remove '{}'", path);
+        }
+    }
+
+    /**
+     * Restricts access to a bound socket. Clients may connect in between
+     * binding and restricting, the socket should therefore be placed in a
+     * directory only its clients can access.
+     *
+     * @param permissions the permissions in the form of <code>rw-rw----</code>
+     * @param group       the owning group or null to keep the group
+     */
+    static void restrictAccess(File path, String permissions, String group) throws IOException {
+        final PosixFileAttributeView view = Files.getFileAttributeView(path.toPath(), PosixFileAttributeView.class);
+        if (view == null) {
+            throw new IOException("File permissions are not supported for " + path);
+        }
+        try {
+            view.setPermissions(PosixFilePermissions.fromString(permissions));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(String.format("Invalid permissions '%s'", permissions), e);
+        }
+        if (StringUtils.isNotEmpty(group)) {
+            final GroupPrincipal principal = path.toPath().getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByGroupName(group);
+            view.setGroup(principal);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.activecheck.plugin.collector;
 
 import org.activecheck.MBeanRegistry;
 import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportSnapshot;
 import org.activecheck.common.plugin.collector.ActivecheckCollector;
 import org.activecheck.common.plugin.reporter.ActivecheckReporter;
 import org.activecheck.net.ActivecheckServer;
@@ -9,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
@@ -45,6 +47,13 @@ public class ActivecheckPacketProcessor implements Observer {
     }
 
     public void process(NagiosServiceReport report) {
+        process(new NagiosServiceReportSnapshot(report));
+    }
+
+    /**
+     * Sends the same immutable snapshot to all collectors.
+     */
+    public void process(NagiosServiceReportSnapshot report) {
         for (final ActivecheckCollector collector : activecheckCollectorHosts.values()) {
             if (isActive(collector)) {
                 logger.debug("Processing packet for collector {}", collector.getCollectorEndpointName());
@@ -82,15 +91,19 @@ public class ActivecheckPacketProcessor implements Observer {
             final long finishTime = startTime + nagiosReporter.getExecutionTimeMillis();
 
             for (NagiosServiceReport report : nagiosReporter.getReports()) {
-                // send report to configured hosts
-                report.setServiceHost(localFqdn);
-                report.setStartTime(startTime);
-                report.setFinishTime(finishTime);
-                process(report);
+                // send a snapshot of the report to configured hosts, the local host
+                // stands in for reports without their own
+                process(new NagiosServiceReportSnapshot(report, localFqdn, startTime, finishTime));
             }
         } else if (arg0 instanceof ActivecheckServer) {
-            // send received packet to configured hosts
-            process((NagiosServiceReport) arg1);
+            // send received packets to configured hosts
+            if (arg1 instanceof Collection) {
+                for (Object report : (Collection<?>) arg1) {
+                    process((NagiosServiceReport) report);
+                }
+            } else {
+                process((NagiosServiceReport) arg1);
+            }
         }
     }
 }
@@ -1,6 +1,6 @@
 package org.activecheck.plugin.collector;
 
-import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportSnapshot;
 import org.activecheck.common.nagios.NagiosServiceStatus;
 import org.activecheck.common.plugin.collector.ActivecheckCollector;
 import org.activecheck.common.plugin.collector.ActivecheckCollectorType;
@@ -25,7 +25,7 @@ public class StdoutHost extends ActivecheckCollector {
     }
 
     @Override
-    public synchronized void sendImpl(NagiosServiceReport report) {
+    public synchronized void sendImpl(NagiosServiceReportSnapshot report) {
         final NagiosServiceStatus status = report.getStatus();
         final String serviceName = report.getServiceName();
         final String message = report.getMessageWithPerformancedata();
@@ -3,6 +3,7 @@ package org.activecheck.plugin.reporter;
 import org.activecheck.MBeanRegistry;
 import org.activecheck.common.plugin.reporter.ActivecheckReporter;
 import org.activecheck.common.plugin.reporter.ActivecheckReporterStatus;
+import org.activecheck.common.plugin.reporter.ActivecheckTargetLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,6 +16,7 @@ public class ActivecheckReporterScheduler implements Observer {
     private static final String JMX_OBJECT_TYPE = "Reporters";
 
     private final ActivecheckReporterExecutor reporterExecutorService;
+    private final ActivecheckTargetLimiter targetLimiter;
     private final ActivecheckFixitRunner fixitRunner;
 
     public ActivecheckReporterScheduler() {
@@ -26,6 +28,13 @@ public class ActivecheckReporterScheduler implements Observer {
         reporterExecutorService.allowCoreThreadTimeOut(true);
         MBeanRegistry.getInstance().register("ReporterExecutor", null, reporterExecutorService);
 
+        /**
+         * Reporters of a target at its limit wait here instead of occupying
+         * a worker thread
+         */
+        targetLimiter = new ActivecheckTargetLimiter(reporterExecutorService, 0);
+        MBeanRegistry.getInstance().register("TargetLimiter", null, targetLimiter);
+
         /**
          * Fixit runner should always be only one thread to avoid that malicious
          * fixit operations could occupy all available threads
@@ -36,10 +45,13 @@ public class ActivecheckReporterScheduler implements Observer {
         fixitExecutor.start();
     }
 
-    public void setupExecutorService(int worker) {
+    public void setupExecutorService(int worker, int maxPerTarget) {
         // set reporter scheduler thread pool
         reporterExecutorService.setCorePoolSize(worker);
 
+        // set max concurrent runs per target
+        targetLimiter.setMaxPerTarget(maxPerTarget);
+
         // try to remove canceled futures
         reporterExecutorService.purge();
     }
@@ -54,6 +66,7 @@ public class ActivecheckReporterScheduler implements Observer {
 
             // set scheduler as observer as rescheduling is handled here
             reporter.addObserver(this);
+            reporter.setTargetLimiter(targetLimiter);
 
             // schedule reporter
             reschedule(reporter);
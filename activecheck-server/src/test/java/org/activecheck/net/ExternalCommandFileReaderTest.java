@@ -0,0 +1,190 @@
+package org.activecheck.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ExternalCommandFileReaderTest {
+	private static final int REPORTS = 1000;
+
+	private File directory;
+	private File path;
+	private ExternalCommandFileReader reader;
+	private final BlockingQueue<NagiosServiceReport> received = new LinkedBlockingQueue<>();
+	private final Observer observer = new Observer() {
+		@Override
+		public void update(Observable o, Object arg) {
+			for (Object report : (List<?>) arg) {
+				received.add((NagiosServiceReport) report);
+			}
+		}
+	};
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("activecheck").toFile();
+		path = new File(directory, "activecheck.cmd");
+	}
+
+	@AfterMethod
+	public void tearDown() throws Exception {
+		if (reader != null) {
+			reader.close();
+			reader = null;
+		}
+		received.clear();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private void start() {
+		reader = new ExternalCommandFileReader(path, 10);
+		reader.addObserver(observer);
+		Thread thread = new Thread(reader);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private NagiosServiceReport receive() throws InterruptedException {
+		return received.poll(5, TimeUnit.SECONDS);
+	}
+
+	private static void append(File file, String lines) throws Exception {
+		try (OutputStream out = new FileOutputStream(file, true)) {
+			out.write(lines.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static String command(int i) {
+		return "[1500000000] PROCESS_SERVICE_CHECK_RESULT;localhost;service" + i + ";0;OK | count=" + i + "\n";
+	}
+
+	@Test(description = "Test parsing service and host check results")
+	public void testParse() {
+		NagiosServiceReport report = ExternalCommandFormat.parse(
+				"[1500000000] PROCESS_SERVICE_CHECK_RESULT;web01;HTTP;1;HTTP WARNING; slow|time=2s", 0);
+		assertEquals(report.getServiceHost(), "web01");
+		assertEquals(report.getServiceName(), "HTTP");
+		assertEquals(report.getStatus(), NagiosServiceStatus.WARNING);
+		assertEquals(report.getMessage(), "HTTP WARNING; slow");
+		assertEquals(report.getFinishTime(), 1500000000000L);
+
+		report = ExternalCommandFormat.parse("PROCESS_HOST_CHECK_RESULT;web01;2;PING CRITICAL", 42);
+		assertNull(report.getServiceName());
+		assertEquals(report.getServiceHost(), "web01");
+		assertEquals(report.getStatus(), NagiosServiceStatus.CRITICAL);
+		assertEquals(report.getFinishTime(), 42);
+
+		report = ExternalCommandFormat.parse("PROCESS_HOST_CHECK_RESULT;web01;0", 42);
+		assertEquals(report.getStatus(), NagiosServiceStatus.OK);
+	}
+
+	@Test(description = "Test invalid lines and other commands are ignored")
+	public void testParseInvalid() {
+		assertNull(ExternalCommandFormat.parse("", 0));
+		assertNull(ExternalCommandFormat.parse("[1500000000] SCHEDULE_FORCED_SVC_CHECK;web01;HTTP;1500000000", 0));
+		assertNull(ExternalCommandFormat.parse("[15000 PROCESS_HOST_CHECK_RESULT;web01;0;OK", 0));
+		assertNull(ExternalCommandFormat.parse("[x] PROCESS_HOST_CHECK_RESULT;web01;0;OK", 0));
+		assertNull(ExternalCommandFormat.parse("PROCESS_SERVICE_CHECK_RESULTS;web01;HTTP;0;OK", 0));
+		assertNull(ExternalCommandFormat.parse("PROCESS_SERVICE_CHECK_RESULT;web01;;0;OK", 0));
+		assertNull(ExternalCommandFormat.parse("PROCESS_SERVICE_CHECK_RESULT;web01;HTTP;x;OK", 0));
+		assertNull(ExternalCommandFormat.parse("PROCESS_SERVICE_CHECK_RESULT;web01;HTTP;9;OK", 0));
+		assertNull(ExternalCommandFormat.parse("PROCESS_HOST_CHECK_RESULT;;0;OK", 0));
+	}
+
+	@Test(description = "Test reading lines appended to a file")
+	public void testAppendedFile() throws Exception {
+		// lines written before the reader starts are skipped
+		append(path, command(-1));
+		start();
+		Thread.sleep(200);
+		StringBuilder lines = new StringBuilder();
+		for (int i = 0; i < REPORTS; i++) {
+			lines.append(command(i));
+		}
+		append(path, lines.toString());
+		// an incomplete line is completed by the next append
+		append(path, "PROCESS_HOST_CHECK_RESULT;web01;0;PING OK\r\nSCHEDULE_HOST_CHECK;web01;0\nPROCESS_HOST_");
+		append(path, "CHECK_RESULT;web02;1;PING WARNING\n");
+		for (int i = 0; i < REPORTS; i++) {
+			NagiosServiceReport report = receive();
+			assertEquals(report.getServiceName(), "service" + i);
+			assertEquals(report.getPerfData().get(0).getCurrent(), (double) i);
+		}
+		assertEquals(receive().getMessage(), "PING OK");
+		assertEquals(receive().getServiceHost(), "web02");
+	}
+
+	@Test(description = "Test following a rotated and a truncated file")
+	public void testRotation() throws Exception {
+		start();
+		// the reader waits for the file to appear
+		Thread.sleep(100);
+		assertTrue(path.createNewFile());
+		Thread.sleep(200);
+		append(path, command(1));
+		assertEquals(receive().getServiceName(), "service1");
+
+		File rotated = new File(directory, "activecheck.cmd.1");
+		assertTrue(path.renameTo(rotated));
+		append(rotated, command(2));
+		append(path, command(3));
+		assertEquals(receive().getServiceName(), "service2");
+		assertEquals(receive().getServiceName(), "service3");
+
+		try (OutputStream out = new FileOutputStream(path)) {
+			out.write(command(4).substring(0, 10).getBytes(StandardCharsets.UTF_8));
+		}
+		Thread.sleep(200);
+		append(path, command(5).substring(10));
+		// the truncated line is completed by the next append
+		assertEquals(receive().getServiceName(), "service5");
+	}
+
+	@Test(description = "Test reading from a named pipe")
+	public void testNamedPipe() throws Exception {
+		Process mkfifo;
+		try {
+			mkfifo = new ProcessBuilder("mkfifo", path.getPath()).start();
+		} catch (Exception e) {
+			throw new SkipException("mkfifo is not available");
+		}
+		if (mkfifo.waitFor() != 0) {
+			throw new SkipException("mkfifo failed");
+		}
+		start();
+		// writers come and go
+		for (int i = 0; i < REPORTS; i++) {
+			append(path, command(i));
+		}
+		for (int i = 0; i < REPORTS; i++) {
+			assertEquals(receive().getServiceName(), "service" + i);
+		}
+		reader.close();
+		reader = null;
+	}
+}
@@ -0,0 +1,40 @@
+package org.activecheck.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.testng.annotations.Test;
+
+public class LineFormatTest {
+	@Test(description = "Test parsing a service check result")
+	public void testServiceCheck() {
+		NagiosServiceReport report = LineFormat.parse(
+				"web01\tHTTP\t1\tHTTP WARNING - slow\tresponse | time=2.5s", "\t", 10);
+		assertEquals(report.getServiceHost(), "web01");
+		assertEquals(report.getServiceName(), "HTTP");
+		assertEquals(report.getStatus(), NagiosServiceStatus.WARNING);
+		assertEquals(report.getMessage(), "HTTP WARNING - slow\tresponse");
+		assertEquals(report.getPerfData().get(0).getName(), "time");
+		assertEquals(report.getStartTime(), 10);
+	}
+
+	@Test(description = "Test parsing a host check result")
+	public void testHostCheck() {
+		NagiosServiceReport report = LineFormat.parse(
+				"web01;0;PING OK", ";", 10);
+		assertEquals(report.getServiceHost(), "web01");
+		assertNull(report.getServiceName());
+		assertEquals(report.getStatus(), NagiosServiceStatus.OK);
+		assertEquals(report.getMessage(), "PING OK");
+	}
+
+	@Test(description = "Test invalid lines are rejected")
+	public void testInvalidLines() {
+		assertNull(LineFormat.parse("web01\tHTTP", "\t", 10));
+		assertNull(LineFormat.parse("web01\tHTTP\tx\tOK", "\t", 10));
+		assertNull(LineFormat.parse("web01\tHTTP\t9\tOK", "\t", 10));
+		assertNull(LineFormat.parse("\tHTTP\t0\tOK", "\t", 10));
+	}
+}
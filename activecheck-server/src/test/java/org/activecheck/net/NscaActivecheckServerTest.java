@@ -0,0 +1,234 @@
+package org.activecheck.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.googlecode.jsendnsca.Level;
+import com.googlecode.jsendnsca.NagiosPassiveCheckSender;
+import com.googlecode.jsendnsca.builders.MessagePayloadBuilder;
+import com.googlecode.jsendnsca.builders.NagiosSettingsBuilder;
+import com.googlecode.jsendnsca.encryption.Encryption;
+
+public class NscaActivecheckServerTest {
+	private static final String PASSWORD = "secret";
+
+	private NscaActivecheckServer server;
+	private final BlockingQueue<NagiosServiceReport> received = new LinkedBlockingQueue<>();
+
+	private void start(int encryptionMethod, int maxPacketAge) throws Exception {
+		server = new NscaActivecheckServer(InetAddress.getLoopbackAddress(), 0,
+				encryptionMethod, PASSWORD, maxPacketAge);
+		server.addObserver(new Observer() {
+			@Override
+			public void update(Observable o, Object arg) {
+				received.add((NagiosServiceReport) arg);
+			}
+		});
+		Thread thread = new Thread(server);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		if (server != null) {
+			server.close();
+		}
+		received.clear();
+	}
+
+	private NagiosServiceReport receive() throws InterruptedException {
+		return received.poll(5, TimeUnit.SECONDS);
+	}
+
+	private void sendWithJsendnsca(Encryption encryption, boolean largeMessages) throws Exception {
+		NagiosSettingsBuilder settings = new NagiosSettingsBuilder()
+				.withNagiosHost("127.0.0.1").withPort(server.getLocalPort())
+				.withEncryption(encryption).withPassword(PASSWORD);
+		if (largeMessages) {
+			settings.withLargeMessageSupportEnabled();
+		}
+		NagiosPassiveCheckSender sender = new NagiosPassiveCheckSender(settings.create());
+		sender.send(new MessagePayloadBuilder().withHostname("web01")
+				.withServiceName("disk").withLevel(Level.WARNING)
+				.withMessage("DISK WARNING | root=90%").create());
+		sender.send(new MessagePayloadBuilder().withHostname("web01")
+				.withServiceName("load").withLevel(Level.OK).withMessage("LOAD OK").create());
+	}
+
+	private void assertJsendnscaReports() throws InterruptedException {
+		NagiosServiceReport report = receive();
+		assertEquals(report.getServiceName(), "disk");
+		assertEquals(report.getServiceHost(), "web01");
+		assertEquals(report.getStatus(), NagiosServiceStatus.WARNING);
+		assertEquals(report.getMessage(), "DISK WARNING");
+		assertEquals(report.getPerfData().get(0).getName(), "root");
+
+		report = receive();
+		assertEquals(report.getServiceName(), "load");
+		assertEquals(report.getStatus(), NagiosServiceStatus.OK);
+	}
+
+	@Test(description = "Test packets from jsendnsca without encryption")
+	public void testJsendnscaNone() throws Exception {
+		start(NscaEncryption.NONE, 30);
+		sendWithJsendnsca(Encryption.NONE, false);
+		assertJsendnscaReports();
+	}
+
+	@Test(description = "Test packets from jsendnsca with XOR")
+	public void testJsendnscaXor() throws Exception {
+		start(NscaEncryption.XOR, 30);
+		sendWithJsendnsca(Encryption.XOR, true);
+		assertJsendnscaReports();
+	}
+
+	@Test(description = "Test packets from jsendnsca with triple DES")
+	public void testJsendnscaTripleDes() throws Exception {
+		start(NscaEncryption.TRIPLE_DES, 30);
+		sendWithJsendnsca(Encryption.TRIPLE_DES, true);
+		assertJsendnscaReports();
+	}
+
+	private static byte[] packet(int size, String service, String output, long timestamp) {
+		ByteBuffer packet = ByteBuffer.allocate(size);
+		packet.putShort(0, (short) NscaActivecheckServer.PACKET_VERSION);
+		packet.putInt(8, (int) timestamp);
+		packet.putShort(12, (short) 2);
+		packet.position(14);
+		packet.put("db01".getBytes(StandardCharsets.UTF_8));
+		packet.position(14 + NscaActivecheckServer.HOST_LENGTH);
+		packet.put(service.getBytes(StandardCharsets.UTF_8));
+		packet.position(NscaActivecheckServer.HEADER_LENGTH);
+		packet.put(output.getBytes(StandardCharsets.UTF_8));
+		packet.putInt(4, (int) NscaActivecheckServer.crc32(packet.array(), 0, size));
+		return packet.array();
+	}
+
+	private static boolean sendOnOneConnection(int port, int method, int size, int count,
+			long timestamp, boolean corruptLast) throws Exception {
+		return sendOnOneConnection(port, method, size, count, "queue", timestamp, corruptLast);
+	}
+
+	/**
+	 * Sends the packets on one connection, the first byte of the last packet
+	 * may be corrupted.
+	 *
+	 * @return true if the server closed the connection
+	 */
+	private static boolean sendOnOneConnection(int port, int method, int size, int count,
+			String service, long timestamp, boolean corruptLast) throws Exception {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			byte[] iv = new byte[NscaEncryption.IV_LENGTH];
+			in.readFully(iv);
+			in.readInt();
+			NscaEncryption encryption = new NscaEncryption(method, PASSWORD, iv, false);
+			OutputStream out = socket.getOutputStream();
+			for (int i = 0; i < count; i++) {
+				byte[] packet = packet(size, service.isEmpty() ? "" : service + i, "QUEUE CRITICAL - ünicode", timestamp);
+				if (corruptLast && i == count - 1) {
+					packet[NscaActivecheckServer.HEADER_LENGTH] ^= 1;
+				}
+				encryption.apply(packet, 0, packet.length, 0);
+				// split packets to exercise partial reads
+				out.write(packet, 0, 100);
+				out.flush();
+				out.write(packet, 100, packet.length - 100);
+			}
+			out.flush();
+			if (!corruptLast) {
+				socket.shutdownOutput();
+			}
+			socket.setSoTimeout(5000);
+			return in.read() < 0;
+		}
+	}
+
+	private void assertStream(int method, int size) throws Exception {
+		start(method, 30);
+		long now = System.currentTimeMillis() / 1000;
+		assertEquals(sendOnOneConnection(server.getLocalPort(), method, size, 20, now, true), true);
+		for (int i = 0; i < 19; i++) {
+			NagiosServiceReport report = receive();
+			assertEquals(report.getServiceName(), "queue" + i);
+			assertEquals(report.getServiceHost(), "db01");
+			assertEquals(report.getStatus(), NagiosServiceStatus.CRITICAL);
+			assertEquals(report.getMessage(), "QUEUE CRITICAL - ünicode");
+			assertEquals(report.getFinishTime(), now * 1000);
+		}
+		// the corrupted packet is dropped
+		assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test(description = "Test a stream of XOR packets")
+	public void testStreamXor() throws Exception {
+		assertStream(NscaEncryption.XOR, NscaActivecheckServer.SMALL_PACKET_SIZE);
+	}
+
+	@Test(description = "Test a stream of DES packets")
+	public void testStreamDes() throws Exception {
+		assertStream(NscaEncryption.DES, NscaActivecheckServer.LARGE_PACKET_SIZE);
+	}
+
+	@Test(description = "Test a stream of Blowfish packets")
+	public void testStreamBlowfish() throws Exception {
+		assertStream(NscaEncryption.BLOWFISH, NscaActivecheckServer.SMALL_PACKET_SIZE);
+	}
+
+	@Test(description = "Test a stream of Rijndael packets")
+	public void testStreamRijndael() throws Exception {
+		assertStream(NscaEncryption.RIJNDAEL_128, NscaActivecheckServer.LARGE_PACKET_SIZE);
+	}
+
+	@Test(description = "Test an empty service description is a host check")
+	public void testHostCheck() throws Exception {
+		start(NscaEncryption.NONE, 0);
+		sendOnOneConnection(server.getLocalPort(), NscaEncryption.NONE,
+				NscaActivecheckServer.SMALL_PACKET_SIZE, 2, "", 1000, false);
+		NagiosServiceReport report = receive();
+		assertNull(report.getServiceName());
+		assertEquals(report.getServiceHost(), "db01");
+		// any age is accepted
+		assertEquals(report.getStartTime(), 1000000);
+		assertNull(receive().getServiceName());
+	}
+
+	@Test(description = "Test invalid packets close the connection")
+	public void testInvalidPackets() throws Exception {
+		start(NscaEncryption.XOR, 30);
+		long now = System.currentTimeMillis() / 1000;
+		// the size of a single corrupted packet is unknown
+		assertEquals(sendOnOneConnection(server.getLocalPort(), NscaEncryption.XOR,
+				NscaActivecheckServer.LARGE_PACKET_SIZE, 1, now, true), true);
+		// a stale packet
+		assertEquals(sendOnOneConnection(server.getLocalPort(), NscaEncryption.XOR,
+				NscaActivecheckServer.SMALL_PACKET_SIZE, 1, now - 60, false), true);
+		// wrong encryption method
+		assertEquals(sendOnOneConnection(server.getLocalPort(), NscaEncryption.DES,
+				NscaActivecheckServer.LARGE_PACKET_SIZE, 1, now, false), true);
+		assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+	}
+
+	@Test(description = "Test unsupported encryption methods", expectedExceptions = IllegalArgumentException.class)
+	public void testUnsupportedMethod() throws Exception {
+		start(4, 30);
+	}
+}
@@ -0,0 +1,216 @@
+package org.activecheck.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+public class RelayActivecheckServerTest {
+	private static final String SECRET = "secret";
+	private static final int HOSTS = 10;
+	private static final int ROUNDS = 50;
+
+	private RelayActivecheckServer server;
+	private Thread thread;
+	private final BlockingQueue<List<?>> batches = new LinkedBlockingQueue<>();
+	private final Observer observer = new Observer() {
+		@Override
+		public void update(Observable o, Object arg) {
+			batches.add((List<?>) arg);
+		}
+	};
+
+	@AfterMethod
+	public void tearDown() throws Exception {
+		if (server != null) {
+			server.close();
+			thread.join(5000);
+			server = null;
+		}
+		batches.clear();
+	}
+
+	private void start(long windowMillis) throws Exception {
+		start(windowMillis, RelayActivecheckServer.DEFAULT_HANDSHAKE_TIMEOUT_MILLIS);
+	}
+
+	private void start(long windowMillis, long handshakeTimeoutMillis) throws Exception {
+		server = new RelayActivecheckServer(InetAddress.getLoopbackAddress(), 0, SECRET, windowMillis,
+				handshakeTimeoutMillis);
+		server.addObserver(observer);
+		thread = new Thread(server);
+		thread.start();
+	}
+
+	private RelayActivecheckClient client(String agent, String secret) {
+		return new RelayActivecheckClient("127.0.0.1", server.getLocalPort(), agent, secret, 100, 5000);
+	}
+
+	private static NagiosServiceReport report(int host, int round) {
+		return new NagiosServiceReport("load", "host" + host, NagiosServiceStatus.OK,
+				"OK | round=" + round, 1000 + round, 2000 + round);
+	}
+
+	@Test(description = "Test reports are coalesced per host and service within a window")
+	public void testCoalesce() throws Exception {
+		start(60000);
+		try (RelayActivecheckClient client = client("agent1", SECRET)) {
+			for (int round = 0; round < ROUNDS; round++) {
+				for (int host = 0; host < HOSTS; host++) {
+					client.send(report(host, round));
+				}
+			}
+			// sent again after a reconnect
+			client.send(report(0, ROUNDS - 1));
+			// an older result arriving late
+			client.send(report(1, 0));
+		}
+		server.close();
+		thread.join(5000);
+
+		List<?> batch = batches.poll(5, TimeUnit.SECONDS);
+		assertEquals(batch.size(), HOSTS);
+		for (int host = 0; host < HOSTS; host++) {
+			NagiosServiceReport report = (NagiosServiceReport) batch.get(host);
+			assertEquals(report.getServiceHost(), "host" + host);
+			assertEquals(report.getPerfData().get(0).getCurrent(), (double) ROUNDS - 1);
+		}
+		assertEquals(server.getReportsForwarded(), HOSTS);
+		assertEquals(server.getReportsCoalesced(), HOSTS * (ROUNDS - 1) + 2);
+		assertEquals(server.getBatchesForwarded(), 1);
+		server = null;
+	}
+
+	@Test(description = "Test reports are forwarded in batches per window")
+	public void testWindows() throws Exception {
+		start(50);
+		Map<String, Double> latest = new HashMap<>();
+		try (RelayActivecheckClient client = client("agent2", SECRET)) {
+			for (int round = 0; round < ROUNDS; round++) {
+				for (int host = 0; host < HOSTS; host++) {
+					client.send(report(host, round));
+				}
+				client.flush();
+				Thread.sleep(2);
+			}
+		}
+		// all reports have been acknowledged, so the last window follows soon
+		List<?> batch;
+		while ((batch = batches.poll(1, TimeUnit.SECONDS)) != null) {
+			assertTrue(batch.size() <= HOSTS);
+			for (Object o : batch) {
+				NagiosServiceReport report = (NagiosServiceReport) o;
+				latest.put(report.getServiceHost(), report.getPerfData().get(0).getCurrent());
+			}
+		}
+		assertEquals(latest.size(), HOSTS);
+		for (Double round : latest.values()) {
+			assertEquals(round, (double) ROUNDS - 1);
+		}
+		assertTrue(server.getBatchesForwarded() > 1);
+	}
+
+	@Test(description = "Test agents with a wrong secret are rejected")
+	public void testWrongSecret() throws Exception {
+		start(0);
+		try (RelayActivecheckClient client = client("agent3", "wrong")) {
+			client.send(report(0, 0));
+			client.flush();
+			fail("the relay accepted a wrong secret");
+		} catch (IOException e) {
+			// expected
+		}
+		try (RelayActivecheckClient client = client("agent3", SECRET)) {
+			client.send(report(0, 1));
+		}
+		List<?> batch = batches.poll(5, TimeUnit.SECONDS);
+		assertEquals(batch.size(), 1);
+		assertEquals(((NagiosServiceReport) batch.get(0)).getFinishTime(), 2001);
+		assertTrue(batches.isEmpty());
+	}
+
+	@Test(description = "Test the statistics of an agent are published over JMX")
+	public void testAgentStatistics() throws Exception {
+		start(0);
+		try (RelayActivecheckClient client = client("agent4", SECRET)) {
+			for (int host = 0; host < HOSTS; host++) {
+				client.send(report(host, 0));
+			}
+			client.flush();
+			RelayAgent agent = server.getAgents().get("agent4");
+			assertEquals(agent.getConnections(), 1);
+			assertEquals(agent.getReportsReceived(), HOSTS);
+			assertTrue(agent.getLastLagMillis() > 0);
+			ObjectName name = new ObjectName("org.activecheck:type=RelayAgents,name=" + ObjectName.quote("agent4"));
+			assertEquals(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ReportsReceived"),
+					(long) HOSTS);
+		}
+		RelayAgent agent = server.getAgents().get("agent4");
+		for (int i = 0; i < 50 && agent.getConnections() > 0; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(agent.getConnections(), 0);
+	}
+
+	@Test(description = "Test agent names are quoted in the names of their MBeans")
+	public void testAgentNameQuoted() throws Exception {
+		start(0);
+		String agentName = "dc1,type=Relay:a=\"b\"";
+		try (RelayActivecheckClient client = client(agentName, SECRET)) {
+			client.send(report(0, 0));
+			client.flush();
+		}
+		ObjectName name = new ObjectName("org.activecheck:type=RelayAgents,name=" + ObjectName.quote(agentName));
+		assertEquals(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ReportsReceived"), 1L);
+		assertEquals(name.getKeyPropertyList().size(), 2);
+	}
+
+	@Test(description = "Test connections not authenticating in time are closed")
+	public void testHandshakeTimeout() throws Exception {
+		start(0, 200);
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+			socket.setSoTimeout(5000);
+			InputStream in = socket.getInputStream();
+			long start = System.currentTimeMillis();
+			// the challenge, then the end of the stream
+			int read = 0;
+			while (in.read() >= 0) {
+				read++;
+			}
+			assertEquals(read, RelayAuthentication.CHALLENGE_LENGTH);
+			long elapsed = System.currentTimeMillis() - start;
+			assertTrue(elapsed >= 150 && elapsed < 2000, String.valueOf(elapsed));
+		}
+
+		// authenticated agents are not affected
+		try (RelayActivecheckClient client = client("agent5", SECRET)) {
+			client.send(report(0, 0));
+			client.flush();
+			Thread.sleep(500);
+			client.send(report(0, 1));
+			client.flush();
+		}
+		assertEquals(batches.poll(5, TimeUnit.SECONDS).size(), 1);
+		assertEquals(batches.poll(5, TimeUnit.SECONDS).size(), 1);
+	}
+}
@@ -0,0 +1,108 @@
+package org.activecheck.net;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TcpActivecheckClientTest {
+	private final AtomicInteger received = new AtomicInteger();
+	private TcpActivecheckServer server;
+	private int port;
+
+	private TcpActivecheckServer startServer(int port) throws IOException {
+		TcpActivecheckServer server = new TcpActivecheckServer(
+				InetAddress.getLoopbackAddress(), port);
+		server.addObserver(new Observer() {
+			@Override
+			public void update(Observable o, Object arg) {
+				received.incrementAndGet();
+			}
+		});
+		new Thread(server).start();
+		return server;
+	}
+
+	private static NagiosServiceReport report(int i) {
+		return new NagiosServiceReport("check" + i, "localhost",
+				NagiosServiceStatus.OK, "OK | value=" + i, 1, 2);
+	}
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		received.set(0);
+		server = startServer(0);
+		port = server.getLocalPort();
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		server.close();
+	}
+
+	@Test(description = "Test pipelining many reports over one connection")
+	public void testPipelining() throws Exception {
+		TcpActivecheckClient client = new TcpActivecheckClient("127.0.0.1",
+				port, 100, 10000);
+		for (int i = 0; i < 5000; i++) {
+			client.send(report(i));
+		}
+		client.close();
+		// acknowledged reports are queued for the observers
+		long deadline = System.currentTimeMillis() + 10000;
+		while (received.get() < 5000 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(received.get(), 5000);
+	}
+
+	@Test(description = "Test reconnecting after the server restarted")
+	public void testReconnect() throws Exception {
+		TcpActivecheckClient client = new TcpActivecheckClient("127.0.0.1",
+				port, 100, 10000);
+		client.send(report(1));
+		client.flush();
+
+		server.close();
+		// wait until the port is released
+		long deadline = System.currentTimeMillis() + 10000;
+		while (System.currentTimeMillis() < deadline) {
+			try {
+				new ServerSocket(port, 0, InetAddress.getLoopbackAddress()).close();
+				break;
+			} catch (IOException e) {
+				Thread.sleep(10);
+			}
+		}
+		server = startServer(port);
+
+		client.send(report(2));
+		client.send(report(3));
+		client.close();
+		deadline = System.currentTimeMillis() + 10000;
+		while (received.get() < 3 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(received.get(), 3);
+	}
+
+	@Test(description = "Test failing when there is no server", expectedExceptions = IOException.class)
+	public void testNoServer() throws Exception {
+		server.close();
+		Thread.sleep(100);
+		TcpActivecheckClient client = new TcpActivecheckClient("127.0.0.1",
+				port, 100, 1000);
+		client.send(report(1));
+		client.flush();
+	}
+}
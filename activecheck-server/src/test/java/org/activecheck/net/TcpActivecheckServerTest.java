@@ -0,0 +1,93 @@
+package org.activecheck.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class TcpActivecheckServerTest {
+	private static final int CLIENTS = 50;
+	private static final int REPORTS = 200;
+
+	private TcpActivecheckServer server;
+	private final AtomicInteger received = new AtomicInteger();
+	private CountDownLatch done;
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		// a small queue and a slow observer to exercise back-pressure
+		server = new TcpActivecheckServer(InetAddress.getLoopbackAddress(), 0, 16);
+		done = new CountDownLatch(CLIENTS * REPORTS);
+		server.addObserver(new Observer() {
+			@Override
+			public void update(Observable o, Object arg) {
+				if (received.incrementAndGet() % 1000 == 0) {
+					Thread.yield();
+				}
+				done.countDown();
+			}
+		});
+		new Thread(server).start();
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		server.close();
+	}
+
+	@Test(description = "Test many reports on many persistent connections")
+	public void testManyConnections() throws Exception {
+		List<Thread> clients = new ArrayList<Thread>();
+		for (int i = 0; i < CLIENTS; i++) {
+			final String host = "host" + i;
+			Thread client = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					// clients have to read the acknowledgements before closing
+					try (TcpActivecheckClient sender = new TcpActivecheckClient(
+							"127.0.0.1", server.getLocalPort(), 50, 10000)) {
+						for (int j = 0; j < REPORTS; j++) {
+							sender.send(new NagiosServiceReport("check" + j, host,
+									NagiosServiceStatus.OK, "OK | value=" + j, 1, 2));
+						}
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+			client.start();
+			clients.add(client);
+		}
+		for (Thread client : clients) {
+			client.join();
+		}
+		assertTrue(done.await(30, TimeUnit.SECONDS), received.get() + " reports received");
+	}
+
+	@Test(description = "Test a connection sending garbage is closed")
+	public void testInvalidPayload() throws Exception {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+				server.getLocalPort())) {
+			socket.setSoTimeout(10000);
+			socket.getOutputStream().write(new byte[] { 3, 9, 9, 9 });
+			InputStream in = socket.getInputStream();
+			assertEquals(in.read(), -1);
+		}
+		assertEquals(received.get(), 0);
+	}
+}
@@ -0,0 +1,199 @@
+package org.activecheck.net;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.activecheck.common.nagios.NagiosServiceReport;
+import org.activecheck.common.nagios.NagiosServiceReportCodec;
+import org.activecheck.common.nagios.NagiosServiceStatus;
+import org.activecheck.net.UnixActivecheckServer.Format;
+import org.newsclub.net.unix.AFUNIXDatagramChannel;
+import org.newsclub.net.unix.AFUNIXSocket;
+import org.newsclub.net.unix.AFUNIXSocketAddress;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class UnixActivecheckServerTest {
+	private static final int REPORTS = 1000;
+
+	private File directory;
+	private File path;
+	private UnixActivecheckServer server;
+	private UnixDatagramActivecheckServer datagramServer;
+	private final BlockingQueue<NagiosServiceReport> received = new LinkedBlockingQueue<>();
+	private final Observer observer = new Observer() {
+		@Override
+		public void update(Observable o, Object arg) {
+			received.add((NagiosServiceReport) arg);
+		}
+	};
+
+	@BeforeMethod
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("activecheck").toFile();
+		path = new File(directory, "activecheck.sock");
+	}
+
+	@AfterMethod
+	public void tearDown() throws Exception {
+		if (server != null) {
+			server.close();
+			server = null;
+		}
+		if (datagramServer != null) {
+			datagramServer.close();
+			datagramServer = null;
+		}
+		received.clear();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private void start(Format format) throws Exception {
+		server = new UnixActivecheckServer(path, format, "rw-------", null);
+		server.addObserver(observer);
+		Thread thread = new Thread(server);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void startDatagram(Format format) throws Exception {
+		datagramServer = new UnixDatagramActivecheckServer(path, format, "rw-------", null);
+		datagramServer.addObserver(observer);
+		Thread thread = new Thread(datagramServer);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private NagiosServiceReport receive() throws InterruptedException {
+		return received.poll(5, TimeUnit.SECONDS);
+	}
+
+	private static NagiosServiceReport report(int i) {
+		return new NagiosServiceReport("service" + i, "localhost",
+				NagiosServiceStatus.OK, "OK | count=" + i, 1000, 2000);
+	}
+
+	@Test(description = "Test the permissions of the socket file")
+	public void testPermissions() throws Exception {
+		start(Format.NATIVE);
+		assertEquals(PosixFilePermissions.toString(Files.getPosixFilePermissions(path.toPath())),
+				"rw-------");
+		server.close();
+		server = null;
+		// the socket file is removed when the server stops
+		for (int i = 0; i < 50 && path.exists(); i++) {
+			Thread.sleep(100);
+		}
+		assertFalse(path.exists());
+	}
+
+	@Test(description = "Test a stale socket file is replaced")
+	public void testStaleSocket() throws Exception {
+		start(Format.NATIVE);
+		// a second server takes over the socket like after a crash
+		server = new UnixActivecheckServer(path, Format.NATIVE, "rw-------", null);
+		server.addObserver(observer);
+		Thread thread = new Thread(server);
+		thread.setDaemon(true);
+		thread.start();
+		try (UnixActivecheckClient client = new UnixActivecheckClient(path.getPath())) {
+			client.send(report(1));
+		}
+		assertEquals(receive().getServiceName(), "service1");
+	}
+
+	@Test(description = "Test other files are not replaced", expectedExceptions = IOException.class)
+	public void testRegularFile() throws Exception {
+		assertTrue(path.createNewFile());
+		start(Format.NATIVE);
+	}
+
+	@Test(description = "Test the native format on a stream socket")
+	public void testStreamNative() throws Exception {
+		start(Format.NATIVE);
+		try (UnixActivecheckClient client = new UnixActivecheckClient(path.getPath(), 100, 5000)) {
+			for (int i = 0; i < REPORTS; i++) {
+				client.send(report(i));
+			}
+			client.flush();
+		}
+		for (int i = 0; i < REPORTS; i++) {
+			NagiosServiceReport report = receive();
+			assertEquals(report.getServiceName(), "service" + i);
+			assertEquals(report.getPerfData().get(0).getCurrent(), (double) i);
+		}
+	}
+
+	@Test(description = "Test the line format on a stream socket")
+	public void testStreamLines() throws Exception {
+		start(Format.LINE);
+		try (AFUNIXSocket socket = AFUNIXSocket.newInstance()) {
+			socket.connect(AFUNIXSocketAddress.of(path));
+			OutputStream out = socket.getOutputStream();
+			out.write("web01\tHTTP\t1\tHTTP WARNING | time=2s\r\n\ninvalid\nweb".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			out.write("01\t2\tPING CRITICAL\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+		}
+		NagiosServiceReport report = receive();
+		assertEquals(report.getServiceName(), "HTTP");
+		assertEquals(report.getStatus(), NagiosServiceStatus.WARNING);
+		assertEquals(report.getMessage(), "HTTP WARNING");
+		report = receive();
+		assertNull(report.getServiceName());
+		assertEquals(report.getServiceHost(), "web01");
+		assertEquals(report.getStatus(), NagiosServiceStatus.CRITICAL);
+	}
+
+	@Test(description = "Test the native format on a datagram socket")
+	public void testDatagramNative() throws Exception {
+		startDatagram(Format.NATIVE);
+		NagiosServiceReportCodec codec = new NagiosServiceReportCodec();
+		try (AFUNIXDatagramChannel channel = AFUNIXDatagramChannel.open()) {
+			for (int i = 0; i < REPORTS; i++) {
+				channel.send(codec.encode(report(i)), AFUNIXSocketAddress.of(path));
+			}
+			// an invalid datagram is dropped
+			channel.send(ByteBuffer.wrap(new byte[] { 1, 2 }), AFUNIXSocketAddress.of(path));
+			channel.send(codec.encode(report(REPORTS)), AFUNIXSocketAddress.of(path));
+		}
+		for (int i = 0; i <= REPORTS; i++) {
+			assertEquals(receive().getServiceName(), "service" + i);
+		}
+	}
+
+	@Test(description = "Test the line format on a datagram socket")
+	public void testDatagramLines() throws Exception {
+		startDatagram(Format.LINE);
+		try (AFUNIXDatagramChannel channel = AFUNIXDatagramChannel.open()) {
+			channel.send(ByteBuffer.wrap("web01\tHTTP\t0\tHTTP OK\nweb02\tHTTP\t3\tHTTP UNKNOWN\n"
+					.getBytes(StandardCharsets.UTF_8)), AFUNIXSocketAddress.of(path));
+		}
+		assertEquals(receive().getServiceHost(), "web01");
+		NagiosServiceReport report = receive();
+		assertEquals(report.getServiceHost(), "web02");
+		assertEquals(report.getStatus(), NagiosServiceStatus.UNKNOWN);
+	}
+}